@@ -0,0 +1,86 @@
+package fi.helsinki.cs.turridevelop.benchmarks;
+
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import fi.helsinki.cs.turridevelop.logic.CompiledProject;
+import fi.helsinki.cs.turridevelop.logic.CompiledSimulation;
+import fi.helsinki.cs.turridevelop.logic.Simulation;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks a long run of the 5-state busy beaver champion, which moves
+ * back and forth over a growing bi-infinite tape. Each run is timed
+ * separately, as one run takes long enough to measure on its own.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class BusyBeaverBenchmark {
+    /**
+     * The number of steps to run.
+     */
+    @Param({"10000000"})
+    public long steps;
+    
+    /**
+     * The busy beaver workload.
+     */
+    private Workload load;
+    
+    /**
+     * The compiled project of the workload.
+     */
+    private CompiledProject compiled;
+    
+    /**
+     * Creates the workload and compiles it.
+     */
+    @Setup
+    public void setUp() {
+        load = Workload.get("bb5");
+        compiled = new CompiledProject(load.getProject());
+    }
+    
+    /**
+     * Runs Simulation for the given number of steps.
+     * 
+     * @return The step count.
+     * @throws SimulationException on submachine errors.
+     */
+    @Benchmark
+    public long simulation() throws SimulationException {
+        Simulation simulation = new Simulation(
+            load.getProject(), load.getMachineName(), load.createTape()
+        );
+        simulation.run(steps);
+        return simulation.getStepCount();
+    }
+    
+    /**
+     * Runs CompiledSimulation for the given number of steps.
+     * 
+     * @return The step count.
+     * @throws SimulationException on submachine errors.
+     */
+    @Benchmark
+    public long compiled() throws SimulationException {
+        CompiledSimulation simulation = new CompiledSimulation(
+            compiled, load.getMachineName(), load.createTape()
+        );
+        simulation.run(steps);
+        return simulation.getStepCount();
+    }
+}
@@ -0,0 +1,186 @@
+package fi.helsinki.cs.turridevelop.benchmarks;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.file.TurrInput;
+import fi.helsinki.cs.turridevelop.file.TurrOutput;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import fi.helsinki.cs.turridevelop.logic.State;
+import fi.helsinki.cs.turridevelop.logic.Transition;
+import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading and writing a large generated project with TurrInput and
+ * TurrOutput, both in memory and through a project directory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class FileBenchmark {
+    /**
+     * The number of machines in the project.
+     */
+    @Param({"100"})
+    public int machines;
+    
+    /**
+     * The number of states in each machine.
+     */
+    @Param({"50"})
+    public int states;
+    
+    /**
+     * The generated project.
+     */
+    private Project project;
+    
+    /**
+     * The machine files of the project as strings.
+     */
+    private HashMap<String, String> sources;
+    
+    /**
+     * The directory the project is written to.
+     */
+    private File dir;
+    
+    /**
+     * Generates the project and creates the project directory.
+     * 
+     * @throws NameInUseException never.
+     * @throws IOException if the directory cannot be created.
+     * @throws FilesystemException if the project cannot be written.
+     */
+    @Setup
+    public void setUp() throws NameInUseException, IOException, FilesystemException {
+        Random random = new Random(1);
+        project = new Project();
+        for(int m = 0; m < machines; m++) {
+            Machine machine = project.addMachine("machine" + m);
+            State[] added = new State[states];
+            for(int s = 0; s < states; s++) {
+                added[s] = machine.addState(s == 0 ? "start" : "state" + s);
+                added[s].setPosition(new Vec2(
+                    random.nextInt(1000), random.nextInt(1000)
+                ));
+            }
+            for(int s = 0; s < states; s++) {
+                if(random.nextInt(10) == 0) {
+                    added[s].setSubmachine("machine" + random.nextInt(machines));
+                }
+                added[s].addTransition(new Transition(
+                    added[random.nextInt(states)], "01", 'x', 1
+                ));
+                added[s].addTransition(new Transition(
+                    added[random.nextInt(states)], "ab␣", -1
+                ));
+            }
+            added[states - 1].setAccepting(true);
+        }
+        
+        sources = new HashMap<String, String>();
+        for(Map.Entry<String, JSONObject> entry :
+            TurrOutput.projectToJSON(project).entrySet()
+        ) {
+            sources.put(entry.getKey(), entry.getValue().toString());
+        }
+        
+        dir = File.createTempFile("turrbench", "");
+        if(!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Could not create directory '" + dir + "'.");
+        }
+        TurrOutput.writeProject(project, dir);
+    }
+    
+    /**
+     * Removes the project directory.
+     */
+    @TearDown
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+    
+    /**
+     * Converts the project to JSON strings.
+     * 
+     * @return The JSON strings by machine name.
+     */
+    @Benchmark
+    public HashMap<String, String> toJSON() {
+        HashMap<String, String> ret = new HashMap<String, String>();
+        for(Map.Entry<String, JSONObject> entry :
+            TurrOutput.projectToJSON(project).entrySet()
+        ) {
+            ret.put(entry.getKey(), entry.getValue().toString());
+        }
+        return ret;
+    }
+    
+    /**
+     * Parses the project from JSON strings.
+     * 
+     * @return The project.
+     * @throws JSONException never.
+     * @throws MalformedFileException never.
+     */
+    @Benchmark
+    public Project fromJSON() throws JSONException, MalformedFileException {
+        HashMap<String, JSONObject> json = new HashMap<String, JSONObject>();
+        for(Map.Entry<String, String> entry : sources.entrySet()) {
+            json.put(entry.getKey(), new JSONObject(entry.getValue()));
+        }
+        return TurrInput.JSONToProject(json);
+    }
+    
+    /**
+     * Writes the project directory.
+     * 
+     * @throws FilesystemException if the files cannot be written.
+     */
+    @Benchmark
+    public void writeDirectory() throws FilesystemException {
+        TurrOutput.writeProject(project, dir);
+    }
+    
+    /**
+     * Reads the project directory.
+     * 
+     * @return The project.
+     * @throws FilesystemException if the files cannot be read.
+     * @throws MalformedFileException never.
+     */
+    @Benchmark
+    public Project readDirectory() throws FilesystemException, MalformedFileException {
+        return TurrInput.readProjectDirectory(dir);
+    }
+}
@@ -0,0 +1,114 @@
+package fi.helsinki.cs.turridevelop.benchmarks;
+
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import fi.helsinki.cs.turridevelop.logic.CompiledProject;
+import fi.helsinki.cs.turridevelop.logic.CompiledSimulation;
+import fi.helsinki.cs.turridevelop.logic.Simulation;
+import fi.helsinki.cs.turridevelop.logic.SimulationStatus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks running the workload machines from start to halt with Simulation
+ * and CompiledSimulation. The scores are times per complete run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SimulationBenchmark {
+    /**
+     * The name of the workload, see Workload.NAMES.
+     */
+    @Param({"counter", "palindrome", "nested", "bb4"})
+    public String workload;
+    
+    /**
+     * The workload being run.
+     */
+    private Workload load;
+    
+    /**
+     * The compiled project of the workload.
+     */
+    private CompiledProject compiled;
+    
+    /**
+     * Creates the workload and compiles it.
+     */
+    @Setup
+    public void setUp() {
+        load = Workload.get(workload);
+        compiled = new CompiledProject(load.getProject());
+    }
+    
+    /**
+     * Runs Simulation with run().
+     * 
+     * @return The step count, so that the run is not optimized away.
+     * @throws SimulationException on submachine errors.
+     */
+    @Benchmark
+    public long simulationRun() throws SimulationException {
+        Simulation simulation = new Simulation(
+            load.getProject(), load.getMachineName(), load.createTape()
+        );
+        simulation.run();
+        return simulation.getStepCount();
+    }
+    
+    /**
+     * Runs Simulation by calling step() until it halts, the way RunPanel
+     * does.
+     * 
+     * @return The step count.
+     * @throws SimulationException on submachine errors.
+     */
+    @Benchmark
+    public long simulationStep() throws SimulationException {
+        Simulation simulation = new Simulation(
+            load.getProject(), load.getMachineName(), load.createTape()
+        );
+        while(simulation.getStatus() == SimulationStatus.RUNNING) {
+            simulation.step();
+        }
+        return simulation.getStepCount();
+    }
+    
+    /**
+     * Runs CompiledSimulation with run() on the precompiled project.
+     * 
+     * @return The step count.
+     * @throws SimulationException on submachine errors.
+     */
+    @Benchmark
+    public long compiledRun() throws SimulationException {
+        CompiledSimulation simulation = new CompiledSimulation(
+            compiled, load.getMachineName(), load.createTape()
+        );
+        simulation.run();
+        return simulation.getStepCount();
+    }
+    
+    /**
+     * Compiles the project.
+     * 
+     * @return The compiled project.
+     */
+    @Benchmark
+    public CompiledProject compile() {
+        return new CompiledProject(load.getProject());
+    }
+}
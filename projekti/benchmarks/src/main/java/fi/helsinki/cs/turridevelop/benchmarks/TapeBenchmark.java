@@ -0,0 +1,116 @@
+package fi.helsinki.cs.turridevelop.benchmarks;
+
+import fi.helsinki.cs.turridevelop.logic.Head;
+import fi.helsinki.cs.turridevelop.logic.Tape;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the access patterns of Turing machines on Tape: growing the tape
+ * in either direction, scanning it and sweeping back and forth with a Head.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TapeBenchmark {
+    /**
+     * The number of cells accessed.
+     */
+    @Param({"100000"})
+    public int size;
+    
+    /**
+     * A tape filled with size characters for the reading benchmarks.
+     */
+    private Tape filled;
+    
+    /**
+     * Creates the filled tape.
+     */
+    @Setup
+    public void setUp() {
+        StringBuilder contents = new StringBuilder();
+        for(int i = 0; i < size; i++) {
+            contents.append((char) ('a' + i % 3));
+        }
+        filled = new Tape(contents.toString());
+    }
+    
+    /**
+     * Writes a new tape from left to right.
+     * 
+     * @return The tape.
+     */
+    @Benchmark
+    public Tape writeRight() {
+        Tape tape = new Tape();
+        for(int i = 0; i < size; i++) {
+            tape.setCharacterAt(i, 'x');
+        }
+        return tape;
+    }
+    
+    /**
+     * Writes a new bi-infinite tape from right to left into the negative
+     * positions.
+     * 
+     * @return The tape.
+     */
+    @Benchmark
+    public Tape writeLeft() {
+        Tape tape = new Tape("", '␣', true);
+        for(int i = 0; i < size; i++) {
+            tape.setCharacterAt(-i, 'x');
+        }
+        return tape;
+    }
+    
+    /**
+     * Reads every cell of a filled tape.
+     * 
+     * @return The number of 'a' characters.
+     */
+    @Benchmark
+    public int scan() {
+        int count = 0;
+        for(int i = 0; i < size; i++) {
+            if(filled.getCharacterAt(i) == 'a') {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Sweeps a head back and forth over a filled tape, rewriting every cell,
+     * and reads the contents afterwards.
+     * 
+     * @return The contents of the tape.
+     */
+    @Benchmark
+    public String sweep() {
+        Head head = new Head(filled);
+        for(int i = 0; i < size; i++) {
+            head.write(head.read() == 'a' ? 'b' : 'a');
+            head.move(1);
+        }
+        for(int i = 0; i < size; i++) {
+            head.move(-1);
+            head.write(head.read() == 'a' ? 'b' : 'a');
+        }
+        return filled.getContents();
+    }
+}
@@ -0,0 +1,293 @@
+package fi.helsinki.cs.turridevelop.benchmarks;
+
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import fi.helsinki.cs.turridevelop.logic.State;
+import fi.helsinki.cs.turridevelop.logic.Tape;
+import fi.helsinki.cs.turridevelop.logic.Transition;
+import fi.helsinki.cs.turridevelop.util.Vec2;
+
+/**
+ * A representative machine with an input to benchmark the simulation on.
+ */
+public class Workload {
+    /**
+     * The names of the workloads that halt in a reasonable time, for use as
+     * JMH parameter values.
+     */
+    public static final String[] NAMES = {
+        "counter", "palindrome", "nested", "bb4"
+    };
+    
+    /**
+     * The project containing the machine.
+     */
+    private final Project project;
+    
+    /**
+     * The name of the machine to run.
+     */
+    private final String machine_name;
+    
+    /**
+     * The initial contents of the tape.
+     */
+    private final String input;
+    
+    /**
+     * The empty character of the tape.
+     */
+    private final char empty_char;
+    
+    /**
+     * Is the tape bi-infinite?
+     */
+    private final boolean bi_infinite;
+    
+    /**
+     * Constructs Workload.
+     */
+    private Workload(
+        Project project,
+        String machine_name,
+        String input,
+        char empty_char,
+        boolean bi_infinite
+    ) {
+        this.project = project;
+        this.machine_name = machine_name;
+        this.input = input;
+        this.empty_char = empty_char;
+        this.bi_infinite = bi_infinite;
+    }
+    
+    /**
+     * Gets the project.
+     * 
+     * @return The project containing the machine.
+     */
+    public Project getProject() {
+        return project;
+    }
+    
+    /**
+     * Gets the machine name.
+     * 
+     * @return The name of the machine to run.
+     */
+    public String getMachineName() {
+        return machine_name;
+    }
+    
+    /**
+     * Creates a new tape with the input of the workload.
+     * 
+     * @return The tape to run the machine on.
+     */
+    public Tape createTape() {
+        return new Tape(input, empty_char, bi_infinite);
+    }
+    
+    /**
+     * Gets a workload by name.
+     * 
+     * @param name One of NAMES or "bb5".
+     * @return The workload.
+     */
+    public static Workload get(String name) {
+        try {
+            if(name.equals("counter")) {
+                return binaryCounter(12);
+            }
+            if(name.equals("palindrome")) {
+                return palindrome(300);
+            }
+            if(name.equals("nested")) {
+                return nested(10, 1000);
+            }
+            if(name.equals("bb4")) {
+                return busyBeaver(BB4);
+            }
+            if(name.equals("bb5")) {
+                return busyBeaver(BB5);
+            }
+        } catch(NameInUseException e) {
+            throw new RuntimeException("Invalid workload.", e);
+        }
+        throw new IllegalArgumentException("Unknown workload '" + name + "'.");
+    }
+    
+    /**
+     * Creates a binary counter that counts from 0 to 2^bits - 1, one
+     * increment at a time, between the marker '>' and the end of the input.
+     */
+    private static Workload binaryCounter(
+        int bits
+    ) throws NameInUseException {
+        Project project = new Project();
+        Machine machine = project.addMachine("counter");
+        State right = addState(machine, "start");
+        State carry = addState(machine, "carry");
+        State back = addState(machine, "back");
+        State done = addState(machine, "done");
+        right.addTransition(new Transition(right, ">01", 1));
+        right.addTransition(new Transition(carry, "␣", -1));
+        carry.addTransition(new Transition(carry, "1", '0', -1));
+        carry.addTransition(new Transition(back, "0", '1', -1));
+        carry.addTransition(new Transition(done, ">", 0));
+        back.addTransition(new Transition(back, "01", -1));
+        back.addTransition(new Transition(right, ">", 1));
+        done.setAccepting(true);
+        
+        StringBuilder input = new StringBuilder(">");
+        for(int i = 0; i < bits; i++) {
+            input.append('0');
+        }
+        return new Workload(project, "counter", input.toString(), '␣', false);
+    }
+    
+    /**
+     * Creates a palindrome checker over {a, b} that erases the first and the
+     * last character until the input is empty, and runs it on a palindrome.
+     */
+    private static Workload palindrome(
+        int length
+    ) throws NameInUseException {
+        Project project = new Project();
+        Machine machine = project.addMachine("palindrome");
+        State start = addState(machine, "start");
+        State have_a = addState(machine, "have_a");
+        State have_b = addState(machine, "have_b");
+        State check_a = addState(machine, "check_a");
+        State check_b = addState(machine, "check_b");
+        State back = addState(machine, "back");
+        State accept = addState(machine, "accept");
+        start.addTransition(new Transition(have_a, "a", '␣', 1));
+        start.addTransition(new Transition(have_b, "b", '␣', 1));
+        start.addTransition(new Transition(accept, "␣", 0));
+        have_a.addTransition(new Transition(have_a, "ab", 1));
+        have_a.addTransition(new Transition(check_a, "␣", -1));
+        have_b.addTransition(new Transition(have_b, "ab", 1));
+        have_b.addTransition(new Transition(check_b, "␣", -1));
+        check_a.addTransition(new Transition(back, "a", '␣', -1));
+        check_a.addTransition(new Transition(accept, "␣", 0));
+        check_b.addTransition(new Transition(back, "b", '␣', -1));
+        check_b.addTransition(new Transition(accept, "␣", 0));
+        back.addTransition(new Transition(back, "ab", -1));
+        back.addTransition(new Transition(start, "␣", 1));
+        accept.setAccepting(true);
+        
+        StringBuilder half = new StringBuilder();
+        for(int i = 0; i < length / 2; i++) {
+            half.append(i % 3 == 0 ? 'a' : 'b');
+        }
+        String input = half.toString() + half.reverse().toString();
+        return new Workload(project, "palindrome", input, '␣', false);
+    }
+    
+    /**
+     * Creates a chain of submachines nested depth deep, each of which reads
+     * one 'a' after its submachine returns, and a main machine that calls the
+     * chain calls times.
+     */
+    private static Workload nested(
+        int depth,
+        int calls
+    ) throws NameInUseException {
+        Project project = new Project();
+        for(int i = 0; i < depth; i++) {
+            Machine machine = project.addMachine("level" + i);
+            State start = addState(machine, "start");
+            State done = addState(machine, "done");
+            if(i + 1 < depth) {
+                start.setSubmachine("level" + (i + 1));
+            }
+            start.addTransition(new Transition(done, "a", 1));
+            done.setAccepting(true);
+        }
+        Machine main = project.addMachine("main");
+        State start = addState(main, "start");
+        State done = addState(main, "done");
+        start.setSubmachine("level0");
+        start.addTransition(new Transition(start, "a", 0));
+        start.addTransition(new Transition(done, "␣", 0));
+        done.setAccepting(true);
+        
+        StringBuilder input = new StringBuilder();
+        for(int i = 0; i < depth * calls; i++) {
+            input.append('a');
+        }
+        return new Workload(project, "main", input.toString(), '␣', false);
+    }
+    
+    /**
+     * The 4-state busy beaver champion, 107 steps. Each row is the state,
+     * the read symbol, the written symbol, the movement and the next state.
+     */
+    private static final String[] BB4 = {
+        "A0 1RB", "A1 1LB", "B0 1LA", "B1 0LC",
+        "C0 1RH", "C1 1LD", "D0 1RD", "D1 0RA"
+    };
+    
+    /**
+     * The 5-state busy beaver champion, 47176870 steps.
+     */
+    private static final String[] BB5 = {
+        "A0 1RB", "A1 1LC", "B0 1RC", "B1 1RB", "C0 1RD",
+        "C1 0LE", "D0 1LA", "D1 1LD", "E0 1RH", "E1 0LA"
+    };
+    
+    /**
+     * Creates a busy beaver on a bi-infinite tape of zeros from its rules.
+     */
+    private static Workload busyBeaver(
+        String[] rules
+    ) throws NameInUseException {
+        Project project = new Project();
+        Machine machine = project.addMachine("beaver");
+        for(String rule : rules) {
+            String name = stateName(rule.charAt(0));
+            if(machine.getState(name) == null) {
+                addState(machine, name);
+            }
+            String dest_name = stateName(rule.charAt(5));
+            if(machine.getState(dest_name) == null) {
+                addState(machine, dest_name);
+            }
+        }
+        machine.getState("H").setAccepting(true);
+        for(String rule : rules) {
+            State state = machine.getState(stateName(rule.charAt(0)));
+            State dest = machine.getState(stateName(rule.charAt(5)));
+            int movement = rule.charAt(4) == 'L' ? -1 : 1;
+            state.addTransition(new Transition(
+                dest, rule.substring(1, 2), rule.charAt(3), movement
+            ));
+        }
+        return new Workload(project, "beaver", "", '0', true);
+    }
+    
+    /**
+     * Gets the name of a busy beaver state, with state A as the start state.
+     */
+    private static String stateName(char c) {
+        if(c == 'A') {
+            return "start";
+        }
+        return String.valueOf(c);
+    }
+    
+    /**
+     * Adds a state to a machine at a position spread by the state count.
+     */
+    private static State addState(
+        Machine machine,
+        String name
+    ) throws NameInUseException {
+        int index = machine.getStateNames().size();
+        State state = machine.addState(name);
+        state.setPosition(new Vec2(100 * (index % 8), 100 * (index / 8)));
+        return state;
+    }
+}
@@ -0,0 +1,359 @@
+package fi.helsinki.cs.turridevelop;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import fi.helsinki.cs.turridevelop.logic.BatchResult;
+import fi.helsinki.cs.turridevelop.logic.BatchSimulation;
+import fi.helsinki.cs.turridevelop.logic.NondeterministicSimulation;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import fi.helsinki.cs.turridevelop.logic.SimulationStatus;
+import fi.helsinki.cs.turridevelop.logic.Tape;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Headless command line runner that simulates a machine of a project on many
+ * inputs without opening the GUI.
+ * 
+ * Usage: BatchRunner [OPTIONS] PROJECTDIR MACHINE [INPUTFILE]
+ * 
+ * Options:
+ *   --threads N    Run the inputs on N threads (default: number of
+ *                  processors).
+ *   --max-steps N  Stop each simulation after N steps.
+ *   --timeout MS   Stop each simulation after MS milliseconds.
+ *   --block-size N Memoize the simulation over tape blocks of N cells.
+ *   --detect-loops Stop simulations that repeat a configuration.
+ *   --packed-tape  Store the tapes packed over the alphabet of the project.
+ *   --mapped-tape  Store the tapes in memory-mapped temporary files outside
+ *                  the heap.
+ *   --run-length-tape
+ *                  Store the tapes as runs of equal characters.
+ *   --max-configurations N
+ *                  Stop the search of a nondeterministic machine on each
+ *                  input after reaching N configurations.
+ * 
+ * Projects with nondeterministic machines are run by searching their
+ * configurations with NondeterministicSimulation, one input at a time using
+ * all threads. The number of steps is then the length of the accepting
+ * computation, and the tape contents its final tape. The block size, loop
+ * detection and tape options do not apply to them.
+ * 
+ * PROJECTDIR may also be a binary project file ending in ".turrb".
+ * 
+ * The inputs are read one per line from INPUTFILE, or from the standard input
+ * if it is not given. For each input, a line with the following tab-separated
+ * fields is written to the standard output in the order of the inputs: the
+ * status (ACCEPTED, REJECTED, LOOPING if a loop was detected, LIMIT_REACHED if
+ * the step limit or the timeout was reached, or ERROR), the number of steps,
+ * the final tape contents (or the error message) and the wall time of the
+ * simulation in milliseconds. Tabs and line breaks in the tape contents are
+ * written as '�'.
+ */
+public class BatchRunner {
+    /**
+     * Usage message printed on invalid arguments.
+     */
+    private static final String USAGE =
+        "Usage: BatchRunner [--threads N] [--max-steps N] [--timeout MS] " +
+        "[--block-size N] [--detect-loops] [--packed-tape] [--mapped-tape] " +
+        "[--run-length-tape] [--max-configurations N] " +
+        "PROJECTDIR MACHINE [INPUTFILE]";
+    
+    /**
+     * Runs the batch runner with command line arguments and exits.
+     * 
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        PrintStream out;
+        try {
+            out = new PrintStream(
+                new BufferedOutputStream(System.out), false, "UTF-8"
+            );
+        } catch(UnsupportedEncodingException e) {
+            throw new RuntimeException("UTF-8 not supported.", e);
+        }
+        int ret = run(args, System.in, out, System.err);
+        out.flush();
+        System.exit(ret);
+    }
+    
+    /**
+     * Runs the batch runner.
+     * 
+     * @param args The command line arguments.
+     * @param in The stream to read the inputs from if no input file is given.
+     * @param out The stream to write the results to.
+     * @param err The stream to write error messages to.
+     * @return The exit status: 0 on success, 1 if the arguments are invalid or
+     * the project or the inputs could not be read.
+     */
+    public static int run(
+        String[] args,
+        InputStream in,
+        PrintStream out,
+        PrintStream err
+    ) {
+        // Parse the options.
+        int thread_count = Runtime.getRuntime().availableProcessors();
+        long max_steps = Long.MAX_VALUE;
+        long timeout = Long.MAX_VALUE;
+        long max_configurations = Long.MAX_VALUE;
+        int block_size = 0;
+        boolean detect_loops = false;
+        boolean pack_tapes = false;
+        boolean map_tapes = false;
+        boolean run_length_tapes = false;
+        int i = 0;
+        try {
+            while(i < args.length && args[i].startsWith("--")) {
+                if(args[i].equals("--detect-loops")) {
+                    detect_loops = true;
+                    i++;
+                    continue;
+                }
+                if(args[i].equals("--packed-tape")) {
+                    pack_tapes = true;
+                    i++;
+                    continue;
+                }
+                if(args[i].equals("--mapped-tape")) {
+                    map_tapes = true;
+                    i++;
+                    continue;
+                }
+                if(args[i].equals("--run-length-tape")) {
+                    run_length_tapes = true;
+                    i++;
+                    continue;
+                }
+                if(i + 1 == args.length) {
+                    err.println(USAGE);
+                    return 1;
+                }
+                if(args[i].equals("--threads")) {
+                    thread_count = Integer.parseInt(args[i + 1]);
+                } else if(args[i].equals("--max-steps")) {
+                    max_steps = Long.parseLong(args[i + 1]);
+                } else if(args[i].equals("--timeout")) {
+                    timeout = Long.parseLong(args[i + 1]);
+                } else if(args[i].equals("--block-size")) {
+                    block_size = Integer.parseInt(args[i + 1]);
+                } else if(args[i].equals("--max-configurations")) {
+                    max_configurations = Long.parseLong(args[i + 1]);
+                } else {
+                    err.println("Unknown option '" + args[i] + "'.");
+                    err.println(USAGE);
+                    return 1;
+                }
+                i += 2;
+            }
+        } catch(NumberFormatException e) {
+            err.println("Invalid number '" + args[i + 1] + "'.");
+            return 1;
+        }
+        if(
+            thread_count < 1 || max_steps < 0 || timeout < 0 ||
+            max_configurations < 0
+        ) {
+            err.println(
+                "Thread count must be positive, and step limit, timeout and " +
+                "configuration limit must not be negative."
+            );
+            return 1;
+        }
+        if(block_size < 0 || block_size > 1024) {
+            err.println("Block size must be between 0 and 1024.");
+            return 1;
+        }
+        
+        int positional = args.length - i;
+        if(positional < 2 || positional > 3) {
+            err.println(USAGE);
+            return 1;
+        }
+        File dir = new File(args[i]);
+        String machine_name = args[i + 1];
+        
+        Project project;
+        try {
+            project = ProjectConverter.readProject(dir);
+        } catch(FilesystemException e) {
+            err.println("Could not read project: " + e.getMessage());
+            return 1;
+        } catch(MalformedFileException e) {
+            err.println("Could not read project: " + e.getMessage());
+            return 1;
+        }
+        if(project.getMachine(machine_name) == null) {
+            err.println(
+                "The project does not have machine '" + machine_name + "'."
+            );
+            return 1;
+        }
+        if(project.getTapeCount() > 1) {
+            err.println("Multi-tape projects cannot be run in batch.");
+            return 1;
+        }
+        
+        ArrayList<String> inputs = new ArrayList<String>();
+        try {
+            if(positional == 3) {
+                in = new FileInputStream(args[i + 2]);
+            }
+            BufferedReader reader = new BufferedReader(
+                new InputStreamReader(in, "UTF-8")
+            );
+            String input;
+            while((input = reader.readLine()) != null) {
+                inputs.add(input);
+            }
+            reader.close();
+        } catch(IOException e) {
+            err.println("Could not read inputs: " + e.getMessage());
+            return 1;
+        }
+        
+        if(project.isNondeterministic()) {
+            for(String input : inputs) {
+                out.println(formatResult(search(
+                    project,
+                    machine_name,
+                    input,
+                    thread_count,
+                    max_steps,
+                    max_configurations,
+                    timeout
+                )));
+            }
+            return 0;
+        }
+        
+        BatchSimulation batch = new BatchSimulation(project, machine_name);
+        batch.setThreadCount(thread_count);
+        batch.setMaxSteps(max_steps);
+        batch.setTimeout(timeout);
+        batch.setBlockSize(block_size);
+        batch.setDetectingLoops(detect_loops);
+        batch.setPackingTapes(pack_tapes);
+        batch.setMappingTapes(map_tapes);
+        batch.setRunLengthTapes(run_length_tapes);
+        
+        List<BatchResult> results;
+        try {
+            results = batch.run(inputs);
+        } catch(InterruptedException e) {
+            err.println("Interrupted.");
+            return 1;
+        }
+        for(BatchResult result : results) {
+            out.println(formatResult(result));
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Runs a nondeterministic machine on one input by searching its
+     * configurations.
+     * 
+     * @param project The project to simulate.
+     * @param machine_name The name of the machine to simulate.
+     * @param input The initial contents of the tape.
+     * @param thread_count The number of threads of the search.
+     * @param max_steps The maximum number of steps of the computations.
+     * @param max_configurations The maximum number of configurations.
+     * @param timeout The maximum wall time in milliseconds.
+     * @return The result of the search.
+     */
+    private static BatchResult search(
+        Project project,
+        String machine_name,
+        String input,
+        int thread_count,
+        long max_steps,
+        long max_configurations,
+        long timeout
+    ) {
+        long start_time = System.nanoTime();
+        try {
+            NondeterministicSimulation simulation =
+                new NondeterministicSimulation(
+                    project, machine_name, new Tape(input)
+                );
+            simulation.setThreadCount(thread_count);
+            SimulationStatus status = simulation.run(
+                max_steps, max_configurations, timeout, null
+            );
+            String tape = input;
+            if(status == SimulationStatus.ACCEPTED) {
+                tape = simulation.getTape(0).getContents();
+            }
+            return new BatchResult(
+                input,
+                status,
+                simulation.getStepCount(),
+                tape,
+                null,
+                System.nanoTime() - start_time
+            );
+        } catch(SimulationException e) {
+            return new BatchResult(
+                input,
+                SimulationStatus.RUNNING,
+                0,
+                input,
+                e.getMessage(),
+                System.nanoTime() - start_time
+            );
+        }
+    }
+    
+    /**
+     * Formats the result of one input as a line of output.
+     * 
+     * @param result The result of the simulation.
+     * @return The result line for the input.
+     */
+    private static String formatResult(BatchResult result) {
+        StringBuilder line = new StringBuilder();
+        if(result.getError() == null) {
+            line.append(result.getStatus());
+            line.append('\t');
+            line.append(result.getStepCount());
+            line.append('\t');
+            line.append(escape(result.getTapeContents()));
+        } else {
+            line.append("ERROR");
+            line.append('\t');
+            line.append(result.getStepCount());
+            line.append('\t');
+            line.append(escape(result.getError()));
+        }
+        line.append('\t');
+        line.append(String.format(Locale.ROOT, "%.3f", result.getTime() / 1e6));
+        return line.toString();
+    }
+    
+    /**
+     * Replaces tabs and line breaks so that the string fits in one field.
+     * 
+     * @param str The string to escape.
+     * @return str with tabs and line breaks replaced by '�'.
+     */
+    private static String escape(String str) {
+        return str.replace('\t', '�').replace('\n', '�').replace('\r', '�');
+    }
+}
@@ -5,6 +5,18 @@ import javax.swing.SwingUtilities;
 
 public class Main {
     public static void main(String[] args) {
+        // With arguments, run headless on the command line.
+        if(args.length != 0 && args[0].equals("--convert")) {
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            ProjectConverter.main(rest);
+            return;
+        }
+        if(args.length != 0) {
+            BatchRunner.main(args);
+            return;
+        }
+        
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
@@ -0,0 +1,98 @@
+package fi.helsinki.cs.turridevelop;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
+import fi.helsinki.cs.turridevelop.file.TurrBinaryInput;
+import fi.helsinki.cs.turridevelop.file.TurrBinaryOutput;
+import fi.helsinki.cs.turridevelop.file.TurrInput;
+import fi.helsinki.cs.turridevelop.file.TurrOutput;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import java.io.File;
+import java.io.PrintStream;
+
+/**
+ * Command line tool converting projects between a directory of .turr files
+ * and a single binary .turrb file.
+ * 
+ * Usage: ProjectConverter SOURCE TARGET
+ * 
+ * A path ending in ".turrb" is a binary project file, any other path is a
+ * project directory. The target directory is created if it does not exist.
+ */
+public class ProjectConverter {
+    /**
+     * Usage message printed on invalid arguments.
+     */
+    private static final String USAGE = "Usage: ProjectConverter SOURCE TARGET";
+    
+    /**
+     * Runs the converter with command line arguments and exits.
+     * 
+     * @param args The command line arguments.
+     */
+    public static void main(String[] args) {
+        System.exit(run(args, System.err));
+    }
+    
+    /**
+     * Runs the converter.
+     * 
+     * @param args The command line arguments.
+     * @param err The stream to write error messages to.
+     * @return The exit status: 0 on success, 1 on invalid arguments or if the
+     * project could not be read or written.
+     */
+    public static int run(String[] args, PrintStream err) {
+        if(args.length != 2) {
+            err.println(USAGE);
+            return 1;
+        }
+        File source = new File(args[0]);
+        File target = new File(args[1]);
+        
+        try {
+            Project project = readProject(source);
+            if(isBinary(target)) {
+                TurrBinaryOutput.writeProject(project, target);
+            } else {
+                if(!target.isDirectory() && !target.mkdirs()) {
+                    throw new FilesystemException(
+                        "Could not create project directory '" + target + "'."
+                    );
+                }
+                TurrOutput.writeProject(project, target);
+            }
+        } catch(FilesystemException e) {
+            err.println("Could not convert project: " + e.getMessage());
+            return 1;
+        } catch(MalformedFileException e) {
+            err.println("Could not convert project: " + e.getMessage());
+            return 1;
+        }
+        return 0;
+    }
+    
+    /**
+     * Reads a project from a project directory or a binary project file.
+     * 
+     * @param path The project directory or a path ending in ".turrb".
+     * @return The project read.
+     * @throws FilesystemException if the project cannot be read.
+     * @throws MalformedFileException if the project files are malformed.
+     */
+    public static Project readProject(
+        File path
+    ) throws MalformedFileException, FilesystemException {
+        if(isBinary(path)) {
+            return TurrBinaryInput.readProject(path);
+        }
+        return TurrInput.readProjectDirectory(path);
+    }
+    
+    /**
+     * Is the path a binary project file?
+     */
+    private static boolean isBinary(File path) {
+        return path.getName().endsWith(TurrBinaryOutput.EXTENSION);
+    }
+}
@@ -0,0 +1,206 @@
+package fi.helsinki.cs.turridevelop.file;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import java.io.File;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Saves a project to a project directory repeatedly, writing only the machine
+ * files of the machines that have changed since they were last saved.
+ * 
+ * Once the changed machines have been written, the files of the machines that
+ * have been removed or renamed since they were saved are deleted. Other files
+ * in the directory are left alone.
+ */
+public class ProjectSaver {
+    /**
+     * The project to save.
+     */
+    private final Project project;
+    
+    /**
+     * The directory to save the project to.
+     */
+    private final File dir;
+    
+    /**
+     * The machines whose files in dir are up to date, as of the last save.
+     */
+    private IdentityHashMap<Machine, SavedMachine> saved;
+    
+    /**
+     * The names of the machine files that are no longer used by the project
+     * and have not been deleted yet.
+     */
+    private HashSet<String> stale_names;
+    
+    /**
+     * Constructs ProjectSaver for which no machines have been saved yet.
+     * 
+     * @param project The project to save.
+     * @param dir The existent directory to save the project to.
+     */
+    public ProjectSaver(Project project, File dir) {
+        this.project = project;
+        this.dir = dir;
+        this.saved = new IdentityHashMap<Machine, SavedMachine>();
+        this.stale_names = new HashSet<String>();
+    }
+    
+    /**
+     * Gets the directory the project is saved to.
+     * 
+     * @return The project directory.
+     */
+    public File getDirectory() {
+        return dir;
+    }
+    
+    /**
+     * Marks all machines saved as they are now, for example when the project
+     * has just been read from the directory.
+     */
+    public void markSaved() {
+        IdentityHashMap<Machine, SavedMachine> now =
+            new IdentityHashMap<Machine, SavedMachine>();
+        for(String name : project.getMachineNames()) {
+            Machine machine = project.getMachine(name);
+            now.put(machine, new SavedMachine(machine));
+        }
+        saved = now;
+        stale_names = new HashSet<String>();
+    }
+    
+    /**
+     * Tests whether some machines have changed since they were last saved.
+     * 
+     * @return true if save would write or delete some machine files.
+     */
+    public boolean hasChanges() {
+        for(String name : project.getMachineNames()) {
+            if(!isSaved(project.getMachine(name))) {
+                return true;
+            }
+        }
+        for(String name : stale_names) {
+            if(project.getMachine(name) == null) {
+                return true;
+            }
+        }
+        for(Map.Entry<Machine, SavedMachine> entry : saved.entrySet()) {
+            if(project.getMachine(entry.getValue().name) != entry.getKey()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Writes the machine files of the machines that have been added, renamed
+     * or modified since the last save, and then deletes the files of the
+     * machines that have been renamed or removed.
+     * 
+     * @return The number of machine files written.
+     * @throws FilesystemException if some files could not be written or
+     * deleted. The machines written before the failure are still marked
+     * saved, and the files not deleted are deleted by the next save.
+     */
+    public int save() throws FilesystemException {
+        // Remember the old names before saved is replaced.
+        for(Map.Entry<Machine, SavedMachine> entry : saved.entrySet()) {
+            String name = entry.getValue().name;
+            if(project.getMachine(name) != entry.getKey()) {
+                stale_names.add(name);
+            }
+        }
+        
+        IdentityHashMap<Machine, SavedMachine> now =
+            new IdentityHashMap<Machine, SavedMachine>();
+        int written = 0;
+        try {
+            for(String name : project.getMachineNames()) {
+                Machine machine = project.getMachine(name);
+                if(isSaved(machine)) {
+                    now.put(machine, saved.get(machine));
+                } else {
+                    // Read the change count first, so that a concurrent
+                    // change is saved again next time.
+                    SavedMachine state = new SavedMachine(machine);
+                    TurrOutput.writeMachine(machine, dir);
+                    now.put(machine, state);
+                    written++;
+                }
+            }
+        } finally {
+            saved = now;
+        }
+        
+        deleteStaleFiles();
+        return written;
+    }
+    
+    /**
+     * Deletes the files in stale_names, except those of names that are in use
+     * again.
+     * 
+     * @throws FilesystemException if some files could not be deleted.
+     */
+    private void deleteStaleFiles() throws FilesystemException {
+        HashSet<String> failed = new HashSet<String>();
+        for(String name : stale_names) {
+            if(project.getMachine(name) != null) {
+                // The file has been written for the new machine.
+                continue;
+            }
+            File file = new File(dir, name + ".turr");
+            if(file.exists() && !file.delete()) {
+                failed.add(name);
+            }
+        }
+        stale_names = failed;
+        if(!failed.isEmpty()) {
+            throw new FilesystemException(
+                "Could not delete the files of the removed machines " +
+                failed + "."
+            );
+        }
+    }
+    
+    /**
+     * Tests whether the file of a machine is up to date.
+     */
+    private boolean isSaved(Machine machine) {
+        SavedMachine state = saved.get(machine);
+        return
+            state != null &&
+            state.name.equals(machine.getName()) &&
+            state.change_count == machine.getChangeCount();
+    }
+    
+    /**
+     * The name and the change count of a machine when it was saved.
+     */
+    private static class SavedMachine {
+        /**
+         * The name of the machine.
+         */
+        final String name;
+        
+        /**
+         * The change count of the machine.
+         */
+        final long change_count;
+        
+        /**
+         * Constructs SavedMachine from the current state of a machine.
+         */
+        SavedMachine(Machine machine) {
+            this.change_count = machine.getChangeCount();
+            this.name = machine.getName();
+        }
+    }
+}
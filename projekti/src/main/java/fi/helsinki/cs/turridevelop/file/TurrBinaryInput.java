@@ -0,0 +1,289 @@
+package fi.helsinki.cs.turridevelop.file;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import fi.helsinki.cs.turridevelop.logic.State;
+import fi.helsinki.cs.turridevelop.logic.Transition;
+import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Functions for reading projects in the binary Turr format written by
+ * TurrBinaryOutput.
+ */
+public class TurrBinaryInput {
+    /**
+     * Reads a project from a binary Turr file.
+     * 
+     * @param file The file to read.
+     * @return The project read from the file.
+     * @throws FilesystemException if the file cannot be read.
+     * @throws MalformedFileException if the file is not a valid binary Turr
+     * file.
+     */
+    public static Project readProject(
+        File file
+    ) throws MalformedFileException, FilesystemException {
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                return readProject(in);
+            } finally {
+                in.close();
+            }
+        } catch(MalformedFileException e) {
+            throw new MalformedFileException(
+                "Malformed project file '" + file + "'."
+            );
+        } catch(IOException e) {
+            throw new FilesystemException(
+                "Could not read project file '" + file + "'."
+            );
+        }
+    }
+    
+    /**
+     * Reads a project in the binary Turr format from a stream in one pass.
+     * The stream is not closed.
+     * 
+     * @param stream The stream to read the project from.
+     * @return The project read from the stream.
+     * @throws IOException if reading from the stream fails.
+     * @throws MalformedFileException if the stream does not contain a valid
+     * binary Turr project.
+     */
+    public static Project readProject(
+        InputStream stream
+    ) throws IOException, MalformedFileException {
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(stream)
+        );
+        try {
+            if(in.readInt() != TurrBinaryOutput.MAGIC) {
+                throw new MalformedFileException("Not a binary Turr file.");
+            }
+            int version = in.readInt();
+            if(
+                version != TurrBinaryOutput.VERSION &&
+                version != TurrBinaryOutput.MULTI_TAPE_VERSION &&
+                version != TurrBinaryOutput.NONDETERMINISTIC_VERSION
+            ) {
+                throw new MalformedFileException(
+                    "Unsupported binary Turr version."
+                );
+            }
+            boolean multi_tape = version != TurrBinaryOutput.VERSION;
+            boolean has_flags =
+                version == TurrBinaryOutput.NONDETERMINISTIC_VERSION;
+            
+            String[] strings = new String[readCount(in)];
+            for(int i = 0; i < strings.length; i++) {
+                byte[] bytes = new byte[readCount(in)];
+                in.readFully(bytes);
+                strings[i] = new String(bytes, "UTF-8");
+            }
+            
+            char[] symbols = new char[readCount(in)];
+            for(int i = 0; i < symbols.length; i++) {
+                symbols[i] = in.readChar();
+            }
+            
+            Project project = new Project();
+            int machine_count = readCount(in);
+            for(int i = 0; i < machine_count; i++) {
+                readMachine(
+                    in, project, strings, symbols, multi_tape, has_flags
+                );
+            }
+            return project;
+        } catch(EOFException e) {
+            throw new MalformedFileException("Unexpected end of file.");
+        } catch(NameInUseException e) {
+            throw new MalformedFileException();
+        }
+    }
+    
+    /**
+     * Reads a machine into a project. The transitions may be multi-tape
+     * transitions only if multi_tape is true, and the name is followed by a
+     * flag byte only if has_flags is true.
+     */
+    private static void readMachine(
+        DataInputStream in,
+        Project project,
+        String[] strings,
+        char[] symbols,
+        boolean multi_tape,
+        boolean has_flags
+    ) throws IOException, MalformedFileException, NameInUseException {
+        Machine machine = project.addMachine(readString(in, strings));
+        if(has_flags) {
+            int machine_flags = in.readUnsignedByte();
+            if((machine_flags & ~1) != 0) {
+                throw new MalformedFileException();
+            }
+            machine.setNondeterministic(machine_flags != 0);
+        }
+        
+        // States first, so that the transitions can refer to them.
+        State[] states = new State[readCount(in)];
+        for(int i = 0; i < states.length; i++) {
+            State state = machine.addState(readString(in, strings));
+            
+            int flags = in.readUnsignedByte();
+            if((flags & ~3) != 0) {
+                throw new MalformedFileException();
+            }
+            if((flags & 1) != 0) {
+                state.setAccepting(true);
+            }
+            if((flags & 2) != 0) {
+                state.setSubmachine(readString(in, strings));
+            }
+            
+            double x = in.readDouble();
+            double y = in.readDouble();
+            state.setPosition(new Vec2(x, y));
+            
+            states[i] = state;
+        }
+        
+        for(State state : states) {
+            int transition_count = readCount(in);
+            for(int i = 0; i < transition_count; i++) {
+                State destination = states[readIndex(in, states.length)];
+                
+                String[] inchars = new String[1];
+                Character[] outchars = new Character[1];
+                int[] moves = new int[1];
+                int flags = readTapeAction(
+                    in, symbols, multi_tape ? 8 : 0, 0, inchars, outchars, moves
+                );
+                if((flags & 8) != 0) {
+                    int tape_count = readCount(in) + 1;
+                    if(tape_count < 2) {
+                        throw new MalformedFileException();
+                    }
+                    inchars = Arrays.copyOf(inchars, tape_count);
+                    outchars = Arrays.copyOf(outchars, tape_count);
+                    moves = Arrays.copyOf(moves, tape_count);
+                    for(int tape = 1; tape < tape_count; tape++) {
+                        readTapeAction(
+                            in, symbols, 0, tape, inchars, outchars, moves
+                        );
+                    }
+                }
+                
+                state.addTransition(new Transition(
+                    destination, inchars, outchars, moves
+                ));
+            }
+        }
+    }
+    
+    /**
+     * Reads the action of a transition on a tape into the arrays at index
+     * tape.
+     * 
+     * @param extra_flags The flags allowed in addition to the movement and
+     * the output flag.
+     * @return The flags of the action.
+     */
+    private static int readTapeAction(
+        DataInputStream in,
+        char[] symbols,
+        int extra_flags,
+        int tape,
+        String[] inchars,
+        Character[] outchars,
+        int[] moves
+    ) throws IOException, MalformedFileException {
+        int flags = in.readUnsignedByte();
+        int move = (flags & 3) - 1;
+        if((flags & ~(7 | extra_flags)) != 0 || move > 1) {
+            throw new MalformedFileException();
+        }
+        Character outchar = null;
+        if((flags & 4) != 0) {
+            outchar = symbols[readIndex(in, symbols.length)];
+        }
+        
+        char[] inchar = new char[readCount(in)];
+        for(int j = 0; j < inchar.length; j++) {
+            inchar[j] = symbols[readIndex(in, symbols.length)];
+        }
+        
+        inchars[tape] = new String(inchar);
+        outchars[tape] = outchar;
+        moves[tape] = move;
+        return flags;
+    }
+    
+    /**
+     * Reads an index to the string table and returns the string.
+     */
+    private static String readString(
+        DataInputStream in,
+        String[] strings
+    ) throws IOException, MalformedFileException {
+        return strings[readIndex(in, strings.length)];
+    }
+    
+    /**
+     * Reads an index that must be less than size.
+     */
+    private static int readIndex(
+        DataInputStream in,
+        int size
+    ) throws IOException, MalformedFileException {
+        int index = readVarInt(in);
+        if(index >= size) {
+            throw new MalformedFileException();
+        }
+        return index;
+    }
+    
+    /**
+     * Reads an element count, limited so that a corrupted count fails before
+     * allocating a huge array.
+     */
+    private static int readCount(
+        DataInputStream in
+    ) throws IOException, MalformedFileException {
+        int count = readVarInt(in);
+        if(count > (1 << 26)) {
+            throw new MalformedFileException();
+        }
+        return count;
+    }
+    
+    /**
+     * Reads a non-negative integer written by TurrBinaryOutput.writeVarInt.
+     */
+    private static int readVarInt(
+        DataInputStream in
+    ) throws IOException, MalformedFileException {
+        int value = 0;
+        for(int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0) {
+                if(value < 0) {
+                    throw new MalformedFileException();
+                }
+                return value;
+            }
+        }
+        throw new MalformedFileException();
+    }
+}
@@ -0,0 +1,304 @@
+package fi.helsinki.cs.turridevelop.file;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import fi.helsinki.cs.turridevelop.logic.State;
+import fi.helsinki.cs.turridevelop.logic.Transition;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Functions for writing projects in the binary Turr format, a single file
+ * containing all the machines of a project. Names are stored once in a string
+ * table and characters once in a symbol table, and the states and transitions
+ * refer to them by index.
+ */
+public class TurrBinaryOutput {
+    /**
+     * The magic number in the beginning of binary Turr files, "TURB".
+     */
+    static final int MAGIC = 0x54555242;
+    
+    /**
+     * The version of the binary format written for single-tape projects.
+     */
+    static final int VERSION = 1;
+    
+    /**
+     * The version of the binary format written for multi-tape projects,
+     * whose transitions may have actions for more than one tape.
+     */
+    static final int MULTI_TAPE_VERSION = 2;
+    
+    /**
+     * The version of the binary format written for projects with
+     * nondeterministic machines, which have a flag byte after the machine
+     * name. Transitions are written as in MULTI_TAPE_VERSION.
+     */
+    static final int NONDETERMINISTIC_VERSION = 3;
+    
+    /**
+     * The file name extension of binary Turr files.
+     */
+    public static final String EXTENSION = ".turrb";
+    
+    /**
+     * Writes a project to a binary Turr file.
+     * 
+     * @param project The project to write.
+     * @param file The file to write the project to.
+     * @throws FilesystemException if the file could not be written.
+     */
+    public static void writeProject(
+        Project project,
+        File file
+    ) throws FilesystemException {
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                writeProject(project, out);
+            } finally {
+                out.close();
+            }
+        } catch(IOException e) {
+            throw new FilesystemException(
+                "Could not write project file '" + file + "'."
+            );
+        }
+    }
+    
+    /**
+     * Writes a project to a stream in the binary Turr format. The stream is
+     * flushed but not closed.
+     * 
+     * @param project The project to write.
+     * @param stream The stream to write the project to.
+     * @throws IOException if writing to the stream fails.
+     */
+    public static void writeProject(
+        Project project,
+        OutputStream stream
+    ) throws IOException {
+        // Intern the names and the characters.
+        Table<String> strings = new Table<String>();
+        Table<Character> symbols = new Table<Character>();
+        for(String machine_name : project.getMachineNames()) {
+            strings.intern(machine_name);
+            Machine machine = project.getMachine(machine_name);
+            for(String state_name : machine.getStateNames()) {
+                strings.intern(state_name);
+                State state = machine.getState(state_name);
+                if(state.getSubmachine() != null) {
+                    strings.intern(state.getSubmachine());
+                }
+                for(Transition transition : state.getTransitions()) {
+                    for(int tape = 0; tape < transition.getTapeCount(); tape++) {
+                        String inchar = transition.getInputCharacters(tape);
+                        for(int i = 0; i < inchar.length(); i++) {
+                            symbols.intern(inchar.charAt(i));
+                        }
+                        Character outchar = transition.getOutputCharacter(tape);
+                        if(outchar != null) {
+                            symbols.intern(outchar);
+                        }
+                    }
+                }
+            }
+        }
+        
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(stream)
+        );
+        out.writeInt(MAGIC);
+        boolean nondeterministic = project.isNondeterministic();
+        if(nondeterministic) {
+            out.writeInt(NONDETERMINISTIC_VERSION);
+        } else if(project.getTapeCount() > 1) {
+            out.writeInt(MULTI_TAPE_VERSION);
+        } else {
+            out.writeInt(VERSION);
+        }
+        
+        writeVarInt(out, strings.values.size());
+        for(String str : strings.values) {
+            byte[] bytes = str.getBytes("UTF-8");
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+        
+        writeVarInt(out, symbols.values.size());
+        for(char symbol : symbols.values) {
+            out.writeChar(symbol);
+        }
+        
+        writeVarInt(out, project.getMachineNames().size());
+        for(String machine_name : project.getMachineNames()) {
+            writeMachine(
+                out,
+                project.getMachine(machine_name),
+                strings,
+                symbols,
+                nondeterministic
+            );
+        }
+        
+        out.flush();
+    }
+    
+    /**
+     * Writes a machine: its name, the states without transitions and then the
+     * transitions of each state in the same order, so that the destinations
+     * can be written as indices of the states in the machine. The actions of
+     * a multi-tape transition on the tapes after the first follow the action
+     * on the first tape, which has the flag 8 set. If has_flags is true, the name
+     * is followed by a flag byte whose bit 0 tells whether the machine is
+     * nondeterministic.
+     */
+    private static void writeMachine(
+        DataOutputStream out,
+        Machine machine,
+        Table<String> strings,
+        Table<Character> symbols,
+        boolean has_flags
+    ) throws IOException {
+        writeVarInt(out, strings.indexOf(machine.getName()));
+        if(has_flags) {
+            out.writeByte(machine.isNondeterministic() ? 1 : 0);
+        }
+        
+        ArrayList<State> states = new ArrayList<State>();
+        HashMap<State, Integer> state_indices = new HashMap<State, Integer>();
+        for(String state_name : machine.getStateNames()) {
+            State state = machine.getState(state_name);
+            state_indices.put(state, states.size());
+            states.add(state);
+        }
+        
+        writeVarInt(out, states.size());
+        for(State state : states) {
+            writeVarInt(out, strings.indexOf(state.getName()));
+            
+            int flags = 0;
+            if(state.isAccepting()) {
+                flags |= 1;
+            }
+            if(state.getSubmachine() != null) {
+                flags |= 2;
+            }
+            out.writeByte(flags);
+            if(state.getSubmachine() != null) {
+                writeVarInt(out, strings.indexOf(state.getSubmachine()));
+            }
+            
+            out.writeDouble(state.getPosition().x);
+            out.writeDouble(state.getPosition().y);
+        }
+        
+        for(State state : states) {
+            writeVarInt(out, state.getTransitions().size());
+            for(Transition transition : state.getTransitions()) {
+                State destination = transition.getDestination();
+                writeVarInt(out, state_indices.get(destination));
+                
+                int tape_count = transition.getTapeCount();
+                writeTapeAction(
+                    out, transition, 0, tape_count > 1 ? 8 : 0, symbols
+                );
+                if(tape_count > 1) {
+                    writeVarInt(out, tape_count - 1);
+                    for(int tape = 1; tape < tape_count; tape++) {
+                        writeTapeAction(out, transition, tape, 0, symbols);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes the action of a transition on a tape: the flags, the output
+     * character if there is one and the input characters.
+     */
+    private static void writeTapeAction(
+        DataOutputStream out,
+        Transition transition,
+        int tape,
+        int extra_flags,
+        Table<Character> symbols
+    ) throws IOException {
+        // The movement as 0, 1 or 2 in the low bits and whether there is an
+        // output character in the next bit.
+        int flags = transition.getMovement(tape) + 1 | extra_flags;
+        Character outchar = transition.getOutputCharacter(tape);
+        if(outchar != null) {
+            flags |= 4;
+        }
+        out.writeByte(flags);
+        if(outchar != null) {
+            writeVarInt(out, symbols.indexOf(outchar));
+        }
+        
+        String inchar = transition.getInputCharacters(tape);
+        writeVarInt(out, inchar.length());
+        for(int i = 0; i < inchar.length(); i++) {
+            writeVarInt(out, symbols.indexOf(inchar.charAt(i)));
+        }
+    }
+    
+    /**
+     * Writes a non-negative integer in 7-bit groups, least significant first,
+     * with the high bit set in all but the last byte.
+     * 
+     * @param out The stream to write to.
+     * @param value The non-negative integer to write.
+     * @throws IOException if writing to the stream fails.
+     */
+    static void writeVarInt(
+        DataOutputStream out,
+        int value
+    ) throws IOException {
+        while((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    /**
+     * Table of distinct values in the order they were first interned.
+     */
+    private static class Table<T> {
+        /**
+         * The values in the table.
+         */
+        final ArrayList<T> values = new ArrayList<T>();
+        
+        /**
+         * Map from the values to their indices in values.
+         */
+        final HashMap<T, Integer> indices = new HashMap<T, Integer>();
+        
+        /**
+         * Adds a value to the table if it is not already there.
+         */
+        void intern(T value) {
+            if(!indices.containsKey(value)) {
+                indices.put(value, values.size());
+                values.add(value);
+            }
+        }
+        
+        /**
+         * Gets the index of an interned value.
+         */
+        int indexOf(T value) {
+            return indices.get(value);
+        }
+    }
+}
@@ -8,14 +8,23 @@ import fi.helsinki.cs.turridevelop.logic.Project;
 import fi.helsinki.cs.turridevelop.logic.State;
 import fi.helsinki.cs.turridevelop.logic.Transition;
 import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.HashMap;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -54,7 +63,7 @@ public class TurrInput {
                 extension_start < 0 ||
                 !filename.substring(extension_start).equals(extension)
             ) {
-                break;
+                continue;
             }
             String name = filename.substring(0, extension_start);
             names.add(name);
@@ -64,7 +73,8 @@ public class TurrInput {
     }
     
     /**
-     * Reads a project directory.
+     * Reads a project directory. The machine files are read and parsed in
+     * parallel on at most as many threads as there are processors.
      * 
      * @param dir The project directory to read.
      * @return The project read from all .turr-machine files from the directory.
@@ -74,52 +84,143 @@ public class TurrInput {
      */
     public static Project readProjectDirectory(
         File dir
+    ) throws MalformedFileException, FilesystemException {
+        return readProjectDirectory(
+            dir, Runtime.getRuntime().availableProcessors()
+        );
+    }
+    
+    /**
+     * Reads a project directory, reading and parsing the machine files in
+     * parallel. The machines are added to the project in the order of their
+     * names before reading, and if several files fail, the error of the first
+     * one in that order is reported, so the result does not depend on the
+     * scheduling of the threads.
+     * 
+     * @param dir The project directory to read.
+     * @param thread_count The maximum number of threads to use.
+     * @return The project read from all .turr-machine files from the directory.
+     * @throws FilesystemException if the project directory or the machine files
+     * cannot be read.
+     * @throws MalformedFileException if some machine files are malformed.
+     */
+    public static Project readProjectDirectory(
+        final File dir,
+        int thread_count
     ) throws MalformedFileException, FilesystemException {
         // Get the list of machines.
-        Set<String> names = getMachineNamesInDirectory(dir);
+        ArrayList<String> names = new ArrayList<String>(
+            getMachineNamesInDirectory(dir)
+        );
+        Collections.sort(names);
         
-        HashMap<String, JSONObject> json = new HashMap<String, JSONObject>();
+        Project project = new Project();
+        ArrayList<Machine> machines = new ArrayList<Machine>();
         for(String name : names) {
-            // Read the source file.
-            File file = new File(dir, name + ".turr");
-            
-            StringBuilder source = new StringBuilder();
             try {
-                FileInputStream in = new FileInputStream(file);
-                InputStreamReader reader = new InputStreamReader(in, "UTF-8");
-                
-                char[] buffer = new char[1024];
-                int read;
-                while((read = reader.read(buffer, 0, 1024)) != -1) {
-                    source.append(buffer, 0, read);
-                }
-            } catch(Exception e) {
-                throw new FilesystemException(
-                    "Could not read machine file '" + file + "'."
-                );
+                machines.add(project.addMachine(name));
+            } catch(NameInUseException e) {
+                throw new MalformedFileException();
             }
-            
-            JSONObject machine_json;
-            try {
-                machine_json = new JSONObject(source.toString());
-            } catch(JSONException e) {
-                throw new MalformedFileException(
-                    "Could not parse JSON from machine file '" + file + "'."
-                );
+        }
+                
+        thread_count = Math.min(thread_count, machines.size());
+        if(thread_count <= 1) {
+            for(Machine machine : machines) {
+                readMachineFile(dir, machine);
             }
-            json.put(name, machine_json);
+            return project;
         }
         
-        Project project;
+        // Each task fills a different machine, so they only share the
+        // modification count of the project.
+        ExecutorService executor = Executors.newFixedThreadPool(thread_count);
         try {
-            project = JSONToProject(json);
-        } catch(MalformedFileException e) {
-            throw new MalformedFileException("Malformed machine files.");
+            ArrayList<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for(final Machine machine : machines) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        readMachineFile(dir, machine);
+                        return null;
+                    }
+                }));
+            }
+            for(Future<Void> future : futures) {
+                future.get();
+            }
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof MalformedFileException) {
+                throw (MalformedFileException) cause;
+            }
+            if(cause instanceof FilesystemException) {
+                throw (FilesystemException) cause;
+            }
+            throw new RuntimeException("Reading machine file failed.", cause);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FilesystemException(
+                "Interrupted while reading project directory '" + dir + "'."
+            );
+        } finally {
+            executor.shutdownNow();
         }
         
         return project;
     }
     
+    /**
+     * Reads the machine file of a machine in a project directory.
+     * 
+     * @param dir The project directory.
+     * @param machine The empty machine to read the file into.
+     * @throws FilesystemException if the file cannot be read.
+     * @throws MalformedFileException if the file is malformed.
+     */
+    private static void readMachineFile(
+        File dir,
+        Machine machine
+    ) throws MalformedFileException, FilesystemException {
+        File file = new File(dir, machine.getName() + ".turr");
+        
+        // Stream the source file into the machine.
+        try {
+            Reader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"
+            ));
+            try {
+                readMachine(machine, reader);
+            } finally {
+                reader.close();
+            }
+        } catch(IOException e) {
+            throw new FilesystemException(
+                "Could not read machine file '" + file + "'."
+            );
+        } catch(MalformedFileException e) {
+            throw new MalformedFileException(
+                "Could not parse machine file '" + file + "'."
+            );
+        }
+    }
+    
+    /**
+     * Reads a Turr machine file in one pass without building a JSON tree, so
+     * that only the machine itself is kept in memory.
+     * 
+     * @param machine The empty machine to read the states into.
+     * @param reader The reader of the machine file. It should be buffered.
+     * @throws IOException if reading fails.
+     * @throws MalformedFileException if the file cannot be parsed.
+     */
+    public static void readMachine(
+        Machine machine,
+        Reader reader
+    ) throws IOException, MalformedFileException {
+        new TurrReader(reader).readMachine(machine);
+    }
+    
     /**
      * Reads a directory of JSON object representations of machines in Turr
      * format, and creates a Project from the representations.
@@ -137,6 +238,9 @@ public class TurrInput {
             // Read the states.
             for(String name : json.keySet()) {
                 Machine machine = ret.addMachine(name);
+                if(json.get(name).optBoolean("nondeterministic")) {
+                    machine.setNondeterministic(true);
+                }
                 readStates(machine, json.get(name));
             }
         } catch(NameInUseException e) {
@@ -231,33 +335,75 @@ public class TurrInput {
             if(destination == null) {
                 throw new MalformedFileException();
             }
-            String inchar = transition_json.getString("inchar");
-            
-            Character outchar = null;
-            Object outchar_obj = transition_json.get("outchar");
-            if(outchar_obj instanceof String) {
-                String outchar_str = (String) outchar_obj;
-                if(outchar_str.length() != 1) {
-                    throw new MalformedFileException();
-                }
-                outchar = outchar_str.charAt(0);
+            JSONArray tapes_json = transition_json.optJSONArray("other_tapes");
+            int tape_count = 1;
+            if(tapes_json != null) {
+                tape_count += tapes_json.length();
             }
             
-            int move;
-            String move_str = transition_json.getString("move");
-            if(move_str.equals("L")) {
-                move = -1;
-            } else if(move_str.equals("R")) {
-                move = 1;
-            } else if(move_str.equals("S")) {
-                move = 0;
-            } else {
-                throw new MalformedFileException();
+            String[] inchars = new String[tape_count];
+            Character[] outchars = new Character[tape_count];
+            int[] moves = new int[tape_count];
+            readTapeAction(transition_json, 0, inchars, outchars, moves);
+            for(int tape = 1; tape < tape_count; tape++) {
+                readTapeAction(
+                    tapes_json.getJSONObject(tape - 1), tape,
+                    inchars, outchars, moves
+                );
             }
             
             state.addTransition(new Transition(
-                destination, inchar, outchar, move
+                destination, inchars, outchars, moves
             ));
         }
     }
+    
+    /**
+     * Reads the input characters, the output character and the movement of a
+     * transition on a tape into the arrays at index tape.
+     * 
+     * @param json The JSON object containing the fields.
+     * @param tape The index of the tape.
+     * @param inchars The input characters by tape.
+     * @param outchars The output characters by tape.
+     * @param moves The movements by tape.
+     * @throws JSONException if some fields are missing in the JSON object.
+     * @throws MalformedFileException in case of invalid field contents in the
+     * JSON object.
+     */
+    private static void readTapeAction(
+        JSONObject json,
+        int tape,
+        String[] inchars,
+        Character[] outchars,
+        int[] moves
+    ) throws JSONException, MalformedFileException {
+        String inchar = json.getString("inchar");
+        
+        Character outchar = null;
+        Object outchar_obj = json.get("outchar");
+        if(outchar_obj instanceof String) {
+            String outchar_str = (String) outchar_obj;
+            if(outchar_str.length() != 1) {
+                throw new MalformedFileException();
+            }
+            outchar = outchar_str.charAt(0);
+        }
+        
+        int move;
+        String move_str = json.getString("move");
+        if(move_str.equals("L")) {
+            move = -1;
+        } else if(move_str.equals("R")) {
+            move = 1;
+        } else if(move_str.equals("S")) {
+            move = 0;
+        } else {
+            throw new MalformedFileException();
+        }
+        
+        inchars[tape] = inchar;
+        outchars[tape] = outchar;
+        moves[tape] = move;
+    }
 }
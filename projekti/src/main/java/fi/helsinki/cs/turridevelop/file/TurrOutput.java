@@ -6,8 +6,8 @@ import fi.helsinki.cs.turridevelop.logic.Project;
 import fi.helsinki.cs.turridevelop.logic.State;
 import fi.helsinki.cs.turridevelop.logic.Transition;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.HashMap;
 import org.json.JSONArray;
@@ -30,21 +30,79 @@ public class TurrOutput {
         Project project,
         File dir
     ) throws FilesystemException {
-        HashMap<String, JSONObject> json = projectToJSON(project);
-        for(String machine_name : json.keySet()) {
-            String machine_json = json.get(machine_name).toString();
-            
-            File file = new File(dir, machine_name + ".turr");
-            
+        for(String machine_name : project.getMachineNames()) {
+            writeMachine(project.getMachine(machine_name), dir);
+        }
+    }
+    
+    /**
+     * Writes the machine file of a machine to a directory. The file is first
+     * written to a temporary file in the same directory, which then replaces
+     * the old file by renaming, so that the old file stays intact if the
+     * writing fails. Where renaming over an existing file fails, the old file
+     * is first renamed to a backup, which is restored if the new file cannot
+     * be put in place. In that case the temporary file is kept, so that
+     * neither version of the machine is lost.
+     * 
+     * @param machine The machine to write.
+     * @param dir The existent directory that the machine should be written to.
+     * 
+     * @throws FilesystemException if the file could not be written.
+     */
+    public static void writeMachine(
+        Machine machine,
+        File dir
+    ) throws FilesystemException {
+        String machine_json = machineToJSON(machine).toString();
+        File file = new File(dir, machine.getName() + ".turr");
+        
+        File temp = null;
+        boolean keep_temp = false;
+        try {
+            temp = File.createTempFile(
+                ".turr-" + machine.getName() + "-", ".tmp", dir
+            );
+            FileOutputStream out = new FileOutputStream(temp);
             try {
-                FileOutputStream out = new FileOutputStream(file);
                 OutputStreamWriter writer = new OutputStreamWriter(out, "UTF-8");
                 writer.write(machine_json, 0, machine_json.length());
-                writer.close();
-            } catch(Exception e) {
-                throw new FilesystemException(
-                    "Could not write machine file '" + file + "'."
-                );
+                writer.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            
+            // Renaming over an existing file fails on some platforms.
+            if(!temp.renameTo(file)) {
+                File backup = null;
+                if(file.exists()) {
+                    backup = File.createTempFile(
+                        ".turr-" + machine.getName() + "-", ".bak", dir
+                    );
+                    if(!backup.delete() || !file.renameTo(backup)) {
+                        throw new IOException("Renaming failed.");
+                    }
+                }
+                if(!temp.renameTo(file)) {
+                    if(backup != null) {
+                        backup.renameTo(file);
+                    }
+                    keep_temp = true;
+                    throw new IOException("Renaming failed.");
+                }
+                if(backup != null) {
+                    backup.delete();
+                }
+            }
+        } catch(Exception e) {
+            String message = "Could not write machine file '" + file + "'.";
+            if(keep_temp) {
+                message += " The new contents were left in '" + temp + "'.";
+            }
+            throw new FilesystemException(message);
+        } finally {
+            if(!keep_temp && temp != null && temp.exists()) {
+                temp.delete();
             }
         }
     }
@@ -103,6 +161,10 @@ public class TurrOutput {
             }
             
             ret_json.put("states", states_json);
+            
+            if(machine.isNondeterministic()) {
+                ret_json.put("nondeterministic", true);
+            }
         } catch(JSONException e) {
             // All JSONExceptions are unexpected.
             throw new RuntimeException("JSON failure.", e);
@@ -112,7 +174,10 @@ public class TurrOutput {
     }
     
     /**
-     * Gets the JSON object representation of a Transition.
+     * Gets the JSON object representation of a Transition. The action on the
+     * first tape is stored in the transition object itself, and the actions
+     * of a multi-tape transition on the other tapes in the array
+     * "other_tapes".
      * 
      * @param transition The transition to be represented as JSON.
      * @return The JSON object representation.
@@ -123,25 +188,51 @@ public class TurrOutput {
         JSONObject ret_json = new JSONObject();
         
         ret_json.put("destination", transition.getDestination().getName());
-        ret_json.put("inchar", transition.getInputCharacters());
-
-        if(transition.getOutputCharacter() == null) {
-            ret_json.put("outchar", JSONObject.NULL);
+        putTapeAction(ret_json, transition, 0);
+        
+        if(transition.getTapeCount() > 1) {
+            JSONArray tapes_json = new JSONArray();
+            for(int tape = 1; tape < transition.getTapeCount(); tape++) {
+                JSONObject tape_json = new JSONObject();
+                putTapeAction(tape_json, transition, tape);
+                tapes_json.put(tape_json);
+            }
+            ret_json.put("other_tapes", tapes_json);
+        }
+        
+        return ret_json;
+    }
+    
+    /**
+     * Puts the input characters, the output character and the movement of a
+     * transition on a tape into a JSON object.
+     * 
+     * @param json The JSON object to put the fields into.
+     * @param transition The transition.
+     * @param tape The index of the tape.
+     */
+    private static void putTapeAction(
+        JSONObject json,
+        Transition transition,
+        int tape
+    ) throws JSONException {
+        json.put("inchar", transition.getInputCharacters(tape));
+        
+        if(transition.getOutputCharacter(tape) == null) {
+            json.put("outchar", JSONObject.NULL);
         } else {
-            String outchar = transition.getOutputCharacter().toString();
-            ret_json.put("outchar", outchar);
+            String outchar = transition.getOutputCharacter(tape).toString();
+            json.put("outchar", outchar);
         }
-
+        
         String move = "S";
-        if(transition.getMovement() == -1) {
+        if(transition.getMovement(tape) == -1) {
             move = "L";
         }
-        if(transition.getMovement() == 1) {
+        if(transition.getMovement(tape) == 1) {
             move = "R";
         }
-
-        ret_json.put("move", move);
         
-        return ret_json;
+        json.put("move", move);
     }
 }
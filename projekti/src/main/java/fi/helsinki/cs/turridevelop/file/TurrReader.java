@@ -0,0 +1,573 @@
+package fi.helsinki.cs.turridevelop.file;
+
+import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.State;
+import fi.helsinki.cs.turridevelop.logic.Transition;
+import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+
+/**
+ * Streaming reader of Turr machine files. The JSON text is read once, one
+ * character at a time, directly into the machine without building a JSON
+ * tree. Transitions may refer to states defined later in the file, so they
+ * are kept as pending references by destination name and added when all the
+ * states have been read.
+ */
+class TurrReader {
+    /**
+     * The reader to read the JSON text from.
+     */
+    private final Reader in;
+    
+    /**
+     * The current character or -1 at the end of the input.
+     */
+    private int c;
+    
+    /**
+     * Builder reused for reading strings and numbers.
+     */
+    private final StringBuilder buffer;
+    
+    /**
+     * Constructs TurrReader.
+     * 
+     * @param in The reader to read the JSON text from. It should be buffered,
+     * as it is read one character at a time.
+     * @throws IOException if reading fails.
+     */
+    TurrReader(Reader in) throws IOException {
+        this.in = in;
+        this.buffer = new StringBuilder();
+        next();
+    }
+    
+    /**
+     * Reads a machine file into a machine.
+     * 
+     * @param machine The empty machine to read the states into.
+     * @throws IOException if reading fails.
+     * @throws MalformedFileException if the input is not a valid Turr
+     * machine file.
+     */
+    void readMachine(
+        Machine machine
+    ) throws IOException, MalformedFileException {
+        ArrayList<PendingTransition> pending =
+            new ArrayList<PendingTransition>();
+        boolean has_states = false;
+        
+        try {
+            if(beginCompound('{', '}')) {
+                do {
+                    String key = readKey();
+                    if(key.equals("states")) {
+                        readStates(machine, pending);
+                        has_states = true;
+                    } else if(key.equals("nondeterministic")) {
+                        machine.setNondeterministic(readBoolean());
+                    } else {
+                        skipValue();
+                    }
+                } while(nextElement('}'));
+            }
+            skipWhitespace();
+            if(!has_states || c != -1) {
+                throw new MalformedFileException();
+            }
+            
+            // Now all destination states should exist.
+            for(PendingTransition transition : pending) {
+                State destination = machine.getState(transition.destination);
+                if(destination == null) {
+                    throw new MalformedFileException();
+                }
+                transition.source.addTransition(new Transition(
+                    destination,
+                    transition.inchars,
+                    transition.outchars,
+                    transition.moves
+                ));
+            }
+        } catch(NameInUseException e) {
+            throw new MalformedFileException();
+        }
+    }
+    
+    /**
+     * Reads the object of states, adding the states to the machine and their
+     * transitions to pending.
+     */
+    private void readStates(
+        Machine machine,
+        ArrayList<PendingTransition> pending
+    ) throws IOException, MalformedFileException, NameInUseException {
+        if(!beginCompound('{', '}')) {
+            return;
+        }
+        do {
+            State state = machine.addState(readKey());
+            readState(state, pending);
+        } while(nextElement('}'));
+    }
+    
+    /**
+     * Reads the object of a state.
+     */
+    private void readState(
+        State state,
+        ArrayList<PendingTransition> pending
+    ) throws IOException, MalformedFileException {
+        boolean has_transitions = false;
+        boolean has_accepting = false;
+        boolean has_submachine = false;
+        boolean has_x = false;
+        boolean has_y = false;
+        double x = 0.0;
+        double y = 0.0;
+        
+        if(beginCompound('{', '}')) {
+            do {
+                String key = readKey();
+                if(key.equals("transitions")) {
+                    if(beginCompound('[', ']')) {
+                        do {
+                            pending.add(readTransition(state));
+                        } while(nextElement(']'));
+                    }
+                    has_transitions = true;
+                } else if(key.equals("accepting")) {
+                    state.setAccepting(readBoolean());
+                    has_accepting = true;
+                } else if(key.equals("submachine")) {
+                    state.setSubmachine(readNullableString());
+                    has_submachine = true;
+                } else if(key.equals("x")) {
+                    x = readNumber();
+                    has_x = true;
+                } else if(key.equals("y")) {
+                    y = readNumber();
+                    has_y = true;
+                } else {
+                    skipValue();
+                }
+            } while(nextElement('}'));
+        }
+        
+        if(
+            !has_transitions || !has_accepting || !has_submachine ||
+            !has_x || !has_y
+        ) {
+            throw new MalformedFileException();
+        }
+        state.setPosition(new Vec2(x, y));
+    }
+    
+    /**
+     * Reads the object of a transition, including the actions on the other
+     * tapes of a multi-tape transition.
+     */
+    private PendingTransition readTransition(
+        State source
+    ) throws IOException, MalformedFileException {
+        String destination = null;
+        TapeAction first = new TapeAction();
+        ArrayList<TapeAction> actions = new ArrayList<TapeAction>();
+        actions.add(first);
+        
+        if(beginCompound('{', '}')) {
+            do {
+                String key = readKey();
+                if(key.equals("destination")) {
+                    destination = readString();
+                } else if(key.equals("other_tapes")) {
+                    if(beginCompound('[', ']')) {
+                        do {
+                            actions.add(readTapeAction());
+                        } while(nextElement(']'));
+                    }
+                } else if(!readTapeField(key, first)) {
+                    skipValue();
+                }
+            } while(nextElement('}'));
+        }
+        
+        if(destination == null) {
+            throw new MalformedFileException();
+        }
+        
+        int tape_count = actions.size();
+        String[] inchars = new String[tape_count];
+        Character[] outchars = new Character[tape_count];
+        int[] moves = new int[tape_count];
+        for(int tape = 0; tape < tape_count; tape++) {
+            TapeAction action = actions.get(tape);
+            if(action.inchar == null || !action.has_outchar) {
+                throw new MalformedFileException();
+            }
+            inchars[tape] = action.inchar;
+            outchars[tape] = action.outchar;
+            if("L".equals(action.move)) {
+                moves[tape] = -1;
+            } else if("R".equals(action.move)) {
+                moves[tape] = 1;
+            } else if("S".equals(action.move)) {
+                moves[tape] = 0;
+            } else {
+                throw new MalformedFileException();
+            }
+        }
+        
+        return new PendingTransition(
+            source, destination, inchars, outchars, moves
+        );
+    }
+    
+    /**
+     * Reads the object of the action of a transition on a tape other than
+     * the first.
+     */
+    private TapeAction readTapeAction()
+    throws IOException, MalformedFileException {
+        TapeAction action = new TapeAction();
+        if(beginCompound('{', '}')) {
+            do {
+                if(!readTapeField(readKey(), action)) {
+                    skipValue();
+                }
+            } while(nextElement('}'));
+        }
+        return action;
+    }
+    
+    /**
+     * Reads the value of a field of the action of a transition on a tape.
+     * 
+     * @return false if the key is not a field of the action and the value has
+     * not been read.
+     */
+    private boolean readTapeField(
+        String key,
+        TapeAction action
+    ) throws IOException, MalformedFileException {
+        if(key.equals("inchar")) {
+            action.inchar = readString();
+        } else if(key.equals("outchar")) {
+            String outchar_str = readNullableString();
+            if(outchar_str != null) {
+                if(outchar_str.length() != 1) {
+                    throw new MalformedFileException();
+                }
+                action.outchar = outchar_str.charAt(0);
+            }
+            action.has_outchar = true;
+        } else if(key.equals("move")) {
+            action.move = readString();
+        } else {
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Moves to the next character.
+     */
+    private void next() throws IOException {
+        c = in.read();
+    }
+    
+    /**
+     * Skips whitespace before the current character.
+     */
+    private void skipWhitespace() throws IOException {
+        while(c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            next();
+        }
+    }
+    
+    /**
+     * Skips the character ch, failing if it is not the current one.
+     */
+    private void expect(char ch) throws IOException, MalformedFileException {
+        skipWhitespace();
+        if(c != ch) {
+            throw new MalformedFileException();
+        }
+        next();
+    }
+    
+    /**
+     * Starts reading an object or an array.
+     * 
+     * @return false if the object or the array is empty and has been read.
+     */
+    private boolean beginCompound(
+        char open,
+        char close
+    ) throws IOException, MalformedFileException {
+        expect(open);
+        skipWhitespace();
+        if(c == close) {
+            next();
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Moves to the next element of an object or an array.
+     * 
+     * @return false if the object or the array has ended and has been read.
+     */
+    private boolean nextElement(
+        char close
+    ) throws IOException, MalformedFileException {
+        skipWhitespace();
+        if(c == ',') {
+            next();
+            return true;
+        }
+        if(c == close) {
+            next();
+            return false;
+        }
+        throw new MalformedFileException();
+    }
+    
+    /**
+     * Reads a key of an object and the colon after it.
+     */
+    private String readKey() throws IOException, MalformedFileException {
+        String key = readString();
+        expect(':');
+        return key;
+    }
+    
+    /**
+     * Reads a string.
+     */
+    private String readString() throws IOException, MalformedFileException {
+        expect('"');
+        buffer.setLength(0);
+        while(c != '"') {
+            if(c == -1) {
+                throw new MalformedFileException();
+            }
+            if(c == '\\') {
+                next();
+                switch(c) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        buffer.append((char) c);
+                        break;
+                    case 'b':
+                        buffer.append('\b');
+                        break;
+                    case 'f':
+                        buffer.append('\f');
+                        break;
+                    case 'n':
+                        buffer.append('\n');
+                        break;
+                    case 'r':
+                        buffer.append('\r');
+                        break;
+                    case 't':
+                        buffer.append('\t');
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for(int i = 0; i < 4; i++) {
+                            next();
+                            int digit = Character.digit(c, 16);
+                            if(c == -1 || digit == -1) {
+                                throw new MalformedFileException();
+                            }
+                            code = 16 * code + digit;
+                        }
+                        buffer.append((char) code);
+                        break;
+                    default:
+                        throw new MalformedFileException();
+                }
+            } else {
+                buffer.append((char) c);
+            }
+            next();
+        }
+        next();
+        return buffer.toString();
+    }
+    
+    /**
+     * Reads a string or null.
+     */
+    private String readNullableString(
+    ) throws IOException, MalformedFileException {
+        skipWhitespace();
+        if(c == 'n') {
+            if(!readLiteral().equals("null")) {
+                throw new MalformedFileException();
+            }
+            return null;
+        }
+        return readString();
+    }
+    
+    /**
+     * Reads true or false.
+     */
+    private boolean readBoolean() throws IOException, MalformedFileException {
+        String literal = readLiteral();
+        if(literal.equals("true")) {
+            return true;
+        }
+        if(literal.equals("false")) {
+            return false;
+        }
+        throw new MalformedFileException();
+    }
+    
+    /**
+     * Reads the letters of a literal.
+     */
+    private String readLiteral() throws IOException {
+        skipWhitespace();
+        buffer.setLength(0);
+        while(c >= 'a' && c <= 'z') {
+            buffer.append((char) c);
+            next();
+        }
+        return buffer.toString();
+    }
+    
+    /**
+     * Reads a number.
+     */
+    private double readNumber() throws IOException, MalformedFileException {
+        skipWhitespace();
+        buffer.setLength(0);
+        while(
+            (c >= '0' && c <= '9') ||
+            c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'
+        ) {
+            buffer.append((char) c);
+            next();
+        }
+        try {
+            return Double.parseDouble(buffer.toString());
+        } catch(NumberFormatException e) {
+            throw new MalformedFileException();
+        }
+    }
+    
+    /**
+     * Skips a value of any type.
+     */
+    private void skipValue() throws IOException, MalformedFileException {
+        skipWhitespace();
+        if(c == '{') {
+            if(beginCompound('{', '}')) {
+                do {
+                    readKey();
+                    skipValue();
+                } while(nextElement('}'));
+            }
+        } else if(c == '[') {
+            if(beginCompound('[', ']')) {
+                do {
+                    skipValue();
+                } while(nextElement(']'));
+            }
+        } else if(c == '"') {
+            readString();
+        } else if(c == '-' || (c >= '0' && c <= '9')) {
+            readNumber();
+        } else {
+            String literal = readLiteral();
+            if(
+                !literal.equals("true") && !literal.equals("false") &&
+                !literal.equals("null")
+            ) {
+                throw new MalformedFileException();
+            }
+        }
+    }
+    
+    /**
+     * The fields of the action of a transition on a tape, as read.
+     */
+    private static class TapeAction {
+        /**
+         * The input characters, null if not read yet.
+         */
+        String inchar;
+        
+        /**
+         * The output character or null.
+         */
+        Character outchar;
+        
+        /**
+         * Has the output character been read?
+         */
+        boolean has_outchar;
+        
+        /**
+         * The movement string, null if not read yet.
+         */
+        String move;
+    }
+    
+    /**
+     * A transition whose destination is known only by name.
+     */
+    private static class PendingTransition {
+        /**
+         * The state to add the transition to.
+         */
+        final State source;
+        
+        /**
+         * The name of the destination state.
+         */
+        final String destination;
+        
+        /**
+         * The input characters by tape.
+         */
+        final String[] inchars;
+        
+        /**
+         * The output characters or nulls by tape.
+         */
+        final Character[] outchars;
+        
+        /**
+         * The movements of the heads by tape.
+         */
+        final int[] moves;
+        
+        /**
+         * Constructs PendingTransition.
+         */
+        PendingTransition(
+            State source,
+            String destination,
+            String[] inchars,
+            Character[] outchars,
+            int[] moves
+        ) {
+            this.source = source;
+            this.destination = destination;
+            this.inchars = inchars;
+            this.outchars = outchars;
+            this.moves = moves;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package fi.helsinki.cs.turridevelop.gui;
 
 import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
 import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Profile;
 import fi.helsinki.cs.turridevelop.logic.Project;
 import fi.helsinki.cs.turridevelop.logic.State;
 import fi.helsinki.cs.turridevelop.logic.Transition;
@@ -12,15 +13,20 @@ import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 
@@ -94,6 +100,51 @@ extends JPanel implements MouseListener, MouseMotionListener {
      */
     private String choice_text;
     
+    /**
+     * The profile shown as a heat map over the diagram, null if none.
+     */
+    private Profile profile;
+    
+    /**
+     * If profile != null, the largest step count of a state in the machine
+     * while painting.
+     */
+    private long max_state_steps;
+    
+    /**
+     * If profile != null, the largest use count of a transition in the
+     * machine while painting.
+     */
+    private long max_transition_count;
+    
+    /**
+     * The shapes of the states of the machine and their transitions, null if
+     * the whole scene must be rebuilt before painting.
+     */
+    private HashMap<State, StateShape> scene;
+    
+    /**
+     * For each state in the scene, the states with transitions to it.
+     */
+    private HashMap<State, HashSet<State>> scene_sources;
+    
+    /**
+     * The states whose shapes must be rebuilt before painting, along with the
+     * transitions from and to them.
+     */
+    private HashSet<State> scene_dirty;
+    
+    /**
+     * The change count of the machine the scene is up to date with, apart from
+     * the states in scene_dirty.
+     */
+    private long scene_change_count;
+    
+    /**
+     * True if the machine may be edited in the view.
+     */
+    private boolean editable;
+    
     /**
      * Constructs a MachineView panel.
      * 
@@ -115,6 +166,7 @@ extends JPanel implements MouseListener, MouseMotionListener {
         
         font = new Font("SansSerif", Font.PLAIN, 14);
         drag_button = MouseEvent.NOBUTTON;
+        editable = true;
         
         setActiveState((State) null);
         
@@ -134,6 +186,24 @@ extends JPanel implements MouseListener, MouseMotionListener {
         }
     }
     
+    /**
+     * Sets whether the machine may be edited in the view. When not, states
+     * cannot be dragged and the state editor is not shown, but states can
+     * still be selected and the view moved.
+     * 
+     * @param editable True to allow editing.
+     */
+    public void setEditable(boolean editable) {
+        if(this.editable == editable) {
+            return;
+        }
+        this.editable = editable;
+        if(!editable) {
+            choice_handler = null;
+        }
+        setActiveState(active_state);
+    }
+    
     /**
      * Get the machine being edited.
      * 
@@ -156,6 +226,16 @@ extends JPanel implements MouseListener, MouseMotionListener {
             machine.getState(active_state.getName()) != active_state
         ) {
             setActiveState((State) null);
+            scene = null;
+        }
+        
+        // The state editor only modifies the active state, so only its shapes
+        // need to be rebuilt.
+        if(scene != null && active_state != null) {
+            scene_dirty.add(active_state);
+            scene_change_count = machine.getChangeCount();
+        } else {
+            scene = null;
         }
         
         repaint();
@@ -175,18 +255,36 @@ extends JPanel implements MouseListener, MouseMotionListener {
         repaint();
     }
     
+    /**
+     * Shows a profile as a heat map over the diagram. The states are colored
+     * by the number of steps taken from them and the transitions by the
+     * number of times they have been taken, and the counts are shown in the
+     * transition labels.
+     * 
+     * @param profile The profile to show, null to hide the heat map.
+     */
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+        repaint();
+    }
+    
     /**
      * Add new state to the machine.
      */
     public void addState() {
+        if(!editable) {
+            return;
+        }
         int statenumber = 1;
         while(machine.getState("" + statenumber) != null) {
             statenumber++;
         }
         
         try {
+            long change_count = machine.getChangeCount();
             State state = machine.addState("" + statenumber);
             state.setPosition(centerpos);
+            stateChanged(state, change_count);
             setActiveState(state);
         } catch(NameInUseException e) {
             throw new RuntimeException();
@@ -208,9 +306,10 @@ extends JPanel implements MouseListener, MouseMotionListener {
             // If we hit a state, set it active or choose it depending on
             // whether we are in choice mode or not.
             State clicked_state = null;
+            updateScene();
             for(String statename : machine.getStateNames()) {
                 State state = machine.getState(statename);
-                if(getStateEllipse(state).contains(pos.x, pos.y)) {
+                if(scene.get(state).ellipse.contains(pos.x, pos.y)) {
                     clicked_state = state;
                 }
             }
@@ -233,7 +332,11 @@ extends JPanel implements MouseListener, MouseMotionListener {
             drag_button = e.getButton();
             
             // State drag
-            if(drag_button == MouseEvent.BUTTON1 && active_state != null) {
+            if(
+                drag_button == MouseEvent.BUTTON1 &&
+                active_state != null &&
+                editable
+            ) {
                 drag_original = active_state.getPosition();
                 drag_start = abspos;
             }
@@ -269,9 +372,15 @@ extends JPanel implements MouseListener, MouseMotionListener {
         Vec2 pos = transformComponentPositionToDiagram(abspos);
         
         // Update dragged object if there is an active drag.
-        if(drag_button == MouseEvent.BUTTON1 && active_state != null) {
+        if(
+            drag_button == MouseEvent.BUTTON1 &&
+            active_state != null &&
+            editable
+        ) {
             Vec2 newpos = Vec2.sub(Vec2.add(drag_original, abspos), drag_start);
+            long change_count = machine.getChangeCount();
             active_state.setPosition(newpos);
+            stateChanged(active_state, change_count);
             repaint();
         }
         if(drag_button == MouseEvent.BUTTON3) {
@@ -300,35 +409,69 @@ extends JPanel implements MouseListener, MouseMotionListener {
             getHeight() / 2 - (int)centerpos.y
         );
         
-        // Draw the states.
+        updateScene();
+        Rectangle clip = g.getClipBounds();
+        if(clip == null) {
+            clip = new Rectangle(
+                (int)centerpos.x - getWidth() / 2,
+                (int)centerpos.y - getHeight() / 2,
+                getWidth(),
+                getHeight()
+            );
+        }
+        
+        // Find the largest counts for scaling the heat map.
+        if(profile != null) {
+            max_state_steps = 0;
+            max_transition_count = 0;
+            for(String name : machine.getStateNames()) {
+                State state = machine.getState(name);
+                max_state_steps = Math.max(
+                    max_state_steps, profile.getStateSteps(state)
+                );
+                for(Transition transition : state.getTransitions()) {
+                    max_transition_count = Math.max(
+                        max_transition_count,
+                        profile.getTransitionCount(transition)
+                    );
+                }
+            }
+        }
+        
+        // Draw the visible states.
         for(String name : machine.getStateNames()) {
             State state = machine.getState(name);
-            drawState(g, state);
+            StateShape shape = scene.get(state);
+            if(shape.bounds.intersects(clip)) {
+                drawState(g, state, shape);
+            }
         }
         
-        // For each state, draw the transitions grouped by destination.
+        // Draw the visible transitions, grouped by source and destination.
         for(String name : machine.getStateNames()) {
             State state = machine.getState(name);
-            HashMap<State, ArrayList<Transition>> transitions =
-                new HashMap<State, ArrayList<Transition>>();
-            
-            for(Transition transition : state.getTransitions()) {
-                State destination = transition.getDestination();
-                if(!transitions.containsKey(destination)) {
-                    transitions.put(destination, new ArrayList<Transition>());
+            for(Edge edge : scene.get(state).edges) {
+                // The counts of the heat map make the labels longer.
+                Rectangle2D bounds = edge.bounds;
+                if(profile != null) {
+                    bounds = new Rectangle2D.Double(
+                        bounds.getX(),
+                        bounds.getY(),
+                        Double.MAX_VALUE / 2,
+                        bounds.getHeight()
+                    );
+                }
+                if(bounds.intersects(clip)) {
+                    drawTransitions(g, edge);
                 }
-                transitions.get(destination).add(transition);
-            }
-            
-            for(State dest : transitions.keySet()) {
-                drawTransitions(g, state, dest, transitions.get(dest));
             }
         }
         
         // Draw the arrows showing the states outside the view.
+        HashSet<String> arrows = new HashSet<String>();
         for(String name : machine.getStateNames()) {
             State state = machine.getState(name);
-            drawStateArrow(g, state);
+            drawStateArrow(g, state, arrows);
         }
         
         // Draw the choice text if we are in choice mode.
@@ -337,6 +480,18 @@ extends JPanel implements MouseListener, MouseMotionListener {
             g2.setColor(Color.RED);
             g2.drawString(choice_text, 5, 5 + getFontMetrics(font).getAscent());
         }
+        
+        // Draw the profile summary.
+        if(profile != null) {
+            Graphics2D g2 = (Graphics2D) outg.create();
+            g2.setColor(Color.BLACK);
+            g2.drawString(
+                "Steps: " + profile.getStepCount() + ", head positions: " +
+                profile.getMinPosition() + ".." + profile.getMaxPosition(),
+                5,
+                getHeight() - 5 - getFontMetrics(font).getDescent()
+            );
+        }
     }
     
     /**
@@ -380,6 +535,209 @@ extends JPanel implements MouseListener, MouseMotionListener {
         return new Ellipse2D.Double(pos.x, pos.y, size.x, size.y);
     }
     
+    /**
+     * Brings the scene up to date with the machine. The whole scene is
+     * rebuilt if the machine has been changed by someone else than the view,
+     * otherwise only the shapes of the changed states, the transitions from
+     * them and the transitions to them.
+     */
+    private void updateScene() {
+        if(scene == null || scene_change_count != machine.getChangeCount()) {
+            scene = new HashMap<State, StateShape>();
+            scene_sources = new HashMap<State, HashSet<State>>();
+            scene_dirty = new HashSet<State>();
+            scene_change_count = machine.getChangeCount();
+            for(String name : machine.getStateNames()) {
+                scene_dirty.add(machine.getState(name));
+            }
+        }
+        if(scene_dirty.isEmpty()) {
+            return;
+        }
+        
+        // Rebuild the states first, as the transitions depend on the ellipses
+        // of both of their ends.
+        HashSet<State> sources = new HashSet<State>();
+        for(State state : scene_dirty) {
+            StateShape old = scene.get(state);
+            scene.put(state, createStateShape(state));
+            if(old != null) {
+                scene.get(state).edges = old.edges;
+            }
+            sources.add(state);
+            if(scene_sources.containsKey(state)) {
+                sources.addAll(scene_sources.get(state));
+            }
+        }
+        scene_dirty.clear();
+        
+        for(State source : sources) {
+            StateShape shape = scene.get(source);
+            if(shape == null) {
+                continue;
+            }
+            for(Edge edge : shape.edges) {
+                HashSet<State> edge_sources = scene_sources.get(edge.to);
+                if(edge_sources != null) {
+                    edge_sources.remove(source);
+                }
+            }
+            shape.edges = createEdges(source, shape);
+            for(Edge edge : shape.edges) {
+                if(!scene_sources.containsKey(edge.to)) {
+                    scene_sources.put(edge.to, new HashSet<State>());
+                }
+                scene_sources.get(edge.to).add(source);
+            }
+        }
+    }
+    
+    /**
+     * Notifies the scene that the view has changed a state. If the scene was
+     * up to date before the change, only the state is marked to be rebuilt.
+     * 
+     * @param state The changed state.
+     * @param change_count The change count of the machine before the change.
+     */
+    private void stateChanged(State state, long change_count) {
+        if(scene != null && scene_change_count == change_count) {
+            scene_dirty.add(state);
+            scene_change_count = machine.getChangeCount();
+        }
+    }
+    
+    /**
+     * Creates the shape of a state without its transitions.
+     * 
+     * @param state The state.
+     * @return The shape of the state with an empty list of transitions.
+     */
+    private StateShape createStateShape(State state) {
+        StateShape shape = new StateShape();
+        shape.ellipse = getStateEllipse(state);
+        shape.bounds = shape.ellipse.getBounds2D();
+        shape.edges = new ArrayList<Edge>();
+        
+        String submachine = state.getSubmachine();
+        if(submachine != null) {
+            Vec2 center = new Vec2(
+                shape.ellipse.getCenterX(), shape.ellipse.getMaxY() + 30
+            );
+            Vec2 size = Vec2.add(getTextSize(submachine), new Vec2(4.0, 3.0));
+            Vec2 min = Vec2.sub(center, size.mul(0.5));
+            shape.submachine_center = center;
+            shape.submachine_box = new Rectangle(
+                (int)min.x, (int)min.y, (int)size.x, (int)size.y
+            );
+            shape.bounds = shape.bounds.createUnion(shape.submachine_box);
+        }
+        
+        // Leave room for the stroke and the text.
+        shape.bounds = new Rectangle2D.Double(
+            shape.bounds.getX() - 2,
+            shape.bounds.getY() - 2,
+            shape.bounds.getWidth() + 4,
+            shape.bounds.getHeight() + 4
+        );
+        return shape;
+    }
+    
+    /**
+     * Creates the edges of the transitions of a state, one for each
+     * destination.
+     * 
+     * @param from The source state of the transitions.
+     * @param shape The shape of the source state.
+     * @return The edges.
+     */
+    private ArrayList<Edge> createEdges(State from, StateShape shape) {
+        LinkedHashMap<State, ArrayList<Transition>> transitions =
+            new LinkedHashMap<State, ArrayList<Transition>>();
+        for(Transition transition : from.getTransitions()) {
+            State destination = transition.getDestination();
+            if(!transitions.containsKey(destination)) {
+                transitions.put(destination, new ArrayList<Transition>());
+            }
+            transitions.get(destination).add(transition);
+        }
+        
+        FontMetrics metrics = getFontMetrics(font);
+        ArrayList<Edge> edges = new ArrayList<Edge>();
+        for(State to : transitions.keySet()) {
+            Edge edge = new Edge();
+            edge.to = to;
+            
+            StateShape to_shape = scene.get(to);
+            edge.points = Util.getBezierBetweenEllipses(
+                shape.ellipse,
+                to_shape == null ? getStateEllipse(to) : to_shape.ellipse
+            );
+            Vec2[] points = edge.points;
+            edge.bezier = new Path2D.Double();
+            edge.bezier.moveTo(points[0].x, points[0].y);
+            edge.bezier.curveTo(
+                points[1].x, points[1].y,
+                points[2].x, points[2].y,
+                points[3].x, points[3].y
+            );
+            
+            // Sort the transitions by their texts.
+            final HashMap<Transition, String> texts =
+                new HashMap<Transition, String>();
+            for(Transition transition : transitions.get(to)) {
+                texts.put(
+                    transition, Util.getTransitionText(transition, false)
+                );
+            }
+            edge.transitions = transitions.get(to);
+            Collections.sort(edge.transitions, new Comparator<Transition>() {
+                @Override
+                public int compare(Transition a, Transition b) {
+                    return texts.get(a).compareTo(texts.get(b));
+                }
+            });
+            edge.texts = new String[edge.transitions.size()];
+            StringBuilder text = new StringBuilder();
+            for(int i = 0; i < edge.texts.length; i++) {
+                edge.texts[i] = texts.get(edge.transitions.get(i));
+                if(i != 0) {
+                    text.append("; ");
+                }
+                text.append(edge.texts[i]);
+            }
+            edge.text = text.toString();
+            
+            // Place the text next to the midpoint of the curve.
+            edge.midpoint = Vec2.add(
+                Vec2.add(points[0], points[3]).mul(0.125),
+                Vec2.add(points[1], points[2]).mul(0.375)
+            );
+            edge.textpos = new Vec2(
+                edge.midpoint.x + 7.0,
+                edge.midpoint.y +
+                    0.5 * (metrics.getAscent() - metrics.getDescent())
+            );
+            
+            Rectangle2D bounds = edge.bezier.getBounds2D();
+            bounds = bounds.createUnion(new Rectangle2D.Double(
+                edge.textpos.x,
+                edge.textpos.y - metrics.getAscent(),
+                metrics.stringWidth(edge.text),
+                metrics.getHeight()
+            ));
+            
+            // Leave room for the arrow, the stroke and the midpoint.
+            edge.bounds = new Rectangle2D.Double(
+                bounds.getX() - 10,
+                bounds.getY() - 10,
+                bounds.getWidth() + 20,
+                bounds.getHeight() + 20
+            );
+            edges.add(edge);
+        }
+        return edges;
+    }
+    
     /**
      * Gets the size vector of text.
      * 
@@ -399,26 +757,24 @@ extends JPanel implements MouseListener, MouseMotionListener {
      * 
      * @param g The graphics context to use.
      * @param state The state to draw.
+     * @param shape The shape of the state in the scene.
      */
-    private void drawState(Graphics2D g, State state) {
+    private void drawState(Graphics2D g, State state, StateShape shape) {
         Vec2 pos = state.getPosition();
-        Ellipse2D.Double ellipse = getStateEllipse(state);
+        Ellipse2D.Double ellipse = shape.ellipse;
         
         // Draw submachine.
         String submachine = state.getSubmachine();
         if(submachine != null) {
-            Vec2 center = new Vec2(
-                ellipse.getCenterX(), ellipse.getMaxY() + 30
-            );
+            Vec2 center = shape.submachine_center;
             g.drawLine((int)pos.x, (int)pos.y, (int)center.x, (int)center.y);
-            Vec2 size = Vec2.add(getTextSize(submachine), new Vec2(4.0, 3.0));
-            Vec2 min = Vec2.sub(center, size.mul(0.5));
+            Rectangle box = shape.submachine_box;
             
             Graphics2D g2 = (Graphics2D) g.create();
             g2.setColor(Color.WHITE);
-            g2.fillRect((int)min.x, (int)min.y, (int)size.x, (int)size.y);
+            g2.fillRect(box.x, box.y, box.width, box.height);
             
-            g.drawRect((int)min.x, (int)min.y, (int)size.x, (int)size.y);
+            g.drawRect(box.x, box.y, box.width, box.height);
             
             // If the submachine is missing, show in red.
             if(project.getMachine(submachine) == null) {
@@ -433,6 +789,10 @@ extends JPanel implements MouseListener, MouseMotionListener {
         Graphics2D g2 = (Graphics2D) g.create();
         if(state == active_state) {
             g2.setColor(Color.YELLOW);
+        } else if(profile != null) {
+            g2.setColor(getHeatColor(
+                profile.getStateSteps(state), max_state_steps
+            ));
         } else {
             g2.setColor(Color.WHITE);
         }
@@ -459,8 +819,15 @@ extends JPanel implements MouseListener, MouseMotionListener {
      * 
      * @param g The graphics context to use.
      * @param state The state to draw.
+     * @param arrows The arrows already drawn, identified by their pixel
+     * positions and directions. Many states beyond a corner share the arrow
+     * in the corner, and it is only drawn once.
      */
-    private void drawStateArrow(Graphics2D g, State state) {
+    private void drawStateArrow(
+        Graphics2D g,
+        State state,
+        HashSet<String> arrows
+    ) {
         Vec2 pos = state.getPosition();
         Vec2 diagpos = transformDiagramPositionToComponent(pos);
         
@@ -502,6 +869,13 @@ extends JPanel implements MouseListener, MouseMotionListener {
                 }
             }
             
+            String arrow =
+                (int)arrowpos.x + " " + (int)arrowpos.y + " " +
+                arrowdir.x + " " + arrowdir.y;
+            if(!arrows.add(arrow)) {
+                return;
+            }
+            
             Graphics2D g2 = (Graphics2D) g.create();
             g2.setColor(Color.RED);
             g2.fill(Util.getArrowEnd(arrowpos, arrowdir, 12.0));
@@ -526,64 +900,71 @@ extends JPanel implements MouseListener, MouseMotionListener {
      * Draws transitions between two states.
      * 
      * @param g The graphics context.
-     * @param from The source state of all transitions.
-     * @param to The destination state of all transitions.
-     * @param transitions List of the transitions.
+     * @param edge The edge of the transitions in the scene.
      */
-    private void drawTransitions(
-        Graphics2D g,
-        State from,
-        State to,
-        ArrayList<Transition> transitions
-    ) {
-        Vec2[] points = Util.getBezierBetweenEllipses(
-            getStateEllipse(from),
-            getStateEllipse(to)
-        );
+    private void drawTransitions(Graphics2D g, Edge edge) {
+        Vec2[] points = edge.points;
         
-        Path2D.Double bezier = new Path2D.Double();
-        bezier.moveTo(points[0].x, points[0].y);
-        bezier.curveTo(
-            points[1].x, points[1].y,
-            points[2].x, points[2].y,
-            points[3].x, points[3].y
-        );
-        g.draw(bezier);
+        // Color the transitions by the profile.
+        Graphics2D gc = g;
+        if(profile != null) {
+            long count = 0;
+            for(Transition transition : edge.transitions) {
+                count += profile.getTransitionCount(transition);
+            }
+            if(count != 0) {
+                gc = (Graphics2D) g.create();
+                gc.setColor(getHeatColor(count, max_transition_count).darker());
+            }
+        }
+        gc.draw(edge.bezier);
         
         // Show the endpoint with an arrow.
-        g.fill(
+        gc.fill(
             Util.getArrowEnd(points[3], Vec2.sub(points[3], points[2]), 8.0)
         );
         
-        // Create the text for the transitions.
-        ArrayList<String> parts = new ArrayList<String>();
-        for(Transition transition : transitions) {
-            parts.add(Util.getTransitionText(transition, false));
-        }
-        Collections.sort(parts);
-        StringBuilder text = new StringBuilder();
-        boolean first = true;
-        for(String part : parts) {
-            if(!first) {
-                text.append("; ");
+        // Add the counts of the profile to the text.
+        String text = edge.text;
+        if(profile != null) {
+            StringBuilder builder = new StringBuilder();
+            for(int i = 0; i < edge.texts.length; i++) {
+                if(i != 0) {
+                    builder.append("; ");
+                }
+                builder.append(edge.texts[i]);
+                builder.append(" (");
+                builder.append(
+                    profile.getTransitionCount(edge.transitions.get(i))
+                );
+                builder.append(")");
             }
-            text.append(part);
-            first = false;
+            text = builder.toString();
         }
         
         // Render the text.
-        Vec2 midpoint = Vec2.add(
-            Vec2.add(points[0], points[3]).mul(0.125),
-            Vec2.add(points[1], points[2]).mul(0.375)
-        );
+        Vec2 midpoint = edge.midpoint;
         Graphics2D g2 = (Graphics2D) g.create();
         g2.setColor(Color.BLACK);
         g2.fillOval((int)midpoint.x - 2, (int)midpoint.y - 2, 4, 4);
-        FontMetrics metrics = getFontMetrics(font);
-        double textx = midpoint.x + 7.0;
-        double textymid = 0.5 * (metrics.getAscent() - metrics.getDescent());
-        double texty = midpoint.y + textymid;
-        g2.drawString(text.toString(), (float)textx, (float)texty);
+        g2.drawString(text, (float)edge.textpos.x, (float)edge.textpos.y);
+    }
+    
+    /**
+     * Gets the heat map color of a count, from white for zero to red for the
+     * largest count. The counts are scaled logarithmically so that the
+     * differences between rarely used parts remain visible.
+     * 
+     * @param count The count to color.
+     * @param max The largest count.
+     * @return The color.
+     */
+    private Color getHeatColor(long count, long max) {
+        float heat = 0.0f;
+        if(count > 0 && max > 0) {
+            heat = (float) (Math.log1p(count) / Math.log1p(max));
+        }
+        return new Color(1.0f, 1.0f - 0.8f * heat, 1.0f - 0.9f * heat);
     }
     
     /**
@@ -597,7 +978,7 @@ extends JPanel implements MouseListener, MouseMotionListener {
         
         // Update the editing panel.
         editpanel.removeAll();
-        if(state != null) {
+        if(state != null && editable) {
             editpanel.add(new StateEditor(state, this, frame));
         }
         
@@ -606,4 +987,86 @@ extends JPanel implements MouseListener, MouseMotionListener {
         
         repaint();
     }
+    
+    /**
+     * The shape of a state in the scene.
+     */
+    private static class StateShape {
+        /**
+         * The ellipse around the name of the state.
+         */
+        Ellipse2D.Double ellipse;
+        
+        /**
+         * If the state has a submachine, the center of the box showing it.
+         */
+        Vec2 submachine_center;
+        
+        /**
+         * If the state has a submachine, the box showing it.
+         */
+        Rectangle submachine_box;
+        
+        /**
+         * The rectangle containing everything drawn for the state.
+         */
+        Rectangle2D bounds;
+        
+        /**
+         * The transitions from the state, one edge for each destination.
+         */
+        ArrayList<Edge> edges;
+    }
+    
+    /**
+     * The transitions between two states in the scene, drawn as one curve
+     * with one label.
+     */
+    private static class Edge {
+        /**
+         * The destination of the transitions.
+         */
+        State to;
+        
+        /**
+         * The transitions sorted by their texts.
+         */
+        ArrayList<Transition> transitions;
+        
+        /**
+         * The texts of the transitions.
+         */
+        String[] texts;
+        
+        /**
+         * The label of the edge.
+         */
+        String text;
+        
+        /**
+         * The control points of the curve.
+         */
+        Vec2[] points;
+        
+        /**
+         * The curve.
+         */
+        Path2D.Double bezier;
+        
+        /**
+         * The midpoint of the curve.
+         */
+        Vec2 midpoint;
+        
+        /**
+         * The position of the baseline of the label.
+         */
+        Vec2 textpos;
+        
+        /**
+         * The rectangle containing everything drawn for the edge when no
+         * profile is shown.
+         */
+        Rectangle2D bounds;
+    }
 }
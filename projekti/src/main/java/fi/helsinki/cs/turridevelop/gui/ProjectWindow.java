@@ -1,11 +1,14 @@
 package fi.helsinki.cs.turridevelop.gui;
 
+import fi.helsinki.cs.turridevelop.ProjectConverter;
 import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
 import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
 import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.file.ProjectSaver;
+import fi.helsinki.cs.turridevelop.file.TurrBinaryOutput;
 import fi.helsinki.cs.turridevelop.file.TurrInput;
-import fi.helsinki.cs.turridevelop.file.TurrOutput;
 import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Profile;
 import fi.helsinki.cs.turridevelop.logic.Project;
 import fi.helsinki.cs.turridevelop.logic.State;
 import fi.helsinki.cs.turridevelop.util.Vec2;
@@ -36,12 +39,14 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
+import javax.swing.JToggleButton;
 import javax.swing.KeyStroke;
 import javax.swing.ListSelectionModel;
 import javax.swing.WindowConstants;
 import javax.swing.border.Border;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
+import javax.swing.filechooser.FileFilter;
 
 /**
  * Window where a single project is modified.
@@ -57,6 +62,12 @@ public class ProjectWindow implements RunPanelEventHandler {
      */
     private Project project;
     
+    /**
+     * Saver of the project to the directory it was opened from or last saved
+     * to, null if none.
+     */
+    private ProjectSaver saver;
+    
     /**
      * Buttons that should only be enabled when a project is open.
      */
@@ -67,6 +78,12 @@ public class ProjectWindow implements RunPanelEventHandler {
      */
     private ArrayList<AbstractButton> machine_buttons;
     
+    /**
+     * The button telling whether the machine being edited is
+     * nondeterministic.
+     */
+    private JToggleButton nondeterministic_button;
+    
     /**
      * The list of machines. Valid if project != null.
      */
@@ -97,6 +114,27 @@ public class ProjectWindow implements RunPanelEventHandler {
      */
     private JSplitPane split;
     
+    /**
+     * The profile shown as a heat map in the machine views, null if none.
+     */
+    private Profile profile;
+    
+    /**
+     * The menu item for running the project.
+     */
+    private JMenuItem run_item;
+    
+    /**
+     * The button for adding a new machine. Valid if project != null.
+     */
+    private JButton new_machine_button;
+    
+    /**
+     * True if a simulation of the project is running in the background, in
+     * which case editing is disabled.
+     */
+    private boolean running;
+    
     public ProjectWindow() {
         frame = new JFrame("turrIDEvelop");
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
@@ -154,6 +192,19 @@ public class ProjectWindow implements RunPanelEventHandler {
         project_buttons.add(item);
         menu.add(item);
         
+        item = new JMenuItem("Save project");
+        item.setAccelerator(
+            KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK)
+        );
+        item.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                saveProjectClicked();
+            }
+        });
+        project_buttons.add(item);
+        menu.add(item);
+        
         item = new JMenuItem("Save project as");
         item.addActionListener(new ActionListener() {
             @Override
@@ -166,6 +217,7 @@ public class ProjectWindow implements RunPanelEventHandler {
         menu.addSeparator();
         
         item = new JMenuItem("Run");
+        run_item = item;
         item.setAccelerator(
             KeyStroke.getKeyStroke(KeyEvent.VK_R, InputEvent.CTRL_DOWN_MASK)
         );
@@ -208,8 +260,33 @@ public class ProjectWindow implements RunPanelEventHandler {
         }
     }
     
+    @Override
+    public void runPanelShowProfile(Profile profile) {
+        this.profile = profile;
+        if(machineview != null) {
+            machineview.setProfile(profile);
+        }
+    }
+    
+    @Override
+    public void runPanelRunning(boolean running) {
+        this.running = running;
+        run_item.setEnabled(project != null && !running);
+        if(project == null) {
+            return;
+        }
+        new_machine_button.setEnabled(!running);
+        for(AbstractButton item : machine_buttons) {
+            item.setEnabled(machineview != null && !running);
+        }
+        if(machineview != null) {
+            machineview.setEditable(!running);
+        }
+    }
+    
     @Override
     public void runPanelClosed(RunPanel panel) {
+        runPanelShowProfile(null);
         runpanel.removeAll();
         split.revalidate();
         split.repaint();
@@ -221,16 +298,35 @@ public class ProjectWindow implements RunPanelEventHandler {
     
     private void openProjectClicked() {
         JFileChooser chooser = new JFileChooser();
-        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+        chooser.setAcceptAllFileFilterUsed(false);
+        chooser.setFileFilter(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory() || isBinaryProject(file);
+            }
+            
+            @Override
+            public String getDescription() {
+                return "Project directories and binary projects (*" +
+                    TurrBinaryOutput.EXTENSION + ")";
+            }
+        });
         if(chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
             return;
         }
         
-        // A directory was chosen, try to open it.
+        // A directory or a binary project was chosen, try to open it.
         File dir = chooser.getSelectedFile();
         Exception error = null;
         try {
-            changeProject(TurrInput.readProjectDirectory(dir));
+            Project opened = ProjectConverter.readProject(dir);
+            changeProject(opened);
+            if(!isBinaryProject(dir)) {
+                // Binary projects are saved as directories with Save As.
+                saver = new ProjectSaver(opened, dir);
+                saver.markSaved();
+            }
         } catch(MalformedFileException e) {
             error = e;
         } catch(FilesystemException e) {
@@ -246,10 +342,44 @@ public class ProjectWindow implements RunPanelEventHandler {
         }
     }
     
+    /**
+     * Tests whether a file is a binary project file, which can be opened but
+     * not saved to.
+     * 
+     * @param file The file.
+     * @return True if the file is not a directory and has the binary project
+     * extension.
+     */
+    private static boolean isBinaryProject(File file) {
+        return
+            !file.isDirectory() &&
+            file.getName().endsWith(TurrBinaryOutput.EXTENSION);
+    }
+    
     private void closeProjectClicked() {
         changeProject(null);
    }
     
+    private void saveProjectClicked() {
+        if(saver == null) {
+            saveProjectAsClicked();
+            return;
+        }
+        
+        // Only the changed machines are written.
+        try {
+            saver.save();
+        } catch(FilesystemException e) {
+            JOptionPane.showMessageDialog(
+                frame,
+                "Saving project to '" + saver.getDirectory() + "' failed:\n" +
+                e.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE
+            );
+        }
+    }
+    
     private void saveProjectAsClicked() {
         JFileChooser chooser = new JFileChooser();
         chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
@@ -277,9 +407,10 @@ public class ProjectWindow implements RunPanelEventHandler {
             }
         } catch(FilesystemException e) { }
         
-        // Try to save.
+        // Try to save, and keep saving to the directory after that.
+        saver = new ProjectSaver(project, dir);
         try {
-            TurrOutput.writeProject(project, dir);
+            saver.save();
         } catch(FilesystemException e) {
             JOptionPane.showMessageDialog(
                 frame,
@@ -418,6 +549,7 @@ public class ProjectWindow implements RunPanelEventHandler {
     }
     
     private void runProjectClicked() {
+        runPanelShowProfile(null);
         runpanel.removeAll();
         runpanel.add(new RunPanel(project, this));
         split.revalidate();
@@ -428,6 +560,22 @@ public class ProjectWindow implements RunPanelEventHandler {
         machineview.addState();
     }
     
+    private void nondeterministicToggled() {
+        Machine machine = machineview.getMachine();
+        try {
+            machine.setNondeterministic(nondeterministic_button.isSelected());
+        } catch(NameInUseException e) {
+            JOptionPane.showMessageDialog(
+                frame,
+                "Could not make machine '" + machine.getName() +
+                "' deterministic:\n" + e.getMessage() + ".",
+                "Error",
+                JOptionPane.ERROR_MESSAGE
+            );
+            nondeterministic_button.setSelected(true);
+        }
+    }
+    
     private void machineSelected() {
         MachineName machinename = (MachineName) machinelist.getSelectedValue();
         Machine machine;
@@ -441,11 +589,16 @@ public class ProjectWindow implements RunPanelEventHandler {
         machineview = null;
         if(machine != null) {
             machineview = new MachineView(project, machine, editpanel, frame);
+            machineview.setProfile(profile);
+            machineview.setEditable(!running);
             machinepanel.add(machineview);
         }
+        nondeterministic_button.setSelected(
+            machine != null && machine.isNondeterministic()
+        );
         
         for(AbstractButton item : machine_buttons) {
-            item.setEnabled(machine != null);
+            item.setEnabled(machine != null && !running);
         }
         
         machinepanel.revalidate();
@@ -462,6 +615,11 @@ public class ProjectWindow implements RunPanelEventHandler {
      */
     private void changeProject(Project newproject) {
         project = newproject;
+        saver = null;
+        profile = null;
+        
+        // The run panel of the old project is discarded, and its run stops.
+        running = false;
         
         // Update the buttons.
         for(AbstractButton item : project_buttons) {
@@ -513,6 +671,7 @@ public class ProjectWindow implements RunPanelEventHandler {
                     newMachineClicked();
                 }
             });
+            new_machine_button = button;
             machineeditor.add(button, c);
             c.gridx++;
             
@@ -554,6 +713,22 @@ public class ProjectWindow implements RunPanelEventHandler {
             machine_buttons.add(button);
             machineeditor.add(button, c);
             
+            c.gridy++;
+            c.gridx = 0;
+            
+            nondeterministic_button = new JToggleButton("Nondeterministic");
+            nondeterministic_button.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    nondeterministicToggled();
+                }
+            });
+            nondeterministic_button.setEnabled(false);
+            machine_buttons.add(nondeterministic_button);
+            c.gridwidth = 2;
+            machineeditor.add(nondeterministic_button, c);
+            c.gridwidth = 1;
+            
             editpanel = new JPanel();
             editpanel.setLayout(new BorderLayout());
             editpanel.setMinimumSize(new Dimension(200, 200));
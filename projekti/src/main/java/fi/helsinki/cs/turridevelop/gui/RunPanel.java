@@ -2,13 +2,15 @@ package fi.helsinki.cs.turridevelop.gui;
 
 import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
 import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.NondeterministicSimulation;
+import fi.helsinki.cs.turridevelop.logic.Profile;
 import fi.helsinki.cs.turridevelop.logic.Project;
 import fi.helsinki.cs.turridevelop.logic.Simulation;
+import fi.helsinki.cs.turridevelop.logic.SimulationHistory;
 import fi.helsinki.cs.turridevelop.logic.SimulationStatus;
 import fi.helsinki.cs.turridevelop.logic.Tape;
 import java.awt.BorderLayout;
 import java.awt.FlowLayout;
-import java.awt.Font;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
@@ -26,14 +28,37 @@ import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.JToggleButton;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  * Panel for simulating Turing machines.
  */
 public class RunPanel extends JPanel {
+    /**
+     * The maximum number of configurations of a search.
+     */
+    private static final long SEARCH_CONFIGURATIONS = 1000000;
+    
+    /**
+     * The maximum wall time of a search in milliseconds.
+     */
+    private static final long SEARCH_TIMEOUT = 10000;
+    
+    /**
+     * The time between updates of the view while running, in milliseconds.
+     */
+    private static final int FRAME_MILLIS = 40;
+    
+    /**
+     * The head position after which the user is warned that the tape is very
+     * long.
+     */
+    private static final int WARN_POSITION = 50000;
+    
     /**
      * The project being simulated.
      */
@@ -54,6 +79,12 @@ public class RunPanel extends JPanel {
      */
     private Simulation simulation;
     
+    /**
+     * The history of the running simulation for stepping back, null if there
+     * is no simulation running.
+     */
+    private SimulationHistory history;
+    
     /**
      * Buttons that should be disabled if there is no simulation running.
      */
@@ -64,25 +95,70 @@ public class RunPanel extends JPanel {
      */
     private Tape tape;
     
+    /**
+     * The tapes of the running simulation, the first of which is tape, null
+     * if there is no simulation running.
+     */
+    private Tape[] tapes;
+    
     /**
      * The label showing the status of the simulation.
      */
     private JLabel status;
     
     /**
-     * The text area for the tape view.
+     * The component showing the tapes.
      */
-    private JTextArea tape_textarea;
+    private TapeView tape_view;
+    
+    /**
+     * The number of positions on both sides of the head taken into the views
+     * of the tape, set from the width of tape_view.
+     */
+    private volatile int tape_radius;
     
     /**
      * The toggle button used to continuously run the project.
      */
     private JToggleButton run_button;
     
+    /**
+     * The toggle button used to show the profile of the run as a heat map.
+     */
+    private JToggleButton heat_button;
+    
     /**
      * Has the user been warned for this run that the tape is very long?
      */
-    private boolean run_warned;
+    private volatile boolean run_warned;
+    
+    /**
+     * The thread running the simulation while the run button is selected,
+     * null if the simulation is not running. The simulation, its history and
+     * its tapes must not be accessed from other threads while it runs.
+     */
+    private Thread run_thread;
+    
+    /**
+     * Set to tell the run thread to stop.
+     */
+    private volatile boolean run_stopping;
+    
+    /**
+     * The latest view of the simulation published by the run thread.
+     */
+    private volatile View run_view;
+    
+    /**
+     * The timer showing run_view while the simulation runs.
+     */
+    private Timer run_timer;
+    
+    /**
+     * A copy of the profile of the simulation taken when the run started,
+     * shown as the heat map while the run thread updates the profile.
+     */
+    private Profile run_profile;
     
     /**
      * Constructs a run panel for a project.
@@ -101,6 +177,12 @@ public class RunPanel extends JPanel {
         this.eventhandler = eventhandler;
         tape = new Tape();
         simulation_buttons = new ArrayList<AbstractButton>();
+        run_timer = new Timer(FRAME_MILLIS, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                runTick();
+            }
+        });
         
         JButton button;
         
@@ -135,6 +217,29 @@ public class RunPanel extends JPanel {
         add(button, c);
         c.gridx++;
         
+        button = new JButton("Search");
+        button.setMnemonic(KeyEvent.VK_E);
+        button.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                searchClicked();
+            }
+        });
+        add(button, c);
+        c.gridx++;
+        
+        button = new JButton("Back");
+        button.setMnemonic(KeyEvent.VK_B);
+        button.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                backClicked();
+            }
+        });
+        simulation_buttons.add(button);
+        add(button, c);
+        c.gridx++;
+        
         button = new JButton("Step");
         button.setMnemonic(KeyEvent.VK_S);
         button.addActionListener(new ActionListener() {
@@ -159,6 +264,19 @@ public class RunPanel extends JPanel {
         add(run_button, c);
         c.gridx++;
         
+        heat_button = new JToggleButton("Heat map");
+        heat_button.setMnemonic(KeyEvent.VK_H);
+        heat_button.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateProfiling();
+                updateProfileView();
+            }
+        });
+        simulation_buttons.add(heat_button);
+        add(heat_button, c);
+        c.gridx++;
+        
         status = new JLabel();
         c.weightx = 1.0;
         add(status, c);
@@ -169,14 +287,13 @@ public class RunPanel extends JPanel {
         c.gridx = 0;
         
         
-        c.gridwidth = 7;
+        c.gridwidth = 10;
         add(createTapePanel(), c);
         c.gridwidth = 1;
         
         machinesChanged();
         updateButtons();
-        updateStatus();
-        updateTapeView();
+        updateView();
     }
     
     /**
@@ -211,19 +328,25 @@ public class RunPanel extends JPanel {
         c.gridy = 1;
         tapepanel.add(button, c);
         
-        tape_textarea = new JTextArea(2, 30);
-        tape_textarea.setEditable(false);
-        tape_textarea.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        tape_view = new TapeView();
+        tape_radius = 100;
         
         c.gridx = 1;
         c.gridy = 0;
         c.gridheight = 2;
         c.weightx = 1.0;
-        tapepanel.add(new JScrollPane(
-            tape_textarea,
+        JScrollPane scrollpane = new JScrollPane(
+            tape_view,
             JScrollPane.VERTICAL_SCROLLBAR_NEVER,
             JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS
-        ), c);
+        );
+        scrollpane.getViewport().addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                tapeScrolled();
+            }
+        });
+        tapepanel.add(scrollpane, c);
         
         return tapepanel;
     }
@@ -252,76 +375,153 @@ public class RunPanel extends JPanel {
     }
     
     private void closeClicked() {
+        stopRun();
         eventhandler.runPanelClosed(this);
     }
     
     private void startClicked() {
+        stopRun();
         run_warned = false;
         
         MachineName selection = (MachineName) machine_combo.getSelectedItem();
         Machine machine = null;
         simulation = null;
+        history = null;
+        tapes = null;
         if(selection != null) {
             machine = project.getMachine(selection.getName());
         }
         if(machine != null) {
+            // Multi-tape machines get the edited tape as the input tape and
+            // empty work tapes.
+            tapes = new Tape[project.getTapeCount()];
+            tapes[0] = tape;
+            for(int i = 1; i < tapes.length; i++) {
+                tapes[i] = new Tape();
+            }
             try {
-                simulation = new Simulation(project, machine.getName(), tape);
+                simulation = new Simulation(project, machine.getName(), tapes);
+                simulation.setDetectingLoops(tapes.length == 1);
+                simulation.setProfiling(heat_button.isSelected());
+                history = new SimulationHistory(simulation);
             } catch(SimulationException e) {
                 fail(e);
                 return;
             }
         }
         updateButtons();
-        updateStatus();
-        updateTapeView();
+        updateView();
+        updateProfileView();
         eventhandler.runPanelShowState(
             simulation.getMachine().getName(),
             simulation.getState().getName()
         );
     }
     
+    /**
+     * Searches the configurations of the selected machine on the tape, which
+     * also works for nondeterministic machines, and shows the result.
+     */
+    private void searchClicked() {
+        stopRun();
+        MachineName selection = (MachineName) machine_combo.getSelectedItem();
+        if(selection == null) {
+            return;
+        }
+        Tape[] search_tapes = new Tape[project.getTapeCount()];
+        search_tapes[0] = tape;
+        for(int i = 1; i < search_tapes.length; i++) {
+            search_tapes[i] = new Tape();
+        }
+        
+        NondeterministicSimulation search;
+        SimulationStatus result;
+        try {
+            search = new NondeterministicSimulation(
+                project, selection.getName(), search_tapes
+            );
+            result = search.run(
+                Long.MAX_VALUE, SEARCH_CONFIGURATIONS, SEARCH_TIMEOUT, null
+            );
+        } catch(SimulationException e) {
+            JOptionPane.showMessageDialog(
+                this,
+                "Search failed:\n" + e.getMessage(),
+                "Error",
+                JOptionPane.ERROR_MESSAGE
+            );
+            return;
+        }
+        
+        StringBuilder text = new StringBuilder();
+        text.append("Status: ");
+        text.append(result);
+        text.append("\nConfigurations: ");
+        text.append(search.getConfigurationCount());
+        text.append("\nSteps: ");
+        text.append(search.getStepCount());
+        if(result == SimulationStatus.ACCEPTED) {
+            text.append("\nAccepting state: '");
+            text.append(search.getState().getName());
+            text.append("' of machine '");
+            text.append(search.getMachine().getName());
+            text.append("'");
+            for(int i = 0; i < search.getTapeCount(); i++) {
+                text.append("\nTape ");
+                text.append(i + 1);
+                text.append(": ");
+                text.append(search.getTape(i).getContents());
+            }
+        }
+        JOptionPane.showMessageDialog(
+            this,
+            text.toString(),
+            "Search result",
+            JOptionPane.INFORMATION_MESSAGE
+        );
+    }
+    
     private void stepClicked() {
         step(1);
     }
     
+    private void backClicked() {
+        stopRun();
+        if(simulation != null) {
+            try {
+                history.back();
+            } catch(SimulationException e) {
+                fail(e);
+            }
+        }
+        updateView();
+        updateProfileView();
+        if(simulation != null) {
+            eventhandler.runPanelShowState(
+                simulation.getMachine().getName(),
+                simulation.getState().getName()
+            );
+        }
+    }
+    
     /**
      * Steps the simulation given number of times.
      * 
      * @param times How many times to step.
      */
     private void step(int times) {
+        stopRun();
         if(simulation != null) {
-            if(
-                !run_warned &&
-                run_button.isSelected() &&
-                simulation.getHead().getPosition() > 50000
-            ) {
-                int ret = JOptionPane.showConfirmDialog(
-                    this,
-                    "The tape is getting very long, are you sure you want to " +
-                    "continue running?",
-                    "Tape length warning",
-                    JOptionPane.YES_NO_OPTION,
-                    JOptionPane.WARNING_MESSAGE
-                );
-                if(ret == JOptionPane.YES_OPTION) {
-                    run_warned = true;
-                } else {
-                    run_button.setSelected(false);
-                    return;
-                }
-            }
             try {
                 for(int i = 0; i < times; i++) {
-                    simulation.step();
+                    history.step();
                 }
             } catch(SimulationException e) {
                 fail(e);
             }
         }
-        updateStatus();
-        updateTapeView();
+        updateView();
+        updateProfileView();
         if(simulation != null) {
             eventhandler.runPanelShowState(
                 simulation.getMachine().getName(),
@@ -333,31 +533,221 @@ public class RunPanel extends JPanel {
     private void runToggled() {
         run_warned = false;
         if(run_button.isSelected()) {
-            new Runnable() {
-                @Override
-                public void run() {
-                    if(
-                        run_button.isSelected() &&
-                        simulation != null &&
-                        simulation.getStatus() == SimulationStatus.RUNNING &&
-                        isDisplayable()
-                    ) {
-                        step(10000); 
-                        SwingUtilities.invokeLater(this);
-                    } else {
-                        run_button.setSelected(false);
-                    }
+            startRun();
+        } else {
+            stopRun();
+        }
+    }
+    
+    /**
+     * Starts running the simulation in a thread of its own. The thread steps
+     * the simulation in chunks that take about one frame each, adapting the
+     * number of steps in a chunk to the speed of the machine, and publishes a
+     * view of the simulation after each chunk. The view is shown by run_timer
+     * at a fixed rate, so the event dispatch thread only copies finished
+     * text into the components.
+     */
+    private void startRun() {
+        if(
+            run_thread != null ||
+            simulation == null ||
+            simulation.getStatus() != SimulationStatus.RUNNING
+        ) {
+            run_button.setSelected(run_thread != null);
+            return;
+        }
+        
+        run_stopping = false;
+        run_view = null;
+        run_profile = null;
+        if(simulation.getProfile() != null) {
+            run_profile = simulation.getProfile().copy();
+        }
+        final long version = project.getVersion();
+        run_thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runSimulation(version);
+            }
+        }, "Simulation");
+        run_thread.setDaemon(true);
+        eventhandler.runPanelRunning(true);
+        updateProfileView();
+        run_thread.start();
+        run_timer.start();
+    }
+    
+    /**
+     * Runs the simulation in the run thread until it halts, run_stopping is
+     * set, the project is modified or the head goes far enough to warn about,
+     * and then tells the event dispatch thread that the run has finished.
+     * Editing the project is disabled while the run thread runs, and the
+     * version check is a safeguard against modifications made anyway.
+     * 
+     * @param version The version of the project when the run started.
+     */
+    private void runSimulation(long version) {
+        final Thread thread = Thread.currentThread();
+        final long frame = FRAME_MILLIS * 1000000L;
+        Throwable error = null;
+        boolean warn = false;
+        long chunk = 1;
+        try {
+            while(
+                !run_stopping &&
+                simulation.getStatus() == SimulationStatus.RUNNING &&
+                project.getVersion() == version
+            ) {
+                if(
+                    !run_warned &&
+                    simulation.getHead().getPosition() > WARN_POSITION
+                ) {
+                    warn = true;
+                    break;
+                }
+                
+                long start = System.nanoTime();
+                for(
+                    long i = 0;
+                    i < chunk &&
+                    simulation.getStatus() == SimulationStatus.RUNNING;
+                    i++
+                ) {
+                    history.step();
                 }
-            }.run();
+                run_view = takeView();
+                
+                // Grow or shrink the chunks until one takes about a frame,
+                // including taking the view.
+                long time = System.nanoTime() - start;
+                if(time < frame / 2 && chunk < Integer.MAX_VALUE) {
+                    chunk *= 2;
+                } else if(time > frame && chunk > 1) {
+                    chunk /= 2;
+                }
+            }
+        } catch(Throwable e) {
+            // Any failure must reach runFinished, or the run would never
+            // stop on the event dispatch thread.
+            error = e;
+        }
+        
+        final Throwable final_error = error;
+        final boolean final_warn = warn;
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                runFinished(thread, final_error, final_warn);
+            }
+        });
+    }
+    
+    /**
+     * Shows the latest view published by the run thread.
+     */
+    private void runTick() {
+        if(!isDisplayable()) {
+            stopRun();
+            return;
+        }
+        View view = run_view;
+        if(view != null) {
+            run_view = null;
+            showView(view);
+            eventhandler.runPanelShowState(view.machine_name, view.state_name);
+        }
+    }
+    
+    /**
+     * Handles the run thread stopping by itself.
+     * 
+     * @param thread The run thread that stopped.
+     * @param error The error that stopped the run, null if none.
+     * @param warn True if the run stopped to warn about the tape length.
+     */
+    private void runFinished(
+        Thread thread,
+        Throwable error,
+        boolean warn
+    ) {
+        if(thread != run_thread) {
+            // Already stopped by stopRun().
+            return;
+        }
+        stopRun();
+        if(error instanceof SimulationException) {
+            fail((SimulationException) error);
+            return;
+        }
+        if(error != null) {
+            fail(new SimulationException("Internal error: " + error));
+            return;
+        }
+        if(warn) {
+            int ret = JOptionPane.showConfirmDialog(
+                this,
+                "The tape is getting very long, are you sure you want to " +
+                "continue running?",
+                "Tape length warning",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE
+            );
+            if(ret == JOptionPane.YES_OPTION) {
+                run_warned = true;
+                run_button.setSelected(true);
+                startRun();
+            }
+        }
+    }
+    
+    /**
+     * Stops the run thread if it is running, waits for it to finish and shows
+     * the simulation where it stopped.
+     */
+    private void stopRun() {
+        if(run_thread == null) {
+            return;
+        }
+        run_stopping = true;
+        boolean interrupted = false;
+        while(true) {
+            try {
+                run_thread.join();
+                break;
+            } catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        run_thread = null;
+        run_timer.stop();
+        run_view = null;
+        run_profile = null;
+        run_button.setSelected(false);
+        eventhandler.runPanelRunning(false);
+        
+        updateProfiling();
+        updateView();
+        updateProfileView();
+        if(simulation != null && isDisplayable()) {
+            eventhandler.runPanelShowState(
+                simulation.getMachine().getName(),
+                simulation.getState().getName()
+            );
         }
     }
     
     private void clearTapeClicked() {
+        stopRun();
         tape.setContents("");
-        updateTapeView();
+        tapeEdited();
+        updateView();
     }
     
     private void editTapeClicked() {
+        stopRun();
         String contents = JOptionPane.showInputDialog(
             this,
             "New tape content:",
@@ -365,7 +755,19 @@ public class RunPanel extends JPanel {
         );
         if(contents != null) {
             tape.setContents(contents);
-            updateTapeView();
+            tapeEdited();
+            updateView();
+        }
+    }
+    
+    /**
+     * Restarts the loop detection and the history of the simulation after the
+     * tape has been edited, as the earlier configurations are no longer valid.
+     */
+    private void tapeEdited() {
+        if(simulation != null) {
+            simulation.setDetectingLoops(simulation.getTapeCount() == 1);
+            history = new SimulationHistory(simulation);
         }
     }
     
@@ -379,77 +781,143 @@ public class RunPanel extends JPanel {
     }
     
     /**
-     * Updates the status button to reflect the status of the simulation.
+     * Updates the status label and the tape view to show the simulation.
      */
-    private void updateStatus() {
+    private void updateView() {
+        showView(takeView());
+    }
+    
+    /**
+     * Takes a view of the simulation. Called from the thread owning the
+     * simulation: the event dispatch thread or the run thread while it runs.
+     * 
+     * @return The text of the status label and a window of the tapes around
+     * the head of the first tape.
+     */
+    private View takeView() {
         if(simulation == null) {
-            status.setText("Status: NOTHING");
-        } else {
-            StringBuilder text = new StringBuilder();
-            switch(simulation.getStatus()) {
-                case RUNNING:
-                    text.append("Status: RUNNING");
-                    break;
-                case REJECTED:
-                    text.append("Status: REJECTED");
-                    break;
-                case ACCEPTED:
-                    text.append("Status: ACCEPTED");
-                    break;
-            }
-            
-            text.append(", Machine: '");
-            text.append(simulation.getMachine().getName());
-            text.append("', State: '");
-            text.append(simulation.getState().getName());
-            text.append("'");
-                    
-            status.setText(text.toString());
+            return new View(
+                "Status: NOTHING",
+                TapeView.takeSnapshot(
+                    new Tape[] {tape},
+                    null,
+                    tape_view.getVisibleCenter(),
+                    tape_radius
+                ),
+                null,
+                null
+            );
+        }
+        
+        StringBuilder text = new StringBuilder();
+        switch(simulation.getStatus()) {
+            case RUNNING:
+                text.append("Status: RUNNING");
+                break;
+            case REJECTED:
+                text.append("Status: REJECTED");
+                break;
+            case ACCEPTED:
+                text.append("Status: ACCEPTED");
+                break;
+            case LOOPING:
+                text.append("Status: LOOPING");
+                break;
         }
+        String machine_name = simulation.getMachine().getName();
+        String state_name = simulation.getState().getName();
+        text.append(", Machine: '");
+        text.append(machine_name);
+        text.append("', State: '");
+        text.append(state_name);
+        text.append("'");
+        String status_text = text.toString();
+        
+        int[] heads = new int[tapes.length];
+        for(int i = 0; i < tapes.length; i++) {
+            heads[i] = simulation.getHead(i).getPosition();
+        }
+        return new View(
+            status_text,
+            TapeView.takeSnapshot(tapes, heads, heads[0], tape_radius),
+            machine_name,
+            state_name
+        );
+    }
+    
+    /**
+     * Shows a view of the simulation in the status label and the tape view.
+     * 
+     * @param view The view to show.
+     */
+    private void showView(View view) {
+        status.setText(view.status_text);
+        
+        tape_view.setSnapshot(view.tape_snapshot);
+        tape_view.scrollToHead();
+        tape_radius = Math.max(2 * tape_view.getVisibleRadius(), 100);
         revalidate();
         repaint();
     }
     
     /**
-     * Updates the tape view to show the current status of the view.
+     * Profiles the simulation only while the heat map button is selected, as
+     * profiling slows down the run. A new profile is started from the current
+     * step whenever the button is selected. While the simulation runs in the
+     * background the run thread owns it, so the change is made when the run
+     * stops.
      */
-    private void updateTapeView() {
-        StringBuilder text = new StringBuilder();
-        int pos = 0;
+    private void updateProfiling() {
+        if(simulation == null || run_thread != null) {
+            return;
+        }
+        boolean profiling = heat_button.isSelected();
+        if(profiling != (simulation.getProfile() != null)) {
+            simulation.setProfiling(profiling);
+        }
+    }
+    
+    /**
+     * Shows the profile of the simulation as a heat map if the heat map
+     * button is selected, hides it otherwise.
+     */
+    private void updateProfileView() {
+        if(run_thread != null) {
+            // The run thread owns the profile, show the copy.
+            eventhandler.runPanelShowProfile(
+                heat_button.isSelected() ? run_profile : null
+            );
+        } else if(simulation != null && heat_button.isSelected()) {
+            eventhandler.runPanelShowProfile(simulation.getProfile());
+        } else {
+            eventhandler.runPanelShowProfile(null);
+        }
+    }
+    
+    /**
+     * Takes a new view of the tapes if the user has scrolled the tape view
+     * out of the cells of the last one. While the simulation runs, the view
+     * follows the head instead.
+     */
+    private void tapeScrolled() {
+        if(run_thread != null || tape_view.isVisibleCovered()) {
+            return;
+        }
+        tape_radius = Math.max(2 * tape_view.getVisibleRadius(), 100);
+        Tape[] shown_tapes = new Tape[] {tape};
+        int[] heads = null;
         if(simulation != null) {
-            pos = simulation.getHead().getPosition();
-            for(int i = 0; i < pos; i++) {
-                text.append(' ');
-            }
-            text.append('▼');
-        }
-        text.append("\n");
-        String contents = tape.getContents();
-        for(int i = 0; i < Math.max(contents.length(), pos) + 300; i++) {
-            char c = tape.getCharacterAt(i);
-            if(c == '\n') {
-                c = '�';
+            shown_tapes = tapes;
+            heads = new int[tapes.length];
+            for(int i = 0; i < tapes.length; i++) {
+                heads[i] = simulation.getHead(i).getPosition();
             }
-            text.append(c);
         }
-        tape_textarea.setText(text.toString());
-        
-        // Move the caret so that the position where the head is is visible.
-        tape_textarea.setCaretPosition(
-            Math.min(Math.max(2 * pos + 2 - 5, pos + 2), text.length() - 1)
-        );
-        final int pos2 = pos;
-        SwingUtilities.invokeLater(new Runnable() {
-            @Override
-            public void run() {
-                tape_textarea.setCaretPosition(
-                    Math.min(2 * pos2 + 7, tape_textarea.getText().length())
-                );
-            }
-        });
+        tape_view.setSnapshot(TapeView.takeSnapshot(
+            shown_tapes, heads, tape_view.getVisibleCenter(), tape_radius
+        ));
     }
     
-    
     /**
      * Shows error message based on exception and reset simulation.
      * 
@@ -463,8 +931,51 @@ public class RunPanel extends JPanel {
             JOptionPane.ERROR_MESSAGE
         );
         simulation = null;
+        history = null;
+        tapes = null;
         updateButtons();
-        updateStatus();
-        updateTapeView();
+        updateView();
+        updateProfileView();
+    }
+    
+    /**
+     * The status text and tapes shown for the simulation, taken in the thread
+     * owning the simulation.
+     */
+    private static class View {
+        /**
+         * The text of the status label.
+         */
+        final String status_text;
+        
+        /**
+         * The window of the tapes shown in the tape view.
+         */
+        final TapeView.Snapshot tape_snapshot;
+        
+        /**
+         * The name of the machine being simulated, null if none.
+         */
+        final String machine_name;
+        
+        /**
+         * The name of the state of the simulation, null if none.
+         */
+        final String state_name;
+        
+        /**
+         * Constructs a view.
+         */
+        View(
+            String status_text,
+            TapeView.Snapshot tape_snapshot,
+            String machine_name,
+            String state_name
+        ) {
+            this.status_text = status_text;
+            this.tape_snapshot = tape_snapshot;
+            this.machine_name = machine_name;
+            this.state_name = state_name;
+        }
     }
 }
@@ -1,5 +1,7 @@
 package fi.helsinki.cs.turridevelop.gui;
 
+import fi.helsinki.cs.turridevelop.logic.Profile;
+
 /**
  * Handler for handling the events from a RunPanel.
  */
@@ -19,4 +21,21 @@ public interface RunPanelEventHandler {
      * @param state The state.
      */
     public void runPanelShowState(String machine, String state);
+    
+    /**
+     * Function called when the profile of the run should be shown as a heat
+     * map, or hidden.
+     * 
+     * @param profile The profile to show, null to hide the heat map.
+     */
+    public void runPanelShowProfile(Profile profile);
+    
+    /**
+     * Function called when the simulation of the run starts or stops running
+     * in the background. The project must not be modified while it runs.
+     * 
+     * @param running True if the simulation started running, false if it
+     * stopped.
+     */
+    public void runPanelRunning(boolean running);
 }
@@ -0,0 +1,459 @@
+package fi.helsinki.cs.turridevelop.gui;
+
+import fi.helsinki.cs.turridevelop.logic.Tape;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+
+/**
+ * A component showing tapes and the positions of their heads. Each tape is
+ * shown as a line with a marker at the head position above a line with the
+ * characters of the tape.
+ * 
+ * The component is as wide as the written part of the tapes, but it only
+ * stores and paints a window of cells around the visible part, so its cost
+ * does not depend on the length of the tapes or the position of the heads.
+ * The window is taken from the tapes with takeSnapshot in the thread owning
+ * them and shown with setSnapshot.
+ * 
+ * Swing coordinates are ints, so the component cannot be wider than
+ * MAX_CELLS cells. When the written part of the tapes is wider, the component
+ * covers the MAX_CELLS cells around the head of the first tape, and the cut
+ * ends are marked with arrows.
+ */
+public class TapeView extends JComponent implements Scrollable {
+    /**
+     * The number of empty cells shown after the written part of the tapes.
+     */
+    private static final int MARGIN = 300;
+    
+    /**
+     * The largest number of cells the component may be wide. Leaves room for
+     * cells of up to 21 pixels in the int width of the component.
+     */
+    private static final int MAX_CELLS = 100000000;
+    
+    /**
+     * The number of columns in the preferred size of the viewport.
+     */
+    private static final int COLUMNS = 30;
+    
+    /**
+     * The snapshot being shown.
+     */
+    private Snapshot snapshot;
+    
+    /**
+     * The width of a cell in pixels.
+     */
+    private int cell_width;
+    
+    /**
+     * The height of a line in pixels.
+     */
+    private int line_height;
+    
+    /**
+     * The ascent of the font in pixels.
+     */
+    private int ascent;
+    
+    /**
+     * Constructs a TapeView showing no tapes.
+     */
+    public TapeView() {
+        setFont(new Font("Monospaced", Font.PLAIN, 14));
+        setBackground(Color.WHITE);
+        setOpaque(true);
+        snapshot = new Snapshot(
+            0, 0, false, false, 0, 0, new int[0], new char[0][], new int[0]
+        );
+    }
+    
+    /**
+     * Takes a snapshot of a window of tapes. The window covers the cells
+     * within radius positions from center, limited to the written part of the
+     * tapes and to the MAX_CELLS cells shown around the head of the first
+     * tape, or around position 0 if the heads are not shown.
+     * 
+     * @param tapes The tapes to show.
+     * @param heads The positions of the heads of the tapes, null if the heads
+     * are not shown.
+     * @param center The position in the middle of the window.
+     * @param radius The number of positions in the window on both sides of
+     * the center.
+     * @return The snapshot.
+     */
+    public static Snapshot takeSnapshot(
+        Tape[] tapes,
+        int[] heads,
+        int center,
+        int radius
+    ) {
+        long first = 0;
+        long end = 0;
+        for(int i = 0; i < tapes.length; i++) {
+            int start = tapes[i].getContentsStart();
+            first = Math.min(first, start);
+            end = Math.max(end, (long) start + tapes[i].getContentsLength());
+            if(heads != null) {
+                first = Math.min(first, heads[i]);
+                end = Math.max(end, heads[i] + 1L);
+            }
+        }
+        end = Math.min(end + MARGIN, (long) Integer.MAX_VALUE);
+        
+        // Cut the extent to MAX_CELLS cells around the anchor. The start is
+        // rounded to a quarter of the extent, so that it only moves when the
+        // head has moved far and the component is not resized on every step.
+        boolean cut_left = false;
+        boolean cut_right = false;
+        if(end - first > MAX_CELLS) {
+            long anchor = heads == null ? 0 : heads[0];
+            long step = MAX_CELLS / 4;
+            long cut_first = anchor - MAX_CELLS / 2;
+            cut_first -= ((cut_first % step) + step) % step;
+            cut_first = Math.max(cut_first, first);
+            cut_first = Math.min(cut_first, end - MAX_CELLS);
+            cut_left = cut_first > first;
+            cut_right = cut_first + MAX_CELLS < end;
+            first = cut_first;
+            end = cut_first + MAX_CELLS;
+        }
+        
+        long window_start = Math.max((long) center - radius, first);
+        long window_end = Math.min((long) center + radius, end);
+        
+        int[] starts = new int[tapes.length];
+        char[][] cells = new char[tapes.length][];
+        for(int i = 0; i < tapes.length; i++) {
+            long start = window_start;
+            if(!tapes[i].isBiInfinite()) {
+                start = Math.max(start, 0);
+            }
+            starts[i] = (int) start;
+            cells[i] = new char[(int) Math.max(window_end - start, 0)];
+            for(int j = 0; j < cells[i].length; j++) {
+                cells[i][j] = tapes[i].getCharacterAt(starts[i] + j);
+            }
+        }
+        
+        int[] shown_heads = new int[tapes.length];
+        for(int i = 0; i < tapes.length; i++) {
+            shown_heads[i] = heads == null ? Integer.MIN_VALUE : heads[i];
+        }
+        
+        return new Snapshot(
+            (int) first,
+            (int) end,
+            cut_left,
+            cut_right,
+            (int) window_start,
+            (int) window_end,
+            starts,
+            cells,
+            shown_heads
+        );
+    }
+    
+    /**
+     * Shows a snapshot.
+     * 
+     * @param snapshot The snapshot to show.
+     */
+    public void setSnapshot(Snapshot snapshot) {
+        boolean resize =
+            snapshot.first != this.snapshot.first ||
+            snapshot.end != this.snapshot.end ||
+            snapshot.cells.length != this.snapshot.cells.length;
+        this.snapshot = snapshot;
+        if(resize) {
+            revalidate();
+        }
+        repaint();
+    }
+    
+    /**
+     * Gets the position shown in the middle of the visible part.
+     * 
+     * @return The position.
+     */
+    public int getVisibleCenter() {
+        updateMetrics();
+        Rectangle visible = getVisibleRect();
+        return snapshot.first + (visible.x + visible.width / 2) / cell_width;
+    }
+    
+    /**
+     * Gets the number of positions needed in a window on both sides of the
+     * visible center to cover the visible part.
+     * 
+     * @return The radius to pass to takeSnapshot.
+     */
+    public int getVisibleRadius() {
+        updateMetrics();
+        return getVisibleRect().width / cell_width / 2 + 2;
+    }
+    
+    /**
+     * Tests whether the snapshot covers the visible part of the component.
+     * 
+     * @return True if every visible cell is in the window of the snapshot.
+     */
+    public boolean isVisibleCovered() {
+        updateMetrics();
+        Rectangle visible = getVisibleRect();
+        long start = snapshot.first + visible.x / cell_width;
+        long end = snapshot.first +
+            (visible.x + visible.width + cell_width - 1) / cell_width;
+        end = Math.min(end, snapshot.end);
+        if(start >= end) {
+            return true;
+        }
+        return start >= snapshot.window_start && end <= snapshot.window_end;
+    }
+    
+    /**
+     * Scrolls the component so that the head of the first tape is visible,
+     * centering it if it was not.
+     */
+    public void scrollToHead() {
+        if(
+            snapshot.heads.length == 0 ||
+            snapshot.heads[0] == Integer.MIN_VALUE ||
+            !(getParent() instanceof JViewport)
+        ) {
+            return;
+        }
+        updateMetrics();
+        JViewport viewport = (JViewport) getParent();
+        Rectangle visible = viewport.getViewRect();
+        long x = (long) (snapshot.heads[0] - snapshot.first) * cell_width;
+        if(
+            x >= visible.x + 5 * cell_width &&
+            x + 6 * cell_width <= visible.x + visible.width
+        ) {
+            return;
+        }
+        int width = getPreferredSize().width;
+        long view_x = x + cell_width / 2 - visible.width / 2;
+        view_x = Math.max(0, Math.min(view_x, width - visible.width));
+        viewport.setViewPosition(new Point((int) view_x, 0));
+    }
+    
+    @Override
+    public Dimension getPreferredSize() {
+        updateMetrics();
+        long width = (long) (snapshot.end - snapshot.first) * cell_width;
+        return new Dimension(
+            (int) Math.min(width, Integer.MAX_VALUE),
+            2 * Math.max(snapshot.cells.length, 1) * line_height
+        );
+    }
+    
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        updateMetrics();
+        return new Dimension(
+            COLUMNS * cell_width,
+            2 * Math.max(snapshot.cells.length, 1) * line_height
+        );
+    }
+    
+    @Override
+    public int getScrollableUnitIncrement(
+        Rectangle visible,
+        int orientation,
+        int direction
+    ) {
+        updateMetrics();
+        if(orientation == SwingConstants.HORIZONTAL) {
+            return cell_width;
+        }
+        return line_height;
+    }
+    
+    @Override
+    public int getScrollableBlockIncrement(
+        Rectangle visible,
+        int orientation,
+        int direction
+    ) {
+        if(orientation == SwingConstants.HORIZONTAL) {
+            return visible.width;
+        }
+        return visible.height;
+    }
+    
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+    
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return true;
+    }
+    
+    @Override
+    protected void paintComponent(Graphics g) {
+        updateMetrics();
+        Rectangle clip = g.getClipBounds();
+        if(clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        g.setColor(getForeground());
+        g.setFont(getFont());
+        
+        // Only paint the cells in the clip.
+        long start = snapshot.first + clip.x / cell_width;
+        long end = snapshot.first +
+            (clip.x + clip.width + cell_width - 1) / cell_width;
+        end = Math.min(end, snapshot.end);
+        
+        char[] text = new char[1];
+        for(int i = 0; i < snapshot.cells.length; i++) {
+            int y = 2 * i * line_height + ascent;
+            int head = snapshot.heads[i];
+            if(head != Integer.MIN_VALUE && head >= start && head < end) {
+                text[0] = '▼';
+                g.drawChars(text, 0, 1, x(head), y);
+            }
+            
+            y += line_height;
+            char[] cells = snapshot.cells[i];
+            int tape_start = snapshot.starts[i];
+            long from = Math.max(start, tape_start);
+            long to = Math.min(end, tape_start + cells.length);
+            for(long pos = from; pos < to; pos++) {
+                text[0] = cells[(int) (pos - tape_start)];
+                if(text[0] == '\n') {
+                    text[0] = '�';
+                }
+                g.drawChars(text, 0, 1, x(pos), y);
+            }
+        }
+        
+        // Mark the ends where the written part of the tapes is cut off.
+        for(int i = 0; i < snapshot.cells.length; i++) {
+            int y = 2 * i * line_height + ascent;
+            if(snapshot.cut_left && start == snapshot.first) {
+                text[0] = '◀';
+                g.drawChars(text, 0, 1, x(snapshot.first), y);
+            }
+            if(snapshot.cut_right && end == snapshot.end) {
+                text[0] = '▶';
+                g.drawChars(text, 0, 1, x(snapshot.end - 1), y);
+            }
+        }
+    }
+    
+    /**
+     * Gets the x coordinate of the left edge of a cell.
+     * 
+     * @param pos The position of the cell.
+     * @return The x coordinate.
+     */
+    private int x(long pos) {
+        return (int) Math.min(
+            (pos - snapshot.first) * cell_width, Integer.MAX_VALUE
+        );
+    }
+    
+    /**
+     * Updates the cell size from the font.
+     */
+    private void updateMetrics() {
+        FontMetrics metrics = getFontMetrics(getFont());
+        cell_width = Math.max(metrics.charWidth('M'), 1);
+        line_height = metrics.getHeight();
+        ascent = metrics.getAscent();
+    }
+    
+    /**
+     * A window of cells of tapes taken by takeSnapshot. Immutable, so it can
+     * be taken in one thread and shown in another.
+     */
+    public static class Snapshot {
+        /**
+         * The leftmost position shown in the component.
+         */
+        private final int first;
+        
+        /**
+         * One past the rightmost position shown in the component.
+         */
+        private final int end;
+        
+        /**
+         * Is the written part of the tapes cut off on the left of first?
+         */
+        private final boolean cut_left;
+        
+        /**
+         * Is the written part of the tapes cut off on the right of end?
+         */
+        private final boolean cut_right;
+        
+        /**
+         * The leftmost position of the window.
+         */
+        private final int window_start;
+        
+        /**
+         * One past the rightmost position of the window.
+         */
+        private final int window_end;
+        
+        /**
+         * The positions of the first cells of the windows of the tapes.
+         */
+        private final int[] starts;
+        
+        /**
+         * The cells of the windows of the tapes.
+         */
+        private final char[][] cells;
+        
+        /**
+         * The positions of the heads of the tapes, Integer.MIN_VALUE if the
+         * heads are not shown.
+         */
+        private final int[] heads;
+        
+        /**
+         * Constructs a snapshot.
+         */
+        private Snapshot(
+            int first,
+            int end,
+            boolean cut_left,
+            boolean cut_right,
+            int window_start,
+            int window_end,
+            int[] starts,
+            char[][] cells,
+            int[] heads
+        ) {
+            this.first = first;
+            this.end = end;
+            this.cut_left = cut_left;
+            this.cut_right = cut_right;
+            this.window_start = window_start;
+            this.window_end = window_end;
+            this.starts = starts;
+            this.cells = cells;
+            this.heads = heads;
+        }
+    }
+}
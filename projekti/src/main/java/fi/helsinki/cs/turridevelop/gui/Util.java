@@ -10,7 +10,8 @@ import java.awt.geom.Path2D;
  */
 public class Util {
     /**
-     * Gets the text used to describe transition.
+     * Gets the text used to describe transition. The actions of the tapes of
+     * a multi-tape transition are separated by " | ".
      * 
      * @param transition The transition to describe.
      * @param destination Set to true if the text should include the name of the
@@ -21,10 +22,33 @@ public class Util {
         Transition transition,
         boolean destination
     ) {
-        String input = transition.getInputCharacters();
-        Character output = transition.getOutputCharacter();
+        String destination_str = "";
+        if(destination) {
+            destination_str = transition.getDestination().getName() +  " : ";
+        }
+        
+        StringBuilder text = new StringBuilder(destination_str);
+        for(int tape = 0; tape < transition.getTapeCount(); tape++) {
+            if(tape != 0) {
+                text.append(" | ");
+            }
+            text.append(getTapeActionText(transition, tape));
+        }
+        return text.toString();
+    }
+    
+    /**
+     * Gets the text used to describe the action of a transition on one tape.
+     * 
+     * @param transition The transition to describe.
+     * @param tape The index of the tape.
+     * @return The string describing the action.
+     */
+    private static String getTapeActionText(Transition transition, int tape) {
+        String input = transition.getInputCharacters(tape);
+        Character output = transition.getOutputCharacter(tape);
         char movement = 'X';
-        switch(transition.getMovement()) {
+        switch(transition.getMovement(tape)) {
             case -1:
                 movement = 'L';
                 break;
@@ -36,15 +60,10 @@ public class Util {
                 break;
         }
         
-        String destination_str = "";
-        if(destination) {
-            destination_str = transition.getDestination().getName() +  " : ";
-        }
-        
         if(output == null) {
-            return destination_str + input + " -> " + movement;
+            return input + " -> " + movement;
         } else {
-            return destination_str + input + " -> " + output + ", " + movement;
+            return input + " -> " + output + ", " + movement;
         }
     }
     
@@ -0,0 +1,139 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * The characters of a tape numbered by small integer symbol ids. The empty
+ * character is symbol 0 and the other characters are numbered from 1 in
+ * character order.
+ */
+public class Alphabet {
+    /**
+     * The characters by their symbol ids.
+     */
+    private final char[] characters;
+    
+    /**
+     * The character corresponding to index 0 of symbols.
+     */
+    private final int base;
+    
+    /**
+     * The symbol ids of the characters starting from base, -1 for characters
+     * not in the alphabet.
+     */
+    private final int[] symbols;
+    
+    /**
+     * Constructs an alphabet.
+     * 
+     * @param empty_char The empty character, symbol 0.
+     * @param characters The other characters of the alphabet. May contain
+     * empty_char and duplicates.
+     */
+    public Alphabet(char empty_char, Collection<Character> characters) {
+        this(empty_char, toBitSet(characters));
+    }
+    
+    /**
+     * Constructs an alphabet from a set of characters.
+     * 
+     * @param empty_char The empty character, symbol 0.
+     * @param characters The other characters of the alphabet, as set bits. May
+     * contain empty_char. Not modified.
+     */
+    Alphabet(char empty_char, BitSet characters) {
+        BitSet others = (BitSet) characters.clone();
+        others.clear(empty_char);
+        
+        this.characters = new char[others.cardinality() + 1];
+        this.characters[0] = empty_char;
+        int c = others.nextSetBit(0);
+        for(int symbol = 1; c >= 0; symbol++) {
+            this.characters[symbol] = (char) c;
+            c = others.nextSetBit(c + 1);
+        }
+        
+        int first = empty_char;
+        int last = empty_char;
+        if(!others.isEmpty()) {
+            first = Math.min(first, others.nextSetBit(0));
+            last = Math.max(last, others.length() - 1);
+        }
+        base = first;
+        symbols = new int[last - first + 1];
+        Arrays.fill(symbols, -1);
+        for(int symbol = 0; symbol < this.characters.length; symbol++) {
+            symbols[this.characters[symbol] - base] = symbol;
+        }
+    }
+    
+    /**
+     * Gets the number of symbols.
+     * 
+     * @return The number of characters in the alphabet.
+     */
+    public int getSize() {
+        return characters.length;
+    }
+    
+    /**
+     * Gets the empty character.
+     * 
+     * @return The character of symbol 0.
+     */
+    public char getEmptyCharacter() {
+        return characters[0];
+    }
+    
+    /**
+     * Gets the character of a symbol.
+     * 
+     * @param symbol The symbol id, between 0 and getSize() - 1.
+     * @return The character with the symbol id.
+     */
+    public char getCharacter(int symbol) {
+        return characters[symbol];
+    }
+    
+    /**
+     * Gets the symbol id of a character.
+     * 
+     * @param c The character.
+     * @return The symbol id of c, -1 if c is not in the alphabet.
+     */
+    public int getSymbol(char c) {
+        int i = c - base;
+        if(i < 0 || i >= symbols.length) {
+            return -1;
+        }
+        return symbols[i];
+    }
+    
+    /**
+     * Gets the number of bits used for a cell when the symbols are packed.
+     * 
+     * @return The smallest power of two number of bits that can hold all the
+     * symbol ids: 1, 2, 4, 8 or 16.
+     */
+    public int getBitsPerCell() {
+        int bits = 1;
+        while((1 << bits) < characters.length) {
+            bits *= 2;
+        }
+        return bits;
+    }
+    
+    /**
+     * Gets the set bits of the characters of a collection.
+     */
+    private static BitSet toBitSet(Collection<Character> characters) {
+        BitSet set = new BitSet();
+        for(char c : characters) {
+            set.set(c);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,119 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+/**
+ * The result of simulating a machine on one input in BatchSimulation.
+ */
+public class BatchResult {
+    /**
+     * The input the machine was run on.
+     */
+    private final String input;
+    
+    /**
+     * The status of the simulation when it stopped.
+     */
+    private final SimulationStatus status;
+    
+    /**
+     * The number of steps taken.
+     */
+    private final long steps;
+    
+    /**
+     * The contents of the tape when the simulation stopped.
+     */
+    private final String tape;
+    
+    /**
+     * The message of the simulation error, null if there was no error.
+     */
+    private final String error;
+    
+    /**
+     * The wall time of the simulation in nanoseconds.
+     */
+    private final long time;
+    
+    /**
+     * Constructs BatchResult.
+     * 
+     * @param input The input the machine was run on.
+     * @param status The status of the simulation when it stopped.
+     * @param steps The number of steps taken.
+     * @param tape The contents of the tape when the simulation stopped.
+     * @param error The message of the simulation error, null if none.
+     * @param time The wall time of the simulation in nanoseconds.
+     */
+    public BatchResult(
+        String input,
+        SimulationStatus status,
+        long steps,
+        String tape,
+        String error,
+        long time
+    ) {
+        this.input = input;
+        this.status = status;
+        this.steps = steps;
+        this.tape = tape;
+        this.error = error;
+        this.time = time;
+    }
+    
+    /**
+     * Gets the input.
+     * 
+     * @return The initial contents of the tape.
+     */
+    public String getInput() {
+        return input;
+    }
+    
+    /**
+     * Gets the status of the simulation.
+     * 
+     * @return ACCEPTED or REJECTED if the simulation finished, LIMIT_REACHED
+     * if it was stopped by the step limit, the timeout or cancellation, and
+     * RUNNING if it was stopped by a simulation error.
+     */
+    public SimulationStatus getStatus() {
+        return status;
+    }
+    
+    /**
+     * Gets the number of steps.
+     * 
+     * @return The number of transitions taken.
+     */
+    public long getStepCount() {
+        return steps;
+    }
+    
+    /**
+     * Gets the final tape contents.
+     * 
+     * @return The contents of the tape when the simulation stopped.
+     */
+    public String getTapeContents() {
+        return tape;
+    }
+    
+    /**
+     * Gets the simulation error.
+     * 
+     * @return The message of the SimulationException that stopped the
+     * simulation, or null if there was none.
+     */
+    public String getError() {
+        return error;
+    }
+    
+    /**
+     * Gets the wall time.
+     * 
+     * @return The time taken by the simulation in nanoseconds.
+     */
+    public long getTime() {
+        return time;
+    }
+}
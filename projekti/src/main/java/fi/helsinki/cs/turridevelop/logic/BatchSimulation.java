@@ -0,0 +1,506 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Simulates a machine on many inputs in parallel.
+ * 
+ * The project is compiled once and the CompiledProject is shared by all
+ * simulations, each of which has its own tape. The inputs are run on a fixed
+ * pool of threads that take the next input from a shared queue whenever they
+ * finish one, so long and short inputs are balanced between the threads.
+ */
+public class BatchSimulation {
+    /**
+     * The compiled project to simulate.
+     */
+    private final CompiledProject project;
+    
+    /**
+     * The name of the machine to simulate.
+     */
+    private final String machine_name;
+    
+    /**
+     * The maximum number of steps per input.
+     */
+    private long max_steps;
+    
+    /**
+     * The maximum wall time per input in milliseconds.
+     */
+    private long timeout;
+    
+    /**
+     * The block size of the macro steps, 0 if disabled.
+     */
+    private int block_size;
+    
+    /**
+     * Are loops detected?
+     */
+    private boolean detect_loops;
+    
+    /**
+     * Are the tapes packed?
+     */
+    private boolean pack_tapes;
+    
+    /**
+     * Are the tapes memory-mapped?
+     */
+    private boolean map_tapes;
+    
+    /**
+     * Are the tapes run-length encoded?
+     */
+    private boolean run_length_tapes;
+    
+    /**
+     * The characters of the project, for the alphabets of packed tapes.
+     */
+    private final SortedSet<Character> characters;
+    
+    /**
+     * The number of threads to use.
+     */
+    private int thread_count;
+    
+    /**
+     * The token that cancels all simulations of the batch.
+     */
+    private final CancellationToken cancellation;
+    
+    /**
+     * Constructs a batch simulation for a machine in a project. The project is
+     * compiled, so later changes to it do not affect the batch.
+     * 
+     * By default there is no step limit or timeout and as many threads as there are
+     * available processors are used.
+     * 
+     * @param project The project to simulate.
+     * @param machine_name The name of the machine to simulate.
+     * @throws IllegalArgumentException if the project cannot be compiled,
+     * for example because it has multi-tape machines.
+     */
+    public BatchSimulation(Project project, String machine_name) {
+        this(new CompiledProject(project), machine_name);
+    }
+    
+    /**
+     * Constructs a batch simulation for a machine in a compiled project.
+     * 
+     * @param project The compiled project to simulate.
+     * @param machine_name The name of the machine to simulate.
+     */
+    public BatchSimulation(CompiledProject project, String machine_name) {
+        this.project = project;
+        this.machine_name = machine_name;
+        max_steps = Long.MAX_VALUE;
+        timeout = Long.MAX_VALUE;
+        block_size = 0;
+        detect_loops = false;
+        pack_tapes = false;
+        map_tapes = false;
+        run_length_tapes = false;
+        characters = project.getCharacters();
+        thread_count = Runtime.getRuntime().availableProcessors();
+        cancellation = new CancellationToken();
+    }
+    
+    /**
+     * Gets the step limit.
+     * 
+     * @return The maximum number of steps simulated per input.
+     */
+    public long getMaxSteps() {
+        return max_steps;
+    }
+    
+    /**
+     * Sets the step limit. Simulations that reach the limit are stopped and
+     * reported with status LIMIT_REACHED.
+     * 
+     * @param max_steps The maximum number of steps simulated per input.
+     */
+    public void setMaxSteps(long max_steps) {
+        this.max_steps = max_steps;
+    }
+    
+    /**
+     * Gets the timeout.
+     * 
+     * @return The maximum wall time per input in milliseconds.
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+    
+    /**
+     * Sets the timeout. Simulations that run longer are stopped and reported
+     * with status LIMIT_REACHED, so that a machine that does not halt on some
+     * input does not keep a thread busy forever.
+     * 
+     * @param timeout The maximum wall time per input in milliseconds,
+     * Long.MAX_VALUE for no limit.
+     */
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+    
+    /**
+     * Gets the block size of the macro steps.
+     * 
+     * @return The number of tape cells in a block, 0 if the macro steps are
+     * disabled.
+     */
+    public int getBlockSize() {
+        return block_size;
+    }
+    
+    /**
+     * Sets the block size of the macro steps, see
+     * CompiledSimulation.setBlockSize. Each input has its own cache.
+     * 
+     * @param block_size The number of tape cells in a block, or 0 to disable
+     * the macro steps.
+     */
+    public void setBlockSize(int block_size) {
+        if(block_size < 0) {
+            throw new IllegalArgumentException("Block size must not be negative.");
+        }
+        this.block_size = block_size;
+    }
+    
+    /**
+     * Tests whether loops are detected.
+     * 
+     * @return True if simulations that repeat a configuration are stopped.
+     */
+    public boolean isDetectingLoops() {
+        return detect_loops;
+    }
+    
+    /**
+     * Enables or disables loop detection, see
+     * CompiledSimulation.setDetectingLoops. Simulations found to never halt
+     * are reported with status LOOPING instead of running to the step limit
+     * or the timeout.
+     * 
+     * @param detect_loops True to enable loop detection.
+     */
+    public void setDetectingLoops(boolean detect_loops) {
+        this.detect_loops = detect_loops;
+    }
+    
+    /**
+     * Tests whether the tapes are packed.
+     * 
+     * @return True if the inputs are run on PackedTapes.
+     */
+    public boolean isPackingTapes() {
+        return pack_tapes;
+    }
+    
+    /**
+     * Sets whether the inputs are run on PackedTapes over the characters of
+     * the project and the input, which take a fraction of the memory of
+     * ordinary tapes when the alphabet is small.
+     * 
+     * @param pack_tapes True to pack the tapes.
+     */
+    public void setPackingTapes(boolean pack_tapes) {
+        this.pack_tapes = pack_tapes;
+    }
+    
+    /**
+     * Tests whether the tapes are memory-mapped.
+     * 
+     * @return True if the inputs are run on MappedTapes.
+     */
+    public boolean isMappingTapes() {
+        return map_tapes;
+    }
+    
+    /**
+     * Sets whether the inputs are run on MappedTapes, which are stored in
+     * temporary files outside the heap. Takes precedence over packing the
+     * tapes.
+     * 
+     * @param map_tapes True to map the tapes.
+     */
+    public void setMappingTapes(boolean map_tapes) {
+        this.map_tapes = map_tapes;
+    }
+    
+    /**
+     * Tests whether the tapes are run-length encoded.
+     * 
+     * @return True if the inputs are run on RunLengthTapes.
+     */
+    public boolean isRunLengthTapes() {
+        return run_length_tapes;
+    }
+    
+    /**
+     * Sets whether the inputs are run on RunLengthTapes, which take memory
+     * proportional to the number of runs of equal characters. Mapping the
+     * tapes takes precedence over this, and this over packing the tapes.
+     * 
+     * @param run_length_tapes True to run-length encode the tapes.
+     */
+    public void setRunLengthTapes(boolean run_length_tapes) {
+        this.run_length_tapes = run_length_tapes;
+    }
+    
+    /**
+     * Cancels the batch. Running simulations stop within a few thousand steps
+     * and they and all later ones are reported with status LIMIT_REACHED. The
+     * batch cannot be used after it has been cancelled. May be called from any
+     * thread.
+     */
+    public void cancel() {
+        cancellation.cancel();
+    }
+    
+    /**
+     * Tests whether the batch has been cancelled.
+     * 
+     * @return True if cancel() has been called.
+     */
+    public boolean isCancelled() {
+        return cancellation.isCancelled();
+    }
+    
+    /**
+     * Gets the number of threads.
+     * 
+     * @return The number of threads used to run the inputs.
+     */
+    public int getThreadCount() {
+        return thread_count;
+    }
+    
+    /**
+     * Sets the number of threads.
+     * 
+     * @param thread_count The number of threads used to run the inputs, at
+     * least 1.
+     */
+    public void setThreadCount(int thread_count) {
+        if(thread_count < 1) {
+            throw new IllegalArgumentException("Thread count must be positive.");
+        }
+        this.thread_count = thread_count;
+    }
+    
+    /**
+     * Simulates the machine on one input in the calling thread.
+     * 
+     * @param input The initial contents of the tape.
+     * @return The result of the simulation.
+     */
+    public BatchResult run(String input) {
+        return run(input, null);
+    }
+    
+    /**
+     * Simulates the machine on one input in the calling thread, reusing a
+     * mapped tape if the tapes are mapped.
+     * 
+     * @param input The initial contents of the tape.
+     * @param free_tapes The mapped tapes free for reuse, shared by the threads
+     * of a batch. The mapped tape of the input is taken from and returned to
+     * it. Null to close the mapped tape after the run.
+     * @return The result of the simulation.
+     */
+    private BatchResult run(String input, ArrayDeque<MappedTape> free_tapes) {
+        long start_time = System.nanoTime();
+        CompiledSimulation simulation = null;
+        SimulationStatus status = SimulationStatus.RUNNING;
+        String error = null;
+        Tape tape = null;
+        try {
+            if(map_tapes) {
+                tape = takeMappedTape(input, free_tapes);
+            } else if(run_length_tapes) {
+                tape = new RunLengthTape(input, '␣', false);
+            } else if(pack_tapes) {
+                tape = new PackedTape(input, '␣', false, characters);
+            } else {
+                tape = new Tape(input);
+            }
+            simulation = new CompiledSimulation(project, machine_name, tape);
+            simulation.setBlockSize(block_size);
+            simulation.setDetectingLoops(detect_loops);
+            status = simulation.run(max_steps, timeout, cancellation);
+        } catch(SimulationException e) {
+            error = e.getMessage();
+        } catch(FilesystemException e) {
+            error = e.getMessage();
+        }
+        long time = System.nanoTime() - start_time;
+        
+        try {
+            if(simulation == null) {
+                return new BatchResult(
+                    input, SimulationStatus.RUNNING, 0, input, error, time
+                );
+            }
+            return new BatchResult(
+                input,
+                status,
+                simulation.getStepCount(),
+                tape.getContents(),
+                error,
+                time
+            );
+        } finally {
+            if(tape instanceof MappedTape) {
+                if(free_tapes == null) {
+                    closeMappedTape((MappedTape) tape);
+                } else {
+                    synchronized(free_tapes) {
+                        free_tapes.push((MappedTape) tape);
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Simulates the machine on all inputs in parallel.
+     * 
+     * @param inputs The initial contents of the tapes.
+     * @return The results in the iteration order of inputs.
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting for the results. The batch is then cancelled.
+     */
+    public List<BatchResult> run(
+        Collection<String> inputs
+    ) throws InterruptedException {
+        // Each thread returns its mapped tape before taking the next input, so
+        // at most thread_count tapes are ever created for the batch.
+        ArrayDeque<MappedTape> free_tapes = new ArrayDeque<MappedTape>();
+        try {
+            return run(inputs, free_tapes);
+        } finally {
+            for(MappedTape tape : free_tapes) {
+                closeMappedTape(tape);
+            }
+        }
+    }
+    
+    /**
+     * Simulates the machine on all inputs in parallel, reusing the mapped
+     * tapes.
+     * 
+     * @param inputs The initial contents of the tapes.
+     * @param free_tapes The mapped tapes free for reuse.
+     * @return The results in the iteration order of inputs.
+     * @throws InterruptedException if the calling thread is interrupted while
+     * waiting for the results.
+     */
+    private List<BatchResult> run(
+        Collection<String> inputs,
+        final ArrayDeque<MappedTape> free_tapes
+    ) throws InterruptedException {
+        ArrayList<BatchResult> results =
+            new ArrayList<BatchResult>(inputs.size());
+        
+        if(thread_count == 1 || inputs.size() <= 1) {
+            for(String input : inputs) {
+                results.add(run(input, free_tapes));
+            }
+            return results;
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(
+            Math.min(thread_count, inputs.size())
+        );
+        boolean finished = false;
+        try {
+            ArrayList<Future<BatchResult>> futures =
+                new ArrayList<Future<BatchResult>>(inputs.size());
+            for(final String input : inputs) {
+                futures.add(executor.submit(new Callable<BatchResult>() {
+                    @Override
+                    public BatchResult call() {
+                        return run(input, free_tapes);
+                    }
+                }));
+            }
+            
+            for(Future<BatchResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch(ExecutionException e) {
+                    // run(String) only throws unexpected runtime exceptions.
+                    throw new RuntimeException(
+                        "Batch simulation failed.", e.getCause()
+                    );
+                }
+            }
+            finished = true;
+        } finally {
+            if(!finished) {
+                // Stop the simulations still running in the pool threads.
+                cancel();
+            }
+            executor.shutdownNow();
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Gets a mapped tape with the input, reusing a free tape if there is one.
+     * 
+     * @param input The initial contents of the tape.
+     * @param free_tapes The mapped tapes free for reuse, null to always create
+     * a new tape.
+     * @return The tape.
+     * @throws FilesystemException if a new tape could not be created.
+     */
+    private static MappedTape takeMappedTape(
+        String input,
+        ArrayDeque<MappedTape> free_tapes
+    ) throws FilesystemException {
+        MappedTape tape = null;
+        if(free_tapes != null) {
+            synchronized(free_tapes) {
+                tape = free_tapes.poll();
+            }
+        }
+        if(tape == null) {
+            return new MappedTape(input, '␣', false);
+        }
+        tape.setContents(input);
+        return tape;
+    }
+    
+    /**
+     * Closes a mapped tape, ignoring errors.
+     * 
+     * @param tape The tape to close.
+     */
+    private static void closeMappedTape(MappedTape tape) {
+        try {
+            tape.close();
+        } catch(IOException e) {
+            // The file is deleted on exit at the latest.
+        }
+    }
+}
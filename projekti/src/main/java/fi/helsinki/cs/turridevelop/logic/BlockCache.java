@@ -0,0 +1,204 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Memoized macro steps over fixed-size tape blocks for CompiledSimulation.
+ * 
+ * The tape is divided into blocks of block size cells, the first one starting
+ * at position 0. A macro step simulates the machine from a state and a head
+ * position inside a block until the head leaves the block, and caches the
+ * resulting block contents, state, head position and step count by the
+ * starting state, head position and block contents. When a machine sweeps
+ * over the same contents again, the whole block is crossed with one lookup.
+ * 
+ * Only transitions that do not enter submachines or accepting states are
+ * simulated inside blocks, so the state stack below the top never changes.
+ * The rest of the transitions are left for the ordinary step.
+ */
+class BlockCache {
+    /**
+     * The maximum number of steps in one macro step, so that a machine that
+     * stays inside one block for long still makes progress in bounded chunks.
+     */
+    static final int MAX_STEPS = 1 << 12;
+    
+    /**
+     * The number of cells stored in the keys and results of the cache after
+     * which the cache is cleared, bounding its memory use to some tens of
+     * megabytes whatever the block size.
+     */
+    static final int MAX_CELLS = 1 << 22;
+    
+    /**
+     * The compiled project whose machines are simulated.
+     */
+    private final CompiledProject project;
+    
+    /**
+     * The number of cells in a block.
+     */
+    private final int block_size;
+    
+    /**
+     * The cached results by their keys.
+     */
+    private final HashMap<Key, BlockResult> results;
+    
+    /**
+     * The number of cells stored in results.
+     */
+    private int stored_cells;
+    
+    /**
+     * The key used for lookups, so that a lookup allocates nothing.
+     */
+    private final Key probe;
+    
+    /**
+     * Constructs an empty cache.
+     * 
+     * @param project The compiled project whose machines are simulated.
+     * @param block_size The number of cells in a block, at least 1.
+     */
+    BlockCache(CompiledProject project, int block_size) {
+        if(block_size < 1 || block_size > Character.MAX_VALUE - 4) {
+            throw new IllegalArgumentException("Invalid block size.");
+        }
+        this.project = project;
+        this.block_size = block_size;
+        results = new HashMap<Key, BlockResult>();
+        stored_cells = 0;
+        probe = new Key();
+    }
+    
+    /**
+     * Gets the block size.
+     * 
+     * @return The number of cells in a block.
+     */
+    int getBlockSize() {
+        return block_size;
+    }
+    
+    /**
+     * Gets the result of a macro step, computing it if it is not cached.
+     * 
+     * @param state The id of the state on the top of the state stack.
+     * @param offset The position of the head relative to the start of the
+     * block.
+     * @param leftmost True if the block starts at position 0 of a tape that
+     * is not bi-infinite, so that the head cannot move left from it.
+     * @param contents The contents of the block. Not modified.
+     * @return The result of the macro step.
+     */
+    BlockResult get(int state, int offset, boolean leftmost, char[] contents) {
+        probe.set(state, offset, leftmost, contents);
+        BlockResult result = results.get(probe);
+        if(result == null) {
+            result = compute(state, offset, leftmost, contents);
+            if(stored_cells + 2 * block_size > MAX_CELLS) {
+                results.clear();
+                stored_cells = 0;
+            }
+            Key key = new Key();
+            key.set(state, offset, leftmost, contents.clone());
+            results.put(key, result);
+            stored_cells += 2 * block_size;
+        }
+        return result;
+    }
+    
+    /**
+     * Simulates a macro step.
+     */
+    private BlockResult compute(
+        int state,
+        int offset,
+        boolean leftmost,
+        char[] contents
+    ) {
+        char[] cells = contents.clone();
+        int steps = 0;
+        while(steps < MAX_STEPS && offset >= 0 && offset < block_size) {
+            int transition = project.getTransition(state, cells[offset]);
+            if(transition == -1 || !project.plain[transition]) {
+                break;
+            }
+            if(project.writes[transition]) {
+                cells[offset] = project.outputs[transition];
+            }
+            offset += project.movements[transition];
+            if(offset < 0 && leftmost) {
+                offset = 0;
+            }
+            state = project.destinations[transition];
+            steps++;
+        }
+        return new BlockResult(cells, state, offset, steps);
+    }
+    
+    /**
+     * The key of a macro step: the state, the head position and the block
+     * contents it starts from.
+     */
+    private static class Key {
+        /**
+         * The id of the state.
+         */
+        int state;
+        
+        /**
+         * The position of the head relative to the start of the block.
+         */
+        int offset;
+        
+        /**
+         * True if the head cannot move left from the block.
+         */
+        boolean leftmost;
+        
+        /**
+         * The contents of the block.
+         */
+        char[] contents;
+        
+        /**
+         * The hash code of the key.
+         */
+        int hash;
+        
+        /**
+         * Sets the fields of the key and computes its hash code.
+         */
+        void set(int state, int offset, boolean leftmost, char[] contents) {
+            this.state = state;
+            this.offset = offset;
+            this.leftmost = leftmost;
+            this.contents = contents;
+            int h = Arrays.hashCode(contents);
+            h = 31 * h + state;
+            h = 31 * h + offset;
+            hash = 2 * h + (leftmost ? 1 : 0);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) obj;
+            return hash == key.hash &&
+                state == key.state &&
+                offset == key.offset &&
+                leftmost == key.leftmost &&
+                Arrays.equals(contents, key.contents);
+        }
+    }
+}
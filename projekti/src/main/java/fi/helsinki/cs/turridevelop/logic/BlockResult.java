@@ -0,0 +1,45 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+/**
+ * The result of simulating a compiled machine inside one tape block, as
+ * computed by BlockCache.
+ */
+class BlockResult {
+    /**
+     * The contents of the block afterwards.
+     */
+    final char[] contents;
+    
+    /**
+     * The id of the state afterwards.
+     */
+    final int state;
+    
+    /**
+     * The position of the head afterwards relative to the start of the block:
+     * -1 or the block size if the head left the block, otherwise inside it.
+     */
+    final int offset;
+    
+    /**
+     * The number of steps taken, 0 if the next transition cannot be simulated
+     * inside the block.
+     */
+    final int steps;
+    
+    /**
+     * Constructs BlockResult.
+     * 
+     * @param contents The contents of the block afterwards.
+     * @param state The id of the state afterwards.
+     * @param offset The position of the head afterwards relative to the start
+     * of the block.
+     * @param steps The number of steps taken.
+     */
+    BlockResult(char[] contents, int state, int offset, int steps) {
+        this.contents = contents;
+        this.state = state;
+        this.offset = offset;
+        this.steps = steps;
+    }
+}
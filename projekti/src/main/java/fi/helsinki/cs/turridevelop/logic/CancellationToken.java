@@ -0,0 +1,36 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+/**
+ * Token for cancelling simulation runs from another thread. Once cancelled,
+ * the token stays cancelled.
+ */
+public class CancellationToken {
+    /**
+     * Has the token been cancelled?
+     */
+    private volatile boolean cancelled;
+    
+    /**
+     * Constructs a token that is not cancelled.
+     */
+    public CancellationToken() {
+        cancelled = false;
+    }
+    
+    /**
+     * Cancels the runs using the token. They stop within a short number of
+     * steps.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    /**
+     * Tests whether the token has been cancelled.
+     * 
+     * @return True if cancel() has been called.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,675 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import fi.helsinki.cs.turridevelop.util.IntStack;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * Project compiled into dense integer-indexed tables for CompiledSimulation.
+ * 
+ * Every state is given an integer id, every character read by some transition
+ * a symbol id and every transition a transition id. A state that is reached
+ * from multiple machines (through a transition to a state of another machine)
+ * gets an id for each of them, because Simulation reports the machine on the
+ * top of its machine stack instead of the machine containing the state.
+ * 
+ * Submachine calls that are not recursive are inlined: the states of the
+ * submachine get separate ids for each calling state, and each such id knows
+ * the id of the calling state to return to. A transition into a state with
+ * an inlined submachine then leads directly to the start state of the
+ * submachine, and a transition into an accepting state of an inlined
+ * submachine leads directly back to the calling state, so neither pushes or
+ * pops anything. Recursive calls, and all calls once the number of ids grows
+ * too large, are made through the state stack using precomputed entry chains.
+ * 
+ * Only deterministic single-tape projects can be compiled; multi-tape
+ * machines are run with Simulation and nondeterministic machines with
+ * NondeterministicSimulation.
+ * 
+ * The compiled project is a snapshot: later changes to the Project are not
+ * reflected in it. It is not modified after construction, so it can be shared
+ * between threads.
+ */
+public class CompiledProject {
+    /**
+     * The number of state ids after which submachine calls are no longer
+     * inlined, to bound the size of the tables of projects with many nested
+     * calls.
+     */
+    private static final int MAX_INLINED_STATES = 1 << 16;
+    
+    /**
+     * The states by their ids.
+     */
+    private final State[] states;
+    
+    /**
+     * The machines of the states by the state ids.
+     */
+    private final Machine[] machines;
+    
+    /**
+     * The ids of the start states of the machines by the machine names, -1 for
+     * machines without a start state.
+     */
+    private final HashMap<String, Integer> start_states;
+    
+    /**
+     * Is the state accepting, by state id?
+     */
+    final boolean[] accepting;
+    
+    /**
+     * The ids of the states pushed onto the state stack when the state is
+     * entered, i.e. the start states of the submachine chain of the state, by
+     * state id. Consecutive inlined calls are collapsed into the id of the
+     * innermost one. Null if the state has no submachine.
+     */
+    final int[][] entry_chains;
+    
+    /**
+     * Does the first state of the entry chain replace the state on the top
+     * of the stack instead of being pushed, by state id? True if the first
+     * submachine call of the chain is inlined.
+     */
+    final boolean[] entry_replaces;
+    
+    /**
+     * The id of the calling state to return to when the state is accepting,
+     * by state id. -1 if the state is not in an inlined submachine, in which
+     * case it is popped from the stack instead.
+     */
+    final int[] parents;
+    
+    /**
+     * The message of the SimulationException thrown after pushing the entry
+     * chain when the state is entered, by state id. Null if entering the state
+     * succeeds.
+     */
+    final String[] entry_errors;
+    
+    /**
+     * The character corresponding to index 0 of symbol_ids.
+     */
+    final int symbol_base;
+    
+    /**
+     * The symbol ids of the characters starting from symbol_base. Symbol 0 is
+     * used for all characters that no transition reads.
+     */
+    final int[] symbol_ids;
+    
+    /**
+     * The number of symbols, including symbol 0.
+     */
+    final int symbol_count;
+    
+    /**
+     * Transition table: the transition id for state s reading symbol c is at
+     * index s * symbol_count + c, -1 if there is no such transition.
+     */
+    final int[] table;
+    
+    /**
+     * The destination state ids of the transitions.
+     */
+    final int[] destinations;
+    
+    /**
+     * Does the transition write a character?
+     */
+    final boolean[] writes;
+    
+    /**
+     * The characters written by the transitions that write.
+     */
+    final char[] outputs;
+    
+    /**
+     * The movements of the transitions.
+     */
+    final int[] movements;
+    
+    /**
+     * Is entering the destination of the transition trivial, i.e. the
+     * destination does not push or pop anything? The destinations of such
+     * transitions already are the states reached after calling inlined
+     * submachines and returning from them.
+     */
+    final boolean[] plain;
+    
+    /**
+     * The input characters of the transitions that are scans, null for the
+     * other transitions. A scan is a plain transition back to its own state
+     * id that does not change the tape and moves the head, so it is taken
+     * repeatedly until the head reaches another character.
+     */
+    final String[] scans;
+    
+    /**
+     * Compiles a project, inlining non-recursive submachine calls.
+     * 
+     * @param project The project to compile.
+     * @throws IllegalArgumentException if the project is too large to be
+     * compiled or has multi-tape or nondeterministic machines.
+     */
+    public CompiledProject(Project project) {
+        this(project, true);
+    }
+    
+    /**
+     * Compiles a project.
+     * 
+     * @param project The project to compile.
+     * @param inline True to inline non-recursive submachine calls, false to
+     * make all calls through the state stack.
+     * @throws IllegalArgumentException if the project is too large to be
+     * compiled or has multi-tape or nondeterministic machines.
+     */
+    public CompiledProject(Project project, boolean inline) {
+        if(project.getTapeCount() > 1) {
+            throw new IllegalArgumentException(
+                "Multi-tape projects cannot be compiled."
+            );
+        }
+        if(project.isNondeterministic()) {
+            throw new IllegalArgumentException(
+                "Nondeterministic projects cannot be compiled."
+            );
+        }
+        ArrayList<State> state_list = new ArrayList<State>();
+        ArrayList<Machine> machine_list = new ArrayList<Machine>();
+        ArrayList<Integer> parent_list = new ArrayList<Integer>();
+        HashMap<Integer, IdentityHashMap<Machine, IdentityHashMap<State, Integer>>> ids =
+            new HashMap<Integer, IdentityHashMap<Machine, IdentityHashMap<State, Integer>>>();
+        
+        // Stop inlining before the transition table could become too large.
+        int inline_limit = 0;
+        if(inline) {
+            TreeSet<Character> project_alphabet = new TreeSet<Character>();
+            for(String machine_name : project.getMachineNames()) {
+                Machine machine = project.getMachine(machine_name);
+                for(String state_name : machine.getStateNames()) {
+                    project_alphabet.addAll(
+                        machine.getState(state_name).getInputCharacters()
+                    );
+                }
+            }
+            inline_limit = Math.min(
+                MAX_INLINED_STATES,
+                Integer.MAX_VALUE / 2 / (project_alphabet.size() + 1)
+            );
+        }
+        
+        // Give ids to the states of all machines in deterministic order.
+        start_states = new HashMap<String, Integer>();
+        for(String machine_name : new TreeSet<String>(project.getMachineNames())) {
+            Machine machine = project.getMachine(machine_name);
+            for(String state_name : new TreeSet<String>(machine.getStateNames())) {
+                getId(
+                    machine.getState(state_name), machine, -1,
+                    ids, state_list, machine_list, parent_list
+                );
+            }
+            State start = machine.getState("start");
+            if(start == null) {
+                start_states.put(machine_name, -1);
+            } else {
+                start_states.put(
+                    machine_name,
+                    getId(
+                        start, machine, -1,
+                        ids, state_list, machine_list, parent_list
+                    )
+                );
+            }
+        }
+        
+        // Resolve entry chains and transitions. New ids may be added for
+        // states reached from other machines while iterating.
+        ArrayList<int[]> chain_list = new ArrayList<int[]>();
+        ArrayList<Boolean> replace_list = new ArrayList<Boolean>();
+        ArrayList<String> error_list = new ArrayList<String>();
+        ArrayList<ArrayList<Transition>> transition_lists =
+            new ArrayList<ArrayList<Transition>>();
+        ArrayList<int[]> destination_lists = new ArrayList<int[]>();
+        TreeSet<Character> alphabet = new TreeSet<Character>();
+        int transition_count = 0;
+        for(int id = 0; id < state_list.size(); id++) {
+            State state = state_list.get(id);
+            Machine machine = machine_list.get(id);
+            
+            resolveEntry(
+                project, id, inline_limit,
+                ids, state_list, machine_list, parent_list,
+                chain_list, replace_list, error_list
+            );
+            
+            ArrayList<Transition> transitions =
+                new ArrayList<Transition>(state.getTransitions());
+            int[] dests = new int[transitions.size()];
+            for(int i = 0; i < transitions.size(); i++) {
+                dests[i] = getId(
+                    transitions.get(i).getDestination(), machine,
+                    parent_list.get(id),
+                    ids, state_list, machine_list, parent_list
+                );
+            }
+            transition_lists.add(transitions);
+            destination_lists.add(dests);
+            alphabet.addAll(state.getInputCharacters());
+            transition_count += transitions.size();
+        }
+        
+        int state_count = state_list.size();
+        states = state_list.toArray(new State[state_count]);
+        machines = machine_list.toArray(new Machine[state_count]);
+        entry_chains = chain_list.toArray(new int[state_count][]);
+        entry_errors = error_list.toArray(new String[state_count]);
+        entry_replaces = new boolean[state_count];
+        parents = new int[state_count];
+        for(int id = 0; id < state_count; id++) {
+            entry_replaces[id] = replace_list.get(id);
+            parents[id] = parent_list.get(id);
+        }
+        accepting = new boolean[state_count];
+        for(int id = 0; id < state_count; id++) {
+            accepting[id] = states[id].isAccepting();
+        }
+        
+        // Symbol ids in character order, starting from 1.
+        symbol_count = alphabet.size() + 1;
+        if(alphabet.isEmpty()) {
+            symbol_base = 0;
+            symbol_ids = new int[0];
+        } else {
+            symbol_base = alphabet.first();
+            symbol_ids = new int[alphabet.last() - symbol_base + 1];
+            int symbol = 1;
+            for(char c : alphabet) {
+                symbol_ids[c - symbol_base] = symbol;
+                symbol++;
+            }
+        }
+        
+        if((long) state_count * symbol_count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "The project is too large to be compiled."
+            );
+        }
+        table = new int[state_count * symbol_count];
+        Arrays.fill(table, -1);
+        destinations = new int[transition_count];
+        writes = new boolean[transition_count];
+        outputs = new char[transition_count];
+        movements = new int[transition_count];
+        plain = new boolean[transition_count];
+        scans = new String[transition_count];
+        
+        int transition_id = 0;
+        for(int id = 0; id < state_count; id++) {
+            ArrayList<Transition> transitions = transition_lists.get(id);
+            int[] dests = destination_lists.get(id);
+            for(int i = 0; i < transitions.size(); i++) {
+                Transition transition = transitions.get(i);
+                
+                int resolved = resolvePlainEntry(dests[i]);
+                plain[transition_id] = resolved != -1;
+                destinations[transition_id] =
+                    resolved == -1 ? dests[i] : resolved;
+                Character output = transition.getOutputCharacter();
+                writes[transition_id] = output != null;
+                outputs[transition_id] = output == null ? 0 : output;
+                movements[transition_id] = transition.getMovement();
+                String inchars = transition.getInputCharacters();
+                if(
+                    plain[transition_id] &&
+                    destinations[transition_id] == id &&
+                    transition.getMovement() != 0 &&
+                    (output == null || inchars.equals(output.toString()))
+                ) {
+                    scans[transition_id] = inchars;
+                }
+                
+                // Use the lookup of the state so that the table agrees with
+                // State.getTransitionByInput.
+                for(char c : states[id].getInputCharacters()) {
+                    if(states[id].getTransitionByInput(c) == transition) {
+                        table[id * symbol_count + getSymbol(c)] = transition_id;
+                    }
+                }
+                transition_id++;
+            }
+        }
+    }
+    
+    /**
+     * Gets the id of a state in a machine called from a parent state, adding
+     * it if it doesn't have one.
+     */
+    private static int getId(
+        State state,
+        Machine machine,
+        int parent,
+        HashMap<Integer, IdentityHashMap<Machine, IdentityHashMap<State, Integer>>> ids,
+        ArrayList<State> state_list,
+        ArrayList<Machine> machine_list,
+        ArrayList<Integer> parent_list
+    ) {
+        IdentityHashMap<Machine, IdentityHashMap<State, Integer>> parent_ids =
+            ids.get(parent);
+        if(parent_ids == null) {
+            parent_ids = new IdentityHashMap<Machine, IdentityHashMap<State, Integer>>();
+            ids.put(parent, parent_ids);
+        }
+        IdentityHashMap<State, Integer> machine_ids = parent_ids.get(machine);
+        if(machine_ids == null) {
+            machine_ids = new IdentityHashMap<State, Integer>();
+            parent_ids.put(machine, machine_ids);
+        }
+        Integer id = machine_ids.get(state);
+        if(id == null) {
+            id = state_list.size();
+            machine_ids.put(state, id);
+            state_list.add(state);
+            machine_list.add(machine);
+            parent_list.add(parent);
+        }
+        return id;
+    }
+    
+    /**
+     * Checks whether a machine is the machine of a state or of one of the
+     * calling states it returns to, i.e. whether calling the machine from the
+     * state would be recursive.
+     */
+    private static boolean isCalling(
+        int id,
+        Machine machine,
+        ArrayList<Machine> machine_list,
+        ArrayList<Integer> parent_list
+    ) {
+        while(id != -1) {
+            if(machine_list.get(id) == machine) {
+                return true;
+            }
+            id = parent_list.get(id);
+        }
+        return false;
+    }
+    
+    /**
+     * Resolves what happens when a state is entered the same way as
+     * Simulation does it, and adds the results to chain_list, replace_list
+     * and error_list. Calls are inlined while there are less than
+     * inline_limit ids.
+     */
+    private static void resolveEntry(
+        Project project,
+        int id,
+        int inline_limit,
+        HashMap<Integer, IdentityHashMap<Machine, IdentityHashMap<State, Integer>>> ids,
+        ArrayList<State> state_list,
+        ArrayList<Machine> machine_list,
+        ArrayList<Integer> parent_list,
+        ArrayList<int[]> chain_list,
+        ArrayList<Boolean> replace_list,
+        ArrayList<String> error_list
+    ) {
+        State state = state_list.get(id);
+        Machine machine = machine_list.get(id);
+        if(state.getSubmachine() == null) {
+            chain_list.add(null);
+            replace_list.add(false);
+            error_list.add(null);
+            return;
+        }
+        
+        // The ids on the top of the stack after entering. An inlined call
+        // replaces the id on the top instead of pushing.
+        ArrayList<Integer> chain = new ArrayList<Integer>();
+        boolean replaces = false;
+        int top = id;
+        String error = null;
+        int depth = 0;
+        while(state.getSubmachine() != null) {
+            depth++;
+            if(depth > project.getMachineNames().size()) {
+                error =
+                    "The project has an infinite submachine loop containing " +
+                    "the start state of machine '" + machine.getName() + "'";
+                break;
+            }
+            
+            String submachine_name = state.getSubmachine();
+            Machine submachine = project.getMachine(submachine_name);
+            if(submachine == null) {
+                error =
+                    "The project does not have machine '" + submachine_name +
+                    "':\nReferred by state '" + state.getName() + "' of " +
+                    "machine '" + machine.getName() + "'.";
+                break;
+            }
+            State start = submachine.getState("start");
+            if(start == null) {
+                error =
+                    "Machine '" + submachine_name + "' does not have a state " +
+                    "named 'start'.";
+                break;
+            }
+            
+            if(
+                state_list.size() < inline_limit &&
+                !isCalling(top, submachine, machine_list, parent_list)
+            ) {
+                top = getId(
+                    start, submachine, top,
+                    ids, state_list, machine_list, parent_list
+                );
+                if(chain.isEmpty()) {
+                    replaces = true;
+                    chain.add(top);
+                } else {
+                    chain.set(chain.size() - 1, top);
+                }
+            } else {
+                top = getId(
+                    start, submachine, -1,
+                    ids, state_list, machine_list, parent_list
+                );
+                chain.add(top);
+            }
+            state = start;
+            machine = submachine;
+        }
+        
+        int[] chain_array = new int[chain.size()];
+        for(int i = 0; i < chain_array.length; i++) {
+            chain_array[i] = chain.get(i);
+        }
+        chain_list.add(chain_array);
+        replace_list.add(replaces);
+        error_list.add(error);
+    }
+    
+    /**
+     * Resolves the state reached by entering a state if it only involves
+     * inlined calls and returns.
+     * 
+     * @param id The id of the entered state.
+     * @return The id of the state on the top of the stack after entering, or
+     * -1 if entering pushes or pops the stack, accepts or fails.
+     */
+    private int resolvePlainEntry(int id) {
+        int[] chain = entry_chains[id];
+        if(chain != null) {
+            if(
+                entry_errors[id] != null ||
+                !entry_replaces[id] ||
+                chain.length != 1
+            ) {
+                return -1;
+            }
+            id = chain[0];
+        }
+        while(accepting[id]) {
+            if(parents[id] == -1) {
+                return -1;
+            }
+            id = parents[id];
+        }
+        return id;
+    }
+    
+    /**
+     * Gets the number of compiled states.
+     * 
+     * @return The number of state ids.
+     */
+    public int getStateCount() {
+        return states.length;
+    }
+    
+    /**
+     * Gets the number of symbols in the transition table.
+     * 
+     * @return The number of distinct characters read by transitions plus one
+     * for all other characters.
+     */
+    public int getSymbolCount() {
+        return symbol_count;
+    }
+    
+    /**
+     * Gets the characters used by the compiled project.
+     * 
+     * @return The set of all characters read or written by the transitions,
+     * as Project.getCharacters() of the project at compile time.
+     */
+    public SortedSet<Character> getCharacters() {
+        TreeSet<Character> characters = new TreeSet<Character>();
+        for(int i = 0; i < symbol_ids.length; i++) {
+            if(symbol_ids[i] != 0) {
+                characters.add((char) (symbol_base + i));
+            }
+        }
+        for(int transition = 0; transition < writes.length; transition++) {
+            if(writes[transition]) {
+                characters.add(outputs[transition]);
+            }
+        }
+        return characters;
+    }
+    
+    /**
+     * Gets a state by its id.
+     * 
+     * @param id The id of the state.
+     * @return The state.
+     */
+    public State getState(int id) {
+        return states[id];
+    }
+    
+    /**
+     * Gets the machine of a state by the state id.
+     * 
+     * @param id The id of the state.
+     * @return The machine that the simulation is in while in the state.
+     */
+    public Machine getMachine(int id) {
+        return machines[id];
+    }
+    
+    /**
+     * Checks whether the project has a machine.
+     * 
+     * @param machine_name The name of the machine.
+     * @return True if the compiled project has a machine named machine_name.
+     */
+    public boolean hasMachine(String machine_name) {
+        return start_states.containsKey(machine_name);
+    }
+    
+    /**
+     * Gets the id of the start state of a machine.
+     * 
+     * @param machine_name The name of the machine.
+     * @return The id of the state named "start" in the machine, -1 if the
+     * machine or the state does not exist.
+     */
+    public int getStartState(String machine_name) {
+        Integer id = start_states.get(machine_name);
+        return id == null ? -1 : id;
+    }
+    
+    /**
+     * Gets the symbol id of a character.
+     * 
+     * @param c The character.
+     * @return The symbol id of c, 0 if no transition reads c.
+     */
+    int getSymbol(char c) {
+        int i = c - symbol_base;
+        if(i >= 0 && i < symbol_ids.length) {
+            return symbol_ids[i];
+        }
+        return 0;
+    }
+    
+    /**
+     * Gets the transition from a state by input character.
+     * 
+     * @param state The id of the state.
+     * @param c The input character.
+     * @return The id of the transition or -1 if there is none.
+     */
+    int getTransition(int state, char c) {
+        return table[state * symbol_count + getSymbol(c)];
+    }
+    
+    /**
+     * Handles everything that must be done after entering the state on the
+     * top of the stack, i.e. calling submachines and returning from accepting
+     * states, exactly like Simulation does.
+     * 
+     * @param stack The state id stack of the simulation.
+     * @return True if the simulation accepted, i.e. the bottommost state is
+     * accepting.
+     * @throws SimulationException on submachine errors.
+     */
+    boolean enter(IntStack stack) throws SimulationException {
+        int state = stack.peek();
+        int[] chain = entry_chains[state];
+        if(chain != null) {
+            int i = 0;
+            if(entry_replaces[state]) {
+                stack.setTop(chain[0]);
+                i = 1;
+            }
+            for(; i < chain.length; i++) {
+                stack.push(chain[i]);
+            }
+            if(entry_errors[state] != null) {
+                throw new SimulationException(entry_errors[state]);
+            }
+        }
+        
+        while(accepting[stack.peek()]) {
+            int parent = parents[stack.peek()];
+            if(parent != -1) {
+                stack.setTop(parent);
+            } else if(stack.size() == 1) {
+                return true;
+            } else {
+                stack.pop();
+            }
+        }
+        return false;
+    }
+}
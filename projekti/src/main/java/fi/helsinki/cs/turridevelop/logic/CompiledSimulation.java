@@ -0,0 +1,552 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import fi.helsinki.cs.turridevelop.util.IntStack;
+
+/**
+ * Simulation context for Turing machines that runs on a CompiledProject.
+ * 
+ * Behaves exactly like Simulation on the project the CompiledProject was
+ * compiled from, but looks up transitions from integer-indexed tables and does
+ * not allocate anything per step. Without loop detection, macro steps or a
+ * packed tape, the runs take the steps of scans over the tape at once.
+ */
+public class CompiledSimulation {
+    /**
+     * The compiled project to simulate.
+     */
+    private final CompiledProject project;
+    
+    /**
+     * The head of the Turing machine.
+     */
+    private final Head head;
+    
+    /**
+     * The stack of state ids in which the simulation is now. When a submachine
+     * is entered, the start state of the submachine is put on the top.
+     */
+    private final IntStack states;
+    
+    /**
+     * The status of the simulation.
+     */
+    private SimulationStatus status;
+    
+    /**
+     * The number of transitions taken so far.
+     */
+    private long steps;
+    
+    /**
+     * The cache of macro steps over tape blocks, null if the runs step one
+     * transition at a time.
+     */
+    private BlockCache blocks;
+    
+    /**
+     * The loop detector, null if loops are not detected.
+     */
+    private LoopDetector loops;
+    
+    /**
+     * The tape if it is a PackedTape whose alphabet has all the characters
+     * written by the project, null otherwise. The runs then read and write
+     * symbol ids directly.
+     */
+    private final PackedTape packed;
+    
+    /**
+     * The symbol ids of the transition table by the symbol ids of the packed
+     * tape.
+     */
+    private final int[] packed_symbols;
+    
+    /**
+     * The symbol ids of the packed tape written by the transitions.
+     */
+    private final int[] packed_outputs;
+    
+    /**
+     * Constructs a simulation. The simulation starts from the state named
+     * "start" in the specified machine.
+     * 
+     * @param project The compiled project to simulate.
+     * @param machine_name The name of the machine in the project to simulate.
+     * @param tape The input tape to simulate on.
+     * 
+     * @throws SimulationException if the project doesn't have the machine or
+     * the machine does not have a start state or a submachine error occured.
+     */
+    public CompiledSimulation(
+        CompiledProject project,
+        String machine_name,
+        Tape tape
+    ) throws SimulationException {
+        this.project = project;
+        head = new Head(tape);
+        status = SimulationStatus.RUNNING;
+        steps = 0;
+        blocks = null;
+        loops = null;
+        
+        // Map the symbols of a packed tape to the symbols of the table.
+        PackedTape packed_tape = null;
+        int[] symbols = null;
+        int[] outputs = null;
+        if(tape instanceof PackedTape) {
+            packed_tape = (PackedTape) tape;
+            Alphabet alphabet = packed_tape.getAlphabet();
+            symbols = new int[alphabet.getSize()];
+            for(int symbol = 0; symbol < symbols.length; symbol++) {
+                symbols[symbol] = project.getSymbol(alphabet.getCharacter(symbol));
+            }
+            outputs = new int[project.outputs.length];
+            for(int transition = 0; transition < outputs.length; transition++) {
+                if(project.writes[transition]) {
+                    outputs[transition] =
+                        alphabet.getSymbol(project.outputs[transition]);
+                    if(outputs[transition] == -1) {
+                        packed_tape = null;
+                    }
+                }
+            }
+        }
+        packed = packed_tape;
+        packed_symbols = symbols;
+        packed_outputs = outputs;
+        
+        if(!project.hasMachine(machine_name)) {
+            throw new SimulationException(
+                "The project does not have machine '" + machine_name + "'."
+            );
+        }
+        int start = project.getStartState(machine_name);
+        if(start == -1) {
+            throw new SimulationException(
+                "The machine does not have a state named 'start'."
+            );
+        }
+        
+        states = new IntStack();
+        states.push(start);
+        intoState();
+    }
+    
+    /**
+     * Gets the current status of the simulation.
+     * 
+     * @return The status of the simulation, as in Simulation.getStatus().
+     */
+    public SimulationStatus getStatus() {
+        return status;
+    }
+    
+    /**
+     * Gets the state the simulation is currently/was last.
+     * 
+     * @return The state, as in Simulation.getState().
+     */
+    public State getState() {
+        return project.getState(states.peek());
+    }
+    
+    /**
+     * Gets the machine the simulation is currently/was last.
+     * 
+     * @return The machine getState() is in.
+     */
+    public Machine getMachine() {
+        return project.getMachine(states.peek());
+    }
+    
+    /**
+     * Gets the head of the simulation.
+     * 
+     * @return The head that is used throughout the simulation.
+     */
+    public Head getHead() {
+        return head;
+    }
+    
+    /**
+     * Gets the tape the simulation operates on.
+     * 
+     * @return The tape that the simulation operates on.
+     */
+    public Tape getTape() {
+        return head.getTape();
+    }
+    
+    /**
+     * Gets the number of steps taken.
+     * 
+     * @return The number of transitions the simulation has taken.
+     */
+    public long getStepCount() {
+        return steps;
+    }
+    
+    /**
+     * Gets the block size of the macro steps.
+     * 
+     * @return The number of tape cells in a block, 0 if the macro steps are
+     * disabled.
+     */
+    public int getBlockSize() {
+        if(blocks == null) {
+            return 0;
+        }
+        return blocks.getBlockSize();
+    }
+    
+    /**
+     * Sets the block size of the macro steps used by the run methods.
+     * 
+     * With a positive block size, the tape is treated as blocks of that many
+     * cells, and the run from a state and head position until the head leaves
+     * the block is memoized by the block contents. Repeated sweeps over equal
+     * blocks then cost one lookup per block. The statuses, states, tapes and
+     * step counts are exactly the same as without macro steps; only the speed
+     * differs. Machines that mostly revisit few distinct blocks benefit, while
+     * machines that rarely repeat a block only pay for the lookups. The cache
+     * is cleared whenever the block size is set.
+     * 
+     * @param block_size The number of tape cells in a block, or 0 to disable
+     * the macro steps.
+     */
+    public void setBlockSize(int block_size) {
+        if(block_size == 0) {
+            blocks = null;
+        } else {
+            blocks = new BlockCache(project, block_size);
+        }
+    }
+    
+    /**
+     * Tests whether loops are detected.
+     * 
+     * @return True if the simulation stops with status LOOPING when it
+     * repeats a configuration.
+     */
+    public boolean isDetectingLoops() {
+        return loops != null;
+    }
+    
+    /**
+     * Enables or disables loop detection. With loop detection, the simulation
+     * stops with status LOOPING when its configuration (the state stack, the
+     * head position and the tape contents) repeats an earlier one, or when it
+     * keeps moving in one direction over empty cells in a way that repeats
+     * forever. Detection costs a few hash updates per step and a copy of the
+     * tape at steps 1, 2, 4, 8 and so on. A loop is detected within about
+     * twice the number of steps taken before the loop is entered plus twice
+     * its length.
+     * 
+     * If the tape is modified by other means than the simulation while loop
+     * detection is enabled, it must be enabled again to restart it. While loops
+     * are detected, the run methods take one transition at a time and do not
+     * use macro steps.
+     * 
+     * @param detect True to enable loop detection, false to disable it.
+     */
+    public void setDetectingLoops(boolean detect) {
+        if(detect) {
+            loops = new LoopDetector(head.getTape());
+        } else {
+            loops = null;
+        }
+    }
+    
+    /**
+     * If the simulation is still running, runs it one transition forward, like
+     * Simulation.step().
+     * 
+     * @throws SimulationException on submachine errors.
+     */
+    public void step() throws SimulationException {
+        if(status == SimulationStatus.RUNNING) {
+            int transition = project.getTransition(states.peek(), head.read());
+            if(transition == -1) {
+                status = SimulationStatus.REJECTED;
+                return;
+            }
+            if(project.writes[transition]) {
+                if(loops != null) {
+                    loops.written(
+                        head.getPosition(), head.read(),
+                        project.outputs[transition]
+                    );
+                }
+                head.write(project.outputs[transition]);
+            }
+            head.move(project.movements[transition]);
+            steps++;
+            
+            states.setTop(project.destinations[transition]);
+            if(!project.plain[transition]) {
+                intoState();
+            }
+            
+            if(
+                loops != null &&
+                status == SimulationStatus.RUNNING &&
+                loops.check(steps, head.getPosition(), states)
+            ) {
+                status = SimulationStatus.LOOPING;
+            }
+        }
+    }
+    
+    /**
+     * Step the simulation until the status is no longer RUNNING.
+     * 
+     * Note that the simulation might not terminate.
+     * 
+     * @throws SimulationException on submachine errors.
+     */
+    public void run() throws SimulationException {
+        run(Long.MAX_VALUE);
+    }
+    
+    /**
+     * Step the simulation until the status is no longer RUNNING or the given
+     * number of steps has been taken.
+     * 
+     * @param max_steps The maximum number of steps to take.
+     * @return The status of the simulation, or LIMIT_REACHED if it was still
+     * running when the step limit was reached.
+     * @throws SimulationException on submachine errors.
+     */
+    public SimulationStatus run(long max_steps) throws SimulationException {
+        return run(max_steps, Long.MAX_VALUE, null);
+    }
+    
+    /**
+     * Step the simulation until the status is no longer RUNNING, the given
+     * number of steps has been taken, the timeout has passed or the run has
+     * been cancelled. The timeout and the cancellation are checked every few
+     * thousand steps. The simulation can be continued after the run stops.
+     * 
+     * @param max_steps The maximum number of steps to take.
+     * @param timeout The maximum wall time of the run in milliseconds,
+     * Long.MAX_VALUE for no limit.
+     * @param cancellation The token for cancelling the run, null if the run
+     * cannot be cancelled.
+     * @return The status of the simulation, or LIMIT_REACHED if it was still
+     * running when the run stopped.
+     * @throws SimulationException on submachine errors.
+     */
+    public SimulationStatus run(
+        long max_steps,
+        long timeout,
+        CancellationToken cancellation
+    ) throws SimulationException {
+        RunLimits limits = new RunLimits(steps, max_steps, timeout, cancellation);
+        while(
+            status == SimulationStatus.RUNNING &&
+            steps < limits.getStepLimit() &&
+            !limits.isExpired()
+        ) {
+            long next_check = limits.getNextCheck(steps);
+            if(loops != null) {
+                while(status == SimulationStatus.RUNNING && steps < next_check) {
+                    step();
+                }
+            } else if(blocks == null) {
+                runTo(next_check);
+            } else {
+                runBlocksTo(next_check);
+            }
+        }
+        
+        if(status == SimulationStatus.RUNNING) {
+            return SimulationStatus.LIMIT_REACHED;
+        }
+        return status;
+    }
+    
+    /**
+     * Step the simulation until the status is no longer RUNNING or the step
+     * count reaches the given limit.
+     * 
+     * @param limit The step count at which to stop.
+     * @throws SimulationException on submachine errors.
+     */
+    private void runTo(long limit) throws SimulationException {
+        if(packed != null) {
+            runPackedTo(limit);
+            return;
+        }
+        
+        // Local copies of the tables for the inner loop.
+        final int[] table = project.table;
+        final int[] destinations = project.destinations;
+        final boolean[] writes = project.writes;
+        final char[] outputs = project.outputs;
+        final int[] movements = project.movements;
+        final boolean[] plain = project.plain;
+        final String[] scans = project.scans;
+        final int[] symbol_ids = project.symbol_ids;
+        final int symbol_base = project.symbol_base;
+        final int symbol_count = project.symbol_count;
+        
+        while(status == SimulationStatus.RUNNING && steps < limit) {
+            int state = states.peek();
+            long count = steps;
+            boolean entered = false;
+            while(count < limit) {
+                int i = head.read() - symbol_base;
+                int symbol = 0;
+                if(i >= 0 && i < symbol_ids.length) {
+                    symbol = symbol_ids[i];
+                }
+                int transition = table[state * symbol_count + symbol];
+                if(transition == -1) {
+                    status = SimulationStatus.REJECTED;
+                    break;
+                }
+                if(scans[transition] != null) {
+                    // Take all steps of the scan at once.
+                    int pos = head.getPosition();
+                    int skipped = head.getTape().scan(
+                        pos,
+                        movements[transition],
+                        scans[transition],
+                        (int) Math.min(limit - count, Integer.MAX_VALUE)
+                    );
+                    if(skipped != 0) {
+                        head.setPosition(pos + skipped * movements[transition]);
+                        count += skipped;
+                        continue;
+                    }
+                }
+                if(writes[transition]) {
+                    head.write(outputs[transition]);
+                }
+                head.move(movements[transition]);
+                count++;
+                state = destinations[transition];
+                if(!plain[transition]) {
+                    entered = true;
+                    break;
+                }
+            }
+            steps = count;
+            states.setTop(state);
+            if(entered) {
+                intoState();
+            }
+        }
+    }
+    
+    /**
+     * Step the simulation on the packed tape until the status is no longer
+     * RUNNING or the step count reaches the given limit. Same as runTo, but
+     * the transitions are looked up directly by the symbol ids on the tape.
+     * 
+     * @param limit The step count at which to stop.
+     * @throws SimulationException on submachine errors.
+     */
+    private void runPackedTo(long limit) throws SimulationException {
+        // Local copies of the tables for the inner loop.
+        final int[] table = project.table;
+        final int[] destinations = project.destinations;
+        final boolean[] writes = project.writes;
+        final int[] movements = project.movements;
+        final boolean[] plain = project.plain;
+        final int symbol_count = project.symbol_count;
+        final PackedTape tape = packed;
+        final int[] symbols = packed_symbols;
+        final int[] outputs = packed_outputs;
+        final boolean bi_infinite = tape.isBiInfinite();
+        
+        int pos = head.getPosition();
+        while(status == SimulationStatus.RUNNING && steps < limit) {
+            int state = states.peek();
+            long count = steps;
+            boolean entered = false;
+            while(count < limit) {
+                int symbol = symbols[tape.getSymbolAt(pos)];
+                int transition = table[state * symbol_count + symbol];
+                if(transition == -1) {
+                    status = SimulationStatus.REJECTED;
+                    break;
+                }
+                if(writes[transition]) {
+                    tape.setSymbolAt(pos, outputs[transition]);
+                }
+                pos += movements[transition];
+                if(pos < 0 && !bi_infinite) {
+                    pos = 0;
+                }
+                count++;
+                state = destinations[transition];
+                if(!plain[transition]) {
+                    entered = true;
+                    break;
+                }
+            }
+            steps = count;
+            states.setTop(state);
+            head.setPosition(pos);
+            if(entered) {
+                intoState();
+            }
+        }
+    }
+    
+    /**
+     * Step the simulation with memoized macro steps until the status is no
+     * longer RUNNING or the step count reaches the given limit. Transitions
+     * that cannot be taken by a macro step and macro steps that would pass the
+     * limit are taken with ordinary steps.
+     * 
+     * @param limit The step count at which to stop.
+     * @throws SimulationException on submachine errors.
+     */
+    private void runBlocksTo(long limit) throws SimulationException {
+        final Tape tape = head.getTape();
+        final int block_size = blocks.getBlockSize();
+        final boolean bi_infinite = tape.isBiInfinite();
+        final char[] contents = new char[block_size];
+        
+        while(status == SimulationStatus.RUNNING && steps < limit) {
+            int pos = head.getPosition();
+            int offset = ((pos % block_size) + block_size) % block_size;
+            int start = pos - offset;
+            for(int i = 0; i < block_size; i++) {
+                contents[i] = tape.getCharacterAt(start + i);
+            }
+            
+            BlockResult result = blocks.get(
+                states.peek(), offset, !bi_infinite && start == 0, contents
+            );
+            if(result.steps == 0 || result.steps > limit - steps) {
+                step();
+                continue;
+            }
+            
+            for(int i = 0; i < block_size; i++) {
+                if(result.contents[i] != contents[i]) {
+                    tape.setCharacterAt(start + i, result.contents[i]);
+                }
+            }
+            head.move(result.offset - offset);
+            states.setTop(result.state);
+            steps += result.steps;
+        }
+    }
+    
+    /**
+     * Handle everything that must be done after entering the state on the top
+     * of the stack, i.e. calling submachines and checking for accepted state.
+     * 
+     * @throws SimulationException on submachine errors.
+     */
+    private void intoState() throws SimulationException {
+        if(project.enter(states)) {
+            status = SimulationStatus.ACCEPTED;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import java.util.Arrays;
+
+/**
+ * Tape that can be copied cheaply, sharing its cells with the copy until
+ * either of them writes.
+ * 
+ * The cells are stored in chunks of CHUNK_CELLS cells. A copy only copies the
+ * array of chunks, and the first write into a chunk that is shared copies the
+ * chunk. Sibling branches of a nondeterministic computation thus only store
+ * the chunks they have changed. A null chunk contains only empty characters.
+ * 
+ * The tape also keeps a hash of its contents that is updated on each write,
+ * so that configurations can be hashed in constant time.
+ * 
+ * Copying a tape changes it, as it gives up the ownership of its chunks, so a
+ * tape that is shared between threads must first be frozen. A frozen tape
+ * cannot be written, and reading or copying it does not change it, so it may
+ * be read and copied from several threads at once.
+ */
+public class CopyOnWriteTape extends Tape {
+    /**
+     * Base 2 logarithm of the number of cells in a chunk.
+     */
+    static final int CHUNK_BITS = 6;
+    
+    /**
+     * The number of cells in a chunk.
+     */
+    static final int CHUNK_CELLS = 1 << CHUNK_BITS;
+    
+    /**
+     * The chunks. Position pos is in chunks[(pos >> CHUNK_BITS) -
+     * first_chunk] at index pos & (CHUNK_CELLS - 1).
+     */
+    private char[][] chunks;
+    
+    /**
+     * The owners of the chunks. This tape may write into chunk i in place
+     * only if owners[i] is token.
+     */
+    private Object[] owners;
+    
+    /**
+     * The identity of the tape as the owner of chunks. Replaced whenever the
+     * tape is copied, so that the tape no longer owns the shared chunks.
+     */
+    private Object token;
+    
+    /**
+     * The index of chunks[0], the position of its first cell divided by
+     * CHUNK_CELLS.
+     */
+    private int first_chunk;
+    
+    /**
+     * The leftmost position that may contain a non-empty character, at most 0.
+     */
+    private int left;
+    
+    /**
+     * One past the rightmost position that may contain a non-empty character,
+     * at least 0.
+     */
+    private int right;
+    
+    /**
+     * The sum of the hashes of the non-empty cells.
+     */
+    private long hash;
+    
+    /**
+     * Is the tape frozen?
+     */
+    private boolean frozen;
+    
+    /**
+     * Constructs a copy-on-write tape.
+     * 
+     * @param input The content of the tape starting from position 0.
+     * @param empty_char The character of all other positions of the tape.
+     * @param bi_infinite True if the tape should also have negative positions.
+     */
+    public CopyOnWriteTape(String input, char empty_char, boolean bi_infinite) {
+        super(empty_char, bi_infinite);
+        setContents(input);
+    }
+    
+    /**
+     * Constructs a copy of a tape sharing its chunks.
+     */
+    private CopyOnWriteTape(CopyOnWriteTape tape) {
+        super(tape.getEmptyCharacter(), tape.isBiInfinite());
+        chunks = tape.chunks.clone();
+        owners = new Object[chunks.length];
+        token = new Object();
+        first_chunk = tape.first_chunk;
+        left = tape.left;
+        right = tape.right;
+        hash = tape.hash;
+        frozen = false;
+    }
+    
+    /**
+     * Copies the tape. The copy shares all cells with this tape, and later
+     * writes to either tape copy the chunks they write into. The copy is not
+     * frozen.
+     * 
+     * @return A tape with the same contents.
+     */
+    public CopyOnWriteTape copy() {
+        if(!frozen) {
+            // Neither tape may write into the shared chunks any more.
+            token = new Object();
+        }
+        return new CopyOnWriteTape(this);
+    }
+    
+    /**
+     * Freezes the tape, so that it can no longer be written and it can be
+     * read and copied from several threads. Must be called before the tape is
+     * shared, by the thread that last wrote it.
+     */
+    public void freeze() {
+        if(!frozen) {
+            // Trim now, so that reading the contents does not change them.
+            trim();
+            frozen = true;
+        }
+    }
+    
+    /**
+     * Tests whether the tape is frozen.
+     * 
+     * @return True if freeze has been called.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+    
+    /**
+     * Gets the hash of the contents of the tape.
+     * 
+     * @return A hash that is equal for tapes with equal contents.
+     */
+    public long getContentsHash() {
+        return hash;
+    }
+    
+    /**
+     * Tests whether the tape has the same contents as another tape. The chunks
+     * shared by the tapes are not compared.
+     * 
+     * @param tape A tape with the same empty character.
+     * @return True if all positions of the tapes have equal characters.
+     */
+    public boolean contentsEqual(CopyOnWriteTape tape) {
+        if(hash != tape.hash) {
+            return false;
+        }
+        int first = Math.min(first_chunk, tape.first_chunk);
+        int end = Math.max(
+            first_chunk + chunks.length, tape.first_chunk + tape.chunks.length
+        );
+        char empty = getEmptyCharacter();
+        for(int index = first; index < end; index++) {
+            char[] chunk = getChunk(index);
+            char[] other = tape.getChunk(index);
+            if(chunk == other) {
+                continue;
+            }
+            for(int i = 0; i < CHUNK_CELLS; i++) {
+                char c = chunk == null ? empty : chunk[i];
+                char d = other == null ? empty : other[i];
+                if(c != d) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public char getCharacterAt(int pos) {
+        char[] chunk = getChunk(pos >> CHUNK_BITS);
+        if(chunk == null) {
+            checkPosition(pos);
+            return getEmptyCharacter();
+        }
+        return chunk[pos & (CHUNK_CELLS - 1)];
+    }
+    
+    /**
+     * Sets the character at given position on the tape.
+     * 
+     * @param pos The position on the tape.
+     * @param c The character to put.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
+     * @throws IllegalStateException if the tape is frozen.
+     */
+    @Override
+    public void setCharacterAt(int pos, char c) {
+        checkNotFrozen();
+        char empty = getEmptyCharacter();
+        int index = pos >> CHUNK_BITS;
+        char[] chunk = getChunk(index);
+        int cell = pos & (CHUNK_CELLS - 1);
+        char old;
+        if(chunk == null) {
+            checkPosition(pos);
+            old = empty;
+        } else {
+            old = chunk[cell];
+        }
+        if(old == c) {
+            return;
+        }
+        
+        int i = index - first_chunk;
+        if(chunk == null || owners[i] != token) {
+            i = reserve(index);
+            chunk = new char[CHUNK_CELLS];
+            if(chunks[i] == null) {
+                Arrays.fill(chunk, empty);
+            } else {
+                System.arraycopy(chunks[i], 0, chunk, 0, CHUNK_CELLS);
+            }
+            chunks[i] = chunk;
+            owners[i] = token;
+        }
+        
+        chunk[cell] = c;
+        if(old != empty) {
+            hash -= cellHash(pos, old);
+        }
+        if(c != empty) {
+            hash += cellHash(pos, c);
+            if(pos >= right) {
+                right = pos + 1;
+            }
+            if(pos < left) {
+                left = pos;
+            }
+        }
+    }
+    
+    @Override
+    public String getContents() {
+        trim();
+        
+        char[] contents = new char[right - left];
+        for(int i = 0; i < contents.length; i++) {
+            contents[i] = getCharacterAt(left + i);
+        }
+        return new String(contents);
+    }
+    
+    @Override
+    public int getContentsLength() {
+        trim();
+        
+        return right - left;
+    }
+    
+    @Override
+    public int getContentsStart() {
+        trim();
+        
+        return left;
+    }
+    
+    @Override
+    void setContents(String contents, int start) {
+        checkNotFrozen();
+        checkPosition(start);
+        chunks = new char[0][];
+        owners = new Object[0];
+        token = new Object();
+        first_chunk = 0;
+        left = 0;
+        right = 0;
+        hash = 0;
+        
+        for(int i = 0; i < contents.length(); i++) {
+            setCharacterAt(start + i, contents.charAt(i));
+        }
+        left = start;
+        right = Math.max(right, start + contents.length());
+    }
+    
+    /**
+     * Gets a chunk.
+     * 
+     * @param index The position of the first cell of the chunk divided by
+     * CHUNK_CELLS.
+     * @return The chunk, null if it is empty.
+     */
+    private char[] getChunk(int index) {
+        int i = index - first_chunk;
+        if(i >= 0 && i < chunks.length) {
+            return chunks[i];
+        }
+        return null;
+    }
+    
+    /**
+     * Grows the chunk arrays so that they contain a chunk. The arrays are at
+     * least doubled, and the new space is put on the side of the chunk.
+     * 
+     * @param index The position of the first cell of the chunk divided by
+     * CHUNK_CELLS.
+     * @return The index of the chunk in the arrays.
+     */
+    private int reserve(int index) {
+        int i = index - first_chunk;
+        if(i >= 0 && i < chunks.length) {
+            return i;
+        }
+        
+        int needed;
+        if(i < 0) {
+            needed = chunks.length - i;
+        } else {
+            needed = i + 1;
+        }
+        int capacity = Math.max(needed, 2 * chunks.length);
+        int shift = 0;
+        if(i < 0) {
+            shift = capacity - chunks.length;
+        }
+        char[][] grown_chunks = new char[capacity][];
+        Object[] grown_owners = new Object[capacity];
+        System.arraycopy(chunks, 0, grown_chunks, shift, chunks.length);
+        System.arraycopy(owners, 0, grown_owners, shift, owners.length);
+        chunks = grown_chunks;
+        owners = grown_owners;
+        first_chunk -= shift;
+        
+        return index - first_chunk;
+    }
+    
+    /**
+     * Fails if the tape is frozen.
+     */
+    private void checkNotFrozen() {
+        if(frozen) {
+            throw new IllegalStateException("The tape is frozen.");
+        }
+    }
+    
+    /**
+     * Shrinks the written extent so that it starts and ends with non-empty
+     * characters, except that it always contains position 0.
+     */
+    private void trim() {
+        char empty = getEmptyCharacter();
+        while(right > 0 && getCharacterAt(right - 1) == empty) {
+            right--;
+        }
+        while(left < 0 && getCharacterAt(left) == empty) {
+            left++;
+        }
+    }
+    
+    /**
+     * Gets the hash of a non-empty cell, mixing the position and the
+     * character so that the sum over the cells is unlikely to collide.
+     */
+    private static long cellHash(int pos, char c) {
+        long h = ((long) pos << 16 | c) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 31;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ h >>> 29;
+    }
+}
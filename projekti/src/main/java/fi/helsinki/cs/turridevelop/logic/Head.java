@@ -14,6 +14,11 @@ public class Head {
      */
     private int pos;
     
+    /**
+     * Can the head move to negative positions, i.e. is the tape bi-infinite?
+     */
+    private final boolean bi_infinite;
+    
     /**
      * Constructs Head.
      * 
@@ -23,6 +28,7 @@ public class Head {
      */
     public Head(Tape tape) {
         this.tape = tape;
+        bi_infinite = tape.isBiInfinite();
         pos = 0;
     }
     
@@ -39,24 +45,34 @@ public class Head {
      * Gets position on the tape.
      * 
      * @return The position of the head on the tape. Position zero is the
-     * leftmost position.
+     * leftmost position unless the tape is bi-infinite.
      */
     public int getPosition() {
         return pos;
     }
     
+    /**
+     * Sets the position on the tape.
+     * 
+     * @param pos The new position of the head, not negative unless the tape
+     * is bi-infinite.
+     */
+    void setPosition(int pos) {
+        this.pos = pos;
+    }
+    
     /**
      * Moves the head by movement.
      * 
-     * If the head is moved past the leftmost position, it is reset to the
-     * leftmost position.
+     * If the tape is not bi-infinite and the head is moved past the leftmost
+     * position, it is reset to the leftmost position.
      * 
      * @param movement The amount of movement. If negative, moves to the left,
      * and if positive, moves to the right.
      */
     public void move(int movement) {
         pos += movement;
-        if(pos < 0) {
+        if(pos < 0 && !bi_infinite) {
             pos = 0;
         }
     }
@@ -0,0 +1,291 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.util.IntStack;
+import java.util.List;
+
+/**
+ * Detects simulations that will never halt by finding repeated
+ * configurations.
+ * 
+ * A configuration is saved at steps 1, 2, 4, 8 and so on (Brent's cycle
+ * detection), so saving the tape contents costs amortized constant time per
+ * step. After every step, the current configuration is compared to the
+ * saved one, so a cycle is found at most about twice its length plus the
+ * steps before it after it is entered. Two kinds of repetition are detected:
+ * 
+ * An exact repetition: the state stack, the head position and the tape
+ * contents are equal to the saved ones. The tape is hashed incrementally as
+ * it is written, so only configurations with equal hashes are compared
+ * character by character.
+ * 
+ * A translated repetition: the machine drifts over empty cells forever. The
+ * head was beyond all non-empty cells in the saved configuration, it has
+ * since only visited cells on that side of the saved position, and it is now
+ * again beyond all non-empty cells further in the same direction with the
+ * same state stack. The same steps then repeat forever, each time shifted by
+ * the same distance.
+ */
+class LoopDetector {
+    /**
+     * The tape of the simulation.
+     */
+    private final Tape tape;
+    
+    /**
+     * The hash of the tape contents, the sum of cellHash over non-empty cells.
+     */
+    private long tape_hash;
+    
+    /**
+     * The number of steps after saving at which the next configuration is
+     * saved.
+     */
+    private long interval;
+    
+    /**
+     * The step count when the configuration was saved, -1 if none yet.
+     */
+    private long saved_steps;
+    
+    /**
+     * The hash of the saved configuration.
+     */
+    private long saved_hash;
+    
+    /**
+     * The hash of the saved state stack.
+     */
+    private int saved_stack_hash;
+    
+    /**
+     * The saved state stack, bottom first.
+     */
+    private Object[] saved_stack;
+    
+    /**
+     * The saved head position.
+     */
+    private int saved_pos;
+    
+    /**
+     * The saved tape contents.
+     */
+    private String saved_contents;
+    
+    /**
+     * The saved start position of the tape contents.
+     */
+    private int saved_start;
+    
+    /**
+     * Was the head right of all non-empty cells in the saved configuration?
+     */
+    private boolean saved_right_of_contents;
+    
+    /**
+     * Was the head left of all non-empty cells in the saved configuration?
+     */
+    private boolean saved_left_of_contents;
+    
+    /**
+     * The leftmost head position since the configuration was saved.
+     */
+    private int min_pos;
+    
+    /**
+     * The rightmost head position since the configuration was saved.
+     */
+    private int max_pos;
+    
+    /**
+     * Constructs a detector for a simulation on a tape. The detector must be
+     * told about every later change to the tape.
+     * 
+     * @param tape The tape of the simulation.
+     */
+    LoopDetector(Tape tape) {
+        this.tape = tape;
+        String contents = tape.getContents();
+        int start = tape.getContentsStart();
+        char empty_char = tape.getEmptyCharacter();
+        tape_hash = 0;
+        for(int i = 0; i < contents.length(); i++) {
+            if(contents.charAt(i) != empty_char) {
+                tape_hash += cellHash(start + i, contents.charAt(i));
+            }
+        }
+        interval = 1;
+        saved_steps = -1;
+    }
+    
+    /**
+     * Tells the detector that a cell of the tape is about to be written.
+     * 
+     * @param pos The position of the cell.
+     * @param old_c The character in the cell before writing.
+     * @param new_c The character to write.
+     */
+    void written(int pos, char old_c, char new_c) {
+        char empty_char = tape.getEmptyCharacter();
+        if(old_c != empty_char) {
+            tape_hash -= cellHash(pos, old_c);
+        }
+        if(new_c != empty_char) {
+            tape_hash += cellHash(pos, new_c);
+        }
+    }
+    
+    /**
+     * Checks the configuration of a CompiledSimulation after a step.
+     * 
+     * @param steps The number of steps taken.
+     * @param pos The position of the head.
+     * @param stack The stack of state ids.
+     * @return True if the configuration repeats an earlier one.
+     */
+    boolean check(long steps, int pos, IntStack stack) {
+        int stack_hash = 1;
+        for(int i = 0; i < stack.size(); i++) {
+            stack_hash = 31 * stack_hash + stack.get(i);
+        }
+        if(!isCandidate(steps, pos, stack_hash)) {
+            return false;
+        }
+        if(saved_steps == -1 || steps - saved_steps >= interval) {
+            Object[] copy = new Object[stack.size()];
+            for(int i = 0; i < stack.size(); i++) {
+                copy[i] = Integer.valueOf(stack.get(i));
+            }
+            save(steps, pos, stack_hash, copy);
+            return false;
+        }
+        if(saved_stack.length != stack.size()) {
+            return false;
+        }
+        for(int i = 0; i < stack.size(); i++) {
+            if(((Integer) saved_stack[i]).intValue() != stack.get(i)) {
+                return false;
+            }
+        }
+        return isRepetition(pos);
+    }
+    
+    /**
+     * Checks the configuration of a Simulation after a step.
+     * 
+     * @param steps The number of steps taken.
+     * @param pos The position of the head.
+     * @param stack The stack of states, bottom first.
+     * @return True if the configuration repeats an earlier one.
+     */
+    boolean check(long steps, int pos, List<State> stack) {
+        int stack_hash = 1;
+        for(int i = 0; i < stack.size(); i++) {
+            stack_hash = 31 * stack_hash + System.identityHashCode(stack.get(i));
+        }
+        if(!isCandidate(steps, pos, stack_hash)) {
+            return false;
+        }
+        if(saved_steps == -1 || steps - saved_steps >= interval) {
+            save(steps, pos, stack_hash, stack.toArray());
+            return false;
+        }
+        if(saved_stack.length != stack.size()) {
+            return false;
+        }
+        for(int i = 0; i < stack.size(); i++) {
+            if(saved_stack[i] != stack.get(i)) {
+                return false;
+            }
+        }
+        return isRepetition(pos);
+    }
+    
+    /**
+     * Updates the head position range and tests whether the configuration
+     * must be saved or compared to the saved one.
+     */
+    private boolean isCandidate(long steps, int pos, int stack_hash) {
+        if(saved_steps == -1 || steps - saved_steps >= interval) {
+            return true;
+        }
+        min_pos = Math.min(min_pos, pos);
+        max_pos = Math.max(max_pos, pos);
+        if(stack_hash != saved_stack_hash) {
+            return false;
+        }
+        if(pos == saved_pos) {
+            return configurationHash(pos, stack_hash) == saved_hash;
+        }
+        if(pos > saved_pos) {
+            return saved_right_of_contents && min_pos >= saved_pos;
+        }
+        return saved_left_of_contents && max_pos <= saved_pos;
+    }
+    
+    /**
+     * Saves the current configuration and doubles the interval after the
+     * first save.
+     */
+    private void save(long steps, int pos, int stack_hash, Object[] stack) {
+        if(saved_steps != -1) {
+            interval *= 2;
+        }
+        saved_steps = steps;
+        saved_hash = configurationHash(pos, stack_hash);
+        saved_stack_hash = stack_hash;
+        saved_stack = stack;
+        saved_pos = pos;
+        saved_contents = tape.getContents();
+        saved_start = tape.getContentsStart();
+        int end = saved_start + tape.getContentsLength();
+        // Without a bi-infinite tape, the head may be stopped at position 0,
+        // so the steps might not repeat when shifted right.
+        saved_right_of_contents = pos >= end && (pos > 0 || tape.isBiInfinite());
+        saved_left_of_contents = pos < saved_start && tape.isBiInfinite();
+        min_pos = pos;
+        max_pos = pos;
+    }
+    
+    /**
+     * Tests whether the current configuration with a stack equal to the saved
+     * one repeats the saved configuration exactly or translated.
+     */
+    private boolean isRepetition(int pos) {
+        int start = tape.getContentsStart();
+        int end = start + tape.getContentsLength();
+        if(pos > saved_pos) {
+            return pos >= end;
+        }
+        if(pos < saved_pos) {
+            return pos < start;
+        }
+        
+        // Exact repetition: the hashes matched, compare the tapes.
+        return start == saved_start && tape.getContents().equals(saved_contents);
+    }
+    
+    /**
+     * Computes the hash of a configuration.
+     */
+    private long configurationHash(int pos, int stack_hash) {
+        return tape_hash + mix(0x632BE59BD9B4E019L * pos + stack_hash);
+    }
+    
+    /**
+     * Computes the hash of a non-empty cell.
+     */
+    private static long cellHash(int pos, char c) {
+        return mix(((long) pos << 16) ^ c);
+    }
+    
+    /**
+     * Mixes the bits of a value.
+     */
+    private static long mix(long x) {
+        x += 0x9E3779B97F4A7C15L;
+        x = (x ^ (x >>> 30)) * 0xBF58476D1CE4E5B9L;
+        x = (x ^ (x >>> 27)) * 0x94D049BB133111EBL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -10,6 +10,10 @@ import java.util.Set;
 
 /**
  * A Turing machine.
+ * 
+ * A machine is deterministic by default. In a nondeterministic machine a state
+ * may have several transitions accepting the same input, and the machine is
+ * run by NondeterministicSimulation.
  */
 public class Machine implements ByNameStored {
     /**
@@ -27,17 +31,23 @@ public class Machine implements ByNameStored {
      */
     private ByNameContainer<State> states;
     
+    /**
+     * Is the machine nondeterministic?
+     */
+    private boolean nondeterministic;
+    
     /**
      * Constructs empty Turing machine.
      * 
      * @param name Name of the machine.
      * @param container Container containing the machine that is notified on
-     * name changes.
+     * name changes and on modifications of the states.
      */
     public Machine(String name, ByNameContainer<Machine> container) {
         this.name = name;
         this.container = container;
-        this.states = new ByNameContainer<State>();
+        this.states = new ByNameContainer<State>(container);
+        nondeterministic = false;
     }
     
     /**
@@ -49,6 +59,16 @@ public class Machine implements ByNameStored {
         return name;
     }
     
+    /**
+     * Gets the change count of the machine.
+     * 
+     * @return A number that changes whenever a state of the machine is added,
+     * removed, renamed, moved or otherwise modified.
+     */
+    public long getChangeCount() {
+        return states.getChangeCount();
+    }
+    
     /**
      * Sets the name of the machine.
      * 
@@ -64,6 +84,44 @@ public class Machine implements ByNameStored {
         container.nameChanged(oldname);
     }
     
+    /**
+     * Tests whether the machine is nondeterministic.
+     * 
+     * @return True if the states may have several transitions accepting the
+     * same input.
+     */
+    public boolean isNondeterministic() {
+        return nondeterministic;
+    }
+    
+    /**
+     * Makes the machine nondeterministic or deterministic.
+     * 
+     * @param nondeterministic True to allow several transitions accepting the
+     * same input in a state.
+     * @throws NameInUseException if nondeterministic is false and some state
+     * already has several transitions accepting the same input.
+     */
+    public void setNondeterministic(
+        boolean nondeterministic
+    ) throws NameInUseException {
+        if(!nondeterministic) {
+            for(String name : states.getNames()) {
+                if(states.get(name).hasChoices()) {
+                    throw new NameInUseException(
+                        "State '" + name + "' has several transitions for " +
+                        "the same input"
+                    );
+                }
+            }
+        }
+        this.nondeterministic = nondeterministic;
+        for(String name : states.getNames()) {
+            states.get(name).nondeterministic = nondeterministic;
+        }
+        states.modified();
+    }
+    
     /**
      * Gets the state by name.
      * 
@@ -92,6 +150,7 @@ public class Machine implements ByNameStored {
      */
     public State addState(String name) throws NameInUseException {
         State state = new State(name, states);
+        state.nondeterministic = nondeterministic;
         states.add(state);
         return state;
     }
@@ -0,0 +1,425 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Tape whose cells are stored outside the Java heap in a memory-mapped
+ * temporary file, so that its length is limited by the disk instead of the
+ * heap.
+ * 
+ * The tape is divided into segments of a fixed number of cells. A segment is
+ * mapped when a non-empty character is first written into it, so the untouched
+ * regions of the tape take no space. Positions are longs; the methods taking
+ * int positions, used by the simulations, are equivalent to the long versions.
+ * 
+ * The temporary file is deleted when the tape is closed, or at the latest when
+ * the virtual machine exits. Java cannot unmap a segment explicitly, so the
+ * mappings, and with them the disk space of the deleted file, are only released
+ * when the segments are garbage collected. Reusing a tape with setContents
+ * reuses its segments instead of mapping new ones.
+ */
+public class MappedTape extends Tape implements Closeable {
+    /**
+     * The default number of cells in a segment.
+     */
+    public static final int DEFAULT_SEGMENT_CELLS = 1 << 20;
+    
+    /**
+     * Base 2 logarithm of the number of cells in a segment.
+     */
+    private final int log_segment;
+    
+    /**
+     * The mask of the index of a position in its segment.
+     */
+    private final long segment_mask;
+    
+    /**
+     * The temporary file the segments are mapped from.
+     */
+    private final File file;
+    
+    /**
+     * The open temporary file.
+     */
+    private final RandomAccessFile access;
+    
+    /**
+     * The mapped segments by their indices, the positions divided by the
+     * segment size rounding down. The cells contain the characters XORed with
+     * the empty character, so that a newly mapped segment is empty.
+     */
+    private final HashMap<Long, CharBuffer> segments;
+    
+    /**
+     * Segments that are mapped but no longer on the tape, to be reused.
+     */
+    private final ArrayList<CharBuffer> free_segments;
+    
+    /**
+     * The number of bytes of the file that have been mapped.
+     */
+    private long mapped_bytes;
+    
+    /**
+     * The index of the segment last looked up.
+     */
+    private long cached_index;
+    
+    /**
+     * The segment last looked up, null if it is not mapped.
+     */
+    private CharBuffer cached_segment;
+    
+    /**
+     * The leftmost position that may contain a non-empty character, at most 0.
+     */
+    private long left;
+    
+    /**
+     * One past the rightmost position that may contain a non-empty character,
+     * at least 0.
+     */
+    private long right;
+    
+    /**
+     * Constructs a mapped tape with the default segment size in the default
+     * temporary directory.
+     * 
+     * @param input The content of the tape starting from position 0.
+     * @param empty_char The character of all other positions of the tape.
+     * @param bi_infinite True if the tape should also have negative positions.
+     * @throws FilesystemException if the temporary file could not be created.
+     */
+    public MappedTape(String input, char empty_char, boolean bi_infinite)
+    throws FilesystemException {
+        this(input, empty_char, bi_infinite, null, DEFAULT_SEGMENT_CELLS);
+    }
+    
+    /**
+     * Constructs a mapped tape.
+     * 
+     * @param input The content of the tape starting from position 0.
+     * @param empty_char The character of all other positions of the tape.
+     * @param bi_infinite True if the tape should also have negative positions.
+     * @param dir The directory of the temporary file, null for the default
+     * temporary directory.
+     * @param segment_cells The number of cells in a segment, a power of two.
+     * @throws FilesystemException if the temporary file could not be created.
+     */
+    public MappedTape(
+        String input,
+        char empty_char,
+        boolean bi_infinite,
+        File dir,
+        int segment_cells
+    ) throws FilesystemException {
+        super(empty_char, bi_infinite);
+        if(segment_cells <= 0 || Integer.bitCount(segment_cells) != 1) {
+            throw new IllegalArgumentException(
+                "Segment size must be a power of two."
+            );
+        }
+        log_segment = Integer.numberOfTrailingZeros(segment_cells);
+        segment_mask = segment_cells - 1;
+        segments = new HashMap<Long, CharBuffer>();
+        free_segments = new ArrayList<CharBuffer>();
+        
+        try {
+            file = File.createTempFile("turrtape", ".tmp", dir);
+        } catch(IOException e) {
+            throw new FilesystemException(
+                "Could not create tape file: " + e.getMessage()
+            );
+        }
+        file.deleteOnExit();
+        try {
+            access = new RandomAccessFile(file, "rw");
+        } catch(IOException e) {
+            file.delete();
+            throw new FilesystemException(
+                "Could not open tape file: " + e.getMessage()
+            );
+        }
+        mapped_bytes = 0;
+        
+        setContents(input);
+    }
+    
+    /**
+     * Gets the character at given position on the tape.
+     * 
+     * @param pos The position on the tape.
+     * @return The character at pos.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
+     */
+    public char getCharacterAt(long pos) {
+        char empty = getEmptyCharacter();
+        CharBuffer segment = getSegment(pos >> log_segment);
+        if(segment == null) {
+            checkPosition(pos);
+            return empty;
+        }
+        return (char) (segment.get((int) (pos & segment_mask)) ^ empty);
+    }
+    
+    /**
+     * Sets the character at given position on the tape.
+     * 
+     * @param pos The position on the tape.
+     * @param c The character to put.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
+     * @throws IllegalStateException if a segment could not be mapped, for
+     * example because the disk is full.
+     */
+    public void setCharacterAt(long pos, char c) {
+        char empty = getEmptyCharacter();
+        long index = pos >> log_segment;
+        CharBuffer segment = getSegment(index);
+        if(segment == null) {
+            checkPosition(pos);
+            if(c == empty) {
+                // The position is already empty.
+                return;
+            }
+            segment = mapSegment(index);
+        }
+        
+        segment.put((int) (pos & segment_mask), (char) (c ^ empty));
+        if(c != empty) {
+            if(pos >= right) {
+                right = pos + 1;
+            }
+            if(pos < left) {
+                left = pos;
+            }
+        }
+    }
+    
+    @Override
+    public char getCharacterAt(int pos) {
+        return getCharacterAt((long) pos);
+    }
+    
+    @Override
+    public void setCharacterAt(int pos, char c) {
+        setCharacterAt((long) pos, c);
+    }
+    
+    /**
+     * Gets a part of the tape as a string.
+     * 
+     * @param start The position of the first character.
+     * @param length The number of characters.
+     * @return The characters at positions start to start + length - 1.
+     * @throws IndexOutOfBoundsException if start is negative and the tape is
+     * not bi-infinite.
+     */
+    public String getContents(long start, int length) {
+        char[] contents = new char[length];
+        for(int i = 0; i < length; i++) {
+            contents[i] = getCharacterAt(start + i);
+        }
+        return new String(contents);
+    }
+    
+    /**
+     * Get the contents of the tape as a string.
+     * 
+     * @return The minimal portion of the tape starting at
+     * getContentsStart() such that all characters after it are empty
+     * characters.
+     * @throws IllegalStateException if the contents are too long for a string.
+     */
+    @Override
+    public String getContents() {
+        return getContents(getContentsStartLong(), getContentsLength());
+    }
+    
+    /**
+     * Get the length of getContents().
+     * 
+     * @return The length of string returned by getContents().
+     * @throws IllegalStateException if the length does not fit in an int.
+     */
+    @Override
+    public int getContentsLength() {
+        long length = getContentsLengthLong();
+        if(length > Integer.MAX_VALUE) {
+            throw new IllegalStateException(
+                "Tape contents are too long for a string."
+            );
+        }
+        return (int) length;
+    }
+    
+    /**
+     * Get the position where getContents() starts.
+     * 
+     * @return The leftmost position with a non-empty character, or 0.
+     * @throws IllegalStateException if the position does not fit in an int.
+     */
+    @Override
+    public int getContentsStart() {
+        long start = getContentsStartLong();
+        if(start < Integer.MIN_VALUE) {
+            throw new IllegalStateException(
+                "Tape contents start too far left."
+            );
+        }
+        return (int) start;
+    }
+    
+    /**
+     * Get the length of the contents of the tape as a long.
+     * 
+     * @return The number of cells from getContentsStartLong() to the rightmost
+     * non-empty character, at least to position 0.
+     */
+    public long getContentsLengthLong() {
+        trim();
+        
+        return right - left;
+    }
+    
+    /**
+     * Get the position where the contents of the tape start as a long.
+     * 
+     * @return 0 if the tape is not bi-infinite, otherwise the leftmost negative
+     * position with a non-empty character or 0 if there is no such position.
+     */
+    public long getContentsStartLong() {
+        trim();
+        
+        return left;
+    }
+    
+    /**
+     * Set the contents of the tape starting from a given position. The
+     * segments of the old contents are kept mapped and reused.
+     */
+    @Override
+    void setContents(String contents, int start) {
+        checkPosition(start);
+        free_segments.addAll(segments.values());
+        segments.clear();
+        cached_index = Long.MIN_VALUE;
+        cached_segment = null;
+        left = 0;
+        right = 0;
+        
+        for(int i = 0; i < contents.length(); i++) {
+            setCharacterAt((long) start + i, contents.charAt(i));
+        }
+        left = start;
+        right = Math.max(right, start + contents.length());
+    }
+    
+    /**
+     * Closes the tape and deletes the temporary file. The segments are only
+     * dropped, not unmapped: they stay mapped and keep the disk space of the
+     * file in use until they are garbage collected. The tape must not be used
+     * after it has been closed.
+     * 
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        segments.clear();
+        free_segments.clear();
+        cached_index = Long.MIN_VALUE;
+        cached_segment = null;
+        try {
+            access.close();
+        } finally {
+            file.delete();
+        }
+    }
+    
+    /**
+     * Gets a segment, caching the lookup.
+     * 
+     * @param index The index of the segment.
+     * @return The segment, null if it has not been mapped.
+     */
+    private CharBuffer getSegment(long index) {
+        if(index != cached_index) {
+            cached_segment = segments.get(index);
+            cached_index = index;
+        }
+        return cached_segment;
+    }
+    
+    /**
+     * Maps a new empty segment, reusing a free segment if there is one.
+     * 
+     * @param index The index of the segment.
+     * @return The segment.
+     */
+    private CharBuffer mapSegment(long index) {
+        CharBuffer segment;
+        if(free_segments.isEmpty()) {
+            long bytes = 2L << log_segment;
+            try {
+                segment = access.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE, mapped_bytes, bytes
+                ).order(ByteOrder.nativeOrder()).asCharBuffer();
+            } catch(IOException e) {
+                throw new IllegalStateException(
+                    "Could not map tape segment: " + e.getMessage(), e
+                );
+            }
+            mapped_bytes += bytes;
+        } else {
+            segment = free_segments.remove(free_segments.size() - 1);
+            for(int i = 0; i < segment.capacity(); i++) {
+                segment.put(i, (char) 0);
+            }
+        }
+        
+        segments.put(index, segment);
+        cached_index = index;
+        cached_segment = segment;
+        return segment;
+    }
+    
+    /**
+     * Shrinks the written extent so that it starts and ends with non-empty
+     * characters, except that it always contains position 0. Segments that
+     * are not mapped are skipped at once.
+     */
+    private void trim() {
+        while(right > 0) {
+            long pos = right - 1;
+            CharBuffer segment = getSegment(pos >> log_segment);
+            if(segment == null) {
+                right = Math.max(0, pos & ~segment_mask);
+            } else if(segment.get((int) (pos & segment_mask)) == 0) {
+                right--;
+            } else {
+                break;
+            }
+        }
+        while(left < 0) {
+            CharBuffer segment = getSegment(left >> log_segment);
+            if(segment == null) {
+                left = Math.min(0, (left | segment_mask) + 1);
+            } else if(segment.get((int) (left & segment_mask)) == 0) {
+                left++;
+            } else {
+                break;
+            }
+        }
+    }
+}
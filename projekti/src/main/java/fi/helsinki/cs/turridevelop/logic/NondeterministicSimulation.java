@@ -0,0 +1,831 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Simulation of nondeterministic Turing machines by a breadth-first search
+ * over their configurations.
+ * 
+ * Each round of the search expands the configurations of the frontier by all
+ * transitions accepting their input. Large frontiers are split between a pool
+ * of threads. A configuration consists of the state and machine stacks, the
+ * head positions and the tapes. Configurations that have been reached before
+ * are dropped by looking them up in a concurrent hash set, so merging branches
+ * and cycles are explored only once. The tapes are CopyOnWriteTapes, so a
+ * successor shares all the cells of its parent except the chunk it writes.
+ * 
+ * The input is accepted if some computation reaches an accepting state, and
+ * the search finds an accepting computation with the fewest steps. The input
+ * is rejected if all configurations reachable from the initial one have been
+ * expanded without reaching an accepting state, which also happens when some
+ * computations loop forever through the same configurations.
+ * 
+ * The project must not be modified while the search runs.
+ */
+public class NondeterministicSimulation {
+    /**
+     * The smallest frontier that is expanded in parallel.
+     */
+    private static final int PARALLEL_FRONTIER = 64;
+    
+    /**
+     * The number of configurations a thread expands between limit checks.
+     */
+    private static final int CHECK_INTERVAL = 256;
+    
+    /**
+     * The project in which the submachines will be searched for.
+     */
+    private final Project project;
+    
+    /**
+     * The number of tapes.
+     */
+    private final int tape_count;
+    
+    /**
+     * All configurations reached so far.
+     */
+    private final ConcurrentHashMap<Configuration, Boolean> visited;
+    
+    /**
+     * The configurations reached but not expanded yet, in the order they
+     * were reached.
+     */
+    private ArrayList<Configuration> frontier;
+    
+    /**
+     * The accepting configuration found, null if none.
+     */
+    private Configuration accepted;
+    
+    /**
+     * The status of the search.
+     */
+    private SimulationStatus status;
+    
+    /**
+     * The largest step count of the configurations reached.
+     */
+    private long steps;
+    
+    /**
+     * The number of threads to use.
+     */
+    private int thread_count;
+    
+    /**
+     * Has the thread running the search been interrupted during this round?
+     */
+    private volatile boolean interrupted;
+    
+    /**
+     * Constructs a search on a single tape. The search starts from the state
+     * named "start" in the specified machine.
+     * 
+     * @param project The project to simulate.
+     * @param machine_name The name of the machine in the project to simulate.
+     * @param tape The input tape. It is copied, so the search does not modify
+     * it.
+     * 
+     * @throws SimulationException if the project doesn't have the machine or
+     * the machine does not have a start state or a submachine error occured.
+     */
+    public NondeterministicSimulation(
+        Project project,
+        String machine_name,
+        Tape tape
+    ) throws SimulationException {
+        this(project, machine_name, new Tape[] {tape});
+    }
+    
+    /**
+     * Constructs a search on multiple tapes. The search starts from the state
+     * named "start" in the specified machine.
+     * 
+     * @param project The project to simulate.
+     * @param machine_name The name of the machine in the project to simulate.
+     * @param tapes The tapes, the input tape first. They are copied, so the
+     * search does not modify them.
+     * 
+     * @throws SimulationException if the project doesn't have the machine or
+     * the machine does not have a start state or a submachine error occured.
+     * @throws IllegalArgumentException if there are no tapes.
+     */
+    public NondeterministicSimulation(
+        Project project,
+        String machine_name,
+        Tape[] tapes
+    ) throws SimulationException {
+        if(tapes.length == 0) {
+            throw new IllegalArgumentException(
+                "A simulation needs at least one tape."
+            );
+        }
+        this.project = project;
+        tape_count = tapes.length;
+        visited = new ConcurrentHashMap<Configuration, Boolean>();
+        frontier = new ArrayList<Configuration>();
+        accepted = null;
+        status = SimulationStatus.RUNNING;
+        steps = 0;
+        thread_count = Runtime.getRuntime().availableProcessors();
+        
+        Machine machine = project.getMachine(machine_name);
+        if(machine == null) {
+            throw new SimulationException(
+                "The project does not have machine '" + machine_name + "'."
+            );
+        }
+        State state = machine.getState("start");
+        if(state == null) {
+            throw new SimulationException(
+                "The machine does not have a state named 'start'."
+            );
+        }
+        
+        CopyOnWriteTape[] search_tapes = new CopyOnWriteTape[tape_count];
+        for(int i = 0; i < tape_count; i++) {
+            Tape tape = tapes[i];
+            search_tapes[i] = new CopyOnWriteTape(
+                "", tape.getEmptyCharacter(), tape.isBiInfinite()
+            );
+            search_tapes[i].setContents(
+                tape.getContents(), tape.getContentsStart()
+            );
+        }
+        Configuration initial = enter(
+            new State[] {state},
+            new Machine[] {machine},
+            new int[tape_count],
+            search_tapes,
+            0
+        );
+        visited.put(initial, Boolean.TRUE);
+        if(initial.accepting) {
+            accepted = initial;
+            status = SimulationStatus.ACCEPTED;
+        } else {
+            frontier.add(initial);
+        }
+    }
+    
+    /**
+     * Gets the current status of the search.
+     * 
+     * @return ACCEPTED if an accepting configuration has been found, REJECTED
+     * if all reachable configurations have been expanded without finding one,
+     * otherwise RUNNING.
+     */
+    public SimulationStatus getStatus() {
+        return status;
+    }
+    
+    /**
+     * Gets the number of steps.
+     * 
+     * @return The number of steps of the accepting computation if the input
+     * was accepted, otherwise the number of steps of the longest computation
+     * explored.
+     */
+    public long getStepCount() {
+        if(accepted != null) {
+            return accepted.steps;
+        }
+        return steps;
+    }
+    
+    /**
+     * Gets the number of distinct configurations reached.
+     * 
+     * @return The number of configurations reached so far.
+     */
+    public int getConfigurationCount() {
+        return visited.size();
+    }
+    
+    /**
+     * Gets the number of configurations waiting to be expanded.
+     * 
+     * @return The size of the frontier of the search.
+     */
+    public int getFrontierSize() {
+        return frontier.size();
+    }
+    
+    /**
+     * Gets the accepting state.
+     * 
+     * @return The accepting state the search found, null if the status is not
+     * ACCEPTED.
+     */
+    public State getState() {
+        if(accepted == null) {
+            return null;
+        }
+        return accepted.states[accepted.states.length - 1];
+    }
+    
+    /**
+     * Gets the machine of the accepting state.
+     * 
+     * @return The machine getState() is in, null if the status is not
+     * ACCEPTED.
+     */
+    public Machine getMachine() {
+        if(accepted == null) {
+            return null;
+        }
+        return accepted.machines[accepted.machines.length - 1];
+    }
+    
+    /**
+     * Gets a tape of the accepting configuration.
+     * 
+     * @param tape The index of the tape, less than getTapeCount().
+     * @return A copy of the tape, null if the status is not ACCEPTED.
+     */
+    public Tape getTape(int tape) {
+        if(accepted == null) {
+            return null;
+        }
+        return accepted.tapes[tape].copy();
+    }
+    
+    /**
+     * Gets a head position of the accepting configuration.
+     * 
+     * @param tape The index of the tape, less than getTapeCount().
+     * @return The position of the head on the tape, 0 if the status is not
+     * ACCEPTED.
+     */
+    public int getHeadPosition(int tape) {
+        if(accepted == null) {
+            return 0;
+        }
+        return accepted.positions[tape];
+    }
+    
+    /**
+     * Gets the number of tapes.
+     * 
+     * @return The number of tapes the search operates on.
+     */
+    public int getTapeCount() {
+        return tape_count;
+    }
+    
+    /**
+     * Gets the number of threads.
+     * 
+     * @return The number of threads used to expand large frontiers.
+     */
+    public int getThreadCount() {
+        return thread_count;
+    }
+    
+    /**
+     * Sets the number of threads. By default as many threads as there are
+     * available processors are used.
+     * 
+     * @param thread_count The number of threads used to expand large
+     * frontiers, at least 1.
+     */
+    public void setThreadCount(int thread_count) {
+        if(thread_count < 1) {
+            throw new IllegalArgumentException("Thread count must be positive.");
+        }
+        this.thread_count = thread_count;
+    }
+    
+    /**
+     * Searches until the status is no longer RUNNING.
+     * 
+     * Note that the search might not terminate.
+     * 
+     * @throws SimulationException on submachine errors.
+     */
+    public void run() throws SimulationException {
+        run(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, null);
+    }
+    
+    /**
+     * Searches until the status is no longer RUNNING, all computations have
+     * reached the given number of steps, the given number of configurations
+     * has been reached, the timeout has passed or the search has been
+     * cancelled. The configuration limit, the timeout and the cancellation
+     * are checked every few hundred configurations. The search can be
+     * continued after it stops.
+     * 
+     * @param max_steps The maximum number of steps of the computations.
+     * @param max_configurations The maximum number of configurations to reach.
+     * @param timeout The maximum wall time of the run in milliseconds,
+     * Long.MAX_VALUE for no limit.
+     * @param cancellation The token for cancelling the run, null if the run
+     * cannot be cancelled.
+     * @return The status of the search, or LIMIT_REACHED if it was still
+     * running when the run stopped.
+     * @throws SimulationException on submachine errors.
+     */
+    public SimulationStatus run(
+        long max_steps,
+        long max_configurations,
+        long timeout,
+        CancellationToken cancellation
+    ) throws SimulationException {
+        RunLimits limits = new RunLimits(
+            0, Long.MAX_VALUE, timeout, cancellation
+        );
+        ExecutorService executor = null;
+        interrupted = false;
+        try {
+            while(status == SimulationStatus.RUNNING) {
+                if(frontier.isEmpty()) {
+                    status = SimulationStatus.REJECTED;
+                    break;
+                }
+                if(
+                    interrupted ||
+                    visited.size() >= max_configurations ||
+                    limits.isExpired()
+                ) {
+                    break;
+                }
+                
+                // Hold back the configurations at the step limit.
+                ArrayList<Configuration> next = new ArrayList<Configuration>();
+                ArrayList<Configuration> expanded =
+                    new ArrayList<Configuration>();
+                for(Configuration config : frontier) {
+                    if(config.steps < max_steps) {
+                        expanded.add(config);
+                    } else {
+                        next.add(config);
+                    }
+                }
+                if(expanded.isEmpty()) {
+                    break;
+                }
+                
+                ArrayList<Expansion> expansions = new ArrayList<Expansion>();
+                if(thread_count == 1 || expanded.size() < PARALLEL_FRONTIER) {
+                    Expansion expansion =
+                        new Expansion(expanded, limits, max_configurations);
+                    expansion.call();
+                    expansions.add(expansion);
+                } else {
+                    if(executor == null) {
+                        executor = Executors.newFixedThreadPool(thread_count);
+                    }
+                    expansions = expandInParallel(
+                        executor, expanded, limits, max_configurations
+                    );
+                }
+                
+                // Keep the frontier in the order of the step counts.
+                for(Expansion expansion : expansions) {
+                    next.addAll(expansion.remaining);
+                }
+                for(Expansion expansion : expansions) {
+                    next.addAll(expansion.successors);
+                    Configuration found = expansion.accepting;
+                    if(
+                        found != null &&
+                        (accepted == null || found.steps < accepted.steps)
+                    ) {
+                        accepted = found;
+                    }
+                }
+                for(Configuration config : next) {
+                    steps = Math.max(steps, config.steps);
+                }
+                frontier = next;
+                if(accepted != null) {
+                    status = SimulationStatus.ACCEPTED;
+                }
+            }
+        } finally {
+            if(executor != null) {
+                executor.shutdownNow();
+            }
+            if(interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        if(status == SimulationStatus.RUNNING) {
+            return SimulationStatus.LIMIT_REACHED;
+        }
+        return status;
+    }
+    
+    /**
+     * Expands configurations on a pool of threads, splitting them into a few
+     * parts for each thread so that the parts are balanced between the
+     * threads. Waits for all parts even if the thread is interrupted, so that
+     * no reached configuration is lost; the interruption stops the parts
+     * early instead.
+     * 
+     * @param executor The thread pool.
+     * @param configs The configurations to expand.
+     * @param limits The limits of the run.
+     * @param max_configurations The maximum number of configurations.
+     * @return The expansions of the parts in the order of configs.
+     * @throws SimulationException on submachine errors.
+     */
+    private ArrayList<Expansion> expandInParallel(
+        ExecutorService executor,
+        ArrayList<Configuration> configs,
+        RunLimits limits,
+        long max_configurations
+    ) throws SimulationException {
+        int parts = Math.min(4 * thread_count, configs.size());
+        ArrayList<Future<Expansion>> futures =
+            new ArrayList<Future<Expansion>>(parts);
+        for(int i = 0; i < parts; i++) {
+            List<Configuration> part = configs.subList(
+                (int) ((long) configs.size() * i / parts),
+                (int) ((long) configs.size() * (i + 1) / parts)
+            );
+            futures.add(executor.submit(
+                new Expansion(part, limits, max_configurations)
+            ));
+        }
+        
+        ArrayList<Expansion> expansions = new ArrayList<Expansion>(parts);
+        SimulationException error = null;
+        for(Future<Expansion> future : futures) {
+            while(true) {
+                try {
+                    expansions.add(future.get());
+                    break;
+                } catch(InterruptedException e) {
+                    interrupted = true;
+                } catch(ExecutionException e) {
+                    if(e.getCause() instanceof SimulationException) {
+                        error = (SimulationException) e.getCause();
+                        break;
+                    }
+                    throw new RuntimeException(
+                        "Nondeterministic simulation failed.", e.getCause()
+                    );
+                }
+            }
+        }
+        if(error != null) {
+            throw error;
+        }
+        return expansions;
+    }
+    
+    /**
+     * Expands a configuration by all transitions accepting its input. The
+     * successors that have not been reached before are added to the visited
+     * set.
+     * 
+     * @param config The configuration to expand.
+     * @param successors The list to add the new non-accepting successors to.
+     * @return The first new accepting successor, null if there is none.
+     * @throws SimulationException if the state reads more tapes than the
+     * search has or on submachine errors.
+     */
+    private Configuration expand(
+        Configuration config,
+        List<Configuration> successors
+    ) throws SimulationException {
+        int top = config.states.length - 1;
+        State state = config.states[top];
+        int count = state.getTapeCount();
+        if(count > tape_count) {
+            throw new SimulationException(
+                "State '" + state.getName() + "' of machine '" +
+                config.machines[top].getName() + "' reads " + count +
+                " tapes, but the simulation has only " + tape_count + "."
+            );
+        }
+        
+        char[] inputs = new char[count];
+        for(int i = 0; i < count; i++) {
+            inputs[i] = config.tapes[i].getCharacterAt(config.positions[i]);
+        }
+        Transition[] choices = state.getChoices(new String(inputs));
+        if(choices == null) {
+            // The computation rejects.
+            return null;
+        }
+        
+        Configuration accepting = null;
+        for(Transition transition : choices) {
+            int[] positions = config.positions.clone();
+            CopyOnWriteTape[] tapes = config.tapes.clone();
+            for(int i = 0; i < transition.getTapeCount(); i++) {
+                Character c = transition.getOutputCharacter(i);
+                if(c != null && c != inputs[i]) {
+                    tapes[i] = tapes[i].copy();
+                    tapes[i].setCharacterAt(positions[i], c);
+                }
+                positions[i] += transition.getMovement(i);
+                if(positions[i] < 0 && !tapes[i].isBiInfinite()) {
+                    positions[i] = 0;
+                }
+            }
+            State[] states = config.states.clone();
+            states[top] = transition.getDestination();
+            
+            Configuration successor = enter(
+                states, config.machines, positions, tapes, config.steps + 1
+            );
+            if(visited.putIfAbsent(successor, Boolean.TRUE) != null) {
+                // Reached before.
+                continue;
+            }
+            if(!successor.accepting) {
+                successors.add(successor);
+            } else if(accepting == null) {
+                accepting = successor;
+            }
+        }
+        return accepting;
+    }
+    
+    /**
+     * Constructs the configuration after entering the state on the top of the
+     * stack, calling its submachines and returning from accepting states.
+     * 
+     * @param states The state stack, bottom first, with the entered state on
+     * the top. Not modified.
+     * @param machines The machine stack. Not modified.
+     * @param positions The head positions.
+     * @param tapes The tapes.
+     * @param steps The number of steps taken.
+     * @return The configuration.
+     * @throws SimulationException on submachine errors.
+     */
+    private Configuration enter(
+        State[] states,
+        Machine[] machines,
+        int[] positions,
+        CopyOnWriteTape[] tapes,
+        long steps
+    ) throws SimulationException {
+        int depth = states.length;
+        State top = states[depth - 1];
+        if(top.getSubmachine() != null) {
+            SubmachineEntry entry = project.getEntry(top);
+            if(entry == null) {
+                throw new SimulationException(
+                    getSubmachineError(top, machines[depth - 1])
+                );
+            }
+            states = Arrays.copyOf(states, depth + entry.pushes);
+            machines = Arrays.copyOf(machines, depth + entry.pushes);
+            System.arraycopy(entry.states, 0, states, depth, entry.pushes);
+            System.arraycopy(entry.machines, 0, machines, depth, entry.pushes);
+            depth = states.length;
+        }
+        
+        // While the state on the top is accepting, return from it.
+        while(depth > 1 && states[depth - 1].isAccepting()) {
+            depth--;
+        }
+        if(depth < states.length) {
+            states = Arrays.copyOf(states, depth);
+            machines = Arrays.copyOf(machines, depth);
+        }
+        
+        return new Configuration(
+            states,
+            machines,
+            positions,
+            tapes,
+            steps,
+            states[depth - 1].isAccepting()
+        );
+    }
+    
+    /**
+     * Finds out why the submachines of a state cannot be entered by looking
+     * them up by name.
+     * 
+     * @param state The entered state.
+     * @param machine The machine of the state.
+     * @return The error message.
+     */
+    private String getSubmachineError(State state, Machine machine) {
+        int depth = 0;
+        while(state.getSubmachine() != null) {
+            depth++;
+            if(depth > project.getMachineNames().size()) {
+                return "The project has an infinite submachine loop " +
+                    "containing the start state of machine '" +
+                    machine.getName() + "'";
+            }
+            
+            String submachine_name = state.getSubmachine();
+            Machine submachine = project.getMachine(submachine_name);
+            if(submachine == null) {
+                return "The project does not have machine '" +
+                    submachine_name + "':\nReferred by state '" +
+                    state.getName() + "' of machine '" + machine.getName() +
+                    "'.";
+            }
+            state = submachine.getState("start");
+            if(state == null) {
+                return "Machine '" + submachine_name + "' does not have a " +
+                    "state named 'start'.";
+            }
+            machine = submachine;
+        }
+        return "Could not enter the submachines of the state.";
+    }
+    
+    /**
+     * The expansion of a part of the frontier, run in the calling thread or
+     * in the thread pool.
+     */
+    private class Expansion implements Callable<Expansion> {
+        /**
+         * The configurations to expand.
+         */
+        final List<Configuration> configs;
+        
+        /**
+         * The limits of the run.
+         */
+        final RunLimits limits;
+        
+        /**
+         * The maximum number of configurations.
+         */
+        final long max_configurations;
+        
+        /**
+         * The new non-accepting successors.
+         */
+        final ArrayList<Configuration> successors;
+        
+        /**
+         * The configurations that were not expanded because the run stopped.
+         */
+        final ArrayList<Configuration> remaining;
+        
+        /**
+         * The new accepting successor with the fewest steps, null if none.
+         */
+        Configuration accepting;
+        
+        /**
+         * Constructs an expansion of configurations.
+         */
+        Expansion(
+            List<Configuration> configs,
+            RunLimits limits,
+            long max_configurations
+        ) {
+            this.configs = configs;
+            this.limits = limits;
+            this.max_configurations = max_configurations;
+            successors = new ArrayList<Configuration>();
+            remaining = new ArrayList<Configuration>();
+            accepting = null;
+        }
+        
+        @Override
+        public Expansion call() throws SimulationException {
+            for(int i = 0; i < configs.size(); i++) {
+                if(
+                    i % CHECK_INTERVAL == CHECK_INTERVAL - 1 &&
+                    (
+                        interrupted ||
+                        visited.size() >= max_configurations ||
+                        limits.isExpired()
+                    )
+                ) {
+                    remaining.addAll(configs.subList(i, configs.size()));
+                    break;
+                }
+                
+                Configuration found = expand(configs.get(i), successors);
+                if(
+                    found != null &&
+                    (accepting == null || found.steps < accepting.steps)
+                ) {
+                    accepting = found;
+                }
+            }
+            return this;
+        }
+    }
+    
+    /**
+     * A configuration of the machine. Configurations are equal if they have
+     * the same stacks, head positions and tape contents, regardless of the
+     * number of steps taken to reach them. They are not modified after
+     * construction, so the arrays and the tapes may be shared between them.
+     * The tapes are frozen on construction, so that the threads expanding
+     * configurations sharing a tape can copy it at the same time.
+     */
+    private static class Configuration {
+        /**
+         * The state stack, bottom first.
+         */
+        final State[] states;
+        
+        /**
+         * The machines of the states.
+         */
+        final Machine[] machines;
+        
+        /**
+         * The positions of the heads.
+         */
+        final int[] positions;
+        
+        /**
+         * The tapes.
+         */
+        final CopyOnWriteTape[] tapes;
+        
+        /**
+         * The number of steps taken to reach the configuration.
+         */
+        final long steps;
+        
+        /**
+         * Is the configuration accepting?
+         */
+        final boolean accepting;
+        
+        /**
+         * The hash of the configuration.
+         */
+        private final int hash;
+        
+        /**
+         * Constructs a configuration.
+         */
+        Configuration(
+            State[] states,
+            Machine[] machines,
+            int[] positions,
+            CopyOnWriteTape[] tapes,
+            long steps,
+            boolean accepting
+        ) {
+            this.states = states;
+            this.machines = machines;
+            this.positions = positions;
+            this.tapes = tapes;
+            this.steps = steps;
+            this.accepting = accepting;
+            
+            long h = Arrays.hashCode(states);
+            h = h * 31 + Arrays.hashCode(machines);
+            h = h * 31 + Arrays.hashCode(positions);
+            for(CopyOnWriteTape tape : tapes) {
+                tape.freeze();
+                h = h * 31 + tape.getContentsHash();
+            }
+            hash = (int) (h ^ h >>> 32);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if(!(obj instanceof Configuration)) {
+                return false;
+            }
+            Configuration other = (Configuration) obj;
+            if(
+                hash != other.hash ||
+                !Arrays.equals(positions, other.positions) ||
+                !Arrays.equals(states, other.states) ||
+                !Arrays.equals(machines, other.machines)
+            ) {
+                return false;
+            }
+            for(int i = 0; i < tapes.length; i++) {
+                if(
+                    tapes[i] != other.tapes[i] &&
+                    !tapes[i].contentsEqual(other.tapes[i])
+                ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * Tape that stores the cells as symbol ids of a fixed alphabet, packed into
+ * longs with as few bits per cell as the alphabet allows. A tape over an
+ * alphabet of at most 4 characters takes 2 bits per cell instead of the 16
+ * bits of Tape.
+ * 
+ * Only the characters of the alphabet can be written on the tape. When the
+ * alphabet contains all the characters of a project and of the input, a
+ * simulation of the project can never write anything else.
+ */
+public class PackedTape extends Tape {
+    /**
+     * The alphabet of the tape.
+     */
+    private final Alphabet alphabet;
+    
+    /**
+     * Base 2 logarithm of the number of bits per cell.
+     */
+    private final int log_bits;
+    
+    /**
+     * Base 2 logarithm of the number of cells per word.
+     */
+    private final int log_cells;
+    
+    /**
+     * The mask of the bits of one cell.
+     */
+    private final long mask;
+    
+    /**
+     * The explicitly stored part of the tape, packed. Cells that have not been
+     * written contain 0, the symbol of the empty character.
+     */
+    private long[] words;
+    
+    /**
+     * The number of cells in words.
+     */
+    private int capacity;
+    
+    /**
+     * The index of position 0 in the cells of words.
+     */
+    private int offset;
+    
+    /**
+     * The leftmost position that may contain a non-empty character, at most 0.
+     */
+    private int left;
+    
+    /**
+     * One past the rightmost position that may contain a non-empty character,
+     * at least 0.
+     */
+    private int right;
+    
+    /**
+     * Constructs a packed tape over an alphabet.
+     * 
+     * @param input The content of the tape starting from position 0.
+     * @param alphabet The alphabet of the tape. Its empty character is the
+     * character of all other positions of the tape.
+     * @param bi_infinite True if the tape should also have negative positions.
+     * @throws IllegalArgumentException if the input has characters that are
+     * not in the alphabet.
+     */
+    public PackedTape(String input, Alphabet alphabet, boolean bi_infinite) {
+        super(alphabet.getEmptyCharacter(), bi_infinite);
+        this.alphabet = alphabet;
+        int bits = alphabet.getBitsPerCell();
+        log_bits = Integer.numberOfTrailingZeros(bits);
+        log_cells = 6 - log_bits;
+        mask = (1L << bits) - 1;
+        setContents(input);
+    }
+    
+    /**
+     * Constructs a packed tape whose alphabet consists of the given
+     * characters, the characters of the input and the empty character.
+     * 
+     * @param input The content of the tape starting from position 0.
+     * @param empty_char The character of all other positions of the tape.
+     * @param bi_infinite True if the tape should also have negative positions.
+     * @param characters The characters that may be written on the tape, such
+     * as Project.getCharacters().
+     */
+    public PackedTape(
+        String input,
+        char empty_char,
+        boolean bi_infinite,
+        Collection<Character> characters
+    ) {
+        this(input, withInput(empty_char, characters, input), bi_infinite);
+    }
+    
+    /**
+     * Gets the alphabet.
+     * 
+     * @return The alphabet of the tape.
+     */
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+    
+    /**
+     * Gets the symbol id at given position on the tape.
+     * 
+     * @param pos The position on the tape.
+     * @return The symbol id of the character at pos in the alphabet.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
+     */
+    public int getSymbolAt(int pos) {
+        int i = pos + offset;
+        if(i >= 0 && i < capacity) {
+            return get(i);
+        }
+        checkPosition(pos);
+        return 0;
+    }
+    
+    /**
+     * Sets the symbol id at given position on the tape.
+     * 
+     * @param pos The position on the tape.
+     * @param symbol The symbol id of the character to put.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
+     */
+    public void setSymbolAt(int pos, int symbol) {
+        int i = pos + offset;
+        if(i < 0 || i >= capacity) {
+            checkPosition(pos);
+            if(symbol == 0) {
+                // The position is already empty.
+                return;
+            }
+            i = reserve(pos);
+        }
+        
+        set(i, symbol);
+        if(symbol != 0) {
+            if(pos >= right) {
+                right = pos + 1;
+            }
+            if(pos < left) {
+                left = pos;
+            }
+        }
+    }
+    
+    @Override
+    public char getCharacterAt(int pos) {
+        return alphabet.getCharacter(getSymbolAt(pos));
+    }
+    
+    /**
+     * Sets the character at given position on the tape.
+     * 
+     * @param pos The position on the tape.
+     * @param c The character to put.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
+     * @throws IllegalArgumentException if c is not in the alphabet.
+     */
+    @Override
+    public void setCharacterAt(int pos, char c) {
+        setSymbolAt(pos, toSymbol(c));
+    }
+    
+    @Override
+    public String getContents() {
+        trim();
+        
+        char[] contents = new char[right - left];
+        for(int i = 0; i < contents.length; i++) {
+            contents[i] = alphabet.getCharacter(get(left + offset + i));
+        }
+        return new String(contents);
+    }
+    
+    @Override
+    public int getContentsLength() {
+        trim();
+        
+        return right - left;
+    }
+    
+    @Override
+    public int getContentsStart() {
+        trim();
+        
+        return left;
+    }
+    
+    /**
+     * Set the contents of the tape starting from a given position.
+     * 
+     * @throws IllegalArgumentException if the contents have characters that
+     * are not in the alphabet.
+     */
+    @Override
+    void setContents(String contents, int start) {
+        checkPosition(start);
+        int length = contents.length();
+        
+        // Pack into a new array so that the tape is unchanged on failure.
+        long[] packed = new long[(Math.max(64, length) >> log_cells) + 1];
+        for(int i = 0; i < length; i++) {
+            long symbol = toSymbol(contents.charAt(i));
+            packed[i >>> log_cells] |= symbol << ((i << log_bits) & 63);
+        }
+        
+        words = packed;
+        capacity = words.length << log_cells;
+        offset = -start;
+        left = start;
+        right = start + length;
+    }
+    
+    /**
+     * Gets the symbol at an index of the cells.
+     */
+    private int get(int i) {
+        int shift = (i << log_bits) & 63;
+        return (int) ((words[i >>> log_cells] >>> shift) & mask);
+    }
+    
+    /**
+     * Sets the symbol at an index of the cells.
+     */
+    private void set(int i, int symbol) {
+        int shift = (i << log_bits) & 63;
+        int word = i >>> log_cells;
+        words[word] = (words[word] & ~(mask << shift)) | ((long) symbol << shift);
+    }
+    
+    /**
+     * Gets the symbol id of a character, failing if it is not in the alphabet.
+     */
+    private int toSymbol(char c) {
+        int symbol = alphabet.getSymbol(c);
+        if(symbol == -1) {
+            throw new IllegalArgumentException(
+                "Character '" + c + "' is not in the alphabet of the tape."
+            );
+        }
+        return symbol;
+    }
+    
+    /**
+     * Shrinks the written extent so that it starts and ends with non-empty
+     * characters, except that it always contains position 0.
+     */
+    private void trim() {
+        while(right > 0 && get(right - 1 + offset) == 0) {
+            right--;
+        }
+        while(left < 0 && get(left + offset) == 0) {
+            left++;
+        }
+    }
+    
+    /**
+     * Grows the word array so that it contains the position. The array is at
+     * least doubled, and the new space is put on the side of the position.
+     * 
+     * @param pos The position that must be stored.
+     * @return The index of pos in the new cells.
+     */
+    private int reserve(int pos) {
+        long index = (long) pos + offset;
+        long needed;
+        if(index < 0) {
+            needed = capacity - index;
+        } else {
+            needed = index + 1;
+        }
+        long needed_words = (needed >> log_cells) + 1;
+        long length = Math.max(needed_words, 2L * words.length);
+        long max_length = (Integer.MAX_VALUE - 64) >> log_cells;
+        if(length > max_length) {
+            length = max_length;
+            if(needed_words > length) {
+                throw new OutOfMemoryError("Tape too long.");
+            }
+        }
+        
+        long[] grown = new long[(int) length];
+        int shift = 0;
+        if(index < 0) {
+            shift = grown.length - words.length;
+        }
+        System.arraycopy(words, 0, grown, shift, words.length);
+        words = grown;
+        capacity = words.length << log_cells;
+        offset += shift << log_cells;
+        
+        return pos + offset;
+    }
+    
+    /**
+     * Gets the alphabet of the characters, the characters of the input and the
+     * empty character.
+     */
+    private static Alphabet withInput(
+        char empty_char,
+        Collection<Character> characters,
+        String input
+    ) {
+        BitSet all = new BitSet();
+        for(char c : characters) {
+            all.set(c);
+        }
+        for(int i = 0; i < input.length(); i++) {
+            all.set(input.charAt(i));
+        }
+        return new Alphabet(empty_char, all);
+    }
+}
@@ -0,0 +1,273 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Execution counts collected from a Simulation: how many times each state was
+ * entered and left by a step, how many times each transition was taken, how
+ * many times each machine was entered as a submachine and how far the head
+ * has moved on the tape.
+ */
+public class Profile {
+    /**
+     * The number of times each state has been entered, by a transition or as
+     * the start state of a submachine.
+     */
+    private final HashMap<State, long[]> state_visits;
+    
+    /**
+     * The number of steps taken from each state.
+     */
+    private final HashMap<State, long[]> state_steps;
+    
+    /**
+     * The number of times each transition has been taken.
+     */
+    private final HashMap<Transition, long[]> transition_counts;
+    
+    /**
+     * The number of times each machine has been entered as a submachine.
+     */
+    private final HashMap<Machine, long[]> submachine_entries;
+    
+    /**
+     * The total number of steps counted.
+     */
+    private long steps;
+    
+    /**
+     * The leftmost position of the head.
+     */
+    private int min_pos;
+    
+    /**
+     * The rightmost position of the head.
+     */
+    private int max_pos;
+    
+    /**
+     * Constructs an empty profile.
+     * 
+     * @param pos The position of the head when profiling starts.
+     */
+    Profile(int pos) {
+        state_visits = new HashMap<State, long[]>();
+        state_steps = new HashMap<State, long[]>();
+        transition_counts = new HashMap<Transition, long[]>();
+        submachine_entries = new HashMap<Machine, long[]>();
+        steps = 0;
+        min_pos = pos;
+        max_pos = pos;
+    }
+    
+    /**
+     * Copies the profile. The copy does not change when the simulation counts
+     * more steps into this profile, so it can be read in another thread.
+     * 
+     * @return A profile with the same counts.
+     */
+    public Profile copy() {
+        Profile profile = new Profile(min_pos);
+        copy(state_visits, profile.state_visits);
+        copy(state_steps, profile.state_steps);
+        copy(transition_counts, profile.transition_counts);
+        copy(submachine_entries, profile.submachine_entries);
+        profile.steps = steps;
+        profile.max_pos = max_pos;
+        return profile;
+    }
+    
+    /**
+     * Gets the number of times a state has been entered.
+     * 
+     * @param state The state.
+     * @return The number of times the state has been entered by a transition
+     * or as the start state of a submachine.
+     */
+    public long getStateVisits(State state) {
+        return get(state_visits, state);
+    }
+    
+    /**
+     * Gets the number of steps taken from a state.
+     * 
+     * @param state The state.
+     * @return The number of transitions taken from the state.
+     */
+    public long getStateSteps(State state) {
+        return get(state_steps, state);
+    }
+    
+    /**
+     * Gets the number of times a transition has been taken.
+     * 
+     * @param transition The transition.
+     * @return The number of times the transition has been taken.
+     */
+    public long getTransitionCount(Transition transition) {
+        return get(transition_counts, transition);
+    }
+    
+    /**
+     * Gets the number of times a machine has been entered as a submachine.
+     * 
+     * @param machine The machine.
+     * @return The number of times the machine has been entered through a state
+     * referring to it.
+     */
+    public long getSubmachineEntries(Machine machine) {
+        return get(submachine_entries, machine);
+    }
+    
+    /**
+     * Gets the total number of steps counted.
+     * 
+     * @return The number of steps taken while profiling.
+     */
+    public long getStepCount() {
+        return steps;
+    }
+    
+    /**
+     * Gets the leftmost position of the head.
+     * 
+     * @return The leftmost position the head has been in while profiling.
+     */
+    public int getMinPosition() {
+        return min_pos;
+    }
+    
+    /**
+     * Gets the rightmost position of the head.
+     * 
+     * @return The rightmost position the head has been in while profiling.
+     */
+    public int getMaxPosition() {
+        return max_pos;
+    }
+    
+    /**
+     * Gets the number of cells the head has visited.
+     * 
+     * @return The number of cells between the leftmost and the rightmost head
+     * positions, inclusive.
+     */
+    public int getTapeExtent() {
+        return max_pos - min_pos + 1;
+    }
+    
+    /**
+     * Counts a step.
+     * 
+     * @param state The state the step was taken from.
+     * @param transition The transition taken.
+     * @param pos The position of the head after the step.
+     */
+    void step(State state, Transition transition, int pos) {
+        steps++;
+        increment(state_steps, state);
+        increment(transition_counts, transition);
+        if(pos < min_pos) {
+            min_pos = pos;
+        }
+        if(pos > max_pos) {
+            max_pos = pos;
+        }
+    }
+    
+    /**
+     * Counts the steps of a scan, in which a state took a transition back to
+     * itself several times, moving the head in the same direction.
+     * 
+     * @param state The state the steps were taken from.
+     * @param transition The transition taken.
+     * @param count The number of steps.
+     * @param start The position of the head before the steps.
+     * @param end The position of the head after the steps.
+     */
+    void scan(
+        State state,
+        Transition transition,
+        long count,
+        int start,
+        int end
+    ) {
+        steps += count;
+        add(state_steps, state, count);
+        add(transition_counts, transition, count);
+        add(state_visits, state, count);
+        int pos = Math.min(start, end);
+        if(pos < min_pos) {
+            min_pos = pos;
+        }
+        pos = Math.max(start, end);
+        if(pos > max_pos) {
+            max_pos = pos;
+        }
+    }
+    
+    /**
+     * Counts entering a state.
+     * 
+     * @param state The state entered.
+     */
+    void visit(State state) {
+        increment(state_visits, state);
+    }
+    
+    /**
+     * Counts entering a submachine.
+     * 
+     * @param machine The submachine entered.
+     */
+    void enter(Machine machine) {
+        increment(submachine_entries, machine);
+    }
+    
+    /**
+     * Increments the count of a key.
+     */
+    private static <K> void increment(HashMap<K, long[]> counts, K key) {
+        add(counts, key, 1);
+    }
+    
+    /**
+     * Adds to the count of a key.
+     */
+    private static <K> void add(
+        HashMap<K, long[]> counts,
+        K key,
+        long amount
+    ) {
+        long[] count = counts.get(key);
+        if(count == null) {
+            count = new long[1];
+            counts.put(key, count);
+        }
+        count[0] += amount;
+    }
+    
+    /**
+     * Copies the counts of a map into an empty map.
+     */
+    private static <K> void copy(
+        HashMap<K, long[]> counts,
+        HashMap<K, long[]> copy
+    ) {
+        for(Map.Entry<K, long[]> entry : counts.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().clone());
+        }
+    }
+    
+    /**
+     * Gets the count of a key, 0 if not counted.
+     */
+    private static <K> long get(HashMap<K, long[]> counts, K key) {
+        long[] count = counts.get(key);
+        if(count == null) {
+            return 0;
+        }
+        return count[0];
+    }
+}
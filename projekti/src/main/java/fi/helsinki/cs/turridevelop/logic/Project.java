@@ -3,6 +3,8 @@ package fi.helsinki.cs.turridevelop.logic;
 import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
 import fi.helsinki.cs.turridevelop.util.ByNameContainer;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
 /**
  * Turing machine projects consisting of multiple Machines.
@@ -39,6 +41,100 @@ public class Project {
         return machines.getNames();
     }
     
+    /**
+     * Gets the characters used by the project.
+     * 
+     * @return The set of all characters read or written by the transitions of
+     * all machines on any tape.
+     */
+    public SortedSet<Character> getCharacters() {
+        TreeSet<Character> characters = new TreeSet<Character>();
+        for(String machine_name : machines.getNames()) {
+            Machine machine = machines.get(machine_name);
+            for(String state_name : machine.getStateNames()) {
+                State state = machine.getState(state_name);
+                for(Transition transition : state.getTransitions()) {
+                    for(int tape = 0; tape < transition.getTapeCount(); tape++) {
+                        String inchar = transition.getInputCharacters(tape);
+                        for(int i = 0; i < inchar.length(); i++) {
+                            characters.add(inchar.charAt(i));
+                        }
+                        if(transition.getOutputCharacter(tape) != null) {
+                            characters.add(transition.getOutputCharacter(tape));
+                        }
+                    }
+                }
+            }
+        }
+        return characters;
+    }
+    
+    /**
+     * Gets the number of tapes the project needs.
+     * 
+     * @return The largest tape count of the states of all machines, 1 if
+     * there are no multi-tape states.
+     */
+    public int getTapeCount() {
+        int tape_count = 1;
+        for(String machine_name : machines.getNames()) {
+            Machine machine = machines.get(machine_name);
+            for(String state_name : machine.getStateNames()) {
+                tape_count = Math.max(
+                    tape_count, machine.getState(state_name).getTapeCount()
+                );
+            }
+        }
+        return tape_count;
+    }
+    
+    /**
+     * Tests whether the project has nondeterministic machines.
+     * 
+     * @return True if some machine of the project is nondeterministic.
+     */
+    public boolean isNondeterministic() {
+        for(String machine_name : machines.getNames()) {
+            if(machines.get(machine_name).isNondeterministic()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Gets the version of the project. The version changes whenever a machine
+     * is added, removed or renamed, or a state of a machine is added, removed
+     * or modified other than by moving it in the diagram.
+     * 
+     * @return The version of the project.
+     */
+    public long getVersion() {
+        return machines.getVersion();
+    }
+    
+    /**
+     * Gets the submachine calls made when a state of the project is entered.
+     * The result is cached in the state until the project is modified, so
+     * entering a state normally costs no name lookups.
+     * 
+     * @param state A state with a submachine.
+     * @return The resolved calls, or null if entering the state fails
+     * because of a missing or infinitely recursive submachine.
+     */
+    SubmachineEntry getEntry(State state) {
+        long version = machines.getVersion();
+        SubmachineEntry entry = state.entry;
+        if(entry == null || entry.project != this || entry.version != version) {
+            entry = new SubmachineEntry(this, version, state);
+            state.entry = entry;
+        }
+        if(entry.states == null) {
+            return null;
+        }
+        return entry;
+    }
+    
     /**
      * Adds a machine to the project.
      * 
@@ -0,0 +1,294 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+/**
+ * Tape that stores maximal runs of equal characters instead of the cells, so
+ * that tapes consisting of long runs, such as the unary numbers and the blank
+ * gaps written by many machines, take memory proportional to the number of
+ * runs.
+ * 
+ * The runs form a doubly linked list covering the whole tape, and a cursor
+ * points to the run accessed last. Accessing a position walks the list from
+ * the cursor, so the accesses of a head moving step by step take constant
+ * time. Writing a character only changes the runs around the position: it
+ * moves a run boundary, merges runs or splits a run in three.
+ */
+public class RunLengthTape extends Tape {
+    /**
+     * The first run, starting from Long.MIN_VALUE. Always of the empty
+     * character.
+     */
+    private Run first;
+    
+    /**
+     * The last run, extending to infinity. Always of the empty character.
+     */
+    private Run last;
+    
+    /**
+     * The run accessed last.
+     */
+    private Run cursor;
+    
+    /**
+     * The number of runs.
+     */
+    private int run_count;
+    
+    /**
+     * Constructs a run-length tape.
+     * 
+     * @param input The content of the tape starting from position 0.
+     * @param empty_char The character of all other positions of the tape.
+     * @param bi_infinite True if the tape should also have negative positions.
+     */
+    public RunLengthTape(String input, char empty_char, boolean bi_infinite) {
+        super(empty_char, bi_infinite);
+        setContents(input);
+    }
+    
+    /**
+     * Gets the number of runs of equal characters on the tape.
+     * 
+     * @return The number of runs, including the infinite runs of the empty
+     * character at both ends.
+     */
+    public int getRunCount() {
+        return run_count;
+    }
+    
+    /**
+     * Gets the end of the run of equal characters containing a position.
+     * 
+     * @param pos The position on the tape.
+     * @return The first position to the right of pos whose character differs
+     * from the character at pos, Long.MAX_VALUE if there is none.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
+     */
+    public long getRunEnd(int pos) {
+        checkPosition(pos);
+        Run run = find(pos);
+        if(run.next == null) {
+            return Long.MAX_VALUE;
+        }
+        return run.next.start;
+    }
+    
+    /**
+     * Gets the start of the run of equal characters containing a position.
+     * 
+     * @param pos The position on the tape.
+     * @return The leftmost position such that it and all positions from it to
+     * pos have the character at pos, Long.MIN_VALUE if there is none.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
+     */
+    public long getRunStart(int pos) {
+        checkPosition(pos);
+        return find(pos).start;
+    }
+    
+    /**
+     * Counts the cells a scanning head passes over a run at a time.
+     */
+    @Override
+    int scan(int pos, int movement, String chars, int limit) {
+        int max = getScanLength(pos, movement, limit);
+        int count = 0;
+        while(count < max) {
+            long at = pos + (long) count * movement;
+            Run run = find(at);
+            if(chars.indexOf(run.c) == -1) {
+                break;
+            }
+            // The first and the last run may extend into the contents on a
+            // bi-infinite tape, for example when all written cells are
+            // negative.
+            long cells;
+            if(movement > 0 && run.next == null) {
+                cells = max - count;
+            } else if(movement > 0) {
+                cells = run.next.start - at;
+            } else {
+                cells = at - Math.max(run.start, at - max) + 1;
+            }
+            count = (int) Math.min(max, count + cells);
+        }
+        return count;
+    }
+    
+    @Override
+    public char getCharacterAt(int pos) {
+        checkPosition(pos);
+        return find(pos).c;
+    }
+    
+    @Override
+    public void setCharacterAt(int pos, char c) {
+        checkPosition(pos);
+        Run run = find(pos);
+        if(run.c == c) {
+            return;
+        }
+        
+        Run prev = run.prev;
+        Run next = run.next;
+        boolean at_start = pos == run.start;
+        boolean at_end = next != null && pos + 1 == next.start;
+        if(at_start && at_end) {
+            // The run is the single cell, merge it with its neighbours.
+            run.c = c;
+            if(prev.c == c) {
+                prev.next = next;
+                next.prev = prev;
+                run_count--;
+                run = prev;
+            }
+            if(next.c == c) {
+                run.next = next.next;
+                if(next.next == null) {
+                    last = run;
+                } else {
+                    next.next.prev = run;
+                }
+                run_count--;
+            }
+            cursor = run;
+        } else if(at_start) {
+            run.start = pos + 1;
+            if(prev.c == c) {
+                cursor = prev;
+            } else {
+                cursor = insertAfter(prev, pos, c);
+            }
+        } else if(at_end) {
+            if(next.c == c) {
+                next.start = pos;
+                cursor = next;
+            } else {
+                cursor = insertAfter(run, pos, c);
+            }
+        } else {
+            Run rest = insertAfter(run, pos + 1, run.c);
+            cursor = insertAfter(run, pos, c);
+            if(rest.next == null) {
+                last = rest;
+            }
+        }
+    }
+    
+    @Override
+    public String getContents() {
+        long start = getContentsStart();
+        char[] contents = new char[getContentsLength()];
+        Run run = find(start);
+        for(int i = 0; i < contents.length; i++) {
+            while(run.next != null && start + i >= run.next.start) {
+                run = run.next;
+            }
+            contents[i] = run.c;
+        }
+        return new String(contents);
+    }
+    
+    @Override
+    public int getContentsLength() {
+        return (int) (Math.max(0, last.start) - getContentsStart());
+    }
+    
+    @Override
+    public int getContentsStart() {
+        if(first.next == null) {
+            return 0;
+        }
+        return (int) Math.min(0, first.next.start);
+    }
+    
+    @Override
+    void setContents(String contents, int start) {
+        checkPosition(start);
+        char empty = getEmptyCharacter();
+        first = new Run(Long.MIN_VALUE, empty);
+        last = first;
+        run_count = 1;
+        for(int i = 0; i < contents.length(); i++) {
+            char c = contents.charAt(i);
+            if(c != last.c) {
+                last = insertAfter(last, start + i, c);
+            }
+        }
+        if(last.c != empty) {
+            last = insertAfter(last, start + contents.length(), empty);
+        }
+        cursor = first;
+    }
+    
+    /**
+     * Finds the run containing a position, moving the cursor to it.
+     */
+    private Run find(long pos) {
+        Run run = cursor;
+        while(pos < run.start) {
+            run = run.prev;
+        }
+        while(run.next != null && pos >= run.next.start) {
+            run = run.next;
+        }
+        cursor = run;
+        return run;
+    }
+    
+    /**
+     * Inserts a run after another run.
+     * 
+     * @param run The run to insert after.
+     * @param start The start of the new run, after the start of run.
+     * @param c The character of the new run.
+     * @return The new run.
+     */
+    private Run insertAfter(Run run, long start, char c) {
+        Run inserted = new Run(start, c);
+        inserted.prev = run;
+        inserted.next = run.next;
+        if(run.next != null) {
+            run.next.prev = inserted;
+        }
+        run.next = inserted;
+        run_count++;
+        return inserted;
+    }
+    
+    /**
+     * A maximal run of equal characters, extending from its start to the
+     * start of the next run.
+     */
+    private static class Run {
+        /**
+         * The first position of the run.
+         */
+        long start;
+        
+        /**
+         * The character of the run.
+         */
+        char c;
+        
+        /**
+         * The previous run, null for the first run.
+         */
+        Run prev;
+        
+        /**
+         * The next run, null for the last run.
+         */
+        Run next;
+        
+        /**
+         * Constructs a run that is not linked yet.
+         */
+        Run(long start, char c) {
+            this.start = start;
+            this.c = c;
+        }
+    }
+}
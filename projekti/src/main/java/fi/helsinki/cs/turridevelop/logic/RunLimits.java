@@ -0,0 +1,100 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+/**
+ * The limits of a single limited run of a simulation: a step limit, a deadline
+ * and a cancellation token. The deadline and the token are polled only every
+ * CHECK_INTERVAL steps so that they cost nothing in the simulation loop.
+ */
+class RunLimits {
+    /**
+     * The number of steps between deadline and cancellation checks.
+     */
+    static final long CHECK_INTERVAL = 1 << 14;
+    
+    /**
+     * The step count at which the run must stop.
+     */
+    private final long step_limit;
+    
+    /**
+     * The System.nanoTime() value at which the run must stop, meaningful only
+     * if has_deadline is true.
+     */
+    private final long deadline;
+    
+    /**
+     * Does the run have a deadline?
+     */
+    private final boolean has_deadline;
+    
+    /**
+     * The cancellation token, null if none.
+     */
+    private final CancellationToken cancellation;
+    
+    /**
+     * Constructs limits for a run starting now.
+     * 
+     * @param steps The step count of the simulation at the start of the run.
+     * @param max_steps The maximum number of steps to take in the run.
+     * @param timeout The maximum wall time of the run in milliseconds,
+     * Long.MAX_VALUE for no limit.
+     * @param cancellation The cancellation token, null if none.
+     */
+    RunLimits(
+        long steps,
+        long max_steps,
+        long timeout,
+        CancellationToken cancellation
+    ) {
+        long limit = steps + max_steps;
+        if(limit < steps) {
+            limit = Long.MAX_VALUE;
+        }
+        step_limit = limit;
+        
+        has_deadline = timeout < Long.MAX_VALUE / 1000000;
+        if(has_deadline) {
+            deadline = System.nanoTime() + Math.max(timeout, 0) * 1000000;
+        } else {
+            deadline = 0;
+        }
+        this.cancellation = cancellation;
+    }
+    
+    /**
+     * Gets the step count at which the run must stop.
+     * 
+     * @return The step limit as a total step count of the simulation.
+     */
+    long getStepLimit() {
+        return step_limit;
+    }
+    
+    /**
+     * Gets the step count at which the deadline and the cancellation should
+     * be checked next.
+     * 
+     * @param steps The current step count of the simulation.
+     * @return The step count of the next check, at most the step limit.
+     */
+    long getNextCheck(long steps) {
+        long next = steps + CHECK_INTERVAL;
+        if(next < steps || next > step_limit) {
+            return step_limit;
+        }
+        return next;
+    }
+    
+    /**
+     * Tests whether the run has passed its deadline or has been cancelled.
+     * 
+     * @return True if the run must stop regardless of the step count.
+     */
+    boolean isExpired() {
+        if(cancellation != null && cancellation.isCancelled()) {
+            return true;
+        }
+        return has_deadline && System.nanoTime() - deadline >= 0;
+    }
+}
@@ -5,13 +5,22 @@ import java.util.Stack;
 
 /**
  * Simulation context for Turing machines.
+ * 
+ * A simulation has one head for each of its tapes. Single-tape states read and
+ * write only the first tape, and a multi-tape state with k tapes reads the
+ * first k tapes.
  */
 public class Simulation {
     /**
-     * The head of the Turing machine.
+     * The head of the first tape of the Turing machine.
      */
     private Head head;
     
+    /**
+     * The heads of all tapes, head first.
+     */
+    private Head[] heads;
+    
     /**
      * The stack of states in which the simulation is now. When a submachine is
      * entered, the state of the submachine is put on the top.
@@ -33,6 +42,27 @@ public class Simulation {
      */
     private SimulationStatus status; 
     
+    /**
+     * The number of transitions taken.
+     */
+    private long steps;
+    
+    /**
+     * The loop detector, null if loops are not detected.
+     */
+    private LoopDetector loops;
+    
+    /**
+     * The execution profile, null if the simulation is not profiled.
+     */
+    private Profile profile;
+    
+    /**
+     * The transition taken by the last step if it can be repeated as a scan,
+     * null otherwise.
+     */
+    private Transition scan_transition;
+    
     /**
      * Constructs a simulation. The simulation starts from the state named
      * "start" in the specified machine.
@@ -49,9 +79,43 @@ public class Simulation {
         String machine_name,
         Tape tape
     ) throws SimulationException {
-        head = new Head(tape);
+        this(project, machine_name, new Tape[] {tape});
+    }
+    
+    /**
+     * Constructs a simulation of a multi-tape machine. The simulation starts
+     * from the state named "start" in the specified machine.
+     * 
+     * @param project The project to simulate.
+     * @param machine_name The name of the machine in the project to simulate.
+     * @param tapes The tapes to simulate on, the input tape first. There
+     * should be at least project.getTapeCount() tapes.
+     * 
+     * @throws SimulationException if the project doesn't have the machine or
+     * the machine does not have a start state or a submachine error occured.
+     * @throws IllegalArgumentException if there are no tapes.
+     */
+    public Simulation(
+        Project project,
+        String machine_name,
+        Tape[] tapes
+    ) throws SimulationException {
+        if(tapes.length == 0) {
+            throw new IllegalArgumentException(
+                "A simulation needs at least one tape."
+            );
+        }
+        heads = new Head[tapes.length];
+        for(int i = 0; i < tapes.length; i++) {
+            heads[i] = new Head(tapes[i]);
+        }
+        head = heads[0];
         this.project = project;
         status = SimulationStatus.RUNNING;
+        steps = 0;
+        loops = null;
+        profile = null;
+        scan_transition = null;
         
         Machine machine = project.getMachine(machine_name);
         if(machine == null) {
@@ -78,7 +142,8 @@ public class Simulation {
      * 
      * @return The status of the simulation. If ACCEPTED, the simulation has met
      * an accepting state. If REJECTED, the simulation has met a state from
-     * which it could not continue from. Otherwise, it is still RUNNING.
+     * which it could not continue from. If LOOPING, loop detection has found
+     * that the simulation will never halt. Otherwise, it is still RUNNING.
      */
     public SimulationStatus getStatus() {
         return status;
@@ -107,21 +172,131 @@ public class Simulation {
     /**
      * Gets the head of the simulation.
      * 
-     * @return The head that is used throughout the simulation.
+     * @return The head of the first tape that is used throughout the
+     * simulation.
      */
     public Head getHead() {
         return head;
     }
     
+    /**
+     * Gets the head of a tape.
+     * 
+     * @param tape The index of the tape, less than getTapeCount().
+     * @return The head of the tape.
+     */
+    public Head getHead(int tape) {
+        return heads[tape];
+    }
+    
     /**
      * Gets the tape the simulation operates on.
      * 
-     * @return The tape that the simulation operates on.
+     * @return The first tape, which the simulation operates on.
      */
     public Tape getTape() {
         return head.getTape();
     }
     
+    /**
+     * Gets a tape of the simulation.
+     * 
+     * @param tape The index of the tape, less than getTapeCount().
+     * @return The tape.
+     */
+    public Tape getTape(int tape) {
+        return heads[tape].getTape();
+    }
+    
+    /**
+     * Gets the number of tapes.
+     * 
+     * @return The number of tapes the simulation operates on.
+     */
+    public int getTapeCount() {
+        return heads.length;
+    }
+    
+    /**
+     * Gets the number of steps taken.
+     * 
+     * @return The number of transitions the simulation has taken.
+     */
+    public long getStepCount() {
+        return steps;
+    }
+    
+    /**
+     * Tests whether loops are detected.
+     * 
+     * @return True if the simulation stops with status LOOPING when it
+     * repeats a configuration.
+     */
+    public boolean isDetectingLoops() {
+        return loops != null;
+    }
+    
+    /**
+     * Enables or disables loop detection. With loop detection, the simulation
+     * stops with status LOOPING when its configuration (the state stack, the
+     * head position and the tape contents) repeats an earlier one, or when it
+     * keeps moving in one direction over empty cells in a way that repeats
+     * forever. Detection costs a few hash updates per step and a copy of the
+     * tape at steps 1, 2, 4, 8 and so on. A loop is detected within about
+     * twice the number of steps taken before the loop is entered plus twice
+     * its length.
+     * 
+     * If the tape is modified by other means than the simulation while loop
+     * detection is enabled, it must be enabled again to restart it.
+     * 
+     * Loops are only detected in single-tape simulations.
+     * 
+     * @param detect True to enable loop detection, false to disable it.
+     * @throws IllegalStateException if detect is true and the simulation has
+     * more than one tape.
+     */
+    public void setDetectingLoops(boolean detect) {
+        if(detect && heads.length > 1) {
+            throw new IllegalStateException(
+                "Loops can only be detected on a single tape."
+            );
+        }
+        if(detect) {
+            loops = new LoopDetector(head.getTape());
+        } else {
+            loops = null;
+        }
+    }
+    
+    /**
+     * Gets the execution profile.
+     * 
+     * @return The profile collected since profiling was enabled, null if the
+     * simulation is not profiled.
+     */
+    public Profile getProfile() {
+        return profile;
+    }
+    
+    /**
+     * Enables or disables profiling. While profiling, the simulation counts
+     * the visits and the steps of each state, the uses of each transition,
+     * the entries into each submachine and the range of head positions. When
+     * disabled, profiling costs a single null check per step.
+     * 
+     * Steps undone or skipped by restoring a snapshot are not removed from the
+     * profile.
+     * 
+     * @param profiling True to start a new profile, false to stop profiling.
+     */
+    public void setProfiling(boolean profiling) {
+        if(profiling) {
+            profile = new Profile(head.getPosition());
+        } else {
+            profile = null;
+        }
+    }
+    
     /**
      * If the simulation is still running, runs it one transition forward. After
      * that, steps into and out of submachines such that next step starts again
@@ -134,23 +309,284 @@ public class Simulation {
             State state = states.peek();
             
             char readc = head.read();
-            Transition transition = state.getTransitionByInput(readc);
+            Transition transition = getTransition();
+            scan_transition = null;
             if(transition == null) {
                 // Cannot continue, reject.
                 status = SimulationStatus.REJECTED;
                 return;
             }
+            if(startsScan(state, transition)) {
+                scan_transition = transition;
+            }
             
             Character writec = transition.getOutputCharacter();
             if(writec != null) {
+                if(loops != null) {
+                    loops.written(head.getPosition(), readc, writec);
+                }
                 head.write(writec);
             }
             
             head.move(transition.getMovement());
+            for(int i = 1; i < transition.getTapeCount(); i++) {
+                Character c = transition.getOutputCharacter(i);
+                if(c != null) {
+                    heads[i].write(c);
+                }
+                heads[i].move(transition.getMovement(i));
+            }
+            steps++;
+            if(profile != null) {
+                profile.step(state, transition, head.getPosition());
+                profile.visit(transition.getDestination());
+            }
             
             states.pop();
             states.push(transition.getDestination());
             intoState();
+            
+            if(
+                loops != null &&
+                status == SimulationStatus.RUNNING &&
+                loops.check(steps, head.getPosition(), states)
+            ) {
+                status = SimulationStatus.LOOPING;
+            }
+        }
+    }
+    
+    /**
+     * Tests whether a transition of a state can be repeated as a scan. In a
+     * scan, a single-tape state repeatedly takes a transition back to itself
+     * that does not change the tape and moves the head in one direction, until
+     * the head reaches a character the transition does not read. Only cheap
+     * field comparisons are made, as this is done on every step.
+     * 
+     * @param state The state the transition was taken from.
+     * @param transition The transition.
+     * @return True if the transition can be repeated as a scan.
+     */
+    private static boolean startsScan(State state, Transition transition) {
+        if(
+            transition.getDestination() != state ||
+            transition.getMovement() == 0 ||
+            state.getTapeCount() != 1 ||
+            state.nondeterministic ||
+            state.getSubmachine() != null
+        ) {
+            return false;
+        }
+        Character writec = transition.getOutputCharacter();
+        if(writec == null) {
+            return true;
+        }
+        String chars = transition.getInputCharacters();
+        return chars.length() == 1 && chars.charAt(0) == writec;
+    }
+    
+    /**
+     * Repeats the transition of the last step as a scan if it can be repeated.
+     * The steps are counted as if they were taken one at a time.
+     * 
+     * @param max_steps The maximum number of steps to take.
+     * @return The number of steps taken, 0 if the last step cannot be
+     * repeated as a scan.
+     */
+    private long scan(long max_steps) {
+        Transition transition = scan_transition;
+        scan_transition = null;
+        if(transition == null || status != SimulationStatus.RUNNING) {
+            return 0;
+        }
+        
+        State state = states.peek();
+        int start = head.getPosition();
+        int movement = transition.getMovement();
+        int count = head.getTape().scan(
+            start,
+            movement,
+            transition.getInputCharacters(),
+            (int) Math.min(max_steps, Integer.MAX_VALUE)
+        );
+        head.setPosition(start + count * movement);
+        steps += count;
+        if(profile != null && count != 0) {
+            profile.scan(state, transition, count, start, head.getPosition());
+        }
+        return count;
+    }
+    
+    /**
+     * Takes a snapshot of the configuration of the simulation.
+     * 
+     * @return A copy of the state and machine stacks, the head positions, the
+     * contents of the tapes, the status and the step count.
+     */
+    public SimulationSnapshot getSnapshot() {
+        int[] positions = new int[heads.length];
+        String[] contents = new String[heads.length];
+        int[] starts = new int[heads.length];
+        for(int i = 0; i < heads.length; i++) {
+            Tape tape = heads[i].getTape();
+            positions[i] = heads[i].getPosition();
+            contents[i] = tape.getContents();
+            starts[i] = tape.getContentsStart();
+        }
+        return new SimulationSnapshot(
+            getStates(),
+            getMachines(),
+            positions,
+            contents,
+            starts,
+            status,
+            steps
+        );
+    }
+    
+    /**
+     * Restores the simulation to the configuration of a snapshot. The tapes of
+     * the simulation are set to the contents of the snapshot. If loops are
+     * detected, the detection is restarted.
+     * 
+     * @param snapshot A snapshot taken from this simulation or another one on
+     * the same project with the same number and kind of tapes.
+     */
+    public void restore(SimulationSnapshot snapshot) {
+        for(int i = 0; i < heads.length; i++) {
+            heads[i].getTape().setContents(
+                snapshot.contents[i], snapshot.contents_starts[i]
+            );
+            heads[i].setPosition(snapshot.head_positions[i]);
+        }
+        setStacks(snapshot.states, snapshot.machines);
+        status = snapshot.status;
+        steps = snapshot.steps;
+        setDetectingLoops(isDetectingLoops());
+    }
+    
+    /**
+     * Gets the transition the next step takes.
+     * 
+     * @return The transition from the state on the top of the stack that
+     * accepts the characters under the heads, null if there is none.
+     * @throws SimulationException if the state reads more tapes than the
+     * simulation has, or if the step is nondeterministic.
+     */
+    Transition getTransition() throws SimulationException {
+        State state = states.peek();
+        int tape_count = state.getTapeCount();
+        if(tape_count == 1 && !state.nondeterministic) {
+            return state.getTransitionByInput(head.read());
+        }
+        if(tape_count > heads.length) {
+            throw new SimulationException(
+                "State '" + state.getName() + "' of machine '" +
+                getMachine().getName() + "' reads " + tape_count + " tapes, " +
+                "but the simulation has only " + heads.length + "."
+            );
+        }
+        char[] inputs = new char[tape_count];
+        for(int i = 0; i < tape_count; i++) {
+            inputs[i] = heads[i].read();
+        }
+        String input_str = new String(inputs);
+        if(state.nondeterministic) {
+            Transition[] choices = state.getChoices(input_str);
+            if(choices != null && choices.length > 1) {
+                throw new SimulationException(
+                    "State '" + state.getName() + "' of machine '" +
+                    getMachine().getName() + "' has several transitions for " +
+                    "the input, so the machine must be searched " +
+                    "nondeterministically instead."
+                );
+            }
+        }
+        return state.getTransitionByInputs(input_str);
+    }
+    
+    /**
+     * Gets the size of the state stack.
+     * 
+     * @return The number of states in the state stack.
+     */
+    int getDepth() {
+        return states.size();
+    }
+    
+    /**
+     * Gets the state stack.
+     * 
+     * @return A copy of the state stack, bottom first.
+     */
+    State[] getStates() {
+        return states.toArray(new State[states.size()]);
+    }
+    
+    /**
+     * Gets the machine stack.
+     * 
+     * @return A copy of the machine stack, bottom first.
+     */
+    Machine[] getMachines() {
+        return machines.toArray(new Machine[machines.size()]);
+    }
+    
+    /**
+     * Undoes a step of a running simulation. Does not restart loop detection.
+     * 
+     * @param positions The positions of the heads before the step, by tape
+     * starting from offset.
+     * @param old_chars The characters under the heads before the step, by tape
+     * starting from offset.
+     * @param offset The index of the first tape in positions and old_chars.
+     * @param top The state on the top of the state stack before the step.
+     * @param depth The size of the state stack before the step.
+     * @param old_states The state stack before the step, or null if the step
+     * did not return from submachines. Otherwise the states below the top
+     * were not changed, and the stack is restored by dropping the entered
+     * submachines and replacing the top.
+     * @param old_machines The machine stack before the step, or null if
+     * old_states is null.
+     */
+    void undoStep(
+        int[] positions,
+        char[] old_chars,
+        int offset,
+        State top,
+        int depth,
+        State[] old_states,
+        Machine[] old_machines
+    ) {
+        for(int i = 0; i < heads.length; i++) {
+            heads[i].setPosition(positions[offset + i]);
+            heads[i].write(old_chars[offset + i]);
+        }
+        if(old_states == null) {
+            while(states.size() > depth) {
+                states.pop();
+                machines.pop();
+            }
+            states.pop();
+            states.push(top);
+        } else {
+            setStacks(old_states, old_machines);
+        }
+        status = SimulationStatus.RUNNING;
+        steps--;
+    }
+    
+    /**
+     * Replaces the state and machine stacks.
+     */
+    private void setStacks(State[] new_states, Machine[] new_machines) {
+        states.clear();
+        machines.clear();
+        for(State state : new_states) {
+            states.push(state);
+        }
+        for(Machine machine : new_machines) {
+            machines.push(machine);
         }
     }
     
@@ -161,6 +597,46 @@ public class Simulation {
      * @throws SimulationException on submachine errors.
      */
     private void intoState() throws SimulationException {
+        if(states.peek().getSubmachine() != null) {
+            SubmachineEntry entry = project.getEntry(states.peek());
+            if(entry == null) {
+                // Find the error by resolving the calls one by one.
+                callSubmachines();
+            } else {
+                // The start states that are not pushed are accepting and
+                // would be popped right away.
+                for(int i = 0; i < entry.pushes; i++) {
+                    states.push(entry.states[i]);
+                    machines.push(entry.machines[i]);
+                }
+                if(profile != null) {
+                    for(int i = 0; i < entry.states.length; i++) {
+                        profile.enter(entry.machines[i]);
+                        profile.visit(entry.states[i]);
+                    }
+                }
+            }
+        }
+        
+        // While the state on the top is accepting, return from it.
+        while(states.peek().isAccepting()) {
+            if(states.size() == 1) {
+                status = SimulationStatus.ACCEPTED;
+                return;
+            } else {
+                states.pop();
+                machines.pop();
+            }
+        }
+    }
+    
+    /**
+     * Calls the submachines of the state on the top of the stack by looking
+     * them up by name.
+     * 
+     * @throws SimulationException on submachine errors.
+     */
+    private void callSubmachines() throws SimulationException {
         // While the state on the top has a submachine, go into it.
         int depth = 0;
         while(states.peek().getSubmachine() != null) {
@@ -195,23 +671,12 @@ public class Simulation {
             states.push(state);
             machines.push(submachine);
         }
-        
-        // While the state on the top is accepting, return from it.
-        while(states.peek().isAccepting()) {
-            if(states.size() == 1) {
-                status = SimulationStatus.ACCEPTED;
-                return;
-            } else {
-                states.pop();
-                machines.pop();
-            }
-        }
     }
     
     /**
      * Step the simulation until the status is no longer RUNNING.
      * 
-     * Note that if the simulation might not terminate.
+     * Note that the simulation might not terminate.
      * 
      * @throws SimulationException on submachine errors.
      */
@@ -220,4 +685,62 @@ public class Simulation {
             step();
         }
     }
+    
+    /**
+     * Step the simulation until the status is no longer RUNNING or the given
+     * number of steps has been taken.
+     * 
+     * @param max_steps The maximum number of steps to take.
+     * @return The status of the simulation, or LIMIT_REACHED if it was still
+     * running when the step limit was reached.
+     * @throws SimulationException on submachine errors.
+     */
+    public SimulationStatus run(long max_steps) throws SimulationException {
+        return run(max_steps, Long.MAX_VALUE, null);
+    }
+    
+    /**
+     * Step the simulation until the status is no longer RUNNING, the given
+     * number of steps has been taken, the timeout has passed or the run has
+     * been cancelled. The timeout and the cancellation are checked every few
+     * thousand steps. The simulation can be continued after the run stops.
+     * 
+     * Unless loops are detected, scans over the tape by states looping back
+     * to themselves are skipped in bulk after their first step, with the same
+     * step counts as if they were stepped.
+     * 
+     * @param max_steps The maximum number of steps to take.
+     * @param timeout The maximum wall time of the run in milliseconds,
+     * Long.MAX_VALUE for no limit.
+     * @param cancellation The token for cancelling the run, null if the run
+     * cannot be cancelled.
+     * @return The status of the simulation, or LIMIT_REACHED if it was still
+     * running when the run stopped.
+     * @throws SimulationException on submachine errors.
+     */
+    public SimulationStatus run(
+        long max_steps,
+        long timeout,
+        CancellationToken cancellation
+    ) throws SimulationException {
+        RunLimits limits = new RunLimits(steps, max_steps, timeout, cancellation);
+        while(
+            status == SimulationStatus.RUNNING &&
+            steps < limits.getStepLimit() &&
+            !limits.isExpired()
+        ) {
+            long next_check = limits.getNextCheck(steps);
+            while(status == SimulationStatus.RUNNING && steps < next_check) {
+                step();
+                if(loops == null && steps < next_check) {
+                    scan(next_check - steps);
+                }
+            }
+        }
+        
+        if(status == SimulationStatus.RUNNING) {
+            return SimulationStatus.LIMIT_REACHED;
+        }
+        return status;
+    }
 }
@@ -0,0 +1,379 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import java.util.ArrayList;
+
+/**
+ * Records the history of a Simulation so that it can be stepped backward and
+ * moved to any earlier step.
+ * 
+ * The most recent steps are kept in an undo log of fixed capacity that stores
+ * for each step the head positions, the overwritten characters, the top state
+ * and the stack depth before the step, and the whole state stack for the
+ * steps that may return from submachines. Stepping back within the log costs constant
+ * time per step.
+ * 
+ * Older steps are reached through checkpoints, which are snapshots of the
+ * whole simulation taken at regular intervals. When there are more than the
+ * maximum number of checkpoints, every other one is dropped and the interval
+ * is doubled. Going to an older step restores the nearest checkpoint before
+ * it and runs the simulation forward from there. The memory used is thus
+ * bounded by the undo log capacity and the maximum number of checkpoints
+ * times the size of a snapshot, however long the simulation runs.
+ * 
+ * The simulation must only be stepped through the history, and its tape must
+ * not be modified by other means while the history is used.
+ */
+public class SimulationHistory {
+    /**
+     * The simulation whose history is recorded.
+     */
+    private final Simulation simulation;
+    
+    /**
+     * The number of tapes of the simulation.
+     */
+    private final int tape_count;
+    
+    /**
+     * The head positions before the steps in the undo log. The positions of
+     * step i are at indices i * tape_count to (i + 1) * tape_count - 1.
+     */
+    private final int[] positions;
+    
+    /**
+     * The characters under the heads before the steps in the undo log, indexed
+     * like positions.
+     */
+    private final char[] old_chars;
+    
+    /**
+     * The head positions before the step being taken.
+     */
+    private final int[] step_positions;
+    
+    /**
+     * The characters under the heads before the step being taken.
+     */
+    private final char[] step_chars;
+    
+    /**
+     * The top states before the steps in the undo log.
+     */
+    private final State[] tops;
+    
+    /**
+     * The state stack sizes before the steps in the undo log.
+     */
+    private final int[] depths;
+    
+    /**
+     * The state stacks before the steps in the undo log, null for steps that
+     * did not return from submachines.
+     */
+    private final State[][] old_states;
+    
+    /**
+     * The machine stacks before the steps in the undo log, null for steps that
+     * did not return from submachines.
+     */
+    private final Machine[][] old_machines;
+    
+    /**
+     * The index of the oldest step in the undo log.
+     */
+    private int first;
+    
+    /**
+     * The number of steps in the undo log.
+     */
+    private int count;
+    
+    /**
+     * The checkpoints in order of step count. The first one is the
+     * configuration when the recording started.
+     */
+    private final ArrayList<SimulationSnapshot> checkpoints;
+    
+    /**
+     * The maximum number of checkpoints.
+     */
+    private final int max_checkpoints;
+    
+    /**
+     * The number of steps between checkpoints.
+     */
+    private long checkpoint_interval;
+    
+    /**
+     * Constructs a history for a simulation with an undo log of 65536 steps
+     * and at most 64 checkpoints.
+     * 
+     * @param simulation The simulation whose history is recorded from its
+     * current configuration on.
+     */
+    public SimulationHistory(Simulation simulation) {
+        this(simulation, 1 << 16, 64);
+    }
+    
+    /**
+     * Constructs a history for a simulation.
+     * 
+     * @param simulation The simulation whose history is recorded from its
+     * current configuration on.
+     * @param undo_capacity The number of most recent steps that can be
+     * stepped back without running the simulation, at least 1.
+     * @param max_checkpoints The maximum number of snapshots kept, at least 2.
+     */
+    public SimulationHistory(
+        Simulation simulation,
+        int undo_capacity,
+        int max_checkpoints
+    ) {
+        if(undo_capacity < 1 || max_checkpoints < 2) {
+            throw new IllegalArgumentException(
+                "Undo capacity must be positive and there must be at least " +
+                "two checkpoints."
+            );
+        }
+        this.simulation = simulation;
+        tape_count = simulation.getTapeCount();
+        positions = new int[undo_capacity * tape_count];
+        old_chars = new char[undo_capacity * tape_count];
+        step_positions = new int[tape_count];
+        step_chars = new char[tape_count];
+        tops = new State[undo_capacity];
+        depths = new int[undo_capacity];
+        old_states = new State[undo_capacity][];
+        old_machines = new Machine[undo_capacity][];
+        first = 0;
+        count = 0;
+        
+        this.max_checkpoints = max_checkpoints;
+        checkpoint_interval = undo_capacity;
+        checkpoints = new ArrayList<SimulationSnapshot>();
+        checkpoints.add(simulation.getSnapshot());
+    }
+    
+    /**
+     * Gets the simulation.
+     * 
+     * @return The simulation whose history is recorded.
+     */
+    public Simulation getSimulation() {
+        return simulation;
+    }
+    
+    /**
+     * Gets the earliest step that can be returned to.
+     * 
+     * @return The step count of the simulation when the recording started.
+     */
+    public long getEarliestStep() {
+        return checkpoints.get(0).getStepCount();
+    }
+    
+    /**
+     * Steps the simulation forward and records the step.
+     * 
+     * @throws SimulationException on submachine errors.
+     */
+    public void step() throws SimulationException {
+        if(simulation.getStatus() != SimulationStatus.RUNNING) {
+            return;
+        }
+        long steps = simulation.getStepCount();
+        State top = simulation.getState();
+        int depth = simulation.getDepth();
+        State[] states = null;
+        Machine[] machines = null;
+        Transition transition = simulation.getTransition();
+        if(
+            transition != null &&
+            transition.getDestination().isAccepting() &&
+            depth > 1
+        ) {
+            // The step returns from submachines, which may pop states below
+            // the top.
+            states = simulation.getStates();
+            machines = simulation.getMachines();
+        }
+        
+        for(int tape = 0; tape < tape_count; tape++) {
+            Head head = simulation.getHead(tape);
+            step_positions[tape] = head.getPosition();
+            step_chars[tape] = head.read();
+        }
+        
+        simulation.step();
+        if(simulation.getStepCount() == steps) {
+            // Rejected without taking a transition.
+            return;
+        }
+        record(top, depth, states, machines);
+        
+        SimulationSnapshot last = checkpoints.get(checkpoints.size() - 1);
+        if(simulation.getStepCount() - last.getStepCount() >= checkpoint_interval) {
+            addCheckpoint();
+        }
+    }
+    
+    /**
+     * Steps the simulation back by one transition. A simulation that has
+     * halted is returned to the configuration before its last transition.
+     * 
+     * @return False if the simulation was already at the earliest step.
+     * @throws SimulationException on submachine errors while running forward
+     * from a checkpoint.
+     */
+    public boolean back() throws SimulationException {
+        long steps = simulation.getStepCount();
+        if(steps <= getEarliestStep()) {
+            return false;
+        }
+        goTo(steps - 1);
+        return true;
+    }
+    
+    /**
+     * Moves the simulation to the configuration after a given number of
+     * steps. Moving forward stops early if the simulation halts.
+     * 
+     * @param target The step count to move to, at least getEarliestStep().
+     * @throws SimulationException on submachine errors while running forward.
+     */
+    public void goTo(long target) throws SimulationException {
+        if(target < getEarliestStep()) {
+            throw new IllegalArgumentException(
+                "Step " + target + " is before the recorded history."
+            );
+        }
+        
+        long steps = simulation.getStepCount();
+        if(target < steps) {
+            if(steps - target <= count) {
+                for(long i = target; i < steps; i++) {
+                    undo();
+                }
+                simulation.setDetectingLoops(simulation.isDetectingLoops());
+            } else {
+                // Restore the last checkpoint before the target.
+                int i = checkpoints.size() - 1;
+                while(checkpoints.get(i).getStepCount() > target) {
+                    i--;
+                }
+                simulation.restore(checkpoints.get(i));
+                count = 0;
+            }
+            while(
+                checkpoints.get(checkpoints.size() - 1).getStepCount() >
+                simulation.getStepCount()
+            ) {
+                checkpoints.remove(checkpoints.size() - 1);
+            }
+        }
+        
+        while(
+            simulation.getStepCount() < target &&
+            simulation.getStatus() == SimulationStatus.RUNNING
+        ) {
+            step();
+        }
+    }
+    
+    /**
+     * Finds the first step at which a condition holds by bisecting the
+     * history between the earliest step and the current step. The condition
+     * must be monotone: once it holds, it must hold at all later steps. The
+     * simulation is left at the found step, or at the current step if the
+     * condition does not hold there.
+     * 
+     * @param predicate The condition to test.
+     * @return The first step at which the condition holds, or -1 if it does
+     * not hold at the current step.
+     * @throws SimulationException on submachine errors while running forward
+     * from a checkpoint.
+     */
+    public long findFirst(
+        SimulationPredicate predicate
+    ) throws SimulationException {
+        long high = simulation.getStepCount();
+        if(!predicate.test(simulation)) {
+            return -1;
+        }
+        long low = getEarliestStep();
+        while(low < high) {
+            long middle = low + (high - low) / 2;
+            goTo(middle);
+            if(predicate.test(simulation)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        goTo(low);
+        return low;
+    }
+    
+    /**
+     * Adds a step to the end of the undo log, dropping the oldest step if
+     * the log is full. The head positions and the characters under the heads
+     * are taken from step_positions and step_chars.
+     */
+    private void record(
+        State top,
+        int depth,
+        State[] states,
+        Machine[] machines
+    ) {
+        int capacity = tops.length;
+        int i = (first + count) % capacity;
+        if(count == capacity) {
+            first = (first + 1) % capacity;
+        } else {
+            count++;
+        }
+        System.arraycopy(
+            step_positions, 0, positions, i * tape_count, tape_count
+        );
+        System.arraycopy(step_chars, 0, old_chars, i * tape_count, tape_count);
+        tops[i] = top;
+        depths[i] = depth;
+        old_states[i] = states;
+        old_machines[i] = machines;
+    }
+    
+    /**
+     * Undoes the last step in the undo log.
+     */
+    private void undo() {
+        count--;
+        int i = (first + count) % tops.length;
+        simulation.undoStep(
+            positions, old_chars, i * tape_count, tops[i], depths[i],
+            old_states[i], old_machines[i]
+        );
+        tops[i] = null;
+        old_states[i] = null;
+        old_machines[i] = null;
+    }
+    
+    /**
+     * Adds a checkpoint of the current configuration, thinning the
+     * checkpoints if there are too many.
+     */
+    private void addCheckpoint() {
+        checkpoints.add(simulation.getSnapshot());
+        if(checkpoints.size() > max_checkpoints) {
+            // Keep the first checkpoint and every other one after it.
+            ArrayList<SimulationSnapshot> kept =
+                new ArrayList<SimulationSnapshot>();
+            for(int i = 0; i < checkpoints.size(); i += 2) {
+                kept.add(checkpoints.get(i));
+            }
+            checkpoints.clear();
+            checkpoints.addAll(kept);
+            checkpoint_interval *= 2;
+        }
+    }
+}
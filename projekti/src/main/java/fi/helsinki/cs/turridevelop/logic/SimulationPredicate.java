@@ -0,0 +1,15 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+/**
+ * Condition on the configuration of a simulation, used for searching the
+ * history of a simulation.
+ */
+public interface SimulationPredicate {
+    /**
+     * Tests whether the configuration of a simulation satisfies the condition.
+     * 
+     * @param simulation The simulation. Must not be modified.
+     * @return True if the condition holds.
+     */
+    boolean test(Simulation simulation);
+}
@@ -0,0 +1,160 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+/**
+ * Immutable copy of the configuration of a Simulation: the state and machine
+ * stacks, the head positions, the contents of the tapes, the status and the
+ * step count. Can be used to restore the simulation to the configuration later.
+ */
+public class SimulationSnapshot {
+    /**
+     * The state stack, bottom first.
+     */
+    final State[] states;
+    
+    /**
+     * The machine stack, bottom first.
+     */
+    final Machine[] machines;
+    
+    /**
+     * The positions of the heads, by tape.
+     */
+    final int[] head_positions;
+    
+    /**
+     * The contents of the tapes as returned by Tape.getContents().
+     */
+    final String[] contents;
+    
+    /**
+     * The positions of the first characters of contents.
+     */
+    final int[] contents_starts;
+    
+    /**
+     * The status of the simulation.
+     */
+    final SimulationStatus status;
+    
+    /**
+     * The number of steps taken.
+     */
+    final long steps;
+    
+    /**
+     * Constructs SimulationSnapshot.
+     * 
+     * @param states The state stack, bottom first.
+     * @param machines The machine stack, bottom first.
+     * @param head_positions The positions of the heads, by tape.
+     * @param contents The contents of the tapes.
+     * @param contents_starts The positions of the first characters of
+     * contents.
+     * @param status The status of the simulation.
+     * @param steps The number of steps taken.
+     */
+    SimulationSnapshot(
+        State[] states,
+        Machine[] machines,
+        int[] head_positions,
+        String[] contents,
+        int[] contents_starts,
+        SimulationStatus status,
+        long steps
+    ) {
+        this.states = states;
+        this.machines = machines;
+        this.head_positions = head_positions;
+        this.contents = contents;
+        this.contents_starts = contents_starts;
+        this.status = status;
+        this.steps = steps;
+    }
+    
+    /**
+     * Gets the number of steps.
+     * 
+     * @return The step count of the simulation when the snapshot was taken.
+     */
+    public long getStepCount() {
+        return steps;
+    }
+    
+    /**
+     * Gets the status.
+     * 
+     * @return The status of the simulation when the snapshot was taken.
+     */
+    public SimulationStatus getStatus() {
+        return status;
+    }
+    
+    /**
+     * Gets the state.
+     * 
+     * @return The state on the top of the state stack.
+     */
+    public State getState() {
+        return states[states.length - 1];
+    }
+    
+    /**
+     * Gets the machine.
+     * 
+     * @return The machine on the top of the machine stack.
+     */
+    public Machine getMachine() {
+        return machines[machines.length - 1];
+    }
+    
+    /**
+     * Gets the number of tapes.
+     * 
+     * @return The number of tapes of the simulation.
+     */
+    public int getTapeCount() {
+        return contents.length;
+    }
+    
+    /**
+     * Gets the head position.
+     * 
+     * @return The position of the head of the first tape when the snapshot
+     * was taken.
+     */
+    public int getHeadPosition() {
+        return head_positions[0];
+    }
+    
+    /**
+     * Gets the head position on a tape.
+     * 
+     * @param tape The index of the tape.
+     * @return The position of the head of the tape when the snapshot was
+     * taken.
+     */
+    public int getHeadPosition(int tape) {
+        return head_positions[tape];
+    }
+    
+    /**
+     * Gets the tape contents.
+     * 
+     * @return The contents of the first tape as returned by Tape.getContents()
+     * when the snapshot was taken.
+     */
+    public String getTapeContents() {
+        return contents[0];
+    }
+    
+    /**
+     * Gets the contents of a tape.
+     * 
+     * @param tape The index of the tape.
+     * @return The contents of the tape as returned by Tape.getContents() when
+     * the snapshot was taken.
+     */
+    public String getTapeContents(int tape) {
+        return contents[tape];
+    }
+}
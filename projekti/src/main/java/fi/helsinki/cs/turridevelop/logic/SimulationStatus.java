@@ -5,9 +5,17 @@ package fi.helsinki.cs.turridevelop.logic;
  *   RUNNING: the simulation is still running.
  *   ACCEPTED: the simulation reached an accepting state.
  *   REJECTED: the simulation could not continue and thus rejected the input.
+ *   LOOPING: the simulation repeated an earlier configuration, exactly or
+ *     shifted along the tape, and thus will never halt. Only reported if loop
+ *     detection is enabled.
+ *   LIMIT_REACHED: returned by the limited run methods when they stop because
+ *     of a step limit, a timeout or cancellation. The simulation itself is
+ *     still RUNNING and can be continued.
  */
 public enum SimulationStatus {
     RUNNING,
     ACCEPTED,
-    REJECTED
+    REJECTED,
+    LOOPING,
+    LIMIT_REACHED
 }
@@ -4,13 +4,25 @@ import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
 import fi.helsinki.cs.turridevelop.util.ByNameContainer;
 import fi.helsinki.cs.turridevelop.util.ByNameStored;
 import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * State of a Turing machine.
+ * 
+ * All transitions from a state operate on the same number of tapes, the tape
+ * count of the state. The transitions of a single-tape state are looked up by
+ * the character under the first head, and the transitions of a multi-tape
+ * state by the string of the characters under the heads of its tapes.
+ * 
+ * In a nondeterministic machine several transitions of a state may accept the
+ * same input. The transitions accepting an input are then its choices, in the
+ * order they were added, and the lookups by input return the first choice.
  */
 public class State implements ByNameStored {
     /**
@@ -26,13 +38,38 @@ public class State implements ByNameStored {
     /**
      * Transitions from this state.
      */
-    private HashSet<Transition> transitions;
+    private LinkedHashSet<Transition> transitions;
     
     /**
      * Hashmap from input characters to transitions that accept the character.
      */
     private HashMap<Character, Transition> transitions_by_input;
     
+    /**
+     * Hashmap from strings of input characters, one for each tape, to the
+     * transitions that accept them. Only used when the tape count is more
+     * than 1.
+     */
+    private HashMap<String, Transition> transitions_by_inputs;
+    
+    /**
+     * Hashmap from input characters to all transitions that accept the
+     * character. Only used when the tape count is 1.
+     */
+    private HashMap<Character, Transition[]> choices_by_input;
+    
+    /**
+     * Hashmap from strings of input characters to all transitions that accept
+     * them. Only used when the tape count is more than 1.
+     */
+    private HashMap<String, Transition[]> choices_by_inputs;
+    
+    /**
+     * The number of tapes the transitions operate on, 1 if there are no
+     * transitions.
+     */
+    private int tape_count;
+    
     /**
      * Is the state accepting?
      */
@@ -49,6 +86,18 @@ public class State implements ByNameStored {
      */
     Vec2 pos;
     
+    /**
+     * The resolved submachine calls made when the state is entered, cached
+     * by Project.getEntry. Null if not resolved yet.
+     */
+    SubmachineEntry entry;
+    
+    /**
+     * May several transitions accept the same input? Set by the machine of
+     * the state.
+     */
+    boolean nondeterministic;
+    
     /**
      * Constructs a Turing machine state.
      * 
@@ -57,13 +106,17 @@ public class State implements ByNameStored {
      * 
      * @param name The name of the state.
      * @param container Container containing the state that is notified on name
-     * changes.
+     * changes and modifications.
      */
     public State(String name, ByNameContainer<State> container) {
         this.name = name;
         this.container = container;
-        transitions = new HashSet<Transition>();
+        transitions = new LinkedHashSet<Transition>();
         transitions_by_input = new HashMap<Character, Transition>();
+        transitions_by_inputs = new HashMap<String, Transition>();
+        choices_by_input = new HashMap<Character, Transition[]>();
+        choices_by_inputs = new HashMap<String, Transition[]>();
+        tape_count = 1;
         accepting = false;
         pos = new Vec2();
     }
@@ -85,6 +138,7 @@ public class State implements ByNameStored {
      */
     public void setAccepting(boolean accepting) {
         this.accepting = accepting;
+        container.modified();
     }
     
     /**
@@ -104,6 +158,7 @@ public class State implements ByNameStored {
      */
     public void setSubmachine(String machine) {
         submachine = machine;
+        container.modified();
     }
     
     /**
@@ -133,7 +188,7 @@ public class State implements ByNameStored {
     /**
      * Gets all transitions from the state.
      * 
-     * @return HashSet of all the transitions.
+     * @return All the transitions, in the order they were added.
      */
     public Set<Transition> getTransitions() {
         return Collections.unmodifiableSet(transitions);
@@ -149,11 +204,85 @@ public class State implements ByNameStored {
         return transitions_by_input.get(c);
     }
     
+    /**
+     * Gets the number of tapes the transitions of the state operate on.
+     * 
+     * @return The tape count of the transitions, 1 if there are none.
+     */
+    public int getTapeCount() {
+        return tape_count;
+    }
+    
+    /**
+     * Gets transition by the input characters on all tapes of the state.
+     * 
+     * @param inputs The characters under the heads of the first
+     * getTapeCount() tapes, in order.
+     * @return The Transition from the state that has each character of inputs
+     * in its input characters of the corresponding tape, or null.
+     */
+    public Transition getTransitionByInputs(String inputs) {
+        if(tape_count == 1) {
+            return transitions_by_input.get(inputs.charAt(0));
+        }
+        return transitions_by_inputs.get(inputs);
+    }
+    
+    /**
+     * Gets all transitions accepting an input character.
+     * 
+     * @param c The input character.
+     * @return The transitions from the state that have c in their input
+     * characters, in the order they were added. More than one only in
+     * nondeterministic machines.
+     */
+    public List<Transition> getTransitionsByInput(char c) {
+        Transition[] choices = choices_by_input.get(c);
+        if(choices == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(choices));
+    }
+    
+    /**
+     * Gets the choices of a nondeterministic step.
+     * 
+     * @param inputs The characters under the heads of the first
+     * getTapeCount() tapes, in order.
+     * @return All transitions accepting inputs in the order they were added,
+     * null if there are none. The array must not be modified.
+     */
+    Transition[] getChoices(String inputs) {
+        if(tape_count == 1) {
+            return choices_by_input.get(inputs.charAt(0));
+        }
+        return choices_by_inputs.get(inputs);
+    }
+    
+    /**
+     * Tests whether several transitions accept the same input.
+     * 
+     * @return True if some input has more than one choice.
+     */
+    boolean hasChoices() {
+        for(Transition[] choices : choices_by_input.values()) {
+            if(choices.length > 1) {
+                return true;
+            }
+        }
+        for(Transition[] choices : choices_by_inputs.values()) {
+            if(choices.length > 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     /**
      * Gets the set of input characters for the state.
      * 
      * @return The set of characters such that there is transition that reads
-     * the character.
+     * the character. Empty for multi-tape states.
      */
     public Set<Character> getInputCharacters() {
         return Collections.unmodifiableSet(transitions_by_input.keySet());
@@ -163,19 +292,35 @@ public class State implements ByNameStored {
      * Adds transition to the state.
      * 
      * @param transition The transition to be added.
-     * @throws NameInUseException if some transition already has same input
-     * character as transition.
+     * @throws NameInUseException if the machine is deterministic and some
+     * transition already has same input character as transition, or the other
+     * transitions of the state operate on a different number of tapes.
      */
     public void addTransition(Transition transition) throws NameInUseException {
-        String inputchars = transition.getInputCharacters();
+        if(transitions.contains(transition)) {
+            // Adding the transition again changes nothing.
+            return;
+        }
+        int count = transition.getTapeCount();
+        if(!transitions.isEmpty() && count != tape_count) {
+            throw new NameInUseException(
+                "State already has transitions on " + tape_count + " tapes"
+            );
+        }
+        
+        if(count > 1) {
+            addMultiTapeTransition(transition);
+            return;
+        }
+        
+        String inputchars = getDistinctCharacters(
+            transition.getInputCharacters()
+        );
         
         // Check for clashes with other transitions.
-        for(int i = 0; i < inputchars.length(); i++) {
+        for(int i = 0; i < inputchars.length() && !nondeterministic; i++) {
             char c = inputchars.charAt(i);
-            if(
-                transitions_by_input.containsKey(c) &&
-                transitions_by_input.get(c) != transition
-            ) {
+            if(transitions_by_input.containsKey(c)) {
                 throw new NameInUseException(
                     "State already has transition for character \"" + c + "\""
                 );
@@ -184,10 +329,17 @@ public class State implements ByNameStored {
         
         // Add the transition and the mappings by input.
         transitions.add(transition);
+        tape_count = 1;
         for(int i = 0; i < inputchars.length(); i++) {
             char c = inputchars.charAt(i);
-            transitions_by_input.put(c, transition);
+            if(!transitions_by_input.containsKey(c)) {
+                transitions_by_input.put(c, transition);
+            }
+            choices_by_input.put(
+                c, addChoice(choices_by_input.get(c), transition)
+            );
         }
+        container.modified();
     }
     
     /**
@@ -197,16 +349,162 @@ public class State implements ByNameStored {
      */
     public void removeTransition(Transition transition) {
         // Remove from transitions.
-        transitions.remove(transition);
+        if(!transitions.remove(transition)) {
+            return;
+        }
         
-        // Remove from transitions_by_input.
-        String inputchars = transition.getInputCharacters();
-        for(int i = 0; i < inputchars.length(); i++) {
-            char c = inputchars.charAt(i);
-            if(transitions_by_input.get(c) == transition) {
-                transitions_by_input.remove(c);
+        if(transition.getTapeCount() > 1) {
+            // Remove from transitions_by_inputs.
+            for(String inputs : getInputKeys(transition)) {
+                Transition[] choices =
+                    removeChoice(choices_by_inputs.get(inputs), transition);
+                if(choices == null) {
+                    transitions_by_inputs.remove(inputs);
+                    choices_by_inputs.remove(inputs);
+                } else {
+                    transitions_by_inputs.put(inputs, choices[0]);
+                    choices_by_inputs.put(inputs, choices);
+                }
+            }
+        } else {
+            // Remove from transitions_by_input.
+            String inputchars = getDistinctCharacters(
+                transition.getInputCharacters()
+            );
+            for(int i = 0; i < inputchars.length(); i++) {
+                char c = inputchars.charAt(i);
+                Transition[] choices =
+                    removeChoice(choices_by_input.get(c), transition);
+                if(choices == null) {
+                    transitions_by_input.remove(c);
+                    choices_by_input.remove(c);
+                } else {
+                    transitions_by_input.put(c, choices[0]);
+                    choices_by_input.put(c, choices);
+                }
             }
         }
+        if(transitions.isEmpty()) {
+            tape_count = 1;
+        }
+        container.modified();
+    }
+    
+    /**
+     * Adds a transition on multiple tapes, mapping every combination of its
+     * input characters to it.
+     */
+    private void addMultiTapeTransition(
+        Transition transition
+    ) throws NameInUseException {
+        ArrayList<String> keys = getInputKeys(transition);
+        
+        // Check for clashes with other transitions.
+        for(String inputs : keys) {
+            if(!nondeterministic && transitions_by_inputs.containsKey(inputs)) {
+                throw new NameInUseException(
+                    "State already has transition for characters \"" +
+                    inputs + "\""
+                );
+            }
+        }
+        
+        transitions.add(transition);
+        tape_count = transition.getTapeCount();
+        for(String inputs : keys) {
+            if(!transitions_by_inputs.containsKey(inputs)) {
+                transitions_by_inputs.put(inputs, transition);
+            }
+            choices_by_inputs.put(
+                inputs, addChoice(choices_by_inputs.get(inputs), transition)
+            );
+        }
+        container.modified();
+    }
+    
+    /**
+     * Removes repeated characters from a string of input characters, so that
+     * a transition is mapped to each input only once.
+     * 
+     * @param chars The characters.
+     * @return The characters in their original order without repetitions.
+     */
+    private static String getDistinctCharacters(String chars) {
+        StringBuilder distinct = new StringBuilder();
+        for(int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            if(chars.indexOf(c) == i) {
+                distinct.append(c);
+            }
+        }
+        return distinct.toString();
+    }
+    
+    /**
+     * Gets all the strings of input characters a multi-tape transition
+     * accepts, one character for each tape.
+     */
+    private static ArrayList<String> getInputKeys(Transition transition) {
+        ArrayList<String> keys = new ArrayList<String>();
+        keys.add("");
+        for(int tape = 0; tape < transition.getTapeCount(); tape++) {
+            String inputchars = getDistinctCharacters(
+                transition.getInputCharacters(tape)
+            );
+            ArrayList<String> longer = new ArrayList<String>();
+            for(String key : keys) {
+                for(int i = 0; i < inputchars.length(); i++) {
+                    longer.add(key + inputchars.charAt(i));
+                }
+            }
+            keys = longer;
+        }
+        return keys;
+    }
+    
+    /**
+     * Appends a transition to an array of choices.
+     * 
+     * @param choices The choices, null if there are none.
+     * @param transition The transition to append.
+     * @return A new array of the choices and transition.
+     */
+    private static Transition[] addChoice(
+        Transition[] choices,
+        Transition transition
+    ) {
+        if(choices == null) {
+            return new Transition[] {transition};
+        }
+        Transition[] ret = Arrays.copyOf(choices, choices.length + 1);
+        ret[choices.length] = transition;
+        return ret;
+    }
+    
+    /**
+     * Removes a transition from an array of choices.
+     * 
+     * @param choices The choices, null if there are none.
+     * @param transition The transition to remove.
+     * @return A new array of the other choices, null if there are none.
+     */
+    private static Transition[] removeChoice(
+        Transition[] choices,
+        Transition transition
+    ) {
+        if(choices == null) {
+            return null;
+        }
+        ArrayList<Transition> rest = new ArrayList<Transition>();
+        for(Transition choice : choices) {
+            if(choice != transition) {
+                rest.add(choice);
+            }
+        }
+        if(rest.isEmpty()) {
+            return null;
+        }
+        return rest.toArray(new Transition[rest.size()]);
     }
     
     /**
@@ -225,5 +523,6 @@ public class State implements ByNameStored {
      */
     public void setPosition(Vec2 pos) {
         this.pos = pos;
+        container.layoutChanged();
     }
 }
@@ -0,0 +1,88 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import java.util.ArrayList;
+
+/**
+ * The submachine calls made when a state with a submachine is entered,
+ * resolved for a version of a project.
+ */
+class SubmachineEntry {
+    /**
+     * The project the calls were resolved in.
+     */
+    final Project project;
+    
+    /**
+     * The version of the project the calls were resolved in.
+     */
+    final long version;
+    
+    /**
+     * The start states of the called submachines in the order they are
+     * entered, null if entering the state fails.
+     */
+    final State[] states;
+    
+    /**
+     * The called submachines in the order they are entered, null if entering
+     * the state fails.
+     */
+    final Machine[] machines;
+    
+    /**
+     * The number of start states that stay on the state stack. The rest are
+     * accepting, so they are returned from as soon as they are entered.
+     */
+    final int pushes;
+    
+    /**
+     * Resolves the submachine calls made when a state is entered.
+     * 
+     * @param project The project to resolve the submachines in.
+     * @param version The current version of the project.
+     * @param state The entered state.
+     */
+    SubmachineEntry(Project project, long version, State state) {
+        this.project = project;
+        this.version = version;
+        
+        ArrayList<State> state_list = new ArrayList<State>();
+        ArrayList<Machine> machine_list = new ArrayList<Machine>();
+        int machine_count = project.getMachineNames().size();
+        boolean failed = false;
+        while(state.getSubmachine() != null) {
+            // Going deeper than the number of machines means an infinite
+            // submachine loop.
+            if(state_list.size() == machine_count) {
+                failed = true;
+                break;
+            }
+            Machine submachine = project.getMachine(state.getSubmachine());
+            if(submachine == null) {
+                failed = true;
+                break;
+            }
+            state = submachine.getState("start");
+            if(state == null) {
+                failed = true;
+                break;
+            }
+            state_list.add(state);
+            machine_list.add(submachine);
+        }
+        
+        if(failed) {
+            states = null;
+            machines = null;
+            pushes = 0;
+        } else {
+            states = state_list.toArray(new State[state_list.size()]);
+            machines = machine_list.toArray(new Machine[machine_list.size()]);
+            int count = states.length;
+            while(count > 0 && states[count - 1].isAccepting()) {
+                count--;
+            }
+            pushes = count;
+        }
+    }
+}
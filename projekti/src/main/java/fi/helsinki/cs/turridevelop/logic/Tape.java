@@ -1,9 +1,18 @@
 package fi.helsinki.cs.turridevelop.logic;
 
+import java.util.Arrays;
+
 /**
  * Tape of a Turing machine.
  * 
- * Infinite string of characters, initially set to given empty character.
+ * Infinite string of characters, initially set to given empty character. By
+ * default the tape is infinite only to the right and position 0 is the
+ * leftmost position. A bi-infinite tape also has the negative positions.
+ * 
+ * The explicitly stored part of the tape is kept in an array that grows
+ * geometrically in the direction of writes, so writes at both ends take
+ * amortized constant time. Subclasses in this package may store the cells
+ * differently, overriding all the methods that access them.
  */
 public class Tape {
     /**
@@ -12,19 +21,63 @@ public class Tape {
     private final char empty_char;
     
     /**
-     * The explicitly stored part of the tape.
+     * Is the tape infinite also to the left?
+     */
+    private final boolean bi_infinite;
+    
+    /**
+     * The explicitly stored part of the tape. Cells that have not been written
+     * contain empty_char.
+     */
+    private char[] cells;
+    
+    /**
+     * The index in cells of position 0.
+     */
+    private int offset;
+    
+    /**
+     * The leftmost position that may contain a non-empty character, at most 0.
      */
-    private StringBuilder tape;
+    private int left;
+    
+    /**
+     * One past the rightmost position that may contain a non-empty character,
+     * at least 0.
+     */
+    private int right;
     
     /**
      * Constructs tape.
      * 
-     * @param empty_char The character of all positions of the tape initially.
-     * @param input The content of the initial portion of the tape.
+     * @param input The content of the tape starting from position 0.
+     * @param empty_char The character of all other positions of the tape.
+     * @param bi_infinite True if the tape should also have negative positions.
      */
-    public Tape(String input, char empty_char) {
+    public Tape(String input, char empty_char, boolean bi_infinite) {
+        this.empty_char = empty_char;
+        this.bi_infinite = bi_infinite;
+        setContents(input);
+    }
+    
+    /**
+     * Constructs a tape for a subclass that stores the cells itself. The cell
+     * array is not allocated, and the subclass must override all the methods
+     * accessing the cells and set the initial contents.
+     * 
+     * @param empty_char The character of the empty positions of the tape.
+     * @param bi_infinite True if the tape should also have negative positions.
+     */
+    Tape(char empty_char, boolean bi_infinite) {
         this.empty_char = empty_char;
-        tape = new StringBuilder(input);
+        this.bi_infinite = bi_infinite;
+    }
+    
+    /**
+     * Equivalent to Tape(input, empty_char, false).
+     */
+    public Tape(String input, char empty_char) {
+        this(input, empty_char, false);
     }
     
     /**
@@ -57,45 +110,74 @@ public class Tape {
         return empty_char;
     }
     
+    /**
+     * Tests whether the tape is infinite in both directions.
+     * 
+     * @return True if the tape has negative positions, false if position 0 is
+     * the leftmost position.
+     */
+    public boolean isBiInfinite() {
+        return bi_infinite;
+    }
+    
     /**
      * Gets the character at given position on the tape.
      * 
-     * @param pos The position on the tape. The leftmost position is 0.
+     * @param pos The position on the tape.
      * @return The character at pos.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
      */
     public char getCharacterAt(int pos) {
-        if(pos < tape.length()) {
-            return tape.charAt(pos);
-        } else {
-            return empty_char;
+        int i = pos + offset;
+        if(i >= 0 && i < cells.length) {
+            return cells[i];
         }
+        checkPosition(pos);
+        return empty_char;
     }
     
     /**
      * Sets the character at given position on the tape.
      * 
-     * @param pos The position on the tape. The leftmost position is 0.
+     * @param pos The position on the tape.
      * @param c The character to put.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
      */
     public void setCharacterAt(int pos, char c) {
-        // Extend the tape with empty characters until pos is inside it.
-        while(pos >= tape.length()) {
-            tape.append(empty_char);
+        int i = pos + offset;
+        if(i < 0 || i >= cells.length) {
+            checkPosition(pos);
+            if(c == empty_char) {
+                // The position is already empty.
+                return;
+            }
+            i = reserve(pos);
         }
         
-        tape.setCharAt(pos, c);
+        cells[i] = c;
+        if(c != empty_char) {
+            if(pos >= right) {
+                right = pos + 1;
+            }
+            if(pos < left) {
+                left = pos;
+            }
+        }
     }
     
     /**
      * Get the contents of the tape as a string.
      * 
-     * @return The minimal leading portion of the tape such that all characters
-     * after it are empty characters.
+     * @return The minimal portion of the tape starting at
+     * getContentsStart() such that all characters after it are empty
+     * characters.
      */
     public String getContents() {
-        removeEmptyCharacters();
+        trim();
         
-        return tape.toString();
+        return new String(cells, left + offset, right - left);
     }
     
     /**
@@ -104,30 +186,179 @@ public class Tape {
      * @return The length of string returned by getContents().
      */
     public int getContentsLength() {
-        removeEmptyCharacters();
+        trim();
         
-        return tape.length();
+        return right - left;
     }
     
     /**
-     * Remove empty characters from the end of 'tape'.
+     * Get the position where getContents() starts.
+     * 
+     * @return 0 if the tape is not bi-infinite, otherwise the leftmost negative
+     * position with a non-empty character or 0 if there is no such position.
      */
-    private void removeEmptyCharacters() {
-        while(
-            tape.length() != 0 &&
-            tape.charAt(tape.length() - 1) == getEmptyCharacter()
-        ) {
-            tape.deleteCharAt(tape.length() - 1);
-        }
+    public int getContentsStart() {
+        trim();
+        
+        return left;
     }
     
     /**
      * Set the contents of the tape.
      * 
-     * @param contents The new content of the tape. The characters after the end
-     * of the string will be set to the empty character.
+     * @param contents The new content of the tape starting from position 0.
+     * The characters at all other positions will be set to the empty
+     * character.
      */
     public void setContents(String contents) {
-        tape = new StringBuilder(contents);
+        setContents(contents, 0);
+    }
+    
+    /**
+     * Set the contents of the tape starting from a given position, as
+     * returned by getContents() and getContentsStart().
+     * 
+     * @param contents The new content of the tape starting from start. The
+     * characters at all other positions will be set to the empty character.
+     * @param start The position of the first character of contents, at most
+     * 0 and such that contents reaches position 0.
+     * @throws IndexOutOfBoundsException if start is negative and the tape is
+     * not bi-infinite.
+     */
+    void setContents(String contents, int start) {
+        checkPosition(start);
+        cells = new char[Math.max(16, contents.length())];
+        contents.getChars(0, contents.length(), cells, 0);
+        Arrays.fill(cells, contents.length(), cells.length, empty_char);
+        offset = -start;
+        left = start;
+        right = start + contents.length();
+    }
+    
+    /**
+     * Counts the cells a scanning head passes over: the cells starting from a
+     * position in a direction whose characters are all in a set. The scan
+     * stays within the contents of the tape and does not include position 0
+     * when moving left on a tape that is not bi-infinite, as the head cannot
+     * move left from there.
+     * 
+     * @param pos The position to start from.
+     * @param movement The direction of the scan, 1 or -1.
+     * @param chars The characters to scan over.
+     * @param limit The maximum number of cells to count.
+     * @return The number of consecutive cells from pos with a character in
+     * chars, at most limit.
+     */
+    int scan(int pos, int movement, String chars, int limit) {
+        int max = getScanLength(pos, movement, limit);
+        int count = 0;
+        if(cells == null) {
+            while(
+                count < max &&
+                chars.indexOf(getCharacterAt(pos + count * movement)) != -1
+            ) {
+                count++;
+            }
+        } else {
+            // Scan the cell array directly.
+            int i = pos + offset;
+            while(count < max && chars.indexOf(cells[i]) != -1) {
+                i += movement;
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Gets the number of cells a scan may pass over.
+     * 
+     * @param pos The position to start from.
+     * @param movement The direction of the scan, 1 or -1.
+     * @param limit The maximum number of cells.
+     * @return The number of cells from pos in the direction that are within
+     * the contents and that the head can leave in the direction, at most
+     * limit.
+     */
+    int getScanLength(int pos, int movement, int limit) {
+        int start = getContentsStart();
+        int end = start + getContentsLength();
+        if(movement < 0 && !bi_infinite) {
+            start = 1;
+        }
+        if(pos < start || pos >= end) {
+            return 0;
+        }
+        if(movement > 0) {
+            return Math.min(limit, end - pos);
+        }
+        return Math.min(limit, pos - start + 1);
+    }
+    
+    /**
+     * Shrinks the written extent so that it starts and ends with non-empty
+     * characters, except that it always contains position 0. Each cell is
+     * trimmed at most once after it has been written, so the cost is amortized
+     * to the writes.
+     */
+    private void trim() {
+        while(right > 0 && cells[right - 1 + offset] == empty_char) {
+            right--;
+        }
+        while(left < 0 && cells[left + offset] == empty_char) {
+            left++;
+        }
+    }
+    
+    /**
+     * Throws if the position is not on the tape.
+     * 
+     * @param pos The position to check.
+     * @throws IndexOutOfBoundsException if pos is negative and the tape is not
+     * bi-infinite.
+     */
+    void checkPosition(long pos) {
+        if(pos < 0 && !bi_infinite) {
+            throw new IndexOutOfBoundsException(
+                "Position " + pos + " is left of the leftmost position."
+            );
+        }
+    }
+    
+    /**
+     * Grows the cell array so that it contains the position. The array is at
+     * least doubled, and the new space is put on the side of the position.
+     * 
+     * @param pos The position that must be stored.
+     * @return The index of pos in the new array.
+     */
+    private int reserve(int pos) {
+        long index = (long) pos + offset;
+        long needed;
+        if(index < 0) {
+            needed = cells.length - index;
+        } else {
+            needed = index + 1;
+        }
+        long capacity = Math.max(needed, 2L * cells.length);
+        if(capacity > Integer.MAX_VALUE - 8) {
+            capacity = Integer.MAX_VALUE - 8;
+            if(needed > capacity) {
+                throw new OutOfMemoryError("Tape too long.");
+            }
+        }
+        
+        char[] grown = new char[(int) capacity];
+        int shift = 0;
+        if(index < 0) {
+            shift = grown.length - cells.length;
+        }
+        System.arraycopy(cells, 0, grown, shift, cells.length);
+        Arrays.fill(grown, 0, shift, empty_char);
+        Arrays.fill(grown, shift + cells.length, grown.length, empty_char);
+        cells = grown;
+        offset += shift;
+        
+        return pos + offset;
     }
 }
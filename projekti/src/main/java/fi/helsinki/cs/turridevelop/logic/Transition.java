@@ -4,6 +4,11 @@ package fi.helsinki.cs.turridevelop.logic;
  * State transition that reads any of given input characters from the tape,
  * optionally writes given character, and optionally moves to the left or to the
  * right.
+ * 
+ * A transition of a multi-tape machine does this on each of the first
+ * getTapeCount() tapes: it is taken when the character under each head is one
+ * of the input characters of that tape, and then writes and moves on each tape
+ * independently. The methods without a tape index refer to the first tape.
  */
 public class Transition {
     /**
@@ -12,20 +17,20 @@ public class Transition {
     private final State destination;
     
     /**
-     * String of all possible input characters.
+     * Strings of all possible input characters, by tape.
      */
-    private final String inchar;
+    private final String[] inchars;
     
     /**
-     * Output character or null if the tape should be left as is.
+     * Output characters, or null if the tape should be left as is, by tape.
      */
-    private final Character outchar;
+    private final Character[] outchars;
     
     /**
-     * The movement of the tape after reading the input and writing the output,
-     * -1 means left, 0 stay and 1 right.
+     * The movements of the heads after reading the input and writing the
+     * output, -1 means left, 0 stay and 1 right, by tape.
      */
-    private final int movement;
+    private final int[] movements;
     
     /**
      * Constructs Transition.
@@ -39,17 +44,49 @@ public class Transition {
      * positive to the right and zero stays.
      */
     public Transition(State destination, String inchar, Character outchar, int movement) {
+        this(
+            destination,
+            new String[] {inchar},
+            new Character[] {outchar},
+            new int[] {movement}
+        );
+    }
+    
+    /**
+     * Constructs a transition on multiple tapes.
+     * 
+     * @param destination The destination state.
+     * @param inchars The strings of the possible characters to read on each
+     * tape.
+     * @param outchars The characters to write on each tape, null for the tapes
+     * that should be left as is.
+     * @param movements The movements of the heads after reading and writing,
+     * negative moves left, positive to the right and zero stays.
+     * @throws IllegalArgumentException if the arrays are empty or have
+     * different lengths.
+     */
+    public Transition(
+        State destination,
+        String[] inchars,
+        Character[] outchars,
+        int[] movements
+    ) {
+        if(
+            inchars.length == 0 ||
+            outchars.length != inchars.length ||
+            movements.length != inchars.length
+        ) {
+            throw new IllegalArgumentException(
+                "A transition must have the same positive number of input " +
+                "characters, output characters and movements."
+            );
+        }
         this.destination = destination;
-        this.inchar = inchar;
-        this.outchar = outchar;
-        if(movement == 0) {
-            this.movement = 0;
-        } else {
-            if(movement > 0) {
-                this.movement = 1;
-            } else {
-                this.movement = -1;
-            }
+        this.inchars = inchars.clone();
+        this.outchars = outchars.clone();
+        this.movements = new int[movements.length];
+        for(int i = 0; i < movements.length; i++) {
+            this.movements[i] = Integer.signum(movements[i]);
         }
     }
     
@@ -69,13 +106,32 @@ public class Transition {
         return destination;
     }
     
+    /**
+     * Gets the number of tapes the transition operates on.
+     * 
+     * @return The number of tapes, 1 for a single-tape transition.
+     */
+    public int getTapeCount() {
+        return inchars.length;
+    }
+    
     /**
      * Gets the string of possible input characters.
      * 
      * @return The possible input characters.
      */
     public String getInputCharacters() {
-        return inchar;
+        return inchars[0];
+    }
+    
+    /**
+     * Gets the string of possible input characters on a tape.
+     * 
+     * @param tape The index of the tape, less than getTapeCount().
+     * @return The possible input characters on the tape.
+     */
+    public String getInputCharacters(int tape) {
+        return inchars[tape];
     }
     
     /**
@@ -85,7 +141,18 @@ public class Transition {
      * anything.
      */
     public Character getOutputCharacter() {
-        return outchar;
+        return outchars[0];
+    }
+    
+    /**
+     * Gets the output character on a tape.
+     * 
+     * @param tape The index of the tape, less than getTapeCount().
+     * @return The output character or null if this transition doesn't write
+     * anything on the tape.
+     */
+    public Character getOutputCharacter(int tape) {
+        return outchars[tape];
     }
     
     /**
@@ -95,6 +162,17 @@ public class Transition {
      * right and 0 if the transition doesn't move the tape
      */
     public int getMovement() {
-        return movement;
+        return movements[0];
+    }
+    
+    /**
+     * Get the movement of the head of a tape in this transition.
+     * 
+     * @param tape The index of the tape, less than getTapeCount().
+     * @return -1 if the transition moves to the left on the tape, 1 if to the
+     * right and 0 if the transition doesn't move the tape
+     */
+    public int getMovement(int tape) {
+        return movements[tape];
     }
 }
@@ -4,10 +4,18 @@ import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Container that stores elements of type T by their names and tracks their
  * name changes. Does not allow two elements to have the same name.
+ * 
+ * The container also counts modifications to itself and to the elements in
+ * it, so that data derived from the elements can be recomputed when they
+ * change, and separately all changes including the ones that only affect the
+ * layout of the elements, so that changed elements can be saved. The
+ * modifications are propagated to a parent container, so that a container of
+ * containers counts the modifications to all of them.
  */
 public class ByNameContainer<T extends ByNameStored> {
     /**
@@ -15,11 +23,87 @@ public class ByNameContainer<T extends ByNameStored> {
      */
     private HashMap<String, T> elements;
     
+    /**
+     * The container notified of the modifications of this container, null if
+     * none.
+     */
+    private final ByNameContainer<?> parent;
+    
+    /**
+     * The number of modifications. Atomic, because the elements of different
+     * child containers may be modified from different threads, as when loading
+     * a project, and a lock shared by the whole parent chain would make the
+     * threads wait for each other.
+     */
+    private final AtomicLong version;
+    
+    /**
+     * The number of modifications and layout changes, updated like version.
+     */
+    private final AtomicLong change_count;
+    
     /**
      * Constructs a ByNameContainer.
      */
     public ByNameContainer() {
+        this(null);
+    }
+    
+    /**
+     * Constructs a ByNameContainer that notifies a parent container of its
+     * modifications.
+     * 
+     * @param parent The parent container, null if none.
+     */
+    public ByNameContainer(ByNameContainer<?> parent) {
         elements = new HashMap<String, T>();
+        this.parent = parent;
+        version = new AtomicLong();
+        change_count = new AtomicLong();
+    }
+    
+    /**
+     * Gets the version of the container.
+     * 
+     * @return The number of modifications to the container, to its elements
+     * and to the containers that have this as their parent.
+     */
+    public long getVersion() {
+        return version.get();
+    }
+    
+    /**
+     * Gets the change count of the container.
+     * 
+     * @return The number of modifications and layout changes to the container,
+     * to its elements and to the containers that have this as their parent.
+     */
+    public long getChangeCount() {
+        return change_count.get();
+    }
+    
+    /**
+     * Function used by elements to notify when they are modified. Also
+     * notifies the parent container.
+     */
+    public void modified() {
+        version.incrementAndGet();
+        change_count.incrementAndGet();
+        if(parent != null) {
+            parent.modified();
+        }
+    }
+    
+    /**
+     * Function used by elements to notify when they change in a way that does
+     * not affect their behaviour, such as their position in a diagram. Also
+     * notifies the parent container.
+     */
+    public void layoutChanged() {
+        change_count.incrementAndGet();
+        if(parent != null) {
+            parent.layoutChanged();
+        }
     }
     
     /**
@@ -34,6 +118,7 @@ public class ByNameContainer<T extends ByNameStored> {
             throw new NameInUseException();
         }
         elements.put(element.getName(), element);
+        modified();
     }
     
     /**
@@ -44,7 +129,9 @@ public class ByNameContainer<T extends ByNameStored> {
      * @param name The name of the element.
      */
     public void remove(String name) {
-        elements.remove(name);
+        if(elements.remove(name) != null) {
+            modified();
+        }
     }
     
     /**
@@ -100,5 +187,6 @@ public class ByNameContainer<T extends ByNameStored> {
         
         elements.remove(old_name);
         elements.put(element.getName(), element);
+        modified();
     }
 }
\ No newline at end of file
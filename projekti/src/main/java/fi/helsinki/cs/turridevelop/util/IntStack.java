@@ -0,0 +1,130 @@
+package fi.helsinki.cs.turridevelop.util;
+
+import java.util.Arrays;
+
+/**
+ * Unsynchronized stack of primitive ints backed by a growable array.
+ */
+public class IntStack {
+    /**
+     * The elements of the stack, bottom first.
+     */
+    private int[] elements;
+    
+    /**
+     * The number of elements in the stack.
+     */
+    private int size;
+    
+    /**
+     * Constructs an empty stack.
+     */
+    public IntStack() {
+        this(16);
+    }
+    
+    /**
+     * Constructs an empty stack.
+     * 
+     * @param capacity The initial capacity of the stack.
+     */
+    public IntStack(int capacity) {
+        elements = new int[Math.max(capacity, 1)];
+        size = 0;
+    }
+    
+    /**
+     * Pushes an element on the top of the stack.
+     * 
+     * @param value The element to push.
+     */
+    public void push(int value) {
+        if(size == elements.length) {
+            elements = Arrays.copyOf(elements, 2 * elements.length);
+        }
+        elements[size] = value;
+        size++;
+    }
+    
+    /**
+     * Removes the element on the top of the stack.
+     * 
+     * @return The removed element.
+     * @throws IllegalStateException if the stack is empty.
+     */
+    public int pop() {
+        if(size == 0) {
+            throw new IllegalStateException("Pop from empty stack.");
+        }
+        size--;
+        return elements[size];
+    }
+    
+    /**
+     * Gets the element on the top of the stack.
+     * 
+     * @return The element on the top.
+     * @throws IllegalStateException if the stack is empty.
+     */
+    public int peek() {
+        if(size == 0) {
+            throw new IllegalStateException("Peek into empty stack.");
+        }
+        return elements[size - 1];
+    }
+    
+    /**
+     * Replaces the element on the top of the stack. Equivalent to pop()
+     * followed by push(value).
+     * 
+     * @param value The new top element.
+     * @throws IllegalStateException if the stack is empty.
+     */
+    public void setTop(int value) {
+        if(size == 0) {
+            throw new IllegalStateException("Set top of empty stack.");
+        }
+        elements[size - 1] = value;
+    }
+    
+    /**
+     * Gets an element by its index from the bottom.
+     * 
+     * @param index The index of the element, 0 is the bottom.
+     * @return The element.
+     * @throws IndexOutOfBoundsException if index is not in [0, size()).
+     */
+    public int get(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                "Index " + index + " out of stack of size " + size + "."
+            );
+        }
+        return elements[index];
+    }
+    
+    /**
+     * Gets the number of elements in the stack.
+     * 
+     * @return The size of the stack.
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Removes all elements from the stack.
+     */
+    public void clear() {
+        size = 0;
+    }
+    
+    /**
+     * Gets the contents of the stack as an array.
+     * 
+     * @return New array of the elements, bottom first.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+}
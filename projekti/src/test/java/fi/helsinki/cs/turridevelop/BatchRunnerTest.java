@@ -0,0 +1,181 @@
+package fi.helsinki.cs.turridevelop;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.file.TurrOutput;
+import fi.helsinki.cs.turridevelop.file.Util;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import fi.helsinki.cs.turridevelop.logic.State;
+import fi.helsinki.cs.turridevelop.logic.Transition;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BatchRunnerTest {
+    File dir;
+    ByteArrayOutputStream out;
+    ByteArrayOutputStream err;
+    
+    public BatchRunnerTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp()
+    throws IOException, NameInUseException, FilesystemException {
+        dir = Util.createTempDir();
+        
+        // Binary increment, looping forever on 'x'.
+        Project proj = new Project();
+        Machine mac = proj.addMachine("mac");
+        State x = mac.addState("start");
+        State y = mac.addState("carry");
+        State z = mac.addState("done");
+        x.addTransition(new Transition(x, "01", 1));
+        x.addTransition(new Transition(y, "␣", -1));
+        x.addTransition(new Transition(x, "x", 0));
+        y.addTransition(new Transition(y, "1", '0', -1));
+        y.addTransition(new Transition(z, "0", '1', 0));
+        z.setAccepting(true);
+        TurrOutput.writeProject(proj, dir);
+        
+        out = new ByteArrayOutputStream();
+        err = new ByteArrayOutputStream();
+    }
+    
+    @After
+    public void tearDown() {
+        Util.deleteDir(dir);
+    }
+    
+    /**
+     * Runs the batch runner on inputs and returns its exit status.
+     */
+    private int run(String input, String... args)
+    throws UnsupportedEncodingException {
+        return BatchRunner.run(
+            args,
+            new ByteArrayInputStream(input.getBytes("UTF-8")),
+            new PrintStream(out, true, "UTF-8"),
+            new PrintStream(err, true, "UTF-8")
+        );
+    }
+    
+    /**
+     * Gets the fields of the result lines written to the output.
+     */
+    private String[][] results() throws UnsupportedEncodingException {
+        String[] lines = out.toString("UTF-8").split("\r?\n");
+        String[][] fields = new String[lines.length][];
+        for(int i = 0; i < lines.length; i++) {
+            fields[i] = lines[i].split("\t");
+        }
+        return fields;
+    }
+    
+    @Test
+    public void testResultsAreWrittenInOrder()
+    throws UnsupportedEncodingException {
+        assertEquals(
+            0, run("011\n0\n2\n", "--threads", "2", dir.getPath(), "mac")
+        );
+        String[][] results = results();
+        assertEquals(3, results.length);
+        assertEquals("ACCEPTED", results[0][0]);
+        assertEquals("100", results[0][2]);
+        assertEquals("ACCEPTED", results[1][0]);
+        assertEquals("1", results[1][2]);
+        assertEquals("REJECTED", results[2][0]);
+        assertEquals(4, results[0].length);
+    }
+    
+    @Test
+    public void testStepLimitIsReported() throws UnsupportedEncodingException {
+        assertEquals(
+            0, run("x\n", "--max-steps", "100", dir.getPath(), "mac")
+        );
+        String[][] results = results();
+        assertEquals("LIMIT_REACHED", results[0][0]);
+        assertEquals("100", results[0][1]);
+    }
+    
+    @Test
+    public void testLoopsAreDetected() throws UnsupportedEncodingException {
+        assertEquals(0, run("x\n", "--detect-loops", dir.getPath(), "mac"));
+        assertEquals("LOOPING", results()[0][0]);
+    }
+    
+    @Test
+    public void testInputFileIsRead() throws IOException {
+        File input = new File(dir, "inputs.txt");
+        PrintStream stream = new PrintStream(input, "UTF-8");
+        stream.println("0");
+        stream.close();
+        assertEquals(0, run("", dir.getPath(), "mac", input.getPath()));
+        assertEquals("ACCEPTED", results()[0][0]);
+    }
+    
+    @Test
+    public void testUnknownOptionFails() throws UnsupportedEncodingException {
+        assertEquals(1, run("", "--fast", dir.getPath(), "mac"));
+        assertTrue(err.toString("UTF-8").contains("Unknown option"));
+    }
+    
+    @Test
+    public void testInvalidNumberFails() throws UnsupportedEncodingException {
+        assertEquals(1, run("", "--threads", "many", dir.getPath(), "mac"));
+        assertTrue(err.toString("UTF-8").contains("Invalid number"));
+    }
+    
+    @Test
+    public void testZeroThreadsFails() throws UnsupportedEncodingException {
+        assertEquals(1, run("", "--threads", "0", dir.getPath(), "mac"));
+    }
+    
+    @Test
+    public void testNegativeLimitFails() throws UnsupportedEncodingException {
+        assertEquals(1, run("", "--timeout", "-1", dir.getPath(), "mac"));
+    }
+    
+    @Test
+    public void testZeroStepLimitIsAccepted()
+    throws UnsupportedEncodingException {
+        assertEquals(0, run("0\n", "--max-steps", "0", dir.getPath(), "mac"));
+        assertEquals("LIMIT_REACHED", results()[0][0]);
+    }
+    
+    @Test
+    public void testMissingArgumentsFail() throws UnsupportedEncodingException {
+        assertEquals(1, run("", dir.getPath()));
+        assertTrue(err.toString("UTF-8").contains("Usage"));
+    }
+    
+    @Test
+    public void testUnknownMachineFails() throws UnsupportedEncodingException {
+        assertEquals(1, run("", dir.getPath(), "nosuch"));
+        assertTrue(err.toString("UTF-8").contains("nosuch"));
+    }
+    
+    @Test
+    public void testMissingProjectFails() throws UnsupportedEncodingException {
+        assertEquals(1, run("", new File(dir, "nosuch").getPath(), "mac"));
+        assertTrue(err.toString("UTF-8").contains("Could not read project"));
+    }
+}
@@ -0,0 +1,133 @@
+package fi.helsinki.cs.turridevelop;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.file.TurrOutput;
+import fi.helsinki.cs.turridevelop.file.Util;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import fi.helsinki.cs.turridevelop.logic.State;
+import fi.helsinki.cs.turridevelop.logic.Transition;
+import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ProjectConverterTest {
+    File dir;
+    Project proj;
+    ByteArrayOutputStream err;
+    
+    public ProjectConverterTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() throws IOException, NameInUseException {
+        dir = Util.createTempDir();
+        
+        proj = new Project();
+        Machine m1 = proj.addMachine("m1");
+        Machine m2 = proj.addMachine("m2");
+        State s11 = m1.addState("start");
+        s11.setPosition(new Vec2(12.5, -3.0));
+        State s12 = m1.addState("end");
+        s12.setAccepting(true);
+        s11.setSubmachine("m2");
+        s11.addTransition(new Transition(s12, "ab", 'c', 1));
+        s12.addTransition(new Transition(s11, "␣", -1));
+        m2.addState("start").setAccepting(true);
+        
+        err = new ByteArrayOutputStream();
+    }
+    
+    @After
+    public void tearDown() {
+        Util.deleteDir(dir);
+    }
+    
+    /**
+     * Runs the converter on two paths and returns its exit status.
+     */
+    private int run(File source, File target) {
+        return ProjectConverter.run(
+            new String[] {source.getPath(), target.getPath()},
+            new PrintStream(err, true)
+        );
+    }
+    
+    @Test
+    public void testTextToBinaryToTextDoesNotChange()
+    throws FilesystemException, MalformedFileException {
+        File text = new File(dir, "text");
+        assertTrue(text.mkdir());
+        TurrOutput.writeProject(proj, text);
+        File binary = new File(dir, "project.turrb");
+        File text2 = new File(dir, "text2");
+        
+        assertEquals(0, run(text, binary));
+        assertTrue(binary.isFile());
+        assertTrue(Util.projectsEqual(
+            proj, ProjectConverter.readProject(binary)
+        ));
+        assertEquals(0, run(binary, text2));
+        assertTrue(Util.projectsEqual(
+            proj, ProjectConverter.readProject(text2)
+        ));
+    }
+    
+    @Test
+    public void testWrongArgumentCountFails() {
+        assertEquals(1, ProjectConverter.run(
+            new String[] {dir.getPath()}, new PrintStream(err, true)
+        ));
+        assertTrue(err.toString().contains("Usage"));
+    }
+    
+    @Test
+    public void testMissingSourceFails() {
+        assertEquals(1, run(
+            new File(dir, "nosuch.turrb"), new File(dir, "target")
+        ));
+        assertTrue(err.toString().contains("Could not convert project"));
+    }
+    
+    @Test
+    public void testMalformedSourceFails() throws IOException {
+        File binary = new File(dir, "bad.turrb");
+        FileOutputStream out = new FileOutputStream(binary);
+        out.write(new byte[] {1, 2, 3, 4, 5});
+        out.close();
+        assertEquals(1, run(binary, new File(dir, "target")));
+        assertTrue(err.toString().contains("Could not convert project"));
+    }
+    
+    @Test
+    public void testUncreatableTargetFails()
+    throws FilesystemException, IOException {
+        File text = new File(dir, "text");
+        assertTrue(text.mkdir());
+        TurrOutput.writeProject(proj, text);
+        File blocker = new File(dir, "blocker");
+        assertTrue(blocker.createNewFile());
+        
+        assertEquals(1, run(text, new File(blocker, "target")));
+        assertTrue(err.toString().contains("Could not convert project"));
+    }
+}
@@ -0,0 +1,171 @@
+package fi.helsinki.cs.turridevelop.file;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import fi.helsinki.cs.turridevelop.logic.State;
+import fi.helsinki.cs.turridevelop.logic.Transition;
+import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class ProjectSaverTest {
+    private File dir;
+    private Project proj;
+    private Machine m1;
+    private State s1;
+    
+    public ProjectSaverTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() throws IOException, NameInUseException {
+        dir = Util.createTempDir();
+        
+        proj = new Project();
+        m1 = proj.addMachine("m1");
+        s1 = m1.addState("start");
+        s1.addTransition(new Transition(s1, "a", 1));
+        proj.addMachine("m2").addState("start").setAccepting(true);
+        proj.addMachine("m3").addState("start");
+    }
+    
+    @After
+    public void tearDown() {
+        Util.deleteDir(dir);
+    }
+    
+    @Test
+    public void testOnlyChangedMachinesAreWritten()
+    throws FilesystemException, NameInUseException {
+        ProjectSaver saver = new ProjectSaver(proj, dir);
+        assertTrue(saver.hasChanges());
+        assertEquals(3, saver.save());
+        assertFalse(saver.hasChanges());
+        assertEquals(0, saver.save());
+        
+        s1.setPosition(new Vec2(3.0, 4.0));
+        assertTrue(saver.hasChanges());
+        assertEquals(1, saver.save());
+        
+        proj.getMachine("m2").getState("start").setAccepting(false);
+        proj.getMachine("m3").setName("m4");
+        proj.addMachine("m5");
+        assertEquals(3, saver.save());
+        assertEquals(0, saver.save());
+    }
+    
+    @Test
+    public void testSavedFilesMatchProject()
+    throws FilesystemException, MalformedFileException, NameInUseException {
+        ProjectSaver saver = new ProjectSaver(proj, dir);
+        saver.save();
+        m1.addState("other").setPosition(new Vec2(-1.0, 2.5));
+        saver.save();
+        
+        assertTrue(Util.projectsEqual(
+            proj, TurrInput.readProjectDirectory(dir)
+        ));
+        
+        // No temporary files are left behind.
+        assertEquals(3, dir.listFiles().length);
+    }
+    
+    @Test
+    public void testRenamedMachineFileIsDeleted()
+    throws FilesystemException, MalformedFileException, NameInUseException {
+        ProjectSaver saver = new ProjectSaver(proj, dir);
+        saver.save();
+        
+        proj.getMachine("m3").setName("m4");
+        assertTrue(saver.hasChanges());
+        assertEquals(1, saver.save());
+        assertFalse(new File(dir, "m3.turr").exists());
+        assertTrue(new File(dir, "m4.turr").exists());
+        assertFalse(saver.hasChanges());
+        assertTrue(Util.projectsEqual(
+            proj, TurrInput.readProjectDirectory(dir)
+        ));
+    }
+    
+    @Test
+    public void testRemovedMachineFileIsDeleted()
+    throws FilesystemException, MalformedFileException {
+        ProjectSaver saver = new ProjectSaver(proj, dir);
+        saver.save();
+        
+        proj.removeMachine("m2");
+        assertTrue(saver.hasChanges());
+        assertEquals(0, saver.save());
+        assertFalse(new File(dir, "m2.turr").exists());
+        assertFalse(saver.hasChanges());
+        assertTrue(Util.projectsEqual(
+            proj, TurrInput.readProjectDirectory(dir)
+        ));
+    }
+    
+    @Test
+    public void testReusedNameIsNotDeleted()
+    throws FilesystemException, MalformedFileException, NameInUseException {
+        ProjectSaver saver = new ProjectSaver(proj, dir);
+        saver.save();
+        
+        // Swap the names of two machines.
+        proj.getMachine("m2").setName("tmp");
+        proj.getMachine("m3").setName("m2");
+        proj.getMachine("tmp").setName("m3");
+        assertEquals(2, saver.save());
+        assertTrue(Util.projectsEqual(
+            proj, TurrInput.readProjectDirectory(dir)
+        ));
+        
+        // A new machine with the name of a removed one.
+        proj.removeMachine("m1");
+        proj.addMachine("m1").addState("start");
+        assertEquals(1, saver.save());
+        assertTrue(Util.projectsEqual(
+            proj, TurrInput.readProjectDirectory(dir)
+        ));
+    }
+    
+    @Test
+    public void testOtherFilesAreKept() throws FilesystemException, IOException {
+        File other = new File(dir, "other.turr");
+        assertTrue(other.createNewFile());
+        ProjectSaver saver = new ProjectSaver(proj, dir);
+        saver.save();
+        proj.removeMachine("m2");
+        saver.save();
+        assertTrue(other.exists());
+    }
+    
+    @Test
+    public void testMarkSavedSkipsLoadedMachines()
+    throws FilesystemException, MalformedFileException {
+        TurrOutput.writeProject(proj, dir);
+        Project loaded = TurrInput.readProjectDirectory(dir);
+        
+        ProjectSaver saver = new ProjectSaver(loaded, dir);
+        saver.markSaved();
+        assertEquals(0, saver.save());
+        
+        loaded.getMachine("m1").getState("start").setAccepting(true);
+        assertEquals(1, saver.save());
+    }
+}
@@ -0,0 +1,198 @@
+package fi.helsinki.cs.turridevelop.file;
+
+import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.logic.Machine;
+import fi.helsinki.cs.turridevelop.logic.Project;
+import fi.helsinki.cs.turridevelop.logic.State;
+import fi.helsinki.cs.turridevelop.logic.Transition;
+import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests using both TurrBinaryInput and TurrBinaryOutput.
+ */
+public class TurrBinaryTest {
+    
+    public TurrBinaryTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    private Project createProject() throws NameInUseException {
+        Project proj = new Project();
+        
+        Machine m1 = proj.addMachine("m1");
+        Machine m2 = proj.addMachine("m2");
+        
+        State s11 = m1.addState("s11");
+        s11.setPosition(new Vec2(51.21, -563.2));
+        State s12 = m1.addState("s12");
+        s12.setPosition(new Vec2(-3.0, 0.0));
+        State s13 = m1.addState("s13");
+        s13.setPosition(new Vec2(1.3, 3.7));
+        State s21 = m2.addState("s21");
+        s21.setPosition(new Vec2(-122.6231, 4.54325134));
+        State s22 = m2.addState("s22");
+        s22.setPosition(new Vec2(0.0, 0.0));
+        
+        s13.setAccepting(true);
+        s22.setAccepting(true);
+        
+        s11.setSubmachine("m2");
+        s13.setSubmachine("m2");
+        
+        s11.addTransition(new Transition(s12, "abc", -1));
+        s11.addTransition(new Transition(s13, "dxy", 'b', 0));
+        s12.addTransition(new Transition(s11, "xyzä", '␣', 1));
+        s13.addTransition(new Transition(s11, "abz", 1));
+        s21.addTransition(new Transition(s22, "", 'q', 0));
+        
+        return proj;
+    }
+    
+    private static byte[] write(Project proj) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TurrBinaryOutput.writeProject(proj, out);
+        return out.toByteArray();
+    }
+    
+    private static Project read(
+        byte[] data
+    ) throws IOException, MalformedFileException {
+        return TurrBinaryInput.readProject(new ByteArrayInputStream(data));
+    }
+    
+    @Test
+    public void testSavingAndLoadingDoesNotChange()
+    throws NameInUseException, MalformedFileException, IOException {
+        Project proj = createProject();
+        Project proj2 = read(write(proj));
+        
+        assertTrue(Util.projectsEqual(proj, proj2));
+    }
+    
+    @Test
+    public void testConvertingBothWaysDoesNotChange()
+    throws NameInUseException, MalformedFileException, IOException {
+        Project proj = createProject();
+        
+        Project from_json = TurrInput.JSONToProject(
+            TurrOutput.projectToJSON(read(write(proj)))
+        );
+        
+        assertTrue(Util.projectsEqual(proj, from_json));
+        assertTrue(Util.projectsEqual(proj, read(write(from_json))));
+    }
+    
+    @Test
+    public void testEmptyProjectWorks()
+    throws MalformedFileException, IOException {
+        Project proj = read(write(new Project()));
+        
+        assertTrue(proj.getMachineNames().isEmpty());
+    }
+    
+    @Test(expected = MalformedFileException.class)
+    public void testWrongMagicThrows()
+    throws NameInUseException, MalformedFileException, IOException {
+        byte[] data = write(createProject());
+        data[0] = 'X';
+        read(data);
+    }
+    
+    @Test(expected = MalformedFileException.class)
+    public void testTruncatedFileThrows()
+    throws NameInUseException, MalformedFileException, IOException {
+        byte[] data = write(createProject());
+        read(Arrays.copyOf(data, data.length - 3));
+    }
+    
+    @Test
+    public void testMultiTapeProjectWorks()
+    throws NameInUseException, MalformedFileException, IOException {
+        Project proj = createProject();
+        State s = proj.getMachine("m2").addState("s23");
+        s.addTransition(new Transition(
+            s,
+            new String[] {"ab", "␣", "cd"},
+            new Character[] {null, 'x', 'ö'},
+            new int[] {1, 0, -1}
+        ));
+        
+        Project proj2 = read(write(proj));
+        assertEquals(3, proj2.getTapeCount());
+        assertTrue(Util.projectsEqual(proj, proj2));
+        assertTrue(Util.projectsEqual(
+            proj, TurrInput.JSONToProject(TurrOutput.projectToJSON(proj2))
+        ));
+    }
+    
+    @Test
+    public void testNondeterministicProjectWorks()
+    throws NameInUseException, MalformedFileException, IOException {
+        Project proj = createProject();
+        Machine m2 = proj.getMachine("m2");
+        m2.setNondeterministic(true);
+        State s = m2.addState("s23");
+        s.addTransition(new Transition(s, "ab", 'c', 1));
+        s.addTransition(new Transition(s, "a", 'd', -1));
+        
+        Project proj2 = read(write(proj));
+        assertTrue(proj2.getMachine("m2").isNondeterministic());
+        assertFalse(proj2.getMachine("m1").isNondeterministic());
+        assertEquals(2, proj2.getMachine("m2").getState("s23")
+            .getTransitionsByInput('a').size());
+        assertTrue(Util.projectsEqual(proj, proj2));
+        assertTrue(Util.projectsEqual(
+            proj, TurrInput.JSONToProject(TurrOutput.projectToJSON(proj2))
+        ));
+    }
+    
+    @Test
+    public void testChoiceOrderIsKept()
+    throws NameInUseException, MalformedFileException, IOException {
+        Project proj = createProject();
+        Machine m2 = proj.getMachine("m2");
+        m2.setNondeterministic(true);
+        State s = m2.addState("s23");
+        for(int i = 0; i < 20; i++) {
+            s.addTransition(new Transition(s, "a", (char) ('b' + i), 1));
+        }
+        
+        Project proj2 = read(write(proj));
+        List<Transition> choices =
+            proj2.getMachine("m2").getState("s23").getTransitionsByInput('a');
+        assertEquals(20, choices.size());
+        for(int i = 0; i < 20; i++) {
+            assertEquals(
+                Character.valueOf((char) ('b' + i)),
+                choices.get(i).getOutputCharacter()
+            );
+        }
+    }
+}
@@ -7,6 +7,8 @@ import fi.helsinki.cs.turridevelop.logic.Project;
 import fi.helsinki.cs.turridevelop.logic.State;
 import fi.helsinki.cs.turridevelop.logic.Transition;
 import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashMap;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -111,4 +113,59 @@ public class TurrInputTest {
         ));
         TurrInput.JSONToProject(json);
     }
+    
+    @Test
+    public void testReadMachineWorks() throws IOException, MalformedFileException, NameInUseException {
+        Project proj = new Project();
+        Machine mac = proj.addMachine("mac");
+        TurrInput.readMachine(mac, new StringReader(
+            "{\"states\": {\"start\": {\"transitions\": [{\"destination\": \"x\", \"inchar\": \"y\\u00e4\", \"outchar\": \"\\\"\", \"move\": \"R\"}], \"accepting\": false, \"submachine\": null, \"x\": 15, \"y\": -1.32e1, \"extra\": [1, {\"a\": true}]}, \"x\": {\"x\": 0, \"y\": 0, \"transitions\": [], \"accepting\": true, \"submachine\": \"win\"}}}"
+        ));
+        
+        Project cmpproj = new Project();
+        Machine cmpmac = cmpproj.addMachine("mac");
+        State start = cmpmac.addState("start");
+        State x = cmpmac.addState("x");
+        x.setAccepting(true);
+        x.setSubmachine("win");
+        start.addTransition(new Transition(x, "y\u00e4", '"', 1));
+        start.setPosition(new Vec2(15.0, -13.2));
+        
+        assertTrue(Util.machinesEqual(mac, cmpmac));
+    }
+    
+    @Test
+    public void testReadMachineReadsOutput() throws IOException, MalformedFileException, NameInUseException {
+        Project proj = new Project();
+        Machine mac = proj.addMachine("mac");
+        State s1 = mac.addState("s1");
+        State s2 = mac.addState("s2");
+        s1.setPosition(new Vec2(-3.25, 7.5));
+        s1.addTransition(new Transition(s2, "ab\n", '\t', -1));
+        s2.addTransition(new Transition(s1, "c", 0));
+        s2.setAccepting(true);
+        
+        Machine read = new Project().addMachine("mac");
+        TurrInput.readMachine(read, new StringReader(
+            TurrOutput.machineToJSON(mac).toString()
+        ));
+        
+        assertTrue(Util.machinesEqual(mac, read));
+    }
+    
+    @Test(expected=MalformedFileException.class)
+    public void testReadMachineUnknownDestinationThrows() throws IOException, MalformedFileException, NameInUseException {
+        Machine mac = new Project().addMachine("mac");
+        TurrInput.readMachine(mac, new StringReader(
+            "{\"states\": {\"start\": {\"transitions\": [{\"destination\": \"asd\", \"inchar\": \"a\", \"outchar\": null, \"move\": \"L\"}], \"submachine\": null, \"accepting\": false, \"x\": 0, \"y\": 0}}}"
+        ));
+    }
+    
+    @Test(expected=MalformedFileException.class)
+    public void testReadMachineTruncatedThrows() throws IOException, MalformedFileException, NameInUseException {
+        Machine mac = new Project().addMachine("mac");
+        TurrInput.readMachine(mac, new StringReader(
+            "{\"states\": {\"start\": {\"transitions\": [], \"submachine\": null, \"accepting\": false, \"x\": 0, \"y\": 0}}"
+        ));
+    }
 }
@@ -1,5 +1,6 @@
 package fi.helsinki.cs.turridevelop.file;
 
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
 import fi.helsinki.cs.turridevelop.exceptions.MalformedFileException;
 import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
 import fi.helsinki.cs.turridevelop.logic.Machine;
@@ -7,6 +8,9 @@ import fi.helsinki.cs.turridevelop.logic.Project;
 import fi.helsinki.cs.turridevelop.logic.State;
 import fi.helsinki.cs.turridevelop.logic.Transition;
 import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import org.json.JSONObject;
 import org.junit.After;
@@ -75,4 +79,124 @@ public class TurrTest {
         
         assertTrue(Util.projectsEqual(proj, proj2));
     }
+    
+    @Test
+    public void testParallelDirectoryLoadingWorks()
+    throws NameInUseException, MalformedFileException, FilesystemException,
+    IOException {
+        Project proj = new Project();
+        for(int i = 0; i < 20; i++) {
+            Machine machine = proj.addMachine("m" + i);
+            State start = machine.addState("start");
+            State next = machine.addState("next");
+            start.setSubmachine("m" + ((i + 1) % 20));
+            start.addTransition(new Transition(next, "a" + i, 1));
+            next.setAccepting(true);
+        }
+        
+        File dir = Util.createTempDir();
+        try {
+            TurrOutput.writeProject(proj, dir);
+            new FileOutputStream(new File(dir, "README")).close();
+            
+            assertTrue(Util.projectsEqual(
+                proj, TurrInput.readProjectDirectory(dir, 4)
+            ));
+            assertTrue(Util.projectsEqual(
+                proj, TurrInput.readProjectDirectory(dir, 1)
+            ));
+        } finally {
+            Util.deleteDir(dir);
+        }
+    }
+    
+    @Test
+    public void testParallelLoadingErrorNamesFirstBadFile()
+    throws NameInUseException, FilesystemException, IOException {
+        Project proj = new Project();
+        for(int i = 0; i < 10; i++) {
+            proj.addMachine("m" + i).addState("start");
+        }
+        
+        File dir = Util.createTempDir();
+        try {
+            TurrOutput.writeProject(proj, dir);
+            new FileOutputStream(new File(dir, "m3.turr")).close();
+            new FileOutputStream(new File(dir, "m7.turr")).close();
+            
+            try {
+                TurrInput.readProjectDirectory(dir, 4);
+                fail();
+            } catch(MalformedFileException e) {
+                assertTrue(e.getMessage().contains("m3.turr"));
+            }
+        } finally {
+            Util.deleteDir(dir);
+        }
+    }
+    
+    @Test
+    public void testMultiTapeProjectWorks()
+    throws NameInUseException, MalformedFileException, FilesystemException,
+    IOException {
+        Project proj = new Project();
+        Machine machine = proj.addMachine("m");
+        State start = machine.addState("start");
+        State end = machine.addState("end");
+        end.setAccepting(true);
+        start.addTransition(new Transition(
+            start,
+            new String[] {"ab", "␣"},
+            new Character[] {null, 'a'},
+            new int[] {1, 1}
+        ));
+        start.addTransition(new Transition(
+            end,
+            new String[] {"␣", "a␣"},
+            new Character[] {'"', null},
+            new int[] {0, -1}
+        ));
+        
+        assertTrue(Util.projectsEqual(
+            proj, TurrInput.JSONToProject(TurrOutput.projectToJSON(proj))
+        ));
+        
+        File dir = Util.createTempDir();
+        try {
+            TurrOutput.writeProject(proj, dir);
+            Project proj2 = TurrInput.readProjectDirectory(dir, 1);
+            assertEquals(2, proj2.getTapeCount());
+            assertTrue(Util.projectsEqual(proj, proj2));
+        } finally {
+            Util.deleteDir(dir);
+        }
+    }
+    
+    @Test
+    public void testNondeterministicProjectWorks()
+    throws NameInUseException, MalformedFileException, FilesystemException,
+    IOException {
+        Project proj = new Project();
+        Machine machine = proj.addMachine("m");
+        machine.setNondeterministic(true);
+        State start = machine.addState("start");
+        State end = machine.addState("end");
+        end.setAccepting(true);
+        start.addTransition(new Transition(start, "ab", 1));
+        start.addTransition(new Transition(end, "a", 'x', 0));
+        
+        assertTrue(Util.projectsEqual(
+            proj, TurrInput.JSONToProject(TurrOutput.projectToJSON(proj))
+        ));
+        
+        File dir = Util.createTempDir();
+        try {
+            TurrOutput.writeProject(proj, dir);
+            Project proj2 = TurrInput.readProjectDirectory(dir, 1);
+            assertTrue(proj2.isNondeterministic());
+            assertTrue(Util.projectsEqual(proj, proj2));
+        } finally {
+            Util.deleteDir(dir);
+        }
+    }
 }
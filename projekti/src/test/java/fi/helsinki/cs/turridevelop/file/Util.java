@@ -6,12 +6,39 @@ import fi.helsinki.cs.turridevelop.logic.Project;
 import fi.helsinki.cs.turridevelop.logic.State;
 import fi.helsinki.cs.turridevelop.logic.Transition;
 import fi.helsinki.cs.turridevelop.util.Vec2;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * Utility functions for file tests.
  */
 public class Util {
     
+    /**
+     * Creates an empty temporary directory.
+     */
+    public static File createTempDir() throws IOException {
+        File dir = File.createTempFile("turrtest", "");
+        if(!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Could not create temporary directory.");
+        }
+        return dir;
+    }
+    
+    /**
+     * Deletes a directory created by createTempDir with its contents.
+     */
+    public static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                deleteDir(file);
+            }
+        }
+        dir.delete();
+    }
+    
     /**
      * Test whether projects are equal.
      */
@@ -36,7 +63,10 @@ public class Util {
      * Test whether machines are equal.
      */
     public static boolean machinesEqual(Machine m1, Machine m2) {
-        if(!m1.getStateNames().equals(m2.getStateNames())) {
+        if(
+            !m1.getStateNames().equals(m2.getStateNames()) ||
+            m1.isNondeterministic() != m2.isNondeterministic()
+        ) {
             return false;
         }
         
@@ -80,13 +110,52 @@ public class Util {
             return false;
         }
         
+        if(
+            s1.getTapeCount() != s2.getTapeCount() ||
+            s1.getTransitions().size() != s2.getTransitions().size()
+        ) {
+            return false;
+        }
+        
+        // Multi-tape transitions are looked up by their first input on each
+        // tape.
+        for(Transition t1 : s1.getTransitions()) {
+            StringBuilder inputs = new StringBuilder();
+            for(int tape = 0; tape < t1.getTapeCount(); tape++) {
+                if(t1.getInputCharacters(tape).isEmpty()) {
+                    inputs = null;
+                    break;
+                }
+                inputs.append(t1.getInputCharacters(tape).charAt(0));
+            }
+            if(inputs != null && t1.getTapeCount() > 1) {
+                Transition t2 = s2.getTransitionByInputs(inputs.toString());
+                if(t2 == null || !transitionsEqual(t1, t2)) {
+                    return false;
+                }
+            }
+        }
+        
+        // Nondeterministic states may have several transitions for an input
+        // in any order.
         for(char inputchar : s1.getInputCharacters()) {
-            Transition t1 = s1.getTransitionByInput(inputchar);
-            Transition t2 = s2.getTransitionByInput(inputchar);
-            
-            if(!transitionsEqual(t1, t2)) {
+            List<Transition> ts1 = s1.getTransitionsByInput(inputchar);
+            List<Transition> ts2 = s2.getTransitionsByInput(inputchar);
+            if(ts1.size() != ts2.size()) {
                 return false;
             }
+            
+            for(Transition t1 : ts1) {
+                boolean found = false;
+                for(Transition t2 : ts2) {
+                    if(transitionsEqual(t1, t2)) {
+                        found = true;
+                    }
+                }
+                if(!found) {
+                    return false;
+                }
+            }
         }
         
         return true;
@@ -98,21 +167,34 @@ public class Util {
     public static boolean transitionsEqual(Transition t1, Transition t2) {
         String name1 = t1.getDestination().getName();
         String name2 = t2.getDestination().getName();
-        
-        Character outchar1 = t1.getOutputCharacter();
-        Character outchar2 = t2.getOutputCharacter();
-        
-        boolean outchars_equal;
-        if(outchar1 == null) {
-            outchars_equal = outchar2 == null;
-        } else {
-            outchars_equal = outchar1.equals(outchar2);
+        if(
+            !name1.equals(name2) ||
+            t1.getTapeCount() != t2.getTapeCount()
+        ) {
+            return false;
         }
         
-        return name1.equals(name2) &&
-               t1.getInputCharacters().equals(t2.getInputCharacters()) &&
-               outchars_equal &&
-               t1.getMovement() == t2.getMovement();
+        for(int tape = 0; tape < t1.getTapeCount(); tape++) {
+            Character outchar1 = t1.getOutputCharacter(tape);
+            Character outchar2 = t2.getOutputCharacter(tape);
+            
+            boolean outchars_equal;
+            if(outchar1 == null) {
+                outchars_equal = outchar2 == null;
+            } else {
+                outchars_equal = outchar1.equals(outchar2);
+            }
             
+            String inchars1 = t1.getInputCharacters(tape);
+            String inchars2 = t2.getInputCharacters(tape);
+            if(
+                !inchars1.equals(inchars2) ||
+                !outchars_equal ||
+                t1.getMovement(tape) != t2.getMovement(tape)
+            ) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,173 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BatchSimulationTest {
+    Project proj;
+    Machine mac;
+    State x;
+    State y;
+    State z;
+    
+    public BatchSimulationTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() throws NameInUseException {
+        // Binary increment.
+        proj = new Project();
+        mac = proj.addMachine("mac");
+        x = mac.addState("start");
+        y = mac.addState("carry");
+        z = mac.addState("done");
+        x.addTransition(new Transition(x, "01", 1));
+        x.addTransition(new Transition(y, "␣", -1));
+        y.addTransition(new Transition(y, "1", '0', -1));
+        y.addTransition(new Transition(z, "0", '1', 0));
+        z.setAccepting(true);
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    @Test
+    public void testResultsAreInOrder() throws InterruptedException {
+        ArrayList<String> inputs = new ArrayList<String>();
+        for(int i = 0; i < 500; i++) {
+            inputs.add("0" + Integer.toBinaryString(i));
+        }
+        
+        BatchSimulation batch = new BatchSimulation(proj, "mac");
+        batch.setThreadCount(4);
+        List<BatchResult> results = batch.run(inputs);
+        
+        assertEquals(inputs.size(), results.size());
+        for(int i = 0; i < inputs.size(); i++) {
+            BatchResult result = results.get(i);
+            assertEquals(inputs.get(i), result.getInput());
+            assertEquals(SimulationStatus.ACCEPTED, result.getStatus());
+            assertNull(result.getError());
+            assertEquals(
+                Integer.toBinaryString(i + 1),
+                result.getTapeContents().replaceFirst("^0", "")
+            );
+        }
+    }
+    
+    @Test
+    public void testReusedMappedTapesAreCleared() throws InterruptedException {
+        // Longest inputs first, so that a reused tape had longer contents.
+        ArrayList<String> inputs = new ArrayList<String>();
+        for(int i = 200; i >= 0; i--) {
+            inputs.add("0" + Integer.toBinaryString(i));
+        }
+        
+        BatchSimulation batch = new BatchSimulation(proj, "mac");
+        batch.setMappingTapes(true);
+        batch.setThreadCount(2);
+        List<BatchResult> results = batch.run(inputs);
+        
+        assertEquals(inputs.size(), results.size());
+        for(int i = 0; i < inputs.size(); i++) {
+            assertEquals(SimulationStatus.ACCEPTED, results.get(i).getStatus());
+            assertEquals(
+                Integer.toBinaryString(201 - i),
+                results.get(i).getTapeContents().replaceFirst("^0", "")
+            );
+        }
+    }
+    
+    @Test
+    public void testStepLimitStops() throws InterruptedException {
+        ArrayList<String> inputs = new ArrayList<String>();
+        inputs.add("0111");
+        inputs.add("a");
+        
+        BatchSimulation batch = new BatchSimulation(proj, "mac");
+        batch.setMaxSteps(3);
+        List<BatchResult> results = batch.run(inputs);
+        
+        assertEquals(SimulationStatus.LIMIT_REACHED, results.get(0).getStatus());
+        assertEquals(3, results.get(0).getStepCount());
+        assertEquals(SimulationStatus.REJECTED, results.get(1).getStatus());
+        assertEquals(0, results.get(1).getStepCount());
+    }
+    
+    @Test
+    public void testTimeoutStopsNonHaltingInputs() throws NameInUseException, InterruptedException {
+        x.addTransition(new Transition(x, "a", 0));
+        ArrayList<String> inputs = new ArrayList<String>();
+        inputs.add("a");
+        inputs.add("01");
+        inputs.add("a");
+        
+        BatchSimulation batch = new BatchSimulation(proj, "mac");
+        batch.setThreadCount(2);
+        batch.setTimeout(20);
+        List<BatchResult> results = batch.run(inputs);
+        
+        assertEquals(SimulationStatus.LIMIT_REACHED, results.get(0).getStatus());
+        assertEquals(SimulationStatus.ACCEPTED, results.get(1).getStatus());
+        assertEquals(SimulationStatus.LIMIT_REACHED, results.get(2).getStatus());
+    }
+    
+    @Test
+    public void testLoopsAreDetected() throws NameInUseException, InterruptedException {
+        x.addTransition(new Transition(x, "a", 0));
+        ArrayList<String> inputs = new ArrayList<String>();
+        inputs.add("a");
+        inputs.add("01");
+        
+        BatchSimulation batch = new BatchSimulation(proj, "mac");
+        batch.setDetectingLoops(true);
+        List<BatchResult> results = batch.run(inputs);
+        
+        assertEquals(SimulationStatus.LOOPING, results.get(0).getStatus());
+        assertEquals(SimulationStatus.ACCEPTED, results.get(1).getStatus());
+    }
+    
+    @Test
+    public void testCancelledBatchStops() throws NameInUseException {
+        x.addTransition(new Transition(x, "a", 0));
+        BatchSimulation batch = new BatchSimulation(proj, "mac");
+        batch.cancel();
+        assertTrue(batch.isCancelled());
+        assertEquals(SimulationStatus.LIMIT_REACHED, batch.run("a").getStatus());
+    }
+    
+    @Test
+    public void testErrorsAreReported() throws InterruptedException {
+        y.setSubmachine("nonexistent");
+        ArrayList<String> inputs = new ArrayList<String>();
+        inputs.add("01");
+        inputs.add("");
+        
+        List<BatchResult> results = new BatchSimulation(proj, "mac").run(inputs);
+        
+        assertNotNull(results.get(0).getError());
+        assertEquals(3, results.get(0).getStepCount());
+        assertNotNull(results.get(1).getError());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testZeroThreadsThrows() {
+        new BatchSimulation(proj, "mac").setThreadCount(0);
+    }
+}
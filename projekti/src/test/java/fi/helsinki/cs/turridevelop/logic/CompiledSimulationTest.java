@@ -0,0 +1,351 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for testing that CompiledSimulation behaves like Simulation.
+ */
+public class CompiledSimulationTest {
+    Project proj;
+    Machine mac;
+    State x;
+    State y;
+    State z;
+    State w;
+    Machine win;
+    State a;
+    State b;
+    State c;
+    State d;
+    
+    public CompiledSimulationTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() throws NameInUseException {
+        proj = new Project();
+        mac = proj.addMachine("mac");
+        x = mac.addState("start");
+        y = mac.addState("statey");
+        z = mac.addState("statez");
+        w = mac.addState("statew");
+        win = proj.addMachine("win");
+        a = win.addState("start");
+        b = win.addState("stateb");
+        c = win.addState("statec");
+        d = win.addState("stated");
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    /**
+     * Runs both Simulation and CompiledSimulation on input and checks that
+     * they end up in the same configuration after every step.
+     */
+    private CompiledSimulation assertSameAsSimulation(String input)
+    throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape(input));
+        CompiledSimulation csim = new CompiledSimulation(
+            new CompiledProject(proj), "mac", new Tape(input)
+        );
+        
+        for(int i = 0; i < 1000; i++) {
+            assertEquals(sim.getStatus(), csim.getStatus());
+            assertSame(sim.getState(), csim.getState());
+            assertSame(sim.getMachine(), csim.getMachine());
+            assertEquals(
+                sim.getHead().getPosition(), csim.getHead().getPosition()
+            );
+            assertEquals(sim.getTape().getContents(), csim.getTape().getContents());
+            if(sim.getStatus() != SimulationStatus.RUNNING) {
+                break;
+            }
+            sim.step();
+            csim.step();
+        }
+        
+        CompiledSimulation runsim = new CompiledSimulation(
+            new CompiledProject(proj), "mac", new Tape(input)
+        );
+        runsim.run();
+        assertEquals(sim.getStatus(), runsim.getStatus());
+        assertSame(sim.getState(), runsim.getState());
+        assertEquals(csim.getStepCount(), runsim.getStepCount());
+        assertEquals(sim.getTape().getContents(), runsim.getTape().getContents());
+        
+        CompiledSimulation stacksim = new CompiledSimulation(
+            new CompiledProject(proj, false), "mac", new Tape(input)
+        );
+        stacksim.run();
+        assertSameConfiguration(runsim, stacksim);
+        
+        for(int block_size = 1; block_size <= 5; block_size += 2) {
+            CompiledSimulation blocksim = new CompiledSimulation(
+                new CompiledProject(proj), "mac", new Tape(input)
+            );
+            blocksim.setBlockSize(block_size);
+            blocksim.run();
+            assertSameConfiguration(runsim, blocksim);
+        }
+        
+        return runsim;
+    }
+    
+    /**
+     * Checks that two compiled simulations are in the same configuration.
+     */
+    private void assertSameConfiguration(
+        CompiledSimulation expected,
+        CompiledSimulation actual
+    ) {
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertSame(expected.getState(), actual.getState());
+        assertSame(expected.getMachine(), actual.getMachine());
+        assertEquals(expected.getStepCount(), actual.getStepCount());
+        assertEquals(
+            expected.getHead().getPosition(), actual.getHead().getPosition()
+        );
+        assertEquals(
+            expected.getTape().getContents(), actual.getTape().getContents()
+        );
+    }
+    
+    /**
+     * Makes mac a machine that sweeps back and forth over the input, marking
+     * one 'a' after '>' as 'b' on each sweep.
+     */
+    private void makeSweepingMachine() throws NameInUseException {
+        x.addTransition(new Transition(x, ">b", 1));
+        x.addTransition(new Transition(y, "a", 'b', 1));
+        x.addTransition(new Transition(z, "␣", 0));
+        y.addTransition(new Transition(y, "ab", 1));
+        y.addTransition(new Transition(w, "␣", -1));
+        w.addTransition(new Transition(w, "ab", -1));
+        w.addTransition(new Transition(x, ">", 1));
+        z.setAccepting(true);
+    }
+    
+    @Test
+    public void testFirstAcceptWorks() throws SimulationException {
+        x.setAccepting(true);
+        CompiledSimulation sim = assertSameAsSimulation("");
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        assertEquals(0, sim.getStepCount());
+    }
+    
+    @Test
+    public void testRejectWorks() throws NameInUseException, SimulationException {
+        y.setAccepting(true);
+        x.addTransition(new Transition(y, "bc", 0));
+        CompiledSimulation sim = assertSameAsSimulation("a");
+        assertEquals(SimulationStatus.REJECTED, sim.getStatus());
+    }
+    
+    @Test
+    public void testMovesAndWritesWork() throws NameInUseException, SimulationException {
+        w.setAccepting(true);
+        x.addTransition(new Transition(y, "a", 'q', 1));
+        y.addTransition(new Transition(z, "b", 1));
+        z.addTransition(new Transition(w, "c", -1));
+        CompiledSimulation sim = assertSameAsSimulation("abc");
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        assertEquals(3, sim.getStepCount());
+        assertEquals("qbc", sim.getTape().getContents());
+    }
+    
+    @Test
+    public void testBinaryIncrementWorks() throws NameInUseException, SimulationException {
+        // Go to the end of the number and add one from the right.
+        x.addTransition(new Transition(x, "01", 1));
+        x.addTransition(new Transition(y, "␣", -1));
+        y.addTransition(new Transition(y, "1", '0', -1));
+        y.addTransition(new Transition(z, "0␣", '1', 0));
+        z.setAccepting(true);
+        
+        CompiledSimulation sim = assertSameAsSimulation("1011");
+        assertEquals("1100", sim.getTape().getContents());
+        sim = assertSameAsSimulation("0111");
+        assertEquals("1000", sim.getTape().getContents());
+    }
+    
+    @Test
+    public void testSubmachinesWork() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(y, "a", 1));
+        y.addTransition(new Transition(z, "a", 0));
+        z.setAccepting(true);
+        y.setSubmachine("win");
+        
+        a.addTransition(new Transition(b, "x", 'X', 1));
+        b.addTransition(new Transition(c, "y", 'Y', -1));
+        c.addTransition(new Transition(d, "X", -1));
+        d.setAccepting(true);
+        
+        CompiledSimulation sim = assertSameAsSimulation("axy");
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        assertEquals("aXY", sim.getTape().getContents());
+        sim = assertSameAsSimulation("axY");
+        assertEquals(SimulationStatus.REJECTED, sim.getStatus());
+        assertSame(win, sim.getMachine());
+    }
+    
+    @Test
+    public void testRecursiveSubmachinesWork() throws NameInUseException, SimulationException {
+        // Match nested parentheses by calling mac recursively, through win.
+        x.addTransition(new Transition(y, "(", 'X', 1));
+        x.addTransition(new Transition(z, ")␣", 0));
+        y.setSubmachine("win");
+        y.addTransition(new Transition(z, ")", 'Y', 1));
+        z.setAccepting(true);
+        a.setSubmachine("mac");
+        a.setAccepting(true);
+        
+        CompiledSimulation sim = assertSameAsSimulation("((()))");
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        assertEquals("XXXYYY", sim.getTape().getContents());
+        sim = assertSameAsSimulation("((())");
+        assertEquals(SimulationStatus.REJECTED, sim.getStatus());
+    }
+    
+    @Test
+    public void testInlinedCallsArePlain() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(y, "a", 1));
+        y.addTransition(new Transition(z, "a", 0));
+        z.setAccepting(true);
+        y.setSubmachine("win");
+        a.addTransition(new Transition(b, "x", 'X', 1));
+        b.addTransition(new Transition(c, "y", 'Y', -1));
+        c.addTransition(new Transition(d, "X", -1));
+        d.setAccepting(true);
+        
+        // Only the transitions into the accepting states of the outermost
+        // machines need the stack.
+        assertEquals(2, countNotPlain(new CompiledProject(proj)));
+        assertEquals(3, countNotPlain(new CompiledProject(proj, false)));
+    }
+    
+    /**
+     * Counts the transitions of a compiled project that are not plain.
+     */
+    private int countNotPlain(CompiledProject compiled) {
+        int count = 0;
+        for(boolean plain : compiled.plain) {
+            if(!plain) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    @Test
+    public void testAcceptingStartStateWithSubmachine() throws NameInUseException, SimulationException {
+        x.setAccepting(true);
+        x.setSubmachine("win");
+        a.addTransition(new Transition(b, "x", 'X', 1));
+        b.addTransition(new Transition(c, "y", 'Y', 0));
+        c.setAccepting(true);
+        
+        CompiledSimulation sim = assertSameAsSimulation("xy");
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        assertSame(x, sim.getState());
+    }
+    
+    @Test
+    public void testUnknownCharacterRejects() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(x, "a", 1));
+        CompiledSimulation sim = assertSameAsSimulation("aaaq");
+        assertEquals(SimulationStatus.REJECTED, sim.getStatus());
+        assertEquals(3, sim.getStepCount());
+    }
+    
+    @Test(expected=SimulationException.class)
+    public void testInfiniteRecursionThrows() throws SimulationException {
+        x.setSubmachine("win");
+        a.setSubmachine("mac");
+        
+        new CompiledSimulation(new CompiledProject(proj), "mac", new Tape());
+    }
+    
+    @Test(expected=SimulationException.class)
+    public void testUnknownSubmachineThrows() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(y, "a", 1));
+        y.setSubmachine("baa");
+        
+        CompiledSimulation sim = new CompiledSimulation(
+            new CompiledProject(proj), "mac", new Tape("a")
+        );
+        sim.run();
+    }
+    
+    @Test(expected=SimulationException.class)
+    public void testUnknownMachineThrows() throws SimulationException {
+        new CompiledSimulation(new CompiledProject(proj), "asd", new Tape());
+    }
+    
+    @Test
+    public void testBlocksMatchOnSweeps() throws NameInUseException, SimulationException {
+        makeSweepingMachine();
+        String input = ">";
+        for(int i = 0; i < 40; i++) {
+            input += "a";
+        }
+        
+        for(int bi = 0; bi < 2; bi++) {
+            CompiledSimulation expected = new CompiledSimulation(
+                new CompiledProject(proj), "mac", new Tape(input, '␣', bi == 1)
+            );
+            expected.run();
+            assertEquals(SimulationStatus.ACCEPTED, expected.getStatus());
+            for(int block_size = 1; block_size <= 7; block_size++) {
+                CompiledSimulation blocksim = new CompiledSimulation(
+                    new CompiledProject(proj), "mac",
+                    new Tape(input, '␣', bi == 1)
+                );
+                blocksim.setBlockSize(block_size);
+                blocksim.run();
+                assertSameConfiguration(expected, blocksim);
+            }
+        }
+    }
+    
+    @Test
+    public void testBlocksRespectStepLimit() throws NameInUseException, SimulationException {
+        makeSweepingMachine();
+        Simulation sim = new Simulation(proj, "mac", new Tape(">aaaaaaaaaa"));
+        CompiledSimulation blocksim = new CompiledSimulation(
+            new CompiledProject(proj), "mac", new Tape(">aaaaaaaaaa")
+        );
+        blocksim.setBlockSize(4);
+        
+        for(int i = 0; i < 10; i++) {
+            for(int j = 0; j < 7; j++) {
+                sim.step();
+            }
+            assertEquals(SimulationStatus.LIMIT_REACHED, blocksim.run(7));
+            assertEquals(sim.getStepCount(), blocksim.getStepCount());
+            assertSame(sim.getState(), blocksim.getState());
+            assertEquals(
+                sim.getHead().getPosition(), blocksim.getHead().getPosition()
+            );
+            assertEquals(
+                sim.getTape().getContents(), blocksim.getTape().getContents()
+            );
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CopyOnWriteTapeTest {
+    
+    public CopyOnWriteTapeTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    @Test
+    public void testMatchesTape() {
+        Tape expected = new Tape("abc", '␣', true);
+        CopyOnWriteTape tape = new CopyOnWriteTape("abc", '␣', true);
+        Random random = new Random(21);
+        for(int i = 0; i < 20000; i++) {
+            int pos = random.nextInt(1000) - 500;
+            char c = "␣ab".charAt(random.nextInt(3));
+            expected.setCharacterAt(pos, c);
+            tape.setCharacterAt(pos, c);
+            if(random.nextInt(100) == 0) {
+                tape = tape.copy();
+            }
+        }
+        assertEquals(expected.getContents(), tape.getContents());
+        assertEquals(expected.getContentsStart(), tape.getContentsStart());
+        for(int pos = -600; pos < 600; pos++) {
+            assertEquals(expected.getCharacterAt(pos), tape.getCharacterAt(pos));
+        }
+    }
+    
+    @Test
+    public void testCopiesAreIndependent() {
+        CopyOnWriteTape tape = new CopyOnWriteTape("abc", '␣', false);
+        CopyOnWriteTape copy = tape.copy();
+        assertTrue(tape.contentsEqual(copy));
+        
+        copy.setCharacterAt(1, 'x');
+        tape.setCharacterAt(200, 'y');
+        assertEquals("abc" + repeat('␣', 197) + "y", tape.getContents());
+        assertEquals("axc", copy.getContents());
+        assertFalse(tape.contentsEqual(copy));
+        
+        CopyOnWriteTape other = copy.copy();
+        other.setCharacterAt(1, 'b');
+        assertEquals("axc", copy.getContents());
+        assertEquals("abc", other.getContents());
+    }
+    
+    @Test
+    public void testEqualContentsHaveEqualHashes() {
+        CopyOnWriteTape tape = new CopyOnWriteTape("abc", '␣', true);
+        CopyOnWriteTape other = new CopyOnWriteTape("", '␣', true);
+        other.setCharacterAt(-100, 'z');
+        other.setCharacterAt(2, 'c');
+        other.setCharacterAt(0, 'a');
+        other.setCharacterAt(1, 'b');
+        assertFalse(tape.contentsEqual(other));
+        
+        other.setCharacterAt(-100, '␣');
+        assertEquals(tape.getContentsHash(), other.getContentsHash());
+        assertTrue(tape.contentsEqual(other));
+        assertTrue(other.contentsEqual(tape));
+        assertEquals("abc", other.getContents());
+        assertEquals(0, other.getContentsStart());
+    }
+    
+    @Test
+    public void testCopyOfFrozenTapeIsWritable() {
+        CopyOnWriteTape tape = new CopyOnWriteTape("abc", '␣', false);
+        tape.freeze();
+        assertTrue(tape.isFrozen());
+        
+        CopyOnWriteTape copy = tape.copy();
+        CopyOnWriteTape other = tape.copy();
+        assertFalse(copy.isFrozen());
+        copy.setCharacterAt(1, 'x');
+        other.setCharacterAt(1, 'y');
+        assertEquals("abc", tape.getContents());
+        assertEquals("axc", copy.getContents());
+        assertEquals("ayc", other.getContents());
+    }
+    
+    @Test(expected=IllegalStateException.class)
+    public void testWritingFrozenTapeThrows() {
+        CopyOnWriteTape tape = new CopyOnWriteTape("abc", '␣', false);
+        tape.freeze();
+        tape.setCharacterAt(0, 'x');
+    }
+    
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testNegativePositionThrows() {
+        CopyOnWriteTape tape = new CopyOnWriteTape("ab", '␣', false);
+        tape.setCharacterAt(-1, 'a');
+    }
+    
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Test class for loop detection in Simulation and CompiledSimulation.
+ */
+public class LoopDetectorTest {
+    Project proj;
+    Machine mac;
+    State x;
+    State y;
+    State z;
+    State w;
+    Machine win;
+    State a;
+    State b;
+    
+    public LoopDetectorTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() throws NameInUseException {
+        proj = new Project();
+        mac = proj.addMachine("mac");
+        x = mac.addState("start");
+        y = mac.addState("statey");
+        z = mac.addState("statez");
+        w = mac.addState("statew");
+        win = proj.addMachine("win");
+        a = win.addState("start");
+        b = win.addState("stateb");
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    /**
+     * Runs both Simulation and CompiledSimulation with loop detection on a
+     * tape, checks that they agree and returns the status.
+     */
+    private SimulationStatus runDetecting(
+        String input,
+        boolean bi_infinite
+    ) throws SimulationException {
+        Simulation sim = new Simulation(
+            proj, "mac", new Tape(input, '␣', bi_infinite)
+        );
+        sim.setDetectingLoops(true);
+        sim.run(100000);
+        
+        CompiledSimulation csim = new CompiledSimulation(
+            new CompiledProject(proj), "mac", new Tape(input, '␣', bi_infinite)
+        );
+        csim.setDetectingLoops(true);
+        csim.run(100000);
+        
+        assertEquals(sim.getStatus(), csim.getStatus());
+        assertEquals(sim.getStepCount(), csim.getStepCount());
+        assertSame(sim.getState(), csim.getState());
+        return sim.getStatus();
+    }
+    
+    @Test
+    public void testLoopInPlaceIsDetected() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(x, "a", 0));
+        assertEquals(SimulationStatus.LOOPING, runDetecting("a", false));
+    }
+    
+    @Test
+    public void testOscillationIsDetected() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(y, "a", 'b', 1));
+        y.addTransition(new Transition(z, "␣", -1));
+        z.addTransition(new Transition(y, "b", 'c', 1));
+        z.addTransition(new Transition(y, "c", 'b', 1));
+        assertEquals(SimulationStatus.LOOPING, runDetecting("a", false));
+    }
+    
+    @Test
+    public void testRightDriftIsDetected() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(x, "ab", 1));
+        x.addTransition(new Transition(y, "␣", '1', 1));
+        y.addTransition(new Transition(x, "␣", '0', 1));
+        assertEquals(SimulationStatus.LOOPING, runDetecting("abba", false));
+        assertEquals(SimulationStatus.LOOPING, runDetecting("", false));
+    }
+    
+    @Test
+    public void testLeftDriftIsDetected() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(x, "a␣", -1));
+        assertEquals(SimulationStatus.LOOPING, runDetecting("aaa", true));
+        // Without a bi-infinite tape, the head stops at position 0.
+        assertEquals(SimulationStatus.LOOPING, runDetecting("aaa", false));
+    }
+    
+    @Test
+    public void testLoopThroughSubmachineIsDetected() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(y, "a", 0));
+        y.setSubmachine("win");
+        y.addTransition(new Transition(x, "a", 0));
+        a.addTransition(new Transition(b, "a", 0));
+        b.setAccepting(true);
+        assertEquals(SimulationStatus.LOOPING, runDetecting("a", false));
+    }
+    
+    @Test
+    public void testHaltingMachinesAreNotLooping() throws NameInUseException, SimulationException {
+        // Sweep back and forth, marking one 'a' on each sweep.
+        x.addTransition(new Transition(x, ">b", 1));
+        x.addTransition(new Transition(y, "a", 'b', 1));
+        x.addTransition(new Transition(z, "␣", 0));
+        y.addTransition(new Transition(y, "ab", 1));
+        y.addTransition(new Transition(w, "␣", -1));
+        w.addTransition(new Transition(w, "ab", -1));
+        w.addTransition(new Transition(x, ">", 1));
+        z.setAccepting(true);
+        
+        assertEquals(SimulationStatus.ACCEPTED, runDetecting(">aaaaaaaaaa", false));
+        assertEquals(SimulationStatus.ACCEPTED, runDetecting(">aaaaaaaaaa", true));
+    }
+    
+    @Test
+    public void testReturningFromBlanksIsNotLooping() throws NameInUseException, SimulationException {
+        // Go right over blanks and come back to accept.
+        x.addTransition(new Transition(x, "a", 1));
+        x.addTransition(new Transition(y, "␣", 'b', 1));
+        y.addTransition(new Transition(w, "␣", 1));
+        w.addTransition(new Transition(w, "␣", -1));
+        w.addTransition(new Transition(z, "b", 0));
+        z.setAccepting(true);
+        
+        assertEquals(SimulationStatus.ACCEPTED, runDetecting("aa", false));
+    }
+    
+    @Test
+    public void testDetectionIsOffByDefault() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(x, "a", 0));
+        Simulation sim = new Simulation(proj, "mac", new Tape("a"));
+        assertFalse(sim.isDetectingLoops());
+        assertEquals(SimulationStatus.LIMIT_REACHED, sim.run(1000));
+        assertEquals(SimulationStatus.RUNNING, sim.getStatus());
+    }
+}
@@ -91,4 +91,22 @@ public class MachineTest {
         assertEquals(1, a.getTransitions().size());
         assertEquals(a, a.getTransitions().iterator().next().getDestination());
     }
+
+    @Test
+    public void testChoicesPreventDeterminizing() throws NameInUseException {
+        mac.setNondeterministic(true);
+        State a = mac.addState("a");
+        a.addTransition(new Transition(a, "x", 1));
+        a.addTransition(new Transition(a, "x", -1));
+        try {
+            mac.setNondeterministic(false);
+            fail();
+        } catch(NameInUseException e) { }
+        assertTrue(mac.isNondeterministic());
+        assertTrue(proj.isNondeterministic());
+        
+        a.removeTransition(a.getTransitionByInput('x'));
+        mac.setNondeterministic(false);
+        assertFalse(proj.isNondeterministic());
+    }
 }
@@ -0,0 +1,125 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.FilesystemException;
+import fi.helsinki.cs.turridevelop.file.Util;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MappedTapeTest {
+    private File dir;
+    private MappedTape tape;
+    
+    public MappedTapeTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() throws IOException, FilesystemException {
+        dir = Util.createTempDir();
+        
+        tape = new MappedTape("abc", '␣', true, dir, 64);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        tape.close();
+        Util.deleteDir(dir);
+    }
+    
+    @Test
+    public void testReadAndWriteWork() {
+        assertEquals("abc", tape.getContents());
+        assertEquals('␣', tape.getCharacterAt(3));
+        assertEquals('␣', tape.getCharacterAt(-1000));
+        tape.setCharacterAt(200, 'd');
+        tape.setCharacterAt(-70, 'e');
+        assertEquals('d', tape.getCharacterAt(200));
+        assertEquals(-70, tape.getContentsStart());
+        assertEquals(271, tape.getContentsLength());
+        tape.setCharacterAt(200, '␣');
+        tape.setCharacterAt(-70, '␣');
+        assertEquals("abc", tape.getContents());
+        assertEquals(0, tape.getContentsStart());
+    }
+    
+    @Test
+    public void testMatchesTape() {
+        Tape expected = new Tape("abc", '␣', true);
+        Random random = new Random(7);
+        for(int i = 0; i < 5000; i++) {
+            int pos = random.nextInt(3000) - 1500;
+            char c = '␣';
+            if(random.nextInt(4) != 0) {
+                c = (char) ('a' + random.nextInt(26));
+            }
+            expected.setCharacterAt(pos, c);
+            tape.setCharacterAt(pos, c);
+        }
+        assertEquals(expected.getContents(), tape.getContents());
+        assertEquals(expected.getContentsStart(), tape.getContentsStart());
+        for(int pos = -1600; pos < 1600; pos++) {
+            assertEquals(expected.getCharacterAt(pos), tape.getCharacterAt(pos));
+        }
+    }
+    
+    @Test
+    public void testLongPositionsWork() {
+        long far = 10000000000L;
+        tape.setCharacterAt(far, 'x');
+        tape.setCharacterAt(-far, 'y');
+        assertEquals('x', tape.getCharacterAt(far));
+        assertEquals('y', tape.getCharacterAt(-far));
+        assertEquals('␣', tape.getCharacterAt(far - 1));
+        assertEquals(-far, tape.getContentsStartLong());
+        assertEquals(2 * far + 1, tape.getContentsLengthLong());
+        assertEquals("␣x␣", tape.getContents(far - 1, 3));
+        
+        // Only the segments that were written are mapped.
+        assertEquals(3 * 64 * 2, dir.listFiles()[0].length());
+    }
+    
+    @Test
+    public void testSetContentsClearsTape() {
+        tape.setCharacterAt(1000, 'x');
+        tape.setContents("de");
+        assertEquals("de", tape.getContents());
+        assertEquals('␣', tape.getCharacterAt(1000));
+        tape.setCharacterAt(2000, 'y');
+        assertEquals('␣', tape.getCharacterAt(1000));
+        assertEquals(2001, tape.getContentsLength());
+    }
+    
+    @Test
+    public void testCloseDeletesFile() throws IOException {
+        assertEquals(1, dir.listFiles().length);
+        tape.close();
+        assertEquals(0, dir.listFiles().length);
+    }
+    
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testNegativePositionThrows() throws FilesystemException {
+        MappedTape right = new MappedTape("ab", '␣', false, dir, 64);
+        try {
+            right.setCharacterAt(-1, 'a');
+        } finally {
+            try {
+                right.close();
+            } catch(IOException e) {
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class NondeterministicSimulationTest {
+    private Project proj;
+    
+    public NondeterministicSimulationTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+        proj = new Project();
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    /**
+     * Adds a machine that accepts the inputs containing "aba" by guessing
+     * where it starts.
+     */
+    private void addSubstringMachine() throws NameInUseException {
+        Machine mac = proj.addMachine("mac");
+        mac.setNondeterministic(true);
+        State start = mac.addState("start");
+        State a = mac.addState("a");
+        State ab = mac.addState("ab");
+        State acc = mac.addState("acc");
+        acc.setAccepting(true);
+        start.addTransition(new Transition(start, "ab", 1));
+        start.addTransition(new Transition(a, "a", 1));
+        a.addTransition(new Transition(ab, "b", 1));
+        ab.addTransition(new Transition(acc, "a", 'x', 0));
+    }
+    
+    /**
+     * Adds a machine that guesses a string of a's and b's over the x's after
+     * '#' and accepts only if it guessed all b's.
+     */
+    private void addGuessingMachine() throws NameInUseException {
+        Machine mac = proj.addMachine("mac");
+        mac.setNondeterministic(true);
+        State start = mac.addState("start");
+        State guess = mac.addState("guess");
+        State back = mac.addState("back");
+        State acc = mac.addState("acc");
+        acc.setAccepting(true);
+        start.addTransition(new Transition(guess, "#", 1));
+        guess.addTransition(new Transition(guess, "x", 'a', 1));
+        guess.addTransition(new Transition(guess, "x", 'b', 1));
+        guess.addTransition(new Transition(back, "␣", -1));
+        back.addTransition(new Transition(back, "b", -1));
+        back.addTransition(new Transition(acc, "#", 0));
+    }
+    
+    @Test
+    public void testGuessAccepts()
+    throws NameInUseException, SimulationException {
+        addSubstringMachine();
+        NondeterministicSimulation sim =
+            new NondeterministicSimulation(proj, "mac", new Tape("bbabab"));
+        sim.run();
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        assertEquals(5, sim.getStepCount());
+        assertEquals("acc", sim.getState().getName());
+        assertEquals("mac", sim.getMachine().getName());
+        assertEquals("bbabxb", sim.getTape(0).getContents());
+        assertEquals(4, sim.getHeadPosition(0));
+    }
+    
+    @Test
+    public void testAllGuessesRejecting()
+    throws NameInUseException, SimulationException {
+        addSubstringMachine();
+        NondeterministicSimulation sim =
+            new NondeterministicSimulation(proj, "mac", new Tape("bbaabb"));
+        sim.run();
+        assertEquals(SimulationStatus.REJECTED, sim.getStatus());
+        assertNull(sim.getState());
+        assertNull(sim.getTape(0));
+    }
+    
+    @Test
+    public void testRepeatedConfigurationsAreExpandedOnce()
+    throws NameInUseException, SimulationException {
+        // Walks left and right over the a's forever.
+        Machine mac = proj.addMachine("mac");
+        mac.setNondeterministic(true);
+        State start = mac.addState("start");
+        start.addTransition(new Transition(start, "a", 1));
+        start.addTransition(new Transition(start, "a", -1));
+        
+        NondeterministicSimulation sim =
+            new NondeterministicSimulation(proj, "mac", new Tape("aaa"));
+        sim.run();
+        assertEquals(SimulationStatus.REJECTED, sim.getStatus());
+        assertEquals(4, sim.getConfigurationCount());
+    }
+    
+    @Test
+    public void testLimitsStopAndContinue()
+    throws NameInUseException, SimulationException {
+        addGuessingMachine();
+        NondeterministicSimulation sim = new NondeterministicSimulation(
+            proj, "mac", new Tape("#xxxxxxxxxx")
+        );
+        assertEquals(
+            SimulationStatus.LIMIT_REACHED,
+            sim.run(5, Long.MAX_VALUE, Long.MAX_VALUE, null)
+        );
+        assertEquals(5, sim.getStepCount());
+        assertEquals(16, sim.getFrontierSize());
+        assertEquals(
+            SimulationStatus.LIMIT_REACHED,
+            sim.run(Long.MAX_VALUE, 100, Long.MAX_VALUE, null)
+        );
+        assertEquals(SimulationStatus.ACCEPTED, sim.run(
+            Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, null
+        ));
+        assertEquals(23, sim.getStepCount());
+        assertEquals("#bbbbbbbbbb", sim.getTape(0).getContents());
+    }
+    
+    @Test
+    public void testParallelSearchFindsSameResult()
+    throws NameInUseException, SimulationException {
+        addGuessingMachine();
+        NondeterministicSimulation serial = new NondeterministicSimulation(
+            proj, "mac", new Tape("#xxxxxxxxxx")
+        );
+        serial.setThreadCount(1);
+        serial.run();
+        NondeterministicSimulation parallel = new NondeterministicSimulation(
+            proj, "mac", new Tape("#xxxxxxxxxx")
+        );
+        parallel.setThreadCount(3);
+        parallel.run();
+        
+        assertEquals(SimulationStatus.ACCEPTED, parallel.getStatus());
+        assertEquals(serial.getStepCount(), parallel.getStepCount());
+        assertEquals(
+            serial.getConfigurationCount(), parallel.getConfigurationCount()
+        );
+        assertEquals(
+            serial.getTape(0).getContents(), parallel.getTape(0).getContents()
+        );
+    }
+    
+    @Test
+    public void testNondeterministicSubmachine()
+    throws NameInUseException, SimulationException {
+        Machine sub = proj.addMachine("sub");
+        sub.setNondeterministic(true);
+        State sub_start = sub.addState("start");
+        State sub_acc = sub.addState("acc");
+        sub_acc.setAccepting(true);
+        sub_start.addTransition(new Transition(sub_acc, "a", 'b', 0));
+        sub_start.addTransition(new Transition(sub_acc, "a", 'c', 0));
+        
+        Machine mac = proj.addMachine("mac");
+        State start = mac.addState("start");
+        State acc = mac.addState("acc");
+        acc.setAccepting(true);
+        start.setSubmachine("sub");
+        start.addTransition(new Transition(acc, "c", 1));
+        
+        NondeterministicSimulation sim =
+            new NondeterministicSimulation(proj, "mac", new Tape("a"));
+        sim.run();
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        assertEquals(2, sim.getStepCount());
+        assertEquals("c", sim.getTape(0).getContents());
+    }
+    
+    @Test(expected=SimulationException.class)
+    public void testDeterministicSimulationRejectsChoice()
+    throws NameInUseException, SimulationException {
+        addSubstringMachine();
+        Simulation sim = new Simulation(proj, "mac", new Tape("ab"));
+        sim.step();
+    }
+}
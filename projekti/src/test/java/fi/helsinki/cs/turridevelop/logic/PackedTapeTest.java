@@ -0,0 +1,141 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PackedTapeTest {
+    
+    public PackedTapeTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    private static PackedTape createTape(
+        String input,
+        String characters,
+        boolean bi_infinite
+    ) {
+        Character[] chars = new Character[characters.length()];
+        for(int i = 0; i < chars.length; i++) {
+            chars[i] = characters.charAt(i);
+        }
+        return new PackedTape(input, '␣', bi_infinite, Arrays.asList(chars));
+    }
+    
+    @Test
+    public void testAlphabetWorks() {
+        Alphabet alphabet = new Alphabet('z', Arrays.asList('c', 'a', 'z', 'a'));
+        assertEquals(3, alphabet.getSize());
+        assertEquals('z', alphabet.getEmptyCharacter());
+        assertEquals(0, alphabet.getSymbol('z'));
+        assertEquals(1, alphabet.getSymbol('a'));
+        assertEquals(2, alphabet.getSymbol('c'));
+        assertEquals(-1, alphabet.getSymbol('b'));
+        assertEquals(-1, alphabet.getSymbol('x'));
+        assertEquals('c', alphabet.getCharacter(2));
+        assertEquals(2, alphabet.getBitsPerCell());
+        
+        Alphabet empty = new Alphabet('z', Collections.<Character>emptyList());
+        assertEquals(1, empty.getBitsPerCell());
+    }
+    
+    @Test
+    public void testReadAndWriteWork() {
+        PackedTape tape = createTape("ab", "abc", false);
+        assertEquals("ab", tape.getContents());
+        assertEquals('␣', tape.getCharacterAt(2));
+        tape.setCharacterAt(100, 'c');
+        tape.setCharacterAt(1, '␣');
+        assertEquals('c', tape.getCharacterAt(100));
+        assertEquals(101, tape.getContentsLength());
+        tape.setCharacterAt(100, '␣');
+        assertEquals("a", tape.getContents());
+    }
+    
+    @Test
+    public void testMatchesTape() {
+        // Random writes on both sides with several cell sizes.
+        String[] alphabets = {"a", "abc", "abcdefgh", "abcdefghijklmnopq"};
+        Random random = new Random(4);
+        for(String characters : alphabets) {
+            Tape tape = new Tape("", '␣', true);
+            PackedTape packed = createTape("", characters, true);
+            for(int i = 0; i < 5000; i++) {
+                int pos = random.nextInt(3000) - 1500;
+                char c = '␣';
+                if(random.nextInt(4) != 0) {
+                    c = characters.charAt(random.nextInt(characters.length()));
+                }
+                tape.setCharacterAt(pos, c);
+                packed.setCharacterAt(pos, c);
+            }
+            assertEquals(tape.getContents(), packed.getContents());
+            assertEquals(tape.getContentsStart(), packed.getContentsStart());
+            for(int pos = -1600; pos < 1600; pos++) {
+                assertEquals(tape.getCharacterAt(pos), packed.getCharacterAt(pos));
+            }
+        }
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testWritingOutsideAlphabetThrows() {
+        PackedTape tape = createTape("ab", "", false);
+        tape.setCharacterAt(0, 'c');
+    }
+    
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testNegativePositionThrows() {
+        PackedTape tape = createTape("ab", "", false);
+        tape.getCharacterAt(-1);
+    }
+    
+    @Test
+    public void testCompiledSimulationWorks()
+    throws NameInUseException, SimulationException {
+        // Replaces every 'a' by 'b' and goes back to the start.
+        Project project = new Project();
+        Machine machine = project.addMachine("m");
+        State start = machine.addState("start");
+        State back = machine.addState("back");
+        State end = machine.addState("end");
+        start.addTransition(new Transition(start, "a", 'b', 1));
+        start.addTransition(new Transition(start, "bx", 1));
+        start.addTransition(new Transition(back, "␣", -1));
+        back.addTransition(new Transition(back, "b", -1));
+        back.addTransition(new Transition(end, "x", 0));
+        end.setAccepting(true);
+        
+        CompiledProject compiled = new CompiledProject(project);
+        PackedTape tape = new PackedTape(
+            "xabba", '␣', false, project.getCharacters()
+        );
+        CompiledSimulation sim = new CompiledSimulation(compiled, "m", tape);
+        assertEquals(SimulationStatus.ACCEPTED, sim.run(1000));
+        assertEquals("xbbbb", tape.getContents());
+        assertEquals(11, sim.getStepCount());
+        assertEquals(0, sim.getHead().getPosition());
+    }
+}
@@ -0,0 +1,146 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class ProfileTest {
+    Project proj;
+    Machine mac;
+    State x;
+    State y;
+    State z;
+    Machine sub;
+    State a;
+    State b;
+    Transition xx;
+    Transition xy;
+    Transition yx;
+    Transition yz;
+    Transition ab;
+    
+    public ProfileTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() throws NameInUseException {
+        proj = new Project();
+        mac = proj.addMachine("mac");
+        x = mac.addState("start");
+        y = mac.addState("statey");
+        z = mac.addState("statez");
+        sub = proj.addMachine("sub");
+        a = sub.addState("start");
+        b = sub.addState("stateb");
+        
+        // Skip 'a's to the right, call sub on each 'b' and accept at the end.
+        xx = new Transition(x, "a", 1);
+        xy = new Transition(y, "b", 0);
+        x.addTransition(xx);
+        x.addTransition(xy);
+        y.setSubmachine("sub");
+        yx = new Transition(x, "c", 1);
+        yz = new Transition(z, "␣", 0);
+        y.addTransition(yx);
+        y.addTransition(yz);
+        z.setAccepting(true);
+        ab = new Transition(b, "b", 'c', 0);
+        a.addTransition(ab);
+        b.setAccepting(true);
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    @Test
+    public void testProfilingIsOffByDefault() throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape("ab"));
+        assertNull(sim.getProfile());
+        sim.run();
+        assertNull(sim.getProfile());
+    }
+    
+    @Test
+    public void testCountsStatesAndTransitions() throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape("aabab"));
+        sim.setProfiling(true);
+        sim.run();
+        assertEquals(SimulationStatus.REJECTED, sim.getStatus());
+        
+        Profile profile = sim.getProfile();
+        assertEquals(sim.getStepCount(), profile.getStepCount());
+        assertEquals(3, profile.getTransitionCount(xx));
+        assertEquals(2, profile.getTransitionCount(xy));
+        assertEquals(2, profile.getTransitionCount(yx));
+        assertEquals(0, profile.getTransitionCount(yz));
+        assertEquals(2, profile.getTransitionCount(ab));
+        assertEquals(5, profile.getStateSteps(x));
+        assertEquals(2, profile.getStateSteps(y));
+        assertEquals(0, profile.getStateSteps(z));
+        assertEquals(2, profile.getSubmachineEntries(sub));
+        assertEquals(0, profile.getSubmachineEntries(mac));
+        assertEquals(2, profile.getStateVisits(a));
+        assertEquals(2, profile.getStateVisits(b));
+        assertEquals(2, profile.getStateVisits(y));
+        assertEquals(5, profile.getStateVisits(x));
+    }
+    
+    @Test
+    public void testTapeExtent() throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape("aab"));
+        sim.setProfiling(true);
+        sim.run();
+        assertEquals(SimulationStatus.REJECTED, sim.getStatus());
+        
+        Profile profile = sim.getProfile();
+        assertEquals(0, profile.getMinPosition());
+        assertEquals(3, profile.getMaxPosition());
+        assertEquals(4, profile.getTapeExtent());
+    }
+    
+    @Test
+    public void testProfilingRestarts() throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape("aaab"));
+        sim.setProfiling(true);
+        sim.step();
+        sim.step();
+        sim.setProfiling(true);
+        sim.run();
+        
+        Profile profile = sim.getProfile();
+        assertEquals(1, profile.getTransitionCount(xx));
+        assertEquals(2, profile.getMinPosition());
+        sim.setProfiling(false);
+        assertNull(sim.getProfile());
+    }
+    
+    @Test
+    public void testCopyDoesNotChange() throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape("aabab"));
+        sim.setProfiling(true);
+        sim.step();
+        sim.step();
+        Profile copy = sim.getProfile().copy();
+        sim.run();
+        
+        assertEquals(2, copy.getStepCount());
+        assertEquals(2, copy.getTransitionCount(xx));
+        assertEquals(2, copy.getStateSteps(x));
+        assertEquals(2, copy.getMaxPosition());
+        assertEquals(3, sim.getProfile().getTransitionCount(xx));
+    }
+}
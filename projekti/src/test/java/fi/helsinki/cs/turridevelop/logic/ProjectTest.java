@@ -3,6 +3,7 @@ package fi.helsinki.cs.turridevelop.logic;
 import fi.helsinki.cs.turridevelop.logic.Machine;
 import fi.helsinki.cs.turridevelop.logic.Project;
 import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.util.Vec2;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -81,4 +82,35 @@ public class ProjectTest {
         assertEquals(1, proj.getMachineNames().size());
         assertEquals("b", proj.getMachineNames().iterator().next());
     }
+    
+    @Test
+    public void testVersionChangesOnEdits() throws NameInUseException {
+        long version = proj.getVersion();
+        Machine m = proj.addMachine("a");
+        assertTrue(proj.getVersion() != version);
+        
+        version = proj.getVersion();
+        State s = m.addState("start");
+        assertTrue(proj.getVersion() != version);
+        
+        version = proj.getVersion();
+        s.setSubmachine("b");
+        assertTrue(proj.getVersion() != version);
+        
+        version = proj.getVersion();
+        s.setAccepting(true);
+        assertTrue(proj.getVersion() != version);
+        
+        version = proj.getVersion();
+        s.addTransition(new Transition(s, "a", 1));
+        assertTrue(proj.getVersion() != version);
+        
+        version = proj.getVersion();
+        m.setName("b");
+        assertTrue(proj.getVersion() != version);
+        
+        version = proj.getVersion();
+        s.setPosition(new Vec2(1.0, 2.0));
+        assertEquals(version, proj.getVersion());
+    }
 }
@@ -0,0 +1,157 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RunLengthTapeTest {
+    
+    public RunLengthTapeTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    @Test
+    public void testRunsAreMerged() {
+        RunLengthTape tape = new RunLengthTape("aaabbb", '␣', false);
+        assertEquals(4, tape.getRunCount());
+        assertEquals(3, tape.getRunEnd(0));
+        assertEquals(3, tape.getRunStart(5));
+        
+        tape.setCharacterAt(3, 'a');
+        assertEquals(4, tape.getRunCount());
+        tape.setCharacterAt(6, 'b');
+        assertEquals(4, tape.getRunCount());
+        assertEquals("aaaabbb", tape.getContents());
+        
+        tape.setCharacterAt(1, 'c');
+        assertEquals(6, tape.getRunCount());
+        tape.setCharacterAt(1, 'a');
+        assertEquals(4, tape.getRunCount());
+        
+        tape.setContents("");
+        assertEquals(1, tape.getRunCount());
+        assertEquals(Long.MAX_VALUE, tape.getRunEnd(10));
+    }
+    
+    @Test
+    public void testMatchesTape() {
+        Tape expected = new Tape("abc", '␣', true);
+        RunLengthTape tape = new RunLengthTape("abc", '␣', true);
+        Random random = new Random(19);
+        int pos = 0;
+        for(int i = 0; i < 20000; i++) {
+            // Mostly local writes, with some jumps.
+            if(random.nextInt(50) == 0) {
+                pos = random.nextInt(400) - 200;
+            } else {
+                pos += random.nextInt(3) - 1;
+            }
+            char c = "␣ab".charAt(random.nextInt(3));
+            expected.setCharacterAt(pos, c);
+            tape.setCharacterAt(pos, c);
+        }
+        assertEquals(expected.getContents(), tape.getContents());
+        assertEquals(expected.getContentsStart(), tape.getContentsStart());
+        for(pos = -300; pos < 300; pos++) {
+            assertEquals(expected.getCharacterAt(pos), tape.getCharacterAt(pos));
+        }
+        
+        // Every run is maximal.
+        String contents = "␣" + tape.getContents() + "␣";
+        int runs = 1;
+        for(int i = 1; i < contents.length(); i++) {
+            if(contents.charAt(i) != contents.charAt(i - 1)) {
+                runs++;
+            }
+        }
+        assertEquals(runs, tape.getRunCount());
+    }
+    
+    @Test
+    public void testUnaryCounterTakesFewRuns()
+    throws NameInUseException, SimulationException {
+        // Appends ones to a unary number, walking back after every one.
+        Project project = new Project();
+        Machine machine = project.addMachine("m");
+        State start = machine.addState("start");
+        State left = machine.addState("left");
+        start.addTransition(new Transition(start, "1x", 1));
+        start.addTransition(new Transition(left, "␣", '1', -1));
+        left.addTransition(new Transition(left, "1", -1));
+        left.addTransition(new Transition(start, "x", 1));
+        
+        RunLengthTape tape = new RunLengthTape("x1", '␣', false);
+        CompiledSimulation sim = new CompiledSimulation(
+            new CompiledProject(project), "m", tape
+        );
+        while(tape.getContentsLength() < 1000) {
+            assertEquals(SimulationStatus.LIMIT_REACHED, sim.run(1000));
+        }
+        assertTrue(tape.getRunCount() <= 4);
+    }
+    
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testNegativePositionThrows() {
+        RunLengthTape tape = new RunLengthTape("ab", '␣', false);
+        tape.getCharacterAt(-1);
+    }
+    
+    @Test
+    public void testScanMatchesTape() {
+        Tape expected = new Tape("", '␣', true);
+        RunLengthTape tape = new RunLengthTape("", '␣', true);
+        Random random = new Random(22);
+        for(int i = 0; i < 300; i++) {
+            int pos = random.nextInt(200) - 100;
+            char c = "␣ab".charAt(random.nextInt(3));
+            expected.setCharacterAt(pos, c);
+            tape.setCharacterAt(pos, c);
+        }
+        for(int pos = -120; pos < 120; pos++) {
+            for(String chars : new String[] {"a", "ab", "␣a", "␣ab"}) {
+                assertEquals(
+                    expected.scan(pos, 1, chars, 1000),
+                    tape.scan(pos, 1, chars, 1000)
+                );
+                assertEquals(
+                    expected.scan(pos, -1, chars, 7),
+                    tape.scan(pos, -1, chars, 7)
+                );
+            }
+        }
+    }
+    
+    @Test
+    public void testScanIntoLastRunOnNegativeContents() {
+        Tape expected = new Tape("", '␣', true);
+        RunLengthTape tape = new RunLengthTape("", '␣', true);
+        expected.setCharacterAt(-5, 'a');
+        tape.setCharacterAt(-5, 'a');
+        assertEquals(3, expected.scan(-3, 1, "␣", 100));
+        assertEquals(3, tape.scan(-3, 1, "␣", 100));
+        assertEquals(
+            expected.scan(-5, 1, "␣a", 100), tape.scan(-5, 1, "␣a", 100)
+        );
+    }
+}
@@ -0,0 +1,248 @@
+package fi.helsinki.cs.turridevelop.logic;
+
+import fi.helsinki.cs.turridevelop.exceptions.NameInUseException;
+import fi.helsinki.cs.turridevelop.exceptions.SimulationException;
+import java.util.ArrayList;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class SimulationHistoryTest {
+    Project proj;
+    Machine mac;
+    State x;
+    State y;
+    State z;
+    State w;
+    Machine win;
+    State a;
+    State b;
+    State c;
+    
+    public SimulationHistoryTest() {
+    }
+    
+    @BeforeClass
+    public static void setUpClass() {
+    }
+    
+    @AfterClass
+    public static void tearDownClass() {
+    }
+    
+    @Before
+    public void setUp() throws NameInUseException {
+        proj = new Project();
+        mac = proj.addMachine("mac");
+        x = mac.addState("start");
+        y = mac.addState("statey");
+        z = mac.addState("statez");
+        w = mac.addState("statew");
+        win = proj.addMachine("win");
+        a = win.addState("start");
+        b = win.addState("stateb");
+        c = win.addState("statec");
+        
+        // Sweep back and forth, marking one 'a' after '>' as 'b' on each
+        // sweep. The leftward sweep is done by calling submachine win.
+        x.addTransition(new Transition(x, ">b", 1));
+        x.addTransition(new Transition(y, "a", 'b', 1));
+        x.addTransition(new Transition(z, "␣", 0));
+        y.addTransition(new Transition(y, "ab", 1));
+        y.addTransition(new Transition(w, "␣", -1));
+        w.setSubmachine("win");
+        w.addTransition(new Transition(x, ">", 1));
+        z.setAccepting(true);
+        a.addTransition(new Transition(a, "ab", -1));
+        a.addTransition(new Transition(c, ">", 0));
+        c.setAccepting(true);
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    /**
+     * Checks that the simulation is in the configuration of a snapshot.
+     */
+    private void assertConfiguration(
+        SimulationSnapshot expected,
+        Simulation sim
+    ) {
+        SimulationSnapshot actual = sim.getSnapshot();
+        assertEquals(expected.getStepCount(), actual.getStepCount());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertArrayEquals(expected.states, actual.states);
+        assertArrayEquals(expected.machines, actual.machines);
+        assertEquals(expected.getHeadPosition(), actual.getHeadPosition());
+        assertEquals(expected.getTapeContents(), actual.getTapeContents());
+    }
+    
+    /**
+     * Runs the simulation to the end through the history and returns the
+     * snapshots of all steps.
+     */
+    private ArrayList<SimulationSnapshot> runRecording(
+        SimulationHistory history
+    ) throws SimulationException {
+        ArrayList<SimulationSnapshot> snapshots =
+            new ArrayList<SimulationSnapshot>();
+        Simulation sim = history.getSimulation();
+        snapshots.add(sim.getSnapshot());
+        while(sim.getStatus() == SimulationStatus.RUNNING) {
+            history.step();
+            snapshots.add(sim.getSnapshot());
+        }
+        return snapshots;
+    }
+    
+    @Test
+    public void testBackRestoresEveryStep() throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape(">aaaa"));
+        SimulationHistory history = new SimulationHistory(sim);
+        ArrayList<SimulationSnapshot> snapshots = runRecording(history);
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        
+        // The last snapshot is the same configuration as the one before, but
+        // with the final status.
+        for(int i = snapshots.size() - 2; i >= 0; i--) {
+            assertTrue(history.back());
+            assertConfiguration(snapshots.get(i), sim);
+        }
+        assertFalse(history.back());
+    }
+    
+    @Test
+    public void testGoToUsesCheckpoints() throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape(">aaaaaaaa"));
+        SimulationHistory history = new SimulationHistory(sim, 4, 3);
+        ArrayList<SimulationSnapshot> snapshots = runRecording(history);
+        long last = sim.getStepCount();
+        
+        int[] targets = {17, 3, 0, 60, 59, 58, 2};
+        for(int target : targets) {
+            history.goTo(target);
+            assertConfiguration(snapshots.get(target), sim);
+        }
+        history.goTo(last);
+        assertConfiguration(snapshots.get(snapshots.size() - 1), sim);
+    }
+    
+    @Test
+    public void testBackFromRejection() throws NameInUseException, SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape(">aq"));
+        SimulationHistory history = new SimulationHistory(sim);
+        ArrayList<SimulationSnapshot> snapshots = runRecording(history);
+        assertEquals(SimulationStatus.REJECTED, sim.getStatus());
+        
+        assertTrue(history.back());
+        assertEquals(SimulationStatus.RUNNING, sim.getStatus());
+        assertConfiguration(snapshots.get(snapshots.size() - 3), sim);
+    }
+    
+    @Test
+    public void testFindFirst() throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape(">aaaaaaaa"));
+        SimulationHistory history = new SimulationHistory(sim, 8, 4);
+        ArrayList<SimulationSnapshot> snapshots = runRecording(history);
+        
+        int expected = 0;
+        while(!snapshots.get(expected).getTapeContents().contains("bbbbb")) {
+            expected++;
+        }
+        long found = history.findFirst(new SimulationPredicate() {
+            @Override
+            public boolean test(Simulation simulation) {
+                return simulation.getTape().getContents().contains("bbbbb");
+            }
+        });
+        assertEquals(expected, found);
+        assertConfiguration(snapshots.get(expected), sim);
+    }
+    
+    @Test
+    public void testSnapshotRestore() throws SimulationException {
+        Tape tape = new Tape(">aaa", '␣', true);
+        Simulation sim = new Simulation(proj, "mac", tape);
+        for(int i = 0; i < 9; i++) {
+            sim.step();
+        }
+        SimulationSnapshot snapshot = sim.getSnapshot();
+        sim.run();
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        
+        sim.restore(snapshot);
+        assertConfiguration(snapshot, sim);
+        sim.run();
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        assertEquals(">bbb", tape.getContents());
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testGoToBeforeHistoryThrows() throws SimulationException {
+        Simulation sim = new Simulation(proj, "mac", new Tape(">aaa"));
+        sim.step();
+        new SimulationHistory(sim).goTo(0);
+    }
+    
+    @Test
+    public void testBackRestoresMultipleTapes() throws NameInUseException, SimulationException {
+        // Reverse the input onto the second tape, walking left on the first.
+        Project reverse = new Project();
+        Machine m = reverse.addMachine("m");
+        State start = m.addState("start");
+        State back = m.addState("back");
+        State done = m.addState("done");
+        done.setAccepting(true);
+        start.addTransition(new Transition(start, "ab", 1));
+        start.addTransition(new Transition(back, "␣", -1));
+        back.addTransition(new Transition(
+            back,
+            new String[] {"a", "␣"},
+            new Character[] {'␣', 'a'},
+            new int[] {-1, 1}
+        ));
+        back.addTransition(new Transition(
+            back,
+            new String[] {"b", "␣"},
+            new Character[] {'␣', 'b'},
+            new int[] {-1, 1}
+        ));
+        
+        Tape input = new Tape("aab");
+        Tape output = new Tape();
+        Simulation sim =
+            new Simulation(reverse, "m", new Tape[] {input, output});
+        SimulationHistory history = new SimulationHistory(sim);
+        ArrayList<SimulationSnapshot> snapshots =
+            new ArrayList<SimulationSnapshot>();
+        snapshots.add(sim.getSnapshot());
+        for(int i = 0; i < 7; i++) {
+            history.step();
+            snapshots.add(sim.getSnapshot());
+        }
+        assertEquals("baa", output.getContents());
+        assertEquals("", input.getContents());
+        
+        for(int i = snapshots.size() - 2; i >= 0; i--) {
+            assertTrue(history.back());
+            SimulationSnapshot expected = snapshots.get(i);
+            assertEquals(expected.getStepCount(), sim.getStepCount());
+            for(int tape = 0; tape < 2; tape++) {
+                assertEquals(
+                    expected.getHeadPosition(tape),
+                    sim.getHead(tape).getPosition()
+                );
+                assertEquals(
+                    expected.getTapeContents(tape),
+                    sim.getTape(tape).getContents()
+                );
+            }
+        }
+        assertEquals("aab", input.getContents());
+        assertEquals("", output.getContents());
+    }
+}
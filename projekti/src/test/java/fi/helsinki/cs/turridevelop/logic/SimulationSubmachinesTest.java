@@ -117,6 +117,31 @@ public class SimulationSubmachinesTest {
         assertEquals(win, sim.getMachine());
     }
     
+    @Test
+    public void testEditsAreSeenByLaterSimulations() throws NameInUseException, SimulationException {
+        basicTestConfiguration();
+        Simulation sim = new Simulation(proj, "mac", new Tape("axy"));
+        sim.run();
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        
+        // Replace the submachine with one that accepts right away.
+        y.setSubmachine("lin");
+        m.setAccepting(true);
+        sim = new Simulation(proj, "mac", new Tape("aa"));
+        sim.run();
+        assertEquals(SimulationStatus.ACCEPTED, sim.getStatus());
+        assertEquals(2, sim.getStepCount());
+        
+        // Removing the submachine makes entering the state fail.
+        proj.removeMachine("lin");
+        sim = new Simulation(proj, "mac", new Tape("aa"));
+        try {
+            sim.run();
+            fail();
+        } catch(SimulationException e) {
+        }
+    }
+    
     @Test
     public void testAcceptingStartStateWithSubmachine() throws NameInUseException, SimulationException {
         x.setAccepting(true);
@@ -131,4 +131,156 @@ public class SimulationTest {
         assertEquals(w, sim.getState());
         assertEquals(1, sim.getHead().getPosition());
     } 
+    
+    @Test
+    public void testStepLimitStopsRun() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(x, "a␣", 'a', 1));
+        Simulation sim = new Simulation(proj, "mac", new Tape("a"));
+        assertEquals(SimulationStatus.LIMIT_REACHED, sim.run(100));
+        assertEquals(SimulationStatus.RUNNING, sim.getStatus());
+        assertEquals(100, sim.getStepCount());
+        assertEquals(100, sim.getHead().getPosition());
+        
+        // The run can be continued.
+        assertEquals(SimulationStatus.LIMIT_REACHED, sim.run(50));
+        assertEquals(150, sim.getStepCount());
+    }
+    
+    @Test
+    public void testLimitedRunReturnsFinalStatus() throws NameInUseException, SimulationException {
+        y.setAccepting(true);
+        x.addTransition(new Transition(x, "a", 1));
+        x.addTransition(new Transition(y, "␣", 0));
+        Simulation sim = new Simulation(proj, "mac", new Tape("aaa"));
+        assertEquals(SimulationStatus.ACCEPTED, sim.run(100));
+        assertEquals(4, sim.getStepCount());
+    }
+    
+    @Test
+    public void testCancelledRunStops() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(x, "a␣", 'a', 1));
+        Simulation sim = new Simulation(proj, "mac", new Tape("a"));
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        assertEquals(
+            SimulationStatus.LIMIT_REACHED,
+            sim.run(Long.MAX_VALUE, Long.MAX_VALUE, token)
+        );
+        assertEquals(SimulationStatus.RUNNING, sim.getStatus());
+    }
+    
+    @Test
+    public void testTimeoutStopsRun() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(x, "a␣", 0));
+        Simulation sim = new Simulation(proj, "mac", new Tape("a"));
+        assertEquals(
+            SimulationStatus.LIMIT_REACHED,
+            sim.run(Long.MAX_VALUE, 10, null)
+        );
+        assertEquals(SimulationStatus.RUNNING, sim.getStatus());
+        assertTrue(sim.getStepCount() > 0);
+    }
+    
+    @Test
+    public void testMultiTapeCopyWorks() throws NameInUseException, SimulationException {
+        // Copy the input to the second tape in one pass.
+        x.addTransition(new Transition(
+            x,
+            new String[] {"a", "␣"},
+            new Character[] {null, 'a'},
+            new int[] {1, 1}
+        ));
+        y.setAccepting(true);
+        x.addTransition(new Transition(
+            y,
+            new String[] {"␣", "␣"},
+            new Character[] {null, null},
+            new int[] {0, -1}
+        ));
+        assertEquals(2, proj.getTapeCount());
+        
+        Tape input = new Tape("aaaa");
+        Tape work = new Tape();
+        Simulation sim = new Simulation(proj, "mac", new Tape[] {input, work});
+        assertEquals(SimulationStatus.ACCEPTED, sim.run(100));
+        assertEquals(5, sim.getStepCount());
+        assertEquals("aaaa", input.getContents());
+        assertEquals("aaaa", work.getContents());
+        assertEquals(4, sim.getHead(0).getPosition());
+        assertEquals(3, sim.getHead(1).getPosition());
+    }
+    
+    @Test(expected=SimulationException.class)
+    public void testTooFewTapesThrows() throws NameInUseException, SimulationException {
+        x.addTransition(new Transition(
+            y,
+            new String[] {"␣", "␣"},
+            new Character[] {null, null},
+            new int[] {0, 0}
+        ));
+        Simulation sim = new Simulation(proj, "mac", new Tape());
+        sim.step();
+    }
+    
+    /**
+     * Makes mac scan right over the input after '#' and back left.
+     */
+    private void addScans() throws NameInUseException {
+        x.addTransition(new Transition(x, "#ab", 1));
+        x.addTransition(new Transition(y, "␣", -1));
+        y.addTransition(new Transition(y, "a", -1));
+        y.addTransition(new Transition(y, "b", 'b', -1));
+        y.addTransition(new Transition(z, "#", 0));
+        z.setAccepting(true);
+    }
+    
+    @Test
+    public void testRunCountsScannedSteps() throws NameInUseException, SimulationException {
+        addScans();
+        Simulation stepped = new Simulation(proj, "mac", new Tape("#abbabba"));
+        stepped.setProfiling(true);
+        while(stepped.getStatus() == SimulationStatus.RUNNING) {
+            stepped.step();
+        }
+        Simulation sim = new Simulation(proj, "mac", new Tape("#abbabba"));
+        sim.setProfiling(true);
+        assertEquals(SimulationStatus.ACCEPTED, sim.run(100));
+        
+        assertEquals(17, stepped.getStepCount());
+        assertEquals(17, sim.getStepCount());
+        assertEquals(0, sim.getHead().getPosition());
+        Transition scan = x.getTransitionByInput('a');
+        assertEquals(8, sim.getProfile().getTransitionCount(scan));
+        assertEquals(
+            stepped.getProfile().getStateSteps(y),
+            sim.getProfile().getStateSteps(y)
+        );
+        assertEquals(
+            stepped.getProfile().getStateVisits(y),
+            sim.getProfile().getStateVisits(y)
+        );
+        assertEquals(8, sim.getProfile().getMaxPosition());
+    }
+    
+    @Test
+    public void testStepLimitStopsScan() throws NameInUseException, SimulationException {
+        addScans();
+        Simulation sim = new Simulation(proj, "mac", new Tape("#abbabba"));
+        assertEquals(SimulationStatus.LIMIT_REACHED, sim.run(5));
+        assertEquals(5, sim.getStepCount());
+        assertEquals(5, sim.getHead().getPosition());
+        assertEquals(SimulationStatus.LIMIT_REACHED, sim.run(6));
+        assertEquals(11, sim.getStepCount());
+        assertEquals(5, sim.getHead().getPosition());
+        assertEquals(y, sim.getState());
+        
+        CompiledSimulation compiled = new CompiledSimulation(
+            new CompiledProject(proj), "mac", new Tape("#abbabba")
+        );
+        assertEquals(SimulationStatus.LIMIT_REACHED, compiled.run(11));
+        assertEquals(5, compiled.getHead().getPosition());
+        assertEquals(SimulationStatus.ACCEPTED, compiled.run(100));
+        assertEquals(17, compiled.getStepCount());
+        assertEquals(0, compiled.getHead().getPosition());
+    }
 }
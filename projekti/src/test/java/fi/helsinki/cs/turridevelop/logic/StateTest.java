@@ -118,4 +118,61 @@ public class StateTest {
         assertEquals(null, state.getTransitionByInput('b'));
         assertEquals(null, state.getTransitionByInput('c'));
     }
+    
+    @Test
+    public void testMultiTapeTransitionLookupWorks() throws NameInUseException {
+        Transition t = new Transition(
+            state2,
+            new String[] {"ab", "c"},
+            new Character[] {null, 'd'},
+            new int[] {1, -1}
+        );
+        state.addTransition(t);
+        assertEquals(2, state.getTapeCount());
+        assertEquals(t, state.getTransitionByInputs("ac"));
+        assertEquals(t, state.getTransitionByInputs("bc"));
+        assertEquals(null, state.getTransitionByInputs("cc"));
+        state.removeTransition(t);
+        assertEquals(1, state.getTapeCount());
+        assertEquals(null, state.getTransitionByInputs("ac"));
+    }
+    
+    @Test(expected=NameInUseException.class)
+    public void testMixedTapeCountsThrow() throws NameInUseException {
+        state.addTransition(new Transition(state2, "a", 0));
+        state.addTransition(new Transition(
+            state2,
+            new String[] {"b", "c"},
+            new Character[] {null, null},
+            new int[] {0, 0}
+        ));
+    }
+
+    @Test
+    public void testNondeterministicStateKeepsChoices() throws NameInUseException {
+        mac.setNondeterministic(true);
+        Transition t = new Transition(state2, "ab", 1);
+        Transition u = new Transition(state, "b", 'c', 0);
+        state.addTransition(t);
+        state.addTransition(u);
+        assertEquals(2, state.getTransitionsByInput('b').size());
+        assertEquals(u, state.getTransitionsByInput('b').get(1));
+        assertEquals(t, state.getTransitionByInput('b'));
+        state.removeTransition(t);
+        assertEquals(u, state.getTransitionByInput('b'));
+        assertEquals(null, state.getTransitionByInput('a'));
+        assertTrue(state.getTransitionsByInput('a').isEmpty());
+    }
+    
+    @Test
+    public void testRepeatedInputCharacterMapsOnce() throws NameInUseException {
+        mac.setNondeterministic(true);
+        Transition t = new Transition(state2, "aab", 1);
+        state.addTransition(t);
+        assertEquals(1, state.getTransitionsByInput('a').size());
+        mac.setNondeterministic(false);
+        assertFalse(mac.isNondeterministic());
+        state.removeTransition(t);
+        assertTrue(state.getTransitionsByInput('a').isEmpty());
+    }
 }
@@ -76,4 +76,85 @@ public class TapeTest {
         tape.setCharacterAt(5, 'x');
         assertEquals("zzzzzx", tape.getContents());
     }
+    
+    @Test
+    public void testSetFarRightWorks() {
+        Tape tape = new Tape("ab", 'z');
+        tape.setCharacterAt(100000, 'x');
+        assertEquals('x', tape.getCharacterAt(100000));
+        assertEquals('z', tape.getCharacterAt(99999));
+        assertEquals(100001, tape.getContentsLength());
+    }
+    
+    @Test
+    public void testWritingEmptyShortensContents() {
+        Tape tape = new Tape("abc", 'z');
+        tape.setCharacterAt(2, 'z');
+        tape.setCharacterAt(1, 'z');
+        assertEquals("a", tape.getContents());
+        assertEquals(1, tape.getContentsLength());
+        tape.setCharacterAt(3, 'd');
+        assertEquals("azzd", tape.getContents());
+    }
+    
+    @Test
+    public void testSetContentsWorks() {
+        Tape tape = new Tape("abcdef", 'z');
+        tape.setCharacterAt(10, 'x');
+        tape.setContents("q");
+        assertEquals("q", tape.getContents());
+        assertEquals('z', tape.getCharacterAt(10));
+    }
+    
+    @Test(expected=IndexOutOfBoundsException.class)
+    public void testNegativePositionThrows() {
+        Tape tape = new Tape("abc");
+        tape.setCharacterAt(-1, 'x');
+    }
+    
+    @Test
+    public void testBiInfiniteWorks() {
+        Tape tape = new Tape("abc", 'z', true);
+        assertTrue(tape.isBiInfinite());
+        assertEquals('z', tape.getCharacterAt(-5));
+        tape.setCharacterAt(-3, 'x');
+        tape.setCharacterAt(-100000, 'y');
+        assertEquals('x', tape.getCharacterAt(-3));
+        assertEquals('y', tape.getCharacterAt(-100000));
+        assertEquals('a', tape.getCharacterAt(0));
+        assertEquals(-100000, tape.getContentsStart());
+        assertEquals(100003, tape.getContentsLength());
+        
+        tape.setCharacterAt(-100000, 'z');
+        assertEquals(-3, tape.getContentsStart());
+        assertEquals("xzzabc", tape.getContents());
+    }
+    
+    @Test
+    public void testHeadMovesToNegativeOnBiInfinite() {
+        Head head = new Head(new Tape("abc", 'z', true));
+        head.move(-1);
+        head.move(-1);
+        assertEquals(-2, head.getPosition());
+        head.write('q');
+        assertEquals("qzabc", head.getTape().getContents());
+    }
+    
+    @Test
+    public void testScanStopsAtOtherCharacters() {
+        Tape tape = new Tape("aabab", '␣', false);
+        assertEquals(2, tape.scan(0, 1, "a", 10));
+        assertEquals(4, tape.scan(1, 1, "ab", 10));
+        assertEquals(2, tape.scan(1, 1, "ab", 2));
+        assertEquals(0, tape.scan(2, 1, "a", 10));
+        assertEquals(0, tape.scan(7, 1, "␣", 10));
+        
+        // The head cannot move left from position 0.
+        assertEquals(4, tape.scan(4, -1, "ab", 10));
+        assertEquals(0, tape.scan(0, -1, "a", 10));
+        
+        Tape bi_tape = new Tape("aabab", '␣', true);
+        bi_tape.setCharacterAt(-2, 'a');
+        assertEquals(7, bi_tape.scan(4, -1, "ab␣", 10));
+    }
 }